@@ -0,0 +1,50 @@
+package patowen95.robotgame.bench;
+
+/**
+ * A single operation to be timed by BenchmarkRunner, such as one collision query or one step of a World.
+ * Anything that should not be timed, such as loading a map, belongs in setUp.
+ * @author Patrick Owen
+ */
+public abstract class Benchmark
+{
+	private String name;
+	
+	/**
+	 * Creates a new Benchmark.
+	 * @param name The name shown in the results.
+	 */
+	public Benchmark(String name)
+	{
+		this.name = name;
+	}
+	
+	/**
+	 * Returns the name shown in the results.
+	 */
+	public String getName()
+	{
+		return name;
+	}
+	
+	/**
+	 * Returns how many operations are timed together as one sample. Operations that take less than a few
+	 * microseconds should be timed in groups so that the cost of reading the clock does not matter.
+	 */
+	public int getBatchSize()
+	{
+		return 1;
+	}
+	
+	/**
+	 * Prepares everything the operation needs. It is called once before any operation is run.
+	 */
+	public void setUp()
+	{
+	
+	}
+	
+	/**
+	 * Runs the operation once.
+	 */
+	public abstract void run();
+}
@@ -0,0 +1,172 @@
+package patowen95.robotgame.bench;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Times Benchmarks and prints their throughput, the percentiles of the time per operation,
+ * and how much memory they allocate. Each benchmark is warmed up for a number of iterations
+ * whose results are thrown away before the measured iterations are run.
+ * @author Patrick Owen
+ */
+public class BenchmarkRunner
+{
+	private int warmupIterations;
+	private int iterations;
+	private long iterationTime; //Nanoseconds
+	
+	//Time per operation for every sample of the measured iterations, in nanoseconds
+	private long[] samples;
+	private int numSamples;
+	
+	private static final int MAX_SAMPLES = 1 << 20;
+	
+	/**
+	 * Creates a new BenchmarkRunner.
+	 * @param warmupIterations Number of iterations run before measuring.
+	 * @param iterations Number of measured iterations.
+	 * @param iterationTime Length of each iteration in seconds.
+	 */
+	public BenchmarkRunner(int warmupIterations, int iterations, double iterationTime)
+	{
+		this.warmupIterations = warmupIterations;
+		this.iterations = iterations;
+		this.iterationTime = (long)(iterationTime*1e9);
+		
+		samples = new long[MAX_SAMPLES];
+		numSamples = 0;
+	}
+	
+	/**
+	 * Sets up, runs, and prints the results of every benchmark in the list, one after another.
+	 */
+	public void runAll(List<Benchmark> benchmarks)
+	{
+		System.out.println(String.format("%-40s %12s %10s %10s %10s %10s %10s %10s %10s %10s",
+				"benchmark", "ops/s", "error", "p50 us", "p90 us", "p99 us", "p99.9 us", "max us", "B/op", "MB/s"));
+		
+		for (Benchmark benchmark : benchmarks)
+		{
+			benchmark.setUp();
+			System.out.println(run(benchmark));
+		}
+	}
+	
+	/**
+	 * Runs a benchmark that is already set up and returns a line describing the results.
+	 */
+	public String run(Benchmark benchmark)
+	{
+		for (int i=0; i<warmupIterations; i++)
+		{
+			numSamples = 0;
+			runIteration(benchmark);
+		}
+		
+		numSamples = 0;
+		double[] opsPerSecond = new double[iterations];
+		long operations = 0, time = 0;
+		long allocatedStart = getAllocatedBytes();
+		long gcCountStart = getGCCount(), gcTimeStart = getGCTime();
+		
+		for (int i=0; i<iterations; i++)
+		{
+			long start = System.nanoTime();
+			long iterationOperations = runIteration(benchmark);
+			long iterationTime = System.nanoTime() - start;
+			
+			opsPerSecond[i] = iterationOperations*1e9/iterationTime;
+			operations += iterationOperations;
+			time += iterationTime;
+		}
+		
+		long allocated = getAllocatedBytes() - allocatedStart;
+		long gcCount = getGCCount() - gcCountStart, gcTime = getGCTime() - gcTimeStart;
+		
+		double mean = 0;
+		for (double value : opsPerSecond) mean += value;
+		mean /= iterations;
+		
+		double variance = 0;
+		for (double value : opsPerSecond) variance += (value-mean)*(value-mean);
+		double error = iterations > 1 ? Math.sqrt(variance/(iterations-1)) : 0;
+		
+		Arrays.sort(samples, 0, numSamples);
+		
+		String line = String.format("%-40s %12.1f %10.1f %10.3f %10.3f %10.3f %10.3f %10.3f %10.1f %10.2f",
+				benchmark.getName(), mean, error,
+				getPercentile(0.5)/1e3, getPercentile(0.9)/1e3, getPercentile(0.99)/1e3, getPercentile(0.999)/1e3, getPercentile(1)/1e3,
+				allocated < 0 ? Double.NaN : (double)allocated/operations,
+				allocated < 0 ? Double.NaN : allocated/(time/1e9)/(1 << 20));
+		
+		if (gcCount > 0)
+			line += String.format("%n%-40s %d collections, %d ms", "  gc", gcCount, gcTime);
+		return line;
+	}
+	
+	//Runs operations for one iteration, recording their times, and returns how many were run.
+	private long runIteration(Benchmark benchmark)
+	{
+		int batchSize = benchmark.getBatchSize();
+		long operations = 0;
+		long start = System.nanoTime(), end = start + iterationTime;
+		long now = start;
+		
+		while (now < end)
+		{
+			for (int b=0; b<batchSize; b++)
+				benchmark.run();
+			
+			long sampleEnd = System.nanoTime();
+			if (numSamples < samples.length)
+			{
+				samples[numSamples] = (sampleEnd - now)/batchSize;
+				numSamples += 1;
+			}
+			
+			operations += batchSize;
+			now = sampleEnd;
+		}
+		
+		return operations;
+	}
+	
+	//Returns the time per operation that the given fraction of samples are at or below, in nanoseconds.
+	private double getPercentile(double fraction)
+	{
+		if (numSamples == 0) return Double.NaN;
+		int index = (int)Math.ceil(fraction*numSamples) - 1;
+		return samples[Math.max(0, Math.min(numSamples-1, index))];
+	}
+	
+	//Returns the number of bytes allocated by this thread so far, or -1 if the JVM cannot tell.
+	static long getAllocatedBytes()
+	{
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (!(bean instanceof com.sun.management.ThreadMXBean)) return -1;
+		
+		com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean)bean;
+		if (!sunBean.isThreadAllocatedMemorySupported() || !sunBean.isThreadAllocatedMemoryEnabled()) return -1;
+		return sunBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+	
+	//Returns the number of garbage collections so far.
+	static long getGCCount()
+	{
+		long count = 0;
+		for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans())
+			count += Math.max(0, bean.getCollectionCount());
+		return count;
+	}
+	
+	//Returns the time spent on garbage collection so far in milliseconds.
+	static long getGCTime()
+	{
+		long time = 0;
+		for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans())
+			time += Math.max(0, bean.getCollectionTime());
+		return time;
+	}
+}
@@ -0,0 +1,88 @@
+package patowen95.robotgame.bench;
+import java.io.File;
+import java.util.ArrayList;
+
+import patowen95.robotgame.Collision;
+import patowen95.robotgame.Controller;
+import patowen95.robotgame.World;
+
+/**
+ * Runs the benchmarks for collision queries and World.step on the real maps, printing the results.
+ * It must be run from the RobotGame folder so that the maps can be found. Arguments of the form
+ * -w, -i, and -t set the number of warmup iterations, measured iterations, and seconds per iteration.
+ * Any other arguments select only the benchmarks whose names contain one of them.
+ * @author Patrick Owen
+ */
+public class Benchmarks
+{
+	private static final String[] MAPS = {"arena.txt", "testingmap.txt"};
+	private static final long SEED = 1; //Seed of every World the benchmarks load
+	
+	private static Controller controller;
+	
+	/**
+	 * Returns a Controller with no window, shared by all benchmarks.
+	 */
+	public static Controller getController()
+	{
+		if (controller == null)
+		{
+			controller = new Controller(null, null);
+			controller.initHeadless();
+		}
+		return controller;
+	}
+	
+	/**
+	 * Loads a map with no window. Every World loaded this way has the same seed, so that runs can be compared.
+	 * @param map The file name of the map in the maps folder.
+	 */
+	public static World loadWorld(String map)
+	{
+		return new World(getController(), new File("maps" + File.separator + map), SEED);
+	}
+	
+	public static void main(String[] args)
+	{
+		int warmupIterations = 5, iterations = 5;
+		double iterationTime = 1;
+		ArrayList<String> filters = new ArrayList<String>();
+		
+		for (int i=0; i<args.length; i++)
+		{
+			if (args[i].equals("-w")) warmupIterations = Integer.parseInt(args[++i]);
+			else if (args[i].equals("-i")) iterations = Integer.parseInt(args[++i]);
+			else if (args[i].equals("-t")) iterationTime = Double.parseDouble(args[++i]);
+			else filters.add(args[i]);
+		}
+		
+		ArrayList<Benchmark> benchmarks = new ArrayList<Benchmark>();
+		for (String map : MAPS)
+		{
+			benchmarks.add(new CollisionBenchmark(map, CollisionBenchmark.BULLET));
+			benchmarks.add(new CollisionBenchmark(map, CollisionBenchmark.PLAYER));
+			benchmarks.add(new CollisionBenchmark(map, CollisionBenchmark.ENTITY_BULLET));
+			benchmarks.add(new CollisionBenchmark(map, CollisionBenchmark.LONG_BULLET, Collision.RAYS_TREE));
+			benchmarks.add(new CollisionBenchmark(map, CollisionBenchmark.LONG_BULLET, Collision.RAYS_GRID));
+			benchmarks.add(new CollisionBenchmark(map, CollisionBenchmark.STEP_BULLETS));
+			benchmarks.add(new CollisionBenchmark(map, CollisionBenchmark.STEP_BULLETS_BATCH));
+		}
+		for (String map : MAPS)
+		{
+			benchmarks.add(new WorldStepBenchmark(map, 10, 1));
+			benchmarks.add(new WorldStepBenchmark(map, 50, 5));
+			benchmarks.add(new WorldStepBenchmark(map, 50, 5, true));
+		}
+		
+		ArrayList<Benchmark> selected = new ArrayList<Benchmark>();
+		for (Benchmark benchmark : benchmarks)
+		{
+			boolean matches = filters.isEmpty();
+			for (String filter : filters)
+				if (benchmark.getName().contains(filter)) matches = true;
+			if (matches) selected.add(benchmark);
+		}
+		
+		new BenchmarkRunner(warmupIterations, iterations, iterationTime).runAll(selected);
+	}
+}
@@ -0,0 +1,211 @@
+package patowen95.robotgame.bench;
+import java.util.ArrayList;
+import java.util.Random;
+
+import patowen95.robotgame.Collision;
+import patowen95.robotgame.CollisionHit;
+import patowen95.robotgame.World;
+import patowen95.robotgame.entity.Damageable;
+import patowen95.robotgame.entity.EI;
+import patowen95.robotgame.entity.Entity;
+import patowen95.robotgame.entity.Player;
+
+/**
+ * Times one kind of Collision query against the walls of a real map. The queries are generated
+ * once around the map's spawn points with a fixed seed, so every run tests the same paths.
+ * @author Patrick Owen
+ */
+public class CollisionBenchmark extends Benchmark
+{
+	//Kinds of queries
+	public static final int BULLET = 0; //getBulletCollision
+	public static final int PLAYER = 1; //getPlayerCollision
+	public static final int ENTITY_BULLET = 2; //getEntityBulletCollision
+	public static final int LONG_BULLET = 3; //getBulletCollision with paths as long as an enemy shot, which can cross the map
+	public static final int STEP_BULLETS = 4; //getBulletCollision for each of a set of paths as long as one step of a projectile
+	public static final int STEP_BULLETS_BATCH = 5; //getBulletCollisions with the same set of paths as STEP_BULLETS
+	
+	private static final int NUM_QUERIES = 4096;
+	private static final int NUM_TARGETS = 16; //Entities placed for ENTITY_BULLET queries
+	private static final int NUM_STEP_BULLETS = 256; //Paths tested by each STEP_BULLETS or STEP_BULLETS_BATCH operation
+	
+	private String map;
+	private int type;
+	private int rayTraversal;
+	
+	private Collision collision;
+	private CollisionHit hit;
+	private double radius, height;
+	
+	//The queries, which are run in order and repeated
+	private double[] x, y, z, xd, yd, zd;
+	private Damageable[] targets;
+	private double[] time, normalX, normalY, normalZ; //Results of STEP_BULLETS_BATCH
+	private int next;
+	
+	private double sink; //Sum of the results, so that the queries cannot be optimized away
+	
+	/**
+	 * Creates a new CollisionBenchmark.
+	 * @param map The file name of the map in the maps folder.
+	 * @param type The kind of query, such as BULLET.
+	 */
+	public CollisionBenchmark(String map, int type)
+	{
+		this(map, type, Collision.RAYS_AUTO);
+	}
+	
+	/**
+	 * Creates a new CollisionBenchmark that finds the walls a bullet can hit in the given way.
+	 * @param map The file name of the map in the maps folder.
+	 * @param type The kind of query, such as BULLET.
+	 * @param rayTraversal The setting passed to Collision.setRayTraversal, such as Collision.RAYS_GRID.
+	 */
+	public CollisionBenchmark(String map, int type, int rayTraversal)
+	{
+		super("collision." + getTypeName(type) + getTraversalName(rayTraversal) + " " + map);
+		this.map = map;
+		this.type = type;
+		this.rayTraversal = rayTraversal;
+	}
+	
+	//Returns the name of a kind of query as it appears in the benchmark's name.
+	private static String getTypeName(int type)
+	{
+		return type == BULLET ? "bullet" : type == PLAYER ? "player" : type == ENTITY_BULLET ? "entityBullet"
+				: type == LONG_BULLET ? "longBullet" : type == STEP_BULLETS ? "stepBullets" : "stepBullets.batch";
+	}
+	
+	//Returns the part of the benchmark's name that tells how bullets find walls, which is empty for the default.
+	private static String getTraversalName(int rayTraversal)
+	{
+		return rayTraversal == Collision.RAYS_TREE ? ".tree" : rayTraversal == Collision.RAYS_GRID ? ".grid" : "";
+	}
+	
+	public int getBatchSize()
+	{
+		return type == STEP_BULLETS || type == STEP_BULLETS_BATCH ? 1 : 64;
+	}
+	
+	public void setUp()
+	{
+		World world = Benchmarks.loadWorld(map);
+		collision = world.getCollision();
+		collision.setRayTraversal(rayTraversal);
+		hit = new CollisionHit();
+		
+		Player player = world.getPlayer();
+		radius = player.getRadius();
+		height = player.getHeight();
+		
+		Random random = new Random(1);
+		
+		if (type == ENTITY_BULLET)
+		{
+			//Place turrets at the spawn points and step once so that they have previous positions.
+			ArrayList<Entity> placed = new ArrayList<Entity>();
+			for (int i=0; i<NUM_TARGETS; i++)
+			{
+				int spawn = i % world.getNumSpawnPoints();
+				Entity e = Benchmarks.getController().createEntity(world, EI.EnemyTurret);
+				e.setPosition(world.getSpawnX(spawn) + random.nextDouble()*4-2, world.getSpawnY(spawn) + random.nextDouble()*4-2, world.getSpawnZ(spawn));
+				world.create(e);
+				placed.add(e);
+			}
+			world.step(1.0/60);
+			world.step(1.0/60);
+			
+			targets = new Damageable[NUM_QUERIES];
+			for (int i=0; i<NUM_QUERIES; i++)
+				targets[i] = (Damageable)placed.get(random.nextInt(placed.size()));
+		}
+		
+		x = new double[NUM_QUERIES]; y = new double[NUM_QUERIES]; z = new double[NUM_QUERIES];
+		xd = new double[NUM_QUERIES]; yd = new double[NUM_QUERIES]; zd = new double[NUM_QUERIES];
+		
+		for (int i=0; i<NUM_QUERIES; i++)
+		{
+			int spawn = random.nextInt(world.getNumSpawnPoints());
+			x[i] = world.getSpawnX(spawn) + random.nextDouble()*10-5;
+			y[i] = world.getSpawnY(spawn) + random.nextDouble()*10-5;
+			z[i] = world.getSpawnZ(spawn) + random.nextDouble()*2;
+			
+			if (type == BULLET)
+			{
+				//A shot in a random direction, up to the length of a hitscan weapon's range
+				double dir = random.nextDouble()*2*Math.PI, vDir = random.nextDouble()*Math.PI-Math.PI/2;
+				double length = 1 + random.nextDouble()*29;
+				xd[i] = length*Math.cos(dir)*Math.cos(vDir); yd[i] = length*Math.sin(dir)*Math.cos(vDir); zd[i] = length*Math.sin(vDir);
+			}
+			else if (type == LONG_BULLET)
+			{
+				//An enemy shot, which is nearly horizontal and has a range of 100
+				double dir = random.nextDouble()*2*Math.PI, vDir = random.nextDouble()*0.4-0.2;
+				double length = 30 + random.nextDouble()*70;
+				xd[i] = length*Math.cos(dir)*Math.cos(vDir); yd[i] = length*Math.sin(dir)*Math.cos(vDir); zd[i] = length*Math.sin(vDir);
+			}
+			else if (type == STEP_BULLETS || type == STEP_BULLETS_BATCH)
+			{
+				//One step of a projectile, from a slow plasma bolt to a grappler's shot
+				double dir = random.nextDouble()*2*Math.PI, vDir = random.nextDouble()*0.4-0.2;
+				double length = (8 + random.nextDouble()*92)/60;
+				xd[i] = length*Math.cos(dir)*Math.cos(vDir); yd[i] = length*Math.sin(dir)*Math.cos(vDir); zd[i] = length*Math.sin(vDir);
+			}
+			else if (type == PLAYER)
+			{
+				//One step of walking or falling
+				double dir = random.nextDouble()*2*Math.PI, speed = random.nextDouble()*0.3;
+				xd[i] = speed*Math.cos(dir); yd[i] = speed*Math.sin(dir); zd[i] = -random.nextDouble()*0.2;
+			}
+			else
+			{
+				//A shot aimed roughly at the middle of the target
+				Damageable e = targets[i];
+				xd[i] = e.getX()-x[i] + random.nextDouble()-0.5;
+				yd[i] = e.getY()-y[i] + random.nextDouble()-0.5;
+				zd[i] = e.getZ()+e.getHeight()/2-z[i] + random.nextDouble()-0.5;
+			}
+		}
+		
+		time = new double[NUM_STEP_BULLETS];
+		normalX = new double[NUM_STEP_BULLETS]; normalY = new double[NUM_STEP_BULLETS]; normalZ = new double[NUM_STEP_BULLETS];
+		
+		next = 0;
+		sink = 0;
+	}
+	
+	public void run()
+	{
+		if (type == STEP_BULLETS)
+		{
+			for (int i=0; i<NUM_STEP_BULLETS; i++)
+				sink += collision.getBulletCollision(x[i], y[i], z[i], xd[i], yd[i], zd[i], hit);
+			return;
+		}
+		if (type == STEP_BULLETS_BATCH)
+		{
+			collision.getBulletCollisions(x, y, z, xd, yd, zd, NUM_STEP_BULLETS, time, normalX, normalY, normalZ, hit);
+			for (int i=0; i<NUM_STEP_BULLETS; i++)
+				sink += time[i];
+			return;
+		}
+		
+		int i = next;
+		next = (next+1) % NUM_QUERIES;
+		
+		if (type == BULLET || type == LONG_BULLET)
+			sink += collision.getBulletCollision(x[i], y[i], z[i], xd[i], yd[i], zd[i], hit);
+		else if (type == PLAYER)
+			sink += collision.getPlayerCollision(x[i], y[i], z[i], xd[i], yd[i], zd[i], radius, height, hit);
+		else
+			sink += collision.getEntityBulletCollision(x[i], y[i], z[i], xd[i], yd[i], zd[i], targets[i], hit);
+	}
+	
+	/**
+	 * Returns the sum of the results of all queries run so far.
+	 */
+	public double getSink()
+	{
+		return sink;
+	}
+}
@@ -0,0 +1,152 @@
+package patowen95.robotgame.bench;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Random;
+
+import patowen95.robotgame.Controller;
+import patowen95.robotgame.World;
+import patowen95.robotgame.entity.EI;
+import patowen95.robotgame.entity.Entity;
+import patowen95.robotgame.entity.Player;
+
+/**
+ * Steps two Worlds with the same seed side by side in the same process and checks after every step that they are
+ * in the same state, using the checksum of Replayer. Enemies of every type are kept spawning at the same random
+ * spawn points in both, and the player is moved back and forth without being hurt, so that most of the game is
+ * exercised. Each map is run stepping sequentially and in parallel.
+ * <br/><br/>
+ * The Worlds are stepped in the same process so that anything depending on identity hash codes or allocation
+ * order, which would stay the same between two separate runs of the program, still shows up as a difference.
+ * The program exits with status 1 if any pair of Worlds ends up in different states.
+ * <br/><br/>
+ * Usage: DeterminismTest [-s steps] [-seed seed] [map]...
+ * @author Patrick Owen
+ */
+public class DeterminismTest
+{
+	private static final int[] ENEMY_TYPES = {EI.EnemyObstacle, EI.EnemyTurret, EI.EnemyShocking, EI.EnemyTracking,
+		EI.EnemySplitting, EI.EnemyFortress, EI.EnemyRipper, EI.EnemyGrappler};
+	private static final int COUNT = 4; //Number of each type of enemy kept alive
+	private static final double DT = 1.0/60;
+	
+	private Controller controller;
+	private World world;
+	private Player player;
+	private Random random;
+	private int[] alive;
+	
+	/**
+	 * Loads the map with the given seed and makes the player invulnerable.
+	 */
+	public DeterminismTest(String map, long seed, boolean parallel)
+	{
+		controller = Benchmarks.getController();
+		world = new World(controller, new File("maps" + File.separator + map), seed);
+		world.setParallelStepping(parallel);
+		player = world.getPlayer();
+		player.setInvulnerable(true);
+		random = new Random(seed);
+		alive = new int[ENEMY_TYPES.length];
+	}
+	
+	/**
+	 * Spawns enemies, moves the player, and steps the World once.
+	 * @param step The number of steps taken so far.
+	 */
+	public void step(int step)
+	{
+		for (int i=0; i<alive.length; i++)
+			alive[i] = 0;
+		ArrayList<Entity> enemies = world.getEnemies();
+		for (int j=0; j<enemies.size(); j++)
+		{
+			int type = enemies.get(j).getType();
+			for (int i=0; i<ENEMY_TYPES.length; i++)
+				if (type == ENEMY_TYPES[i]) alive[i] += 1;
+		}
+		
+		for (int i=0; i<ENEMY_TYPES.length; i++)
+		{
+			for (int j=alive[i]; j<COUNT; j++)
+			{
+				int spawn = random.nextInt(world.getNumSpawnPoints());
+				Entity e = controller.createEntity(world, ENEMY_TYPES[i]);
+				e.setPosition(world.getSpawnX(spawn) + random.nextDouble()*6-3, world.getSpawnY(spawn) + random.nextDouble()*6-3, world.getSpawnZ(spawn));
+				world.create(e);
+			}
+		}
+		
+		player.setPosition(world.getSpawnX(0) + Math.sin(step*0.01)*4, world.getSpawnY(0), world.getSpawnZ(0));
+		player.setVelocity(0, 0, 0);
+		world.step(DT);
+	}
+	
+	/**
+	 * Returns the checksum of the state of the World.
+	 */
+	public long getChecksum()
+	{
+		return Replayer.getChecksum(world);
+	}
+	
+	/**
+	 * Steps two Worlds with the same map and seed and returns the first step after which their states differ,
+	 * or -1 if they agree after every step.
+	 */
+	public static int compare(String map, long seed, boolean parallel, int steps)
+	{
+		DeterminismTest a = new DeterminismTest(map, seed, parallel);
+		DeterminismTest b = new DeterminismTest(map, seed, parallel);
+		
+		for (int i=0; i<steps; i++)
+		{
+			a.step(i);
+			b.step(i);
+			if (a.getChecksum() != b.getChecksum())
+				return i+1;
+		}
+		return -1;
+	}
+	
+	public static void main(String[] args)
+	{
+		int steps = 2000;
+		long seed = 42;
+		ArrayList<String> maps = new ArrayList<String>();
+		
+		for (int i=0; i<args.length; i++)
+		{
+			if (args[i].equals("-s")) steps = Integer.parseInt(args[++i]);
+			else if (args[i].equals("-seed")) seed = Long.parseLong(args[++i]);
+			else maps.add(args[i]);
+		}
+		if (maps.isEmpty())
+		{
+			maps.add("arena.txt");
+			maps.add("testingmap.txt");
+		}
+		
+		boolean passed = true;
+		for (String map : maps)
+		{
+			for (int p=0; p<2; p++)
+			{
+				boolean parallel = p == 1;
+				int diverged = compare(map, seed, parallel, steps);
+				String mode = parallel ? "parallel" : "sequential";
+				if (diverged == -1)
+				{
+					System.out.println(String.format("%-20s %-10s same state after all %d steps", map, mode, steps));
+				}
+				else
+				{
+					System.out.println(String.format("%-20s %-10s states differ after step %d", map, mode, diverged));
+					passed = false;
+				}
+			}
+		}
+		
+		if (!passed)
+			System.exit(1);
+	}
+}
@@ -0,0 +1,151 @@
+package patowen95.robotgame.bench;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import patowen95.robotgame.Controller;
+import patowen95.robotgame.InputHandler;
+import patowen95.robotgame.InputRecording;
+import patowen95.robotgame.World;
+import patowen95.robotgame.entity.Entity;
+
+/**
+ * Replays an InputRecording with no window as fast as possible, timing every World.step, so that recorded
+ * games can be used as benchmarks. The recording is replayed a number of times, each in a new World with the
+ * recorded seed, and the percentiles of the step times of the last replays are printed along with a checksum
+ * of the final state. Every replay of the same recording should end with the same checksum; if two builds
+ * give different checksums, they did not play the game the same way and their times should not be compared.
+ * <br/><br/>
+ * Usage: Replayer [-w warmupReplays] [-i replays] recording...
+ * @author Patrick Owen
+ */
+public class Replayer
+{
+	private int warmupReplays;
+	private int replays;
+	
+	/**
+	 * Creates a new Replayer.
+	 * @param warmupReplays Number of replays run before measuring.
+	 * @param replays Number of measured replays.
+	 */
+	public Replayer(int warmupReplays, int replays)
+	{
+		this.warmupReplays = warmupReplays;
+		this.replays = replays;
+	}
+	
+	/**
+	 * Replays the recording and returns a line describing the results.
+	 */
+	public String run(String name, InputRecording recording)
+	{
+		int numFrames = recording.getNumFrames();
+		long[] samples = new long[numFrames*replays];
+		long checksum = 0;
+		boolean consistent = true;
+		long time = 0;
+		
+		for (int r=0; r<warmupReplays+replays; r++)
+		{
+			boolean measured = r >= warmupReplays;
+			long[] times = measured ? samples : null;
+			int offset = measured ? (r-warmupReplays)*numFrames : 0;
+			
+			long start = System.nanoTime();
+			long result = replay(recording, times, offset);
+			if (measured) time += System.nanoTime() - start;
+			
+			if (r > 0 && result != checksum) consistent = false;
+			checksum = result;
+		}
+		
+		Arrays.sort(samples);
+		return String.format("%-40s %8d %12.1f %10.3f %10.3f %10.3f %10.3f %10.3f %18s%s",
+				name, numFrames, (double)numFrames*replays*1e9/time,
+				getPercentile(samples, 0.5)/1e3, getPercentile(samples, 0.9)/1e3, getPercentile(samples, 0.99)/1e3,
+				getPercentile(samples, 0.999)/1e3, getPercentile(samples, 1)/1e3,
+				Long.toHexString(checksum), consistent ? "" : " (replays disagree)");
+	}
+	
+	//Replays the recording once in a new World and returns a checksum of the final state.
+	//The time of each step is stored in times starting at offset unless times is null.
+	private long replay(InputRecording recording, long[] times, int offset)
+	{
+		Controller controller = Benchmarks.getController();
+		InputHandler input = controller.getInputHandler();
+		World world = new World(controller, new File("maps" + File.separator + recording.getLevelName()), recording.getSeed());
+		double dt = 1/recording.getTickRate();
+		
+		for (int i=0; i<recording.getNumFrames(); i++)
+		{
+			recording.play(input, i);
+			
+			long start = System.nanoTime();
+			world.step(dt);
+			if (times != null) times[offset+i] = System.nanoTime() - start;
+		}
+		
+		return getChecksum(world);
+	}
+	
+	/**
+	 * Combines the class, ID, position, and velocity of every entity in the World into one number.
+	 */
+	public static long getChecksum(World world)
+	{
+		long checksum = world.getEntities().size();
+		for (Entity e : world.getEntities())
+		{
+			checksum = 31*checksum + e.getClass().getName().hashCode();
+			checksum = 31*checksum + e.getID();
+			checksum = 31*checksum + Double.doubleToLongBits(e.getX());
+			checksum = 31*checksum + Double.doubleToLongBits(e.getY());
+			checksum = 31*checksum + Double.doubleToLongBits(e.getZ());
+			checksum = 31*checksum + Double.doubleToLongBits(e.getXV());
+			checksum = 31*checksum + Double.doubleToLongBits(e.getYV());
+			checksum = 31*checksum + Double.doubleToLongBits(e.getZV());
+		}
+		return checksum;
+	}
+	
+	//Returns the time that the given fraction of the sorted samples are at or below.
+	private static double getPercentile(long[] samples, double fraction)
+	{
+		if (samples.length == 0) return Double.NaN;
+		int index = (int)Math.ceil(fraction*samples.length) - 1;
+		return samples[Math.max(0, Math.min(samples.length-1, index))];
+	}
+	
+	public static void main(String[] args)
+	{
+		int warmupReplays = 2, replays = 5;
+		int first = 0;
+		while (first < args.length && args[first].startsWith("-"))
+		{
+			if (args[first].equals("-w")) warmupReplays = Integer.parseInt(args[++first]);
+			else if (args[first].equals("-i")) replays = Integer.parseInt(args[++first]);
+			first += 1;
+		}
+		
+		Replayer replayer = new Replayer(warmupReplays, replays);
+		System.out.println(String.format("%-40s %8s %12s %10s %10s %10s %10s %10s %18s",
+				"recording", "steps", "steps/s", "p50 us", "p90 us", "p99 us", "p99.9 us", "max us", "checksum"));
+		
+		for (int i=first; i<args.length; i++)
+		{
+			InputRecording recording;
+			try
+			{
+				recording = new InputRecording(new File(args[i]));
+			}
+			catch (IOException e)
+			{
+				System.out.println(args[i] + ": " + e.getMessage());
+				continue;
+			}
+			
+			System.out.println(replayer.run(new File(args[i]).getName(), recording));
+		}
+	}
+}
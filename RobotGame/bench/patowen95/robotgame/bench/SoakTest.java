@@ -0,0 +1,210 @@
+package patowen95.robotgame.bench;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+import patowen95.robotgame.Controller;
+import patowen95.robotgame.World;
+import patowen95.robotgame.entity.EI;
+import patowen95.robotgame.entity.Entity;
+import patowen95.robotgame.entity.Player;
+
+/**
+ * Runs a map with no window for a long time while keeping every type of enemy spawning, to find how many
+ * entities the World can step within one frame. Before every step, each type of enemy is topped up to its
+ * count at random spawn points, on top of the map's own spawning waves. The player cannot be hurt and is held
+ * at the first spawn point, so the level never ends.
+ * <br/><br/>
+ * At every report, the percentiles of the step times since the last report are printed along with the number
+ * of entities and enemies, the allocation rate, and the number and time of garbage collections. With a ramp,
+ * the count of every type grows after every report. At the end, the first step that took longer than a frame
+ * is described, along with how many entities there were at the time.
+ * <br/><br/>
+ * Usage: SoakTest [-m minutes] [-r reportSeconds] [-n count] [-ramp increase] [-e enemyType count]... [map]
+ * <br/>
+ * -n sets the count of every type, -e sets the count of one type by its name in EI, such as EnemyTurret, and
+ * -ramp sets how much every nonzero count increases after every report.
+ * @author Patrick Owen
+ */
+public class SoakTest
+{
+	private static final int[] ENEMY_TYPES = {EI.EnemyObstacle, EI.EnemyTurret, EI.EnemyShocking, EI.EnemyTracking,
+		EI.EnemySplitting, EI.EnemyFortress, EI.EnemyRipper, EI.EnemyGrappler};
+	private static final String[] ENEMY_NAMES = {"EnemyObstacle", "EnemyTurret", "EnemyShocking", "EnemyTracking",
+		"EnemySplitting", "EnemyFortress", "EnemyRipper", "EnemyGrappler"};
+	private static final double DT = 1.0/60;
+	private static final long FRAME_TIME = 16000000; //A step longer than this in nanoseconds misses a frame
+	
+	private Controller controller;
+	private World world;
+	private Player player;
+	private Random random;
+	
+	private int[] counts; //Number of each type of enemy to keep alive, in the order of ENEMY_TYPES
+	private int[] alive; //Number of each type of enemy found alive before the current step, in the same order
+	private int ramp;
+	
+	private long[] samples; //Step times since the last report
+	private int numSamples;
+	
+	private long firstSlowStep; //-1 until a step takes longer than FRAME_TIME
+	private long firstSlowTime;
+	private int firstSlowEntities;
+	private boolean firstSlowGC;
+	
+	/**
+	 * Loads the map and makes the player invulnerable.
+	 * @param map The file name of the map in the maps folder.
+	 * @param counts The number of each type of enemy to keep alive, in the order of ENEMY_TYPES.
+	 * @param ramp How much every nonzero count increases after every report.
+	 */
+	public SoakTest(String map, int[] counts, int ramp)
+	{
+		this.counts = counts;
+		this.ramp = ramp;
+		alive = new int[ENEMY_TYPES.length];
+		
+		controller = Benchmarks.getController();
+		world = Benchmarks.loadWorld(map);
+		player = world.getPlayer();
+		player.setInvulnerable(true);
+		random = new Random(1);
+		
+		samples = new long[1024];
+		firstSlowStep = -1;
+	}
+	
+	/**
+	 * Steps the World until the time runs out, printing a report after every interval.
+	 * @param minutes How long to run.
+	 * @param reportSeconds How long between reports.
+	 */
+	public void run(double minutes, double reportSeconds)
+	{
+		long end = System.nanoTime() + (long)(minutes*60e9);
+		long reportPeriod = (long)(reportSeconds*1e9);
+		
+		System.out.println(String.format("%8s %8s %8s %10s %10s %10s %10s %10s %8s %10s",
+				"time s", "steps", "entities", "enemies", "p50 ms", "p99 ms", "max ms", "alloc MB/s", "gcs", "gc ms"));
+		
+		long start = System.nanoTime();
+		long step = 0;
+		while (System.nanoTime() < end)
+		{
+			long reportStart = System.nanoTime();
+			long allocated = BenchmarkRunner.getAllocatedBytes();
+			long gcCount = BenchmarkRunner.getGCCount(), gcTime = BenchmarkRunner.getGCTime();
+			numSamples = 0;
+			
+			while (System.nanoTime() - reportStart < reportPeriod && System.nanoTime() < end)
+			{
+				spawnEnemies();
+				holdPlayer();
+				
+				long stepGCCount = BenchmarkRunner.getGCCount();
+				long stepStart = System.nanoTime();
+				world.step(DT);
+				long time = System.nanoTime() - stepStart;
+				
+				addSample(time);
+				if (firstSlowStep == -1 && time > FRAME_TIME)
+				{
+					firstSlowStep = step;
+					firstSlowTime = time;
+					firstSlowEntities = world.getEntities().size();
+					firstSlowGC = BenchmarkRunner.getGCCount() != stepGCCount;
+				}
+				step += 1;
+			}
+			
+			double elapsed = (System.nanoTime() - reportStart)/1e9;
+			long allocatedNow = BenchmarkRunner.getAllocatedBytes();
+			Arrays.sort(samples, 0, numSamples);
+			System.out.println(String.format("%8.1f %8d %8d %10d %10.3f %10.3f %10.3f %10.1f %8d %10d",
+					(System.nanoTime() - start)/1e9, numSamples, world.getEntities().size(), world.getNumEnemies(),
+					getPercentile(0.5)/1e6, getPercentile(0.99)/1e6, getPercentile(1)/1e6,
+					allocated == -1 || allocatedNow == -1 ? Double.NaN : (allocatedNow - allocated)/elapsed/1e6,
+					BenchmarkRunner.getGCCount() - gcCount, BenchmarkRunner.getGCTime() - gcTime));
+			
+			for (int i=0; i<counts.length; i++)
+				if (counts[i] > 0) counts[i] += ramp;
+		}
+		
+		if (firstSlowStep == -1)
+			System.out.println("No step took longer than " + FRAME_TIME/1e6 + " ms");
+		else
+			System.out.println(String.format("Step %d took %.3f ms with %d entities%s", firstSlowStep, firstSlowTime/1e6,
+					firstSlowEntities, firstSlowGC ? " during a garbage collection" : ""));
+	}
+	
+	//Creates enemies of each type at random spawn points until there are as many as its count.
+	private void spawnEnemies()
+	{
+		Arrays.fill(alive, 0);
+		ArrayList<Entity> enemies = world.getEnemies();
+		for (int j=0; j<enemies.size(); j++)
+		{
+			int type = enemies.get(j).getType();
+			for (int i=0; i<ENEMY_TYPES.length; i++)
+				if (type == ENEMY_TYPES[i]) alive[i] += 1;
+		}
+		
+		for (int i=0; i<ENEMY_TYPES.length; i++)
+		{
+			for (int j=alive[i]; j<counts[i]; j++)
+			{
+				int spawn = random.nextInt(world.getNumSpawnPoints());
+				Entity e = controller.createEntity(world, ENEMY_TYPES[i]);
+				e.setPosition(world.getSpawnX(spawn) + random.nextDouble()*6-3, world.getSpawnY(spawn) + random.nextDouble()*6-3, world.getSpawnZ(spawn));
+				world.create(e);
+			}
+		}
+	}
+	
+	//Keeps the player standing still at the first spawn point.
+	private void holdPlayer()
+	{
+		player.setPosition(world.getSpawnX(0), world.getSpawnY(0), world.getSpawnZ(0));
+		player.setVelocity(0, 0, 0);
+	}
+	
+	private void addSample(long time)
+	{
+		if (numSamples == samples.length) samples = Arrays.copyOf(samples, 2*numSamples);
+		samples[numSamples++] = time;
+	}
+	
+	//Returns the time that the given fraction of the sorted samples are at or below.
+	private double getPercentile(double fraction)
+	{
+		if (numSamples == 0) return Double.NaN;
+		int index = (int)Math.ceil(fraction*numSamples) - 1;
+		return samples[Math.max(0, Math.min(numSamples-1, index))];
+	}
+	
+	public static void main(String[] args)
+	{
+		double minutes = 10, reportSeconds = 10;
+		int ramp = 0;
+		int[] counts = new int[ENEMY_TYPES.length];
+		Arrays.fill(counts, 5);
+		String map = "arena.txt";
+		
+		for (int i=0; i<args.length; i++)
+		{
+			if (args[i].equals("-m")) minutes = Double.parseDouble(args[++i]);
+			else if (args[i].equals("-r")) reportSeconds = Double.parseDouble(args[++i]);
+			else if (args[i].equals("-n")) Arrays.fill(counts, Integer.parseInt(args[++i]));
+			else if (args[i].equals("-ramp")) ramp = Integer.parseInt(args[++i]);
+			else if (args[i].equals("-e"))
+			{
+				int type = Arrays.asList(ENEMY_NAMES).indexOf(args[++i]);
+				if (type == -1) throw new IllegalArgumentException("Unknown enemy type " + args[i]);
+				counts[type] = Integer.parseInt(args[++i]);
+			}
+			else map = args[i];
+		}
+		
+		new SoakTest(map, counts, ramp).run(minutes, reportSeconds);
+	}
+}
@@ -0,0 +1,94 @@
+package patowen95.robotgame.bench;
+import java.util.Random;
+
+import patowen95.robotgame.Controller;
+import patowen95.robotgame.World;
+import patowen95.robotgame.entity.EI;
+import patowen95.robotgame.entity.Entity;
+import patowen95.robotgame.entity.Player;
+import patowen95.robotgame.entity.weapon.EntityBullet;
+
+/**
+ * Times World.step on a real map with no window, with a set of enemies placed around the spawn points
+ * and bullets fired across the map at a steady rate. The player stands still and is healed every
+ * step so that the level never ends.
+ * @author Patrick Owen
+ */
+public class WorldStepBenchmark extends Benchmark
+{
+	private static final int[] ENEMY_TYPES = {EI.EnemyTurret, EI.EnemyTracking, EI.EnemyGrappler, EI.EnemyRipper, EI.EnemyShocking};
+	private static final double DT = 1.0/60;
+	
+	private String map;
+	private int numEnemies;
+	private int bulletsPerStep;
+	private boolean parallel;
+	
+	private Controller controller;
+	private World world;
+	private Random random;
+	
+	/**
+	 * Creates a new WorldStepBenchmark.
+	 * @param map The file name of the map in the maps folder.
+	 * @param numEnemies The number of enemies placed before the first step.
+	 * @param bulletsPerStep The number of bullets fired in every step.
+	 */
+	public WorldStepBenchmark(String map, int numEnemies, int bulletsPerStep)
+	{
+		this(map, numEnemies, bulletsPerStep, false);
+	}
+	
+	/**
+	 * Creates a new WorldStepBenchmark.
+	 * @param map The file name of the map in the maps folder.
+	 * @param numEnemies The number of enemies placed before the first step.
+	 * @param bulletsPerStep The number of bullets fired in every step.
+	 * @param parallel Whether the World steps the entities that allow it in parallel.
+	 */
+	public WorldStepBenchmark(String map, int numEnemies, int bulletsPerStep, boolean parallel)
+	{
+		super("world.step" + (parallel ? ".parallel" : "") + " " + map + " enemies=" + numEnemies + " bullets/step=" + bulletsPerStep);
+		this.map = map;
+		this.numEnemies = numEnemies;
+		this.bulletsPerStep = bulletsPerStep;
+		this.parallel = parallel;
+	}
+	
+	public void setUp()
+	{
+		controller = Benchmarks.getController();
+		world = Benchmarks.loadWorld(map);
+		world.setParallelStepping(parallel);
+		random = new Random(1);
+		
+		for (int i=0; i<numEnemies; i++)
+		{
+			int spawn = i % world.getNumSpawnPoints();
+			Entity e = controller.createEntity(world, ENEMY_TYPES[i % ENEMY_TYPES.length]);
+			e.setPosition(world.getSpawnX(spawn) + random.nextDouble()*6-3, world.getSpawnY(spawn) + random.nextDouble()*6-3, world.getSpawnZ(spawn));
+			world.create(e);
+		}
+	}
+	
+	public void run()
+	{
+		for (int i=0; i<bulletsPerStep; i++)
+		{
+			int spawn = random.nextInt(world.getNumSpawnPoints());
+			double dir = random.nextDouble()*2*Math.PI, vDir = random.nextDouble()*0.4-0.2;
+			
+			EntityBullet bullet = (EntityBullet)controller.createEntity(world, EI.EntityBullet);
+			bullet.setPosition(world.getSpawnX(spawn), world.getSpawnY(spawn), world.getSpawnZ(spawn)+1);
+			bullet.setVelocity(40*Math.cos(dir)*Math.cos(vDir), 40*Math.sin(dir)*Math.cos(vDir), 40*Math.sin(vDir));
+			bullet.setDamage(2, 4);
+			world.create(bullet);
+		}
+		
+		Player player = world.getPlayer();
+		for (int i=0; i<20; i++)
+			player.heal();
+		
+		world.step(DT);
+	}
+}
@@ -0,0 +1,380 @@
+package patowen95.robotgame;
+
+/**
+ * A bounding volume hierarchy over a fixed set of axis-aligned boxes. It is built once
+ * with the surface area heuristic and then used to quickly find which boxes overlap
+ * a given region, so that the cost of a query grows with the logarithm of the number of
+ * boxes instead of linearly.
+ * @author Patrick Owen
+ */
+public class BoundingVolumeHierarchy
+{
+	/**
+	 * The maximum depth of the tree. The stack passed to each query must have room for this many nodes.
+	 */
+	public static final int MAX_DEPTH = 64;
+	
+	private static final double SEGMENT_TOLERANCE = 1e-6; //How far boxes are grown for segment queries so that rounding never skips a box the segment touches
+	
+	//Build parameters
+	private static final int MAX_LEAF_SIZE = 4; //Nodes this small are never split
+	private static final int NUM_BINS = 12; //Number of bins used to estimate the best split
+	private static final double TRAVERSAL_COST = 1; //Cost of visiting a node relative to testing a box
+	
+	//Box data, indexed by the box's original index
+	private int numBoxes;
+	private double[] bMinX, bMinY, bMinZ, bMaxX, bMaxY, bMaxZ;
+	private double[] centerX, centerY, centerZ;
+	
+	//Box indices, ordered so that the boxes of each leaf are contiguous
+	private int[] order;
+	
+	//Node data. Leaves have a positive count, and inner nodes store their two children.
+	private int numNodes;
+	private double[] nMinX, nMinY, nMinZ, nMaxX, nMaxY, nMaxZ;
+	private int[] nLeft, nRight;
+	private int[] nStart, nCount;
+	
+	/**
+	 * Builds a hierarchy over the given boxes. Each array holds one bound for every box.
+	 * @param minX
+	 * @param minY
+	 * @param minZ Minimum corners of the boxes.
+	 * @param maxX
+	 * @param maxY
+	 * @param maxZ Maximum corners of the boxes.
+	 * @param count The number of boxes to use from the arrays.
+	 */
+	public BoundingVolumeHierarchy(double[] minX, double[] minY, double[] minZ, double[] maxX, double[] maxY, double[] maxZ, int count)
+	{
+		numBoxes = count;
+		bMinX = minX; bMinY = minY; bMinZ = minZ;
+		bMaxX = maxX; bMaxY = maxY; bMaxZ = maxZ;
+		
+		centerX = new double[count]; centerY = new double[count]; centerZ = new double[count];
+		order = new int[count];
+		for (int i=0; i<count; i++)
+		{
+			centerX[i] = (minX[i]+maxX[i])/2;
+			centerY[i] = (minY[i]+maxY[i])/2;
+			centerZ[i] = (minZ[i]+maxZ[i])/2;
+			order[i] = i;
+		}
+		
+		//A binary tree whose leaves are never empty has fewer than twice as many nodes as boxes.
+		int capacity = Math.max(1, 2*count);
+		nMinX = new double[capacity]; nMinY = new double[capacity]; nMinZ = new double[capacity];
+		nMaxX = new double[capacity]; nMaxY = new double[capacity]; nMaxZ = new double[capacity];
+		nLeft = new int[capacity]; nRight = new int[capacity];
+		nStart = new int[capacity]; nCount = new int[capacity];
+		
+		numNodes = 0;
+		if (count > 0)
+			buildNode(0, count, 0);
+	}
+	
+	/**
+	 * Returns the number of boxes held by the hierarchy.
+	 */
+	public int getNumBoxes()
+	{
+		return numBoxes;
+	}
+	
+	/**
+	 * Returns the number of nodes in the hierarchy.
+	 */
+	public int getNumNodes()
+	{
+		return numNodes;
+	}
+	
+	/**
+	 * Finds every box that overlaps the specified region (touching counts as overlapping).
+	 * @param xMin
+	 * @param yMin
+	 * @param zMin Minimum corner of the region.
+	 * @param xMax
+	 * @param yMax
+	 * @param zMax Maximum corner of the region.
+	 * @param result Receives the original indices of the overlapping boxes. Must have room for every box.
+	 * @param stack Scratch space for the nodes still to visit, with room for MAX_DEPTH nodes.
+	 * @return The number of indices written to result.
+	 */
+	public int getOverlapping(double xMin, double yMin, double zMin, double xMax, double yMax, double zMax, int[] result, int[] stack)
+	{
+		if (numNodes == 0) return 0;
+		
+		int top = 0;
+		int found = 0;
+		int node = 0;
+		
+		while (true)
+		{
+			if (xMax >= nMinX[node] && xMin <= nMaxX[node] && yMax >= nMinY[node] && yMin <= nMaxY[node]
+					&& zMax >= nMinZ[node] && zMin <= nMaxZ[node])
+			{
+				if (nCount[node] > 0)
+				{
+					int end = nStart[node] + nCount[node];
+					for (int k=nStart[node]; k<end; k++)
+					{
+						int i = order[k];
+						if (xMax < bMinX[i] || xMin > bMaxX[i]) continue;
+						if (yMax < bMinY[i] || yMin > bMaxY[i]) continue;
+						if (zMax < bMinZ[i] || zMin > bMaxZ[i]) continue;
+						result[found++] = i;
+					}
+				}
+				else
+				{
+					stack[top++] = nRight[node];
+					node = nLeft[node];
+					continue;
+				}
+			}
+			
+			if (top == 0) break;
+			node = stack[--top];
+		}
+		
+		return found;
+	}
+	
+	/**
+	 * Finds every box that the segment from (x, y, z) to (x+xd, y+yd, z+zd) passes through or touches. Only the nodes that the
+	 * segment passes through are visited, so a long diagonal segment visits far fewer nodes than a query for its bounding box.
+	 * Within a leaf, the boxes are only tested against the bounding box of the segment, so a few boxes near the segment may
+	 * be found as well. The boxes are found in the same order as getOverlapping finds them.
+	 * @param x
+	 * @param y
+	 * @param z Start of the segment.
+	 * @param xd
+	 * @param yd
+	 * @param zd Displacement from the start to the end of the segment.
+	 * @param result Receives the original indices of the boxes. Must have room for every box.
+	 * @param stack Scratch space for the nodes still to visit, with room for MAX_DEPTH nodes.
+	 * @return The number of indices written to result.
+	 */
+	public int getAlongSegment(double x, double y, double z, double xd, double yd, double zd, int[] result, int[] stack)
+	{
+		if (numNodes == 0) return 0;
+		
+		double ix = Collision.inverse(xd), iy = Collision.inverse(yd), iz = Collision.inverse(zd);
+		double e = SEGMENT_TOLERANCE;
+		
+		//Box around the segment, so that most boxes can be rejected before the slower test against the segment itself
+		double xMin = Math.min(x, x+xd)-e, yMin = Math.min(y, y+yd)-e, zMin = Math.min(z, z+zd)-e;
+		double xMax = Math.max(x, x+xd)+e, yMax = Math.max(y, y+yd)+e, zMax = Math.max(z, z+zd)+e;
+		
+		int top = 0;
+		int found = 0;
+		int node = 0;
+		
+		while (true)
+		{
+			if (xMax >= nMinX[node] && xMin <= nMaxX[node] && yMax >= nMinY[node] && yMin <= nMaxY[node]
+					&& zMax >= nMinZ[node] && zMin <= nMaxZ[node] && Collision.segmentHitsBox(x, y, z, ix, iy, iz,
+					nMinX[node]-e, nMinY[node]-e, nMinZ[node]-e, nMaxX[node]+e, nMaxY[node]+e, nMaxZ[node]+e))
+			{
+				if (nCount[node] > 0)
+				{
+					int end = nStart[node] + nCount[node];
+					for (int k=nStart[node]; k<end; k++)
+					{
+						int i = order[k];
+						if (xMax < bMinX[i] || xMin > bMaxX[i]) continue;
+						if (yMax < bMinY[i] || yMin > bMaxY[i]) continue;
+						if (zMax < bMinZ[i] || zMin > bMaxZ[i]) continue;
+						result[found++] = i;
+					}
+				}
+				else
+				{
+					stack[top++] = nRight[node];
+					node = nLeft[node];
+					continue;
+				}
+			}
+			
+			if (top == 0) break;
+			node = stack[--top];
+		}
+		
+		return found;
+	}
+	
+	//Creates the node holding the boxes order[start] to order[end-1] and all of its descendants, returning its index.
+	private int buildNode(int start, int end, int depth)
+	{
+		/*
+		 * ALGORITHM 6:
+		 * Find the bounds of the node, which cover every box in it.
+		 * If the node is small enough (or the tree is too deep), make it a leaf.
+		 * Otherwise, sort the box centers into bins along each axis and estimate the cost of splitting between each pair of bins
+		 *   with the surface area heuristic: the chance of a query visiting a child is proportional to its surface area, and the
+		 *   cost of visiting it is proportional to the number of boxes in it.
+		 * If the cheapest split is not better than testing every box in the node, make it a leaf.
+		 * Otherwise, partition the boxes along the cheapest split and build both children.
+		 */
+		int node = numNodes++;
+		int count = end-start;
+		
+		double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY, minZ = Double.POSITIVE_INFINITY;
+		double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY, maxZ = Double.NEGATIVE_INFINITY;
+		double cMinX = Double.POSITIVE_INFINITY, cMinY = Double.POSITIVE_INFINITY, cMinZ = Double.POSITIVE_INFINITY;
+		double cMaxX = Double.NEGATIVE_INFINITY, cMaxY = Double.NEGATIVE_INFINITY, cMaxZ = Double.NEGATIVE_INFINITY;
+		
+		for (int k=start; k<end; k++)
+		{
+			int i = order[k];
+			minX = Math.min(minX, bMinX[i]); minY = Math.min(minY, bMinY[i]); minZ = Math.min(minZ, bMinZ[i]);
+			maxX = Math.max(maxX, bMaxX[i]); maxY = Math.max(maxY, bMaxY[i]); maxZ = Math.max(maxZ, bMaxZ[i]);
+			cMinX = Math.min(cMinX, centerX[i]); cMinY = Math.min(cMinY, centerY[i]); cMinZ = Math.min(cMinZ, centerZ[i]);
+			cMaxX = Math.max(cMaxX, centerX[i]); cMaxY = Math.max(cMaxY, centerY[i]); cMaxZ = Math.max(cMaxZ, centerZ[i]);
+		}
+		
+		nMinX[node] = minX; nMinY[node] = minY; nMinZ[node] = minZ;
+		nMaxX[node] = maxX; nMaxY[node] = maxY; nMaxZ[node] = maxZ;
+		
+		if (count <= MAX_LEAF_SIZE || depth >= MAX_DEPTH-1)
+			return makeLeaf(node, start, count);
+		
+		//Find the cheapest split
+		int bestAxis = -1, bestBin = 0;
+		double bestCost = Double.POSITIVE_INFINITY;
+		
+		int[] binCount = new int[NUM_BINS];
+		double[] binBounds = new double[6*NUM_BINS];
+		double[] rightArea = new double[NUM_BINS];
+		int[] rightCount = new int[NUM_BINS];
+		
+		for (int axis=0; axis<3; axis++)
+		{
+			double cMin = axis == 0 ? cMinX : axis == 1 ? cMinY : cMinZ;
+			double cMax = axis == 0 ? cMaxX : axis == 1 ? cMaxY : cMaxZ;
+			if (cMax <= cMin) continue;
+			
+			for (int b=0; b<NUM_BINS; b++)
+			{
+				binCount[b] = 0;
+				binBounds[6*b] = binBounds[6*b+1] = binBounds[6*b+2] = Double.POSITIVE_INFINITY;
+				binBounds[6*b+3] = binBounds[6*b+4] = binBounds[6*b+5] = Double.NEGATIVE_INFINITY;
+			}
+			
+			for (int k=start; k<end; k++)
+			{
+				int i = order[k];
+				int b = getBin(i, axis, cMin, cMax);
+				binCount[b]++;
+				growBounds(binBounds, 6*b, i);
+			}
+			
+			//Sweep from the right to find the area and count of everything after each split.
+			double[] sweep = {Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY,
+					Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY};
+			int sweepCount = 0;
+			for (int b=NUM_BINS-1; b>0; b--)
+			{
+				mergeBounds(sweep, binBounds, 6*b);
+				sweepCount += binCount[b];
+				rightArea[b] = area(sweep);
+				rightCount[b] = sweepCount;
+			}
+			
+			//Sweep from the left and evaluate each split.
+			sweep[0] = sweep[1] = sweep[2] = Double.POSITIVE_INFINITY;
+			sweep[3] = sweep[4] = sweep[5] = Double.NEGATIVE_INFINITY;
+			sweepCount = 0;
+			for (int b=0; b<NUM_BINS-1; b++)
+			{
+				mergeBounds(sweep, binBounds, 6*b);
+				sweepCount += binCount[b];
+				if (sweepCount == 0 || rightCount[b+1] == 0) continue;
+				
+				double cost = area(sweep)*sweepCount + rightArea[b+1]*rightCount[b+1];
+				if (cost < bestCost)
+				{
+					bestCost = cost;
+					bestAxis = axis;
+					bestBin = b;
+				}
+			}
+		}
+		
+		double nodeArea = area(minX, minY, minZ, maxX, maxY, maxZ);
+		if (bestAxis == -1 || (nodeArea > 0 && TRAVERSAL_COST + bestCost/nodeArea >= count))
+			return makeLeaf(node, start, count);
+		
+		//Partition the boxes so that the ones left of the split come first.
+		double cMin = bestAxis == 0 ? cMinX : bestAxis == 1 ? cMinY : cMinZ;
+		double cMax = bestAxis == 0 ? cMaxX : bestAxis == 1 ? cMaxY : cMaxZ;
+		int mid = start;
+		for (int k=start; k<end; k++)
+		{
+			if (getBin(order[k], bestAxis, cMin, cMax) <= bestBin)
+			{
+				int temp = order[k]; order[k] = order[mid]; order[mid] = temp;
+				mid++;
+			}
+		}
+		
+		nCount[node] = 0;
+		nLeft[node] = buildNode(start, mid, depth+1);
+		nRight[node] = buildNode(mid, end, depth+1);
+		return node;
+	}
+	
+	//Turns the specified node into a leaf holding the given range of boxes and returns its index.
+	private int makeLeaf(int node, int start, int count)
+	{
+		nStart[node] = start;
+		nCount[node] = count;
+		return node;
+	}
+	
+	//Returns which bin the center of box i falls into along the given axis.
+	private int getBin(int i, int axis, double cMin, double cMax)
+	{
+		double c = axis == 0 ? centerX[i] : axis == 1 ? centerY[i] : centerZ[i];
+		int b = (int)(NUM_BINS*(c-cMin)/(cMax-cMin));
+		if (b >= NUM_BINS) b = NUM_BINS-1;
+		if (b < 0) b = 0;
+		return b;
+	}
+	
+	//Expands the bounds stored at the given offset to contain box i.
+	private void growBounds(double[] bounds, int offset, int i)
+	{
+		bounds[offset] = Math.min(bounds[offset], bMinX[i]);
+		bounds[offset+1] = Math.min(bounds[offset+1], bMinY[i]);
+		bounds[offset+2] = Math.min(bounds[offset+2], bMinZ[i]);
+		bounds[offset+3] = Math.max(bounds[offset+3], bMaxX[i]);
+		bounds[offset+4] = Math.max(bounds[offset+4], bMaxY[i]);
+		bounds[offset+5] = Math.max(bounds[offset+5], bMaxZ[i]);
+	}
+	
+	//Expands the bounds in target to contain the bounds stored in source at the given offset.
+	private void mergeBounds(double[] target, double[] source, int offset)
+	{
+		for (int j=0; j<3; j++)
+		{
+			target[j] = Math.min(target[j], source[offset+j]);
+			target[j+3] = Math.max(target[j+3], source[offset+j+3]);
+		}
+	}
+	
+	//Returns half the surface area of the specified bounds, or 0 if they are empty.
+	private double area(double[] bounds)
+	{
+		return area(bounds[0], bounds[1], bounds[2], bounds[3], bounds[4], bounds[5]);
+	}
+	
+	//Returns half the surface area of the specified box, or 0 if it is empty.
+	private double area(double xMin, double yMin, double zMin, double xMax, double yMax, double zMax)
+	{
+		double dx = xMax-xMin, dy = yMax-yMin, dz = zMax-zMin;
+		if (dx < 0 || dy < 0 || dz < 0) return 0;
+		return dx*dy + dy*dz + dz*dx;
+	}
+}
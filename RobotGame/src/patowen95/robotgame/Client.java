@@ -36,7 +36,7 @@ public class Client extends Network
 			e.printStackTrace();
 			System.exit(1);
 		}
-		serverPort = 4445;
+		serverPort = Server.DEFAULT_PORT;
 		connected = false;
 		currentSignalID = 0;
 		guaranteedReceiver = new GuaranteedSignalReceiver(c, serverIP, serverPort);
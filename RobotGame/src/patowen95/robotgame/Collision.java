@@ -1,5 +1,5 @@
 package patowen95.robotgame;
-import java.util.ArrayList;
+import java.util.Arrays;
 
 import patowen95.robotgame.entity.Collidable;
 import patowen95.robotgame.entity.Damageable;
@@ -14,49 +14,123 @@ public class Collision
 {
 	private World w;
 	
-	private double normalX, normalY, normalZ;
-	private double normalXFinal, normalYFinal, normalZFinal;
+	//Results of the methods that do not take a CollisionHit, which can therefore only be used by one thread
+	private CollisionHit hit, entityHit;
 	
-	//Environment data
+	//Environment data, with one array per attribute and everything that does not depend on the query computed by addWall.
+	//The arrays are package-private so that a RayKernel can read them.
 	private int colData;
-	private ArrayList<Double> cX1, cY1, cZ1, cX2, cY2, cZ2, cX3, cY3, cZ3;
+	double[] cX1, cY1, cZ1, cX2, cY2, cZ2, cX3, cY3, cZ3; //Vertices
+	double[] cXMin, cYMin, cZMin, cXMax, cYMax, cZMax; //Bounding box
+	double[] cNX, cNY, cNZ; //Normal (cross product of the edges, not normalized)
+	double[] cUX, cUY, cUZ; //Unit normal
+	double[] cHX, cHY; //Horizontal component of the normal with length 1 (0 if the wall is horizontal)
+	double[] cD; //Plane offset, so that every point on the plane satisfies dot(normal, point) + offset = 0
+	double[] cEX1, cEY1, cEZ1, cEX2, cEY2, cEZ2, cEX3, cEY3, cEZ3; //Edges (second vertex minus first, third minus second, first minus third)
+	
+	//Acceleration structure for the environment, null until build is called
+	private BoundingVolumeHierarchy tree;
+	private int version; //Changes whenever the walls change so that a CollisionCache can tell it is out of date
+	
+	private static final double CACHE_MARGIN = 2; //How far a CollisionCache's region extends past the query that created it
+	
+	//Ways of finding the walls that a bullet can hit
+	public static final int RAYS_TREE = 0; //Walk the tree along the path (or over the box around it if the path is short)
+	public static final int RAYS_GRID = 1; //Walk the WallGrid from the start of the path, stopping at the first cell with a hit
+	public static final int RAYS_AUTO = 2; //Walk the WallGrid only for paths longer than LONG_RAY_LENGTH
+	
+	private WallGrid grid; //Null until build is called
+	private int rayTraversal;
+	private static final double GRID_CELL_SIZE = 2;
+	private static final double LONG_RAY_LENGTH = 24;
+	private static final double SHORT_RAY_LENGTH = 20; //Shorter paths find walls with the box around the path, which is nearly as tight and faster to test
+	
+	private CollisionStats stats; //Counts the work done by queries
+	
+	//Set the system property robotgame.scalarRays to true to test batches of bullet paths without the Vector API.
+	private static final boolean SCALAR_RAYS = Boolean.getBoolean("robotgame.scalarRays");
+	
+	//Tests one wall against many paths for getBulletCollisions, or null to test them one at a time
+	private static final RayKernel RAY_KERNEL = loadRayKernel();
 	
 	/**
 	 * Initializes the Collision class.
 	 */
 	public Collision(World world)
+	{
+		this(world, new CollisionStats());
+	}
+	
+	/**
+	 * Initializes the Collision class, adding the work done by its queries to the given statistics.
+	 * This allows the statistics to be kept when a level is reset and its Collision object replaced.
+	 */
+	public Collision(World world, CollisionStats collisionStats)
 	{
 		//Initialize all data arrays
 		colData = 0;
-		cX1 = new ArrayList<Double>(); cY1 = new ArrayList<Double>(); cZ1 = new ArrayList<Double>();
-		cX2 = new ArrayList<Double>(); cY2 = new ArrayList<Double>(); cZ2 = new ArrayList<Double>();
-		cX3 = new ArrayList<Double>(); cY3 = new ArrayList<Double>(); cZ3 = new ArrayList<Double>();
+		allocateWalls(64);
+		
+		tree = null;
+		grid = null;
+		rayTraversal = RAYS_AUTO;
+		version = 0;
+		
+		hit = new CollisionHit();
+		entityHit = new CollisionHit();
 		
 		w = world;
+		stats = collisionStats;
+	}
+	
+	/**
+	 * Sets how getBulletCollision finds the walls that a bullet can hit, which changes how long it takes but not its result.
+	 * The default is RAYS_AUTO. Before build is called, every wall is tested no matter what this is set to.
+	 * @param traversal RAYS_TREE, RAYS_GRID, or RAYS_AUTO.
+	 */
+	public void setRayTraversal(int traversal)
+	{
+		rayTraversal = traversal;
 	}
 	
 	/**
-	 * Returns the x-component of the normal of the wall that stopped an entity since the last call to one of the appropriate methods.
+	 * Returns how getBulletCollision finds the walls that a bullet can hit, such as RAYS_AUTO.
+	 */
+	public int getRayTraversal()
+	{
+		return rayTraversal;
+	}
+	
+	/**
+	 * Returns the statistics that count the work done by the queries made to this object.
+	 */
+	public CollisionStats getStats()
+	{
+		return stats;
+	}
+	
+	/**
+	 * Returns the x-component of the normal of the wall that stopped an entity since the last call to getBulletCollision or getPlayerCollision without a CollisionHit.
 	 */
 	public double getNormalX()
 	{
-		return normalXFinal;
+		return hit.getNormalX();
 	}
 	
 	/**
-	 * Returns the y-component of the normal of the wall that stopped an entity since the last call to one of the appropriate methods.
+	 * Returns the y-component of the normal of the wall that stopped an entity since the last call to getBulletCollision or getPlayerCollision without a CollisionHit.
 	 */
 	public double getNormalY()
 	{
-		return normalYFinal;
+		return hit.getNormalY();
 	}
 	
 	/**
-	 * Returns the z-component of the normal of the wall that stopped an entity since the last call to one of the appropriate methods.
+	 * Returns the z-component of the normal of the wall that stopped an entity since the last call to getBulletCollision or getPlayerCollision without a CollisionHit.
 	 */
 	public double getNormalZ()
 	{
-		return normalZFinal;
+		return hit.getNormalZ();
 	}
 	
 	/**
@@ -73,10 +147,120 @@ public class Collision
 	 */
 	public void addWall(double x1, double y1, double z1, double x2, double y2, double z2, double x3, double y3, double z3)
 	{
-		cX1.add(x1); cY1.add(y1); cZ1.add(z1);
-		cX2.add(x2); cY2.add(y2); cZ2.add(z2);
-		cX3.add(x3); cY3.add(y3); cZ3.add(z3);
+		if (colData == cX1.length)
+			allocateWalls(2*colData);
+		
+		int i = colData;
+		cX1[i] = x1; cY1[i] = y1; cZ1[i] = z1;
+		cX2[i] = x2; cY2[i] = y2; cZ2[i] = z2;
+		cX3[i] = x3; cY3[i] = y3; cZ3[i] = z3;
+		
+		cXMin[i] = min3(x1,x2,x3); cYMin[i] = min3(y1,y2,y3); cZMin[i] = min3(z1,z2,z3);
+		cXMax[i] = max3(x1,x2,x3); cYMax[i] = max3(y1,y2,y3); cZMax[i] = max3(z1,z2,z3);
+		
+		cEX1[i] = x2-x1; cEY1[i] = y2-y1; cEZ1[i] = z2-z1;
+		cEX2[i] = x3-x2; cEY2[i] = y3-y2; cEZ2[i] = z3-z2;
+		cEX3[i] = x1-x3; cEY3[i] = y1-y3; cEZ3[i] = z1-z3;
+		
+		double nx = (y2-y1)*(z3-z1) - (y3-y1)*(z2-z1);
+		double ny = (z2-z1)*(x3-x1) - (z3-z1)*(x2-x1);
+		double nz = (x2-x1)*(y3-y1) - (x3-x1)*(y2-y1);
+		cNX[i] = nx; cNY[i] = ny; cNZ[i] = nz;
+		cD[i] = -nx*x1 - ny*y1 - nz*z1;
+		
+		double dist = Math.sqrt(sqr(nx) + sqr(ny) + sqr(nz));
+		cUX[i] = nx/dist; cUY[i] = ny/dist; cUZ[i] = nz/dist;
+		
+		dist = Math.sqrt(sqr(nx) + sqr(ny));
+		if (dist == 0) {cHX[i] = 0; cHY[i] = 0;}
+		else {cHX[i] = nx/dist; cHY[i] = ny/dist;}
+		
 		colData += 1;
+		
+		tree = null;
+		grid = null;
+		version += 1;
+	}
+	
+	//Resizes the wall arrays to hold the given number of walls, keeping the walls already added.
+	private void allocateWalls(int capacity)
+	{
+		cX1 = resize(cX1, capacity); cY1 = resize(cY1, capacity); cZ1 = resize(cZ1, capacity);
+		cX2 = resize(cX2, capacity); cY2 = resize(cY2, capacity); cZ2 = resize(cZ2, capacity);
+		cX3 = resize(cX3, capacity); cY3 = resize(cY3, capacity); cZ3 = resize(cZ3, capacity);
+		cXMin = resize(cXMin, capacity); cYMin = resize(cYMin, capacity); cZMin = resize(cZMin, capacity);
+		cXMax = resize(cXMax, capacity); cYMax = resize(cYMax, capacity); cZMax = resize(cZMax, capacity);
+		cNX = resize(cNX, capacity); cNY = resize(cNY, capacity); cNZ = resize(cNZ, capacity);
+		cUX = resize(cUX, capacity); cUY = resize(cUY, capacity); cUZ = resize(cUZ, capacity);
+		cHX = resize(cHX, capacity); cHY = resize(cHY, capacity);
+		cD = resize(cD, capacity);
+		cEX1 = resize(cEX1, capacity); cEY1 = resize(cEY1, capacity); cEZ1 = resize(cEZ1, capacity);
+		cEX2 = resize(cEX2, capacity); cEY2 = resize(cEY2, capacity); cEZ2 = resize(cEZ2, capacity);
+		cEX3 = resize(cEX3, capacity); cEY3 = resize(cEY3, capacity); cEZ3 = resize(cEZ3, capacity);
+	}
+	
+	//Returns a copy of the array with the given length, or a new array if it is null.
+	private double[] resize(double[] array, int length)
+	{
+		if (array == null) return new double[length];
+		return Arrays.copyOf(array, length);
+	}
+	
+	/**
+	 * Builds the bounding volume hierarchy and the WallGrid over all walls added so far. This should be called
+	 * once all walls are added, as queries check every wall one by one until it is called.
+	 */
+	public void build()
+	{
+		tree = new BoundingVolumeHierarchy(cXMin, cYMin, cZMin, cXMax, cYMax, cZMax, colData);
+		grid = new WallGrid(cX1, cY1, cZ1, cX2, cY2, cZ2, cX3, cY3, cZ3, colData, GRID_CELL_SIZE);
+		version += 1;
+	}
+	
+	/**
+	 * Returns the number of walls that have been added.
+	 */
+	public int getNumWalls()
+	{
+		return colData;
+	}
+	
+	/**
+	 * Stores the smallest box containing every wall in bounds as {xMin, yMin, zMin, xMax, yMax, zMax}.
+	 * It is all zeros if there are no walls.
+	 */
+	public void getBounds(double[] bounds)
+	{
+		for (int k=0; k<6; k++)
+			bounds[k] = 0;
+		
+		for (int i=0; i<colData; i++)
+		{
+			bounds[0] = i == 0 ? cXMin[i] : Math.min(bounds[0], cXMin[i]);
+			bounds[1] = i == 0 ? cYMin[i] : Math.min(bounds[1], cYMin[i]);
+			bounds[2] = i == 0 ? cZMin[i] : Math.min(bounds[2], cZMin[i]);
+			bounds[3] = i == 0 ? cXMax[i] : Math.max(bounds[3], cXMax[i]);
+			bounds[4] = i == 0 ? cYMax[i] : Math.max(bounds[4], cYMax[i]);
+			bounds[5] = i == 0 ? cZMax[i] : Math.max(bounds[5], cZMax[i]);
+		}
+	}
+	
+	/**
+	 * Finds the walls whose bounding boxes overlap the given region.
+	 * @param result Receives the indices of the walls, in the order they were added. Must have room for every wall.
+	 * @return The number of indices written to result.
+	 */
+	public int getWallsInRegion(double xMin, double yMin, double zMin, double xMax, double yMax, double zMax, int[] result)
+	{
+		int found = 0;
+		for (int i=0; i<colData; i++)
+		{
+			if (xMax < cXMin[i] || xMin > cXMax[i] || yMax < cYMin[i] || yMin > cYMax[i] || zMax < cZMin[i] || zMin > cZMax[i])
+				continue;
+			result[found] = i;
+			found += 1;
+		}
+		return found;
 	}
 	
 	/**
@@ -91,42 +275,515 @@ public class Collision
 	 * @param bzd Bullet displacement.
 	 */
 	public double getBulletCollision(double bx1, double by1, double bz1, double bxd, double byd, double bzd)
+	{
+		return getBulletCollision(bx1, by1, bz1, bxd, byd, bzd, hit);
+	}
+	
+	/**
+	 * Returns the value from 0 to 1 for the part of the path between (bx1, by1, bz1)
+	 * and (bx+bxd, by+byd, bz+bzd) that triggers a collision between a bullet and the environment.
+	 * If 1 is returned, there is no collision. The value and the normal of the wall that was hit are also stored in h.
+	 * This method can be called from multiple threads at once as long as each uses its own CollisionHit.
+	 * @param bx1
+	 * @param by1
+	 * @param bz1 Initial bullet location.
+	 * @param bxd
+	 * @param byd
+	 * @param bzd Bullet displacement.
+	 * @param h Receives the result.
+	 */
+	public double getBulletCollision(double bx1, double by1, double bz1, double bxd, double byd, double bzd, CollisionHit h)
 	{
 		//The algorithm for this is similar to the player collision one but with simplifications (point instead of cylinder).
 		double buffer = 0.001;
-		normalXFinal = 0; normalYFinal = 0; normalZFinal = 0;
-		if (bxd == 0 && byd == 0 && bzd == 0) return 1;
+		h.time = 1; h.normalX = 0; h.normalY = 0; h.normalZ = 0;
+		if (bxd == 0 && byd == 0 && bzd == 0)
+		{
+			recordQuery(h, CollisionStats.BULLET_QUERIES, 0, 0, 0, 0, 0, 0);
+			return 1;
+		}
 		double bd = Math.sqrt(sqr(bxd) + sqr(byd) + sqr(bzd)); buffer /= bd;
 		bxd *= 1+buffer; byd *= 1+buffer; bzd *= 1+buffer;
+		
+		if (grid != null && colData > 0 && (rayTraversal == RAYS_GRID || (rayTraversal == RAYS_AUTO && bd > LONG_RAY_LENGTH)))
+			return getBulletCollisionGrid(bx1, by1, bz1, bxd, byd, bzd, buffer, h);
+		
 		double bxMin = Math.min(bx1,bx1+bxd), byMin = Math.min(by1,by1+byd), bzMin = Math.min(bz1,bz1+bzd);
 		double bxMax = Math.max(bx1,bx1+bxd), byMax = Math.max(by1,by1+byd), bzMax = Math.max(bz1,bz1+bzd);
 		
 		double tReturn = 1;
 		double nx = 0, ny = 0, nz = 0;
+		int rejects = 0, interiorTests = 0; //Statistics
 		
-		for (int i=0; i<colData; i+=1)
+		int numCandidates;
+		if (tree != null && bd > SHORT_RAY_LENGTH && !(h instanceof CollisionCache))
 		{
-			double x1 = cX1.get(i), y1 = cY1.get(i), z1 = cZ1.get(i);
-			double x2 = cX2.get(i), y2 = cY2.get(i), z2 = cZ2.get(i);
-			double x3 = cX3.get(i), y3 = cY3.get(i), z3 = cZ3.get(i);
+			if (h.candidates.length < colData)
+				h.candidates = new int[colData];
+			numCandidates = tree.getAlongSegment(bx1, by1, bz1, bxd, byd, bzd, h.candidates, h.stack);
+			Arrays.sort(h.candidates, 0, numCandidates);
+		}
+		else
+		{
+			numCandidates = getCandidates(bxMin, byMin, bzMin, bxMax, byMax, bzMax, h);
+		}
+		if (h.planeTimes.length < numCandidates)
+			h.planeTimes = new double[h.candidates.length];
+		double[] planeTimes = h.planeTimes;
+		
+		/*
+		 * ALGORITHM 7:
+		 * Find where the bullet crosses the plane of every candidate wall in one pass that does nothing but arithmetic on the
+		 *   wall arrays, storing 1 for walls whose boxes do not overlap the bullet's path or whose planes are parallel to it.
+		 *   Flipping the normal to oppose the bullet's movement negates both sides of the division, so it can be skipped here.
+		 * 
+		 * Only the walls whose planes are crossed within the path (and before the closest hit so far) need the slower check of
+		 *   whether the crossing point is inside the triangle. Visiting them in the same order gives the same result as testing
+		 *   each wall fully.
+		 */
+		for (int c=0; c<numCandidates; c+=1)
+		{
+			int i = h.candidates[c];
+			double dot = cNX[i]*bxd + cNY[i]*byd + cNZ[i]*bzd;
+			double t = (-cD[i]-cNX[i]*bx1-cNY[i]*by1-cNZ[i]*bz1) / dot;
 			
-			double xMin = min3(x1,x2,x3), yMin = min3(y1,y2,y3), zMin = min3(z1,z2,z3);
-			double xMax = max3(x1,x2,x3), yMax = max3(y1,y2,y3), zMax = max3(z1,z2,z3);
+			boolean outside = bxMax < cXMin[i] || bxMin > cXMax[i] || byMax < cYMin[i] || byMin > cYMax[i]
+					|| bzMax < cZMin[i] || bzMin > cZMax[i];
+			if (outside) rejects += 1;
+			planeTimes[c] = (outside || dot == 0 || !(t >= 0 && t < 1)) ? 1 : t;
+		}
+		
+		for (int c=0; c<numCandidates; c+=1)
+		{
+			double t = planeTimes[c];
+			if (t >= tReturn) continue;
 			
-			if (bxMax < xMin || bxMin > xMax) continue;
-			if (byMax < yMin || byMin > yMax) continue;
-			if (bzMax < zMin || bzMin > zMax) continue;
+			//Interior
+			int i = h.candidates[c];
+			interiorTests += 1;
+			if (!isInsideTriangle(i, bx1 + bxd*t, by1 + byd*t, bz1 + bzd*t)) continue;
 			
-			double t;
+			double flip = cNX[i]*bxd + cNY[i]*byd + cNZ[i]*bzd > 0 ? -1 : 1;
+			tReturn = t; nx = flip*cUX[i]; ny = flip*cUY[i]; nz = flip*cUZ[i];
+		}
+		
+		if (tReturn < 1)
+		{
+			h.normalX = nx; h.normalY = ny; h.normalZ = nz;
+			h.time = Math.max(0,tReturn*(1+buffer)-buffer);
+		}
+		recordQuery(h, CollisionStats.BULLET_QUERIES, numCandidates, rejects, interiorTests, 0, 0, 0);
+		return h.time;
+	}
+	
+	/**
+	 * Finds the value from 0 to 1 and the normal that getBulletCollision would find for each of many bullet paths, with
+	 * path r going from (x[r], y[r], z[r]) to (x[r]+xd[r], y[r]+yd[r], z[r]+zd[r]). Rather than testing the candidate walls
+	 * of one path after another, each candidate wall is tested against all of the paths that can hit it at once, using
+	 * the Vector API when it is available.
+	 * This method can be called from multiple threads at once as long as each uses its own arrays and CollisionHit.
+	 * @param x
+	 * @param y
+	 * @param z Initial bullet locations.
+	 * @param xd
+	 * @param yd
+	 * @param zd Bullet displacements.
+	 * @param count The number of paths to test from the arrays.
+	 * @param time Receives the value for each path, which is 1 if there is no collision.
+	 * @param normalX
+	 * @param normalY
+	 * @param normalZ Receive the normal of the wall that each path hit, or 0 if it hit nothing.
+	 * @param h Scratch space for the queries.
+	 */
+	public void getBulletCollisions(double[] x, double[] y, double[] z, double[] xd, double[] yd, double[] zd, int count,
+			double[] time, double[] normalX, double[] normalY, double[] normalZ, CollisionHit h)
+	{
+		/*
+		 * ALGORITHM 17:
+		 * Lengthen each path by the buffer and find its candidate walls, as getBulletCollision does. Paths that would walk the
+		 *   WallGrid are tested by themselves instead, since the walk stops at the first cell with a hit.
+		 * Pair each path with each of its candidate walls whose box overlaps the path. Sort the pairs by wall with a counting
+		 *   sort, which keeps the paths of each wall in order, copying the start and displacement of each path into the
+		 *   sorted pair, so that the paths of a wall sit next to each other in the arrays and can be loaded as vectors.
+		 * Test each wall against all of its paths at once with the RayKernel, finding where each path crosses the plane of the
+		 *   wall and whether that point is inside the triangle.
+		 * Visit the walls in the order they were added, and only keep a hit if it is closer than the path's closest hit so far.
+		 *   getBulletCollision keeps the first wall in that order too, so the results are exactly the same.
+		 */
+		if (h.rayTime.length < count)
+			allocateRays(h, count);
+		if (h.wallStart.length < colData+1)
+		{
+			h.wallStart = new int[colData+1];
+			h.wallNext = new int[colData+1];
+		}
+		if (h.candidates.length < colData)
+			h.candidates = new int[colData];
+		
+		int[] wallStart = h.wallStart;
+		Arrays.fill(wallStart, 0, colData+1, 0);
+		int numPairs = 0;
+		
+		for (int r=0; r<count; r++)
+		{
+			double bx1 = x[r], by1 = y[r], bz1 = z[r];
+			double bxd = xd[r], byd = yd[r], bzd = zd[r];
+			double bd = Math.sqrt(sqr(bxd) + sqr(byd) + sqr(bzd));
 			
-			//Interior
-			t = getBTriangleCollision(bx1,by1,bz1,bxd,byd,bzd, x1,y1,z1,x2,y2,z2,x3,y3,z3);
-			if (t<tReturn) {tReturn=t; nx=normalX; ny=normalY; nz=normalZ;}
+			if (tree == null || (bxd == 0 && byd == 0 && bzd == 0) || (grid != null && colData > 0
+					&& (rayTraversal == RAYS_GRID || (rayTraversal == RAYS_AUTO && bd > LONG_RAY_LENGTH))))
+			{
+				time[r] = getBulletCollision(bx1, by1, bz1, bxd, byd, bzd, h);
+				normalX[r] = h.normalX; normalY[r] = h.normalY; normalZ[r] = h.normalZ;
+				h.rayWall[r] = -2;
+				continue;
+			}
+			
+			double buffer = 0.001/bd;
+			bxd *= 1+buffer; byd *= 1+buffer; bzd *= 1+buffer;
+			h.rayBuffer[r] = buffer;
+			h.rayXD[r] = bxd; h.rayYD[r] = byd; h.rayZD[r] = bzd;
+			h.rayTime[r] = 1;
+			h.rayWall[r] = -1;
+			
+			double bxMin = Math.min(bx1,bx1+bxd), byMin = Math.min(by1,by1+byd), bzMin = Math.min(bz1,bz1+bzd);
+			double bxMax = Math.max(bx1,bx1+bxd), byMax = Math.max(by1,by1+byd), bzMax = Math.max(bz1,bz1+bzd);
+			
+			int numCandidates;
+			if (bd > SHORT_RAY_LENGTH)
+				numCandidates = tree.getAlongSegment(bx1, by1, bz1, bxd, byd, bzd, h.candidates, h.stack);
+			else
+				numCandidates = tree.getOverlapping(bxMin, byMin, bzMin, bxMax, byMax, bzMax, h.candidates, h.stack);
+			
+			if (h.pairWall.length < numPairs+numCandidates)
+				allocatePairs(h, Math.max(2*h.pairWall.length, numPairs+numCandidates));
+			
+			int rejects = 0;
+			for (int c=0; c<numCandidates; c+=1)
+			{
+				int i = h.candidates[c];
+				if (bxMax < cXMin[i] || bxMin > cXMax[i] || byMax < cYMin[i] || byMin > cYMax[i] || bzMax < cZMin[i] || bzMin > cZMax[i])
+				{
+					rejects += 1;
+					continue;
+				}
+				h.pairWall[numPairs] = i;
+				h.pairRay[numPairs] = r;
+				numPairs += 1;
+				wallStart[i+1] += 1;
+			}
+			h.rayCandidates[r] = numCandidates;
+			h.rayRejects[r] = rejects;
+		}
+		
+		//Sort the pairs by wall.
+		for (int i=0; i<colData; i++)
+			wallStart[i+1] += wallStart[i];
+		int[] wallNext = h.wallNext;
+		System.arraycopy(wallStart, 0, wallNext, 0, colData+1);
+		for (int p=0; p<numPairs; p++)
+		{
+			int r = h.pairRay[p];
+			int k = wallNext[h.pairWall[p]]++;
+			h.sortedRay[k] = r;
+			h.pairX[k] = x[r]; h.pairY[k] = y[r]; h.pairZ[k] = z[r];
+			h.pairXD[k] = h.rayXD[r]; h.pairYD[k] = h.rayYD[r]; h.pairZD[k] = h.rayZD[r];
+		}
+		
+		for (int i=0; i<colData; i++)
+		{
+			int start = wallStart[i], end = wallStart[i+1];
+			if (start == end) continue;
+			
+			if (RAY_KERNEL != null)
+				RAY_KERNEL.testWall(this, i, h, start, end);
+			else
+				testWallScalar(i, h, start, end);
+			
+			for (int k=start; k<end; k++)
+			{
+				int r = h.sortedRay[k];
+				if (h.pairTime[k] < h.rayTime[r])
+				{
+					h.rayTime[r] = h.pairTime[k];
+					h.rayWall[r] = i;
+				}
+			}
 		}
 		
-		if (tReturn == 1) return 1;
-		normalXFinal = nx; normalYFinal = ny; normalZFinal = nz;
-		return Math.max(0,tReturn*(1+buffer)-buffer);
+		for (int r=0; r<count; r++)
+		{
+			int i = h.rayWall[r];
+			if (i == -2) continue;
+			
+			h.time = 1; h.normalX = 0; h.normalY = 0; h.normalZ = 0;
+			if (i != -1)
+			{
+				double flip = cNX[i]*h.rayXD[r] + cNY[i]*h.rayYD[r] + cNZ[i]*h.rayZD[r] > 0 ? -1 : 1;
+				h.normalX = flip*cUX[i]; h.normalY = flip*cUY[i]; h.normalZ = flip*cUZ[i];
+				h.time = Math.max(0,h.rayTime[r]*(1+h.rayBuffer[r])-h.rayBuffer[r]);
+			}
+			time[r] = h.time;
+			normalX[r] = h.normalX; normalY[r] = h.normalY; normalZ[r] = h.normalZ;
+			
+			int tested = h.rayCandidates[r]-h.rayRejects[r];
+			recordQuery(h, CollisionStats.BULLET_QUERIES, h.rayCandidates[r], h.rayRejects[r], tested, 0, 0, 0);
+		}
+	}
+	
+	/**
+	 * Tests the paths in the batch against the environment with getBulletCollisions, storing the results in the batch.
+	 * @param batch The paths to test.
+	 * @param h Scratch space for the queries.
+	 */
+	public void getBulletCollisions(RayBatch batch, CollisionHit h)
+	{
+		getBulletCollisions(batch.x, batch.y, batch.z, batch.xd, batch.yd, batch.zd, batch.size(),
+				batch.time, batch.normalX, batch.normalY, batch.normalZ, h);
+	}
+	
+	/**
+	 * Stores in h.pairTime[k], for each pair k from start to end-1 of a batch in getBulletCollisions, the value from 0 to 1
+	 * where the path of the pair crosses the plane of wall i inside the triangle, or 1 if it does not. The paths are tested
+	 * one at a time. This is what a RayKernel does, and it is used when none can be loaded.
+	 */
+	void testWallScalar(int i, CollisionHit h, int start, int end)
+	{
+		for (int k=start; k<end; k++)
+		{
+			double bx1 = h.pairX[k], by1 = h.pairY[k], bz1 = h.pairZ[k];
+			double bxd = h.pairXD[k], byd = h.pairYD[k], bzd = h.pairZD[k];
+			double dot = cNX[i]*bxd + cNY[i]*byd + cNZ[i]*bzd;
+			double t = (-cD[i]-cNX[i]*bx1-cNY[i]*by1-cNZ[i]*bz1) / dot;
+			
+			boolean hit = dot != 0 && t >= 0 && t < 1 && isInsideTriangle(i, bx1 + bxd*t, by1 + byd*t, bz1 + bzd*t);
+			h.pairTime[k] = hit ? t : 1;
+		}
+	}
+	
+	/**
+	 * Returns whether batches of bullet paths are tested with the Vector API.
+	 */
+	public static boolean isRayKernelVectorized()
+	{
+		return RAY_KERNEL != null;
+	}
+	
+	//Returns the RayKernel that uses the Vector API, or null if it is turned off or cannot be loaded. It needs the
+	//jdk.incubator.vector module, so it is kept in its own source folder that does not have to be compiled with the rest.
+	private static RayKernel loadRayKernel()
+	{
+		if (SCALAR_RAYS) return null;
+		try
+		{
+			return (RayKernel)Class.forName("patowen95.robotgame.VectorRayKernel").getDeclaredConstructor().newInstance();
+		}
+		catch (Exception e)
+		{
+			return null;
+		}
+		catch (LinkageError e)
+		{
+			return null;
+		}
+	}
+	
+	//Resizes the arrays in h that hold each path of a batch to hold the given number of paths.
+	private void allocateRays(CollisionHit h, int capacity)
+	{
+		h.rayXD = new double[capacity]; h.rayYD = new double[capacity]; h.rayZD = new double[capacity];
+		h.rayBuffer = new double[capacity];
+		h.rayTime = new double[capacity];
+		h.rayWall = new int[capacity];
+		h.rayCandidates = new int[capacity];
+		h.rayRejects = new int[capacity];
+	}
+	
+	//Resizes the arrays in h that hold each pair of a path and a wall in a batch, keeping the pairs found so far.
+	private void allocatePairs(CollisionHit h, int capacity)
+	{
+		h.pairWall = Arrays.copyOf(h.pairWall, capacity);
+		h.pairRay = Arrays.copyOf(h.pairRay, capacity);
+		h.sortedRay = new int[capacity];
+		h.pairX = new double[capacity]; h.pairY = new double[capacity]; h.pairZ = new double[capacity];
+		h.pairXD = new double[capacity]; h.pairYD = new double[capacity]; h.pairZD = new double[capacity];
+		h.pairTime = new double[capacity];
+	}
+	
+	//Finishes getBulletCollision by walking the WallGrid along the path, which has already been lengthened by the buffer.
+	private double getBulletCollisionGrid(double bx1, double by1, double bz1, double bxd, double byd, double bzd, double buffer, CollisionHit h)
+	{
+		/*
+		 * ALGORITHM 11:
+		 * Clip the path to the box of the grid. If nothing is left, there is no collision.
+		 * Starting at the cell where the path enters the grid, visit the cells it passes through in order. Along each axis,
+		 *   the values of t where the path crosses into the next cell are evenly spaced, so the next cell is always across
+		 *   whichever side is crossed first (3D DDA).
+		 * In each cell, test the walls that have not been tested yet by this query, keeping the closest hit. Of hits at
+		 *   the same distance, keep the one with the lowest wall index, as the other traversals do.
+		 * A hit found in a cell can be farther along the path than the cell, since walls span many cells, so stop only
+		 *   once the closest hit is closer than where the path leaves the current cell. Every hit as close would have to
+		 *   be inside a cell that was already visited.
+		 */
+		WallGrid g = grid;
+		double size = g.getCellSize();
+		int gnx = g.getNX(), gny = g.getNY(), gnz = g.getNZ();
+		double gx = g.getXMin(), gy = g.getYMin(), gz = g.getZMin();
+		
+		//Clip the path to the grid.
+		double[] range = h.range;
+		range[0] = 0; range[1] = 1;
+		if (!clipSlab(range, bx1, bxd, gx, gx+gnx*size) || !clipSlab(range, by1, byd, gy, gy+gny*size)
+				|| !clipSlab(range, bz1, bzd, gz, gz+gnz*size))
+		{
+			recordQuery(h, CollisionStats.BULLET_QUERIES, 0, 0, 0, 0, 0, 0);
+			return h.time;
+		}
+		double tEnter = range[0], tLeave = range[1];
+		
+		int cx = gridIndex(bx1 + bxd*tEnter, gx, size, gnx);
+		int cy = gridIndex(by1 + byd*tEnter, gy, size, gny);
+		int cz = gridIndex(bz1 + bzd*tEnter, gz, size, gnz);
+		
+		int stepX = bxd > 0 ? 1 : -1, stepY = byd > 0 ? 1 : -1, stepZ = bzd > 0 ? 1 : -1;
+		double tDeltaX = bxd == 0 ? Double.POSITIVE_INFINITY : size/Math.abs(bxd);
+		double tDeltaY = byd == 0 ? Double.POSITIVE_INFINITY : size/Math.abs(byd);
+		double tDeltaZ = bzd == 0 ? Double.POSITIVE_INFINITY : size/Math.abs(bzd);
+		double tMaxX = bxd == 0 ? Double.POSITIVE_INFINITY : (gx + (cx + (bxd > 0 ? 1 : 0))*size - bx1)/bxd;
+		double tMaxY = byd == 0 ? Double.POSITIVE_INFINITY : (gy + (cy + (byd > 0 ? 1 : 0))*size - by1)/byd;
+		double tMaxZ = bzd == 0 ? Double.POSITIVE_INFINITY : (gz + (cz + (bzd > 0 ? 1 : 0))*size - bz1)/bzd;
+		
+		//Mark the walls tested by this query so that walls listed in more than one cell are only tested once.
+		if (h.testedWalls.length < colData)
+			h.testedWalls = new int[colData];
+		h.query += 1;
+		if (h.query == Integer.MAX_VALUE)
+		{
+			Arrays.fill(h.testedWalls, 0);
+			h.query = 1;
+		}
+		int[] tested = h.testedWalls;
+		int query = h.query;
+		
+		double tReturn = 1;
+		double nx = 0, ny = 0, nz = 0;
+		int hitWall = -1; //Index of the closest wall hit so far
+		int triangles = 0, interiorTests = 0, cells = 0; //Statistics
+		
+		while (true)
+		{
+			int cell = (cz*gny + cy)*gnx + cx;
+			cells += 1;
+			
+			int end = g.getCellStart(cell+1);
+			for (int k=g.getCellStart(cell); k<end; k++)
+			{
+				int i = g.getTriangle(k);
+				if (tested[i] == query) continue;
+				tested[i] = query;
+				triangles += 1;
+				
+				double dot = cNX[i]*bxd + cNY[i]*byd + cNZ[i]*bzd;
+				if (dot == 0) continue;
+				double t = (-cD[i]-cNX[i]*bx1-cNY[i]*by1-cNZ[i]*bz1) / dot;
+				if (!(t >= 0 && (t < tReturn || t == tReturn && i < hitWall))) continue;
+				
+				//Interior
+				interiorTests += 1;
+				if (!isInsideTriangle(i, bx1 + bxd*t, by1 + byd*t, bz1 + bzd*t)) continue;
+				
+				double flip = dot > 0 ? -1 : 1;
+				tReturn = t; nx = flip*cUX[i]; ny = flip*cUY[i]; nz = flip*cUZ[i];
+				hitWall = i;
+			}
+			
+			//Move to the next cell, unless the closest hit is already in a visited cell or the path ends.
+			double tExit = Math.min(tMaxX, Math.min(tMaxY, tMaxZ));
+			if (tReturn < tExit || tExit >= tLeave) break;
+			
+			if (tMaxX == tExit)
+			{
+				cx += stepX; tMaxX += tDeltaX;
+				if (cx < 0 || cx >= gnx) break;
+			}
+			else if (tMaxY == tExit)
+			{
+				cy += stepY; tMaxY += tDeltaY;
+				if (cy < 0 || cy >= gny) break;
+			}
+			else
+			{
+				cz += stepZ; tMaxZ += tDeltaZ;
+				if (cz < 0 || cz >= gnz) break;
+			}
+		}
+		
+		if (tReturn < 1)
+		{
+			h.normalX = nx; h.normalY = ny; h.normalZ = nz;
+			h.time = Math.max(0,tReturn*(1+buffer)-buffer);
+		}
+		recordQuery(h, CollisionStats.BULLET_QUERIES, triangles, 0, interiorTests, 0, 0, 0);
+		h.counts[CollisionStats.GRID_CELLS] += cells;
+		return h.time;
+	}
+	
+	//Returns the index of the cell of the WallGrid containing the given coordinate along one axis, clamped to the grid.
+	private int gridIndex(double pos, double min, double size, int count)
+	{
+		return Math.max(0, Math.min(count-1, (int)Math.floor((pos-min)/size)));
+	}
+	
+	//Narrows the range of the path parameter to the part between min and max along one axis. Returns false if nothing is left.
+	private boolean clipSlab(double[] range, double start, double d, double min, double max)
+	{
+		if (d == 0)
+			return start >= min && start <= max;
+		
+		double t1 = (min-start)/d, t2 = (max-start)/d;
+		if (t1 > t2) {double temp = t1; t1 = t2; t2 = temp;}
+		if (t1 > range[0]) range[0] = t1;
+		if (t2 < range[1]) range[1] = t2;
+		return range[0] <= range[1];
+	}
+	
+	/**
+	 * Returns whether the segment from (x, y, z) to (x+xd, y+yd, z+zd) passes through or touches the given box.
+	 * The displacement is given by its inverse from the inverse method, so that many boxes can be tested without dividing.
+	 */
+	static boolean segmentHitsBox(double x, double y, double z, double ix, double iy, double iz,
+			double xMin, double yMin, double zMin, double xMax, double yMax, double zMax)
+	{
+		//Find where the segment crosses the planes of each pair of sides, and check that it is between all of them at once.
+		double tx1 = (xMin-x)*ix, tx2 = (xMax-x)*ix;
+		double ty1 = (yMin-y)*iy, ty2 = (yMax-y)*iy;
+		double tz1 = (zMin-z)*iz, tz2 = (zMax-z)*iz;
+		
+		double tEnter = Math.max(Math.max(Math.min(tx1, tx2), Math.min(ty1, ty2)), Math.max(Math.min(tz1, tz2), 0));
+		double tLeave = Math.min(Math.min(Math.max(tx1, tx2), Math.max(ty1, ty2)), Math.min(Math.max(tz1, tz2), 1));
+		return tEnter <= tLeave;
+	}
+	
+	/**
+	 * Returns the value from 0 to 1 for the point on the line segment between (x, y, z) and (x+xd, y+yd, z+zd)
+	 * closest to (px, py, pz).
+	 */
+	public static double getClosestOnSegment(double x, double y, double z, double xd, double yd, double zd, double px, double py, double pz)
+	{
+		double length = xd*xd + yd*yd + zd*zd;
+		double s = length == 0 ? 0 : ((px-x)*xd + (py-y)*yd + (pz-z)*zd)/length;
+		if (s < 0) s = 0;
+		if (s > 1) s = 1;
+		return s;
+	}
+	
+	/**
+	 * Returns the inverse of a displacement along one axis for segmentHitsBox. If the displacement is 0, a huge number is
+	 * returned instead of infinity, so that a box side level with the segment gives 0 instead of NaN.
+	 */
+	static double inverse(double d)
+	{
+		return d == 0 ? 1e300 : 1/d;
 	}
 	
 	/**
@@ -143,10 +800,35 @@ public class Collision
 	 * @param height Player dimensions
 	 */
 	public double getPlayerCollision(double px1, double py1, double pz1, double pxd, double pyd, double pzd, double radius, double height)
+	{
+		return getPlayerCollision(px1, py1, pz1, pxd, pyd, pzd, radius, height, hit);
+	}
+	
+	/**
+	 * Returns the value from 0 to 1 for the part of the path between (bx1, by1, bz1)
+	 * and (bx+bxd, by+byd, bz+bzd) that triggers a collision between a cylindrical entity and the environment.
+	 * If 1 is returned, there is no collision. The value and the normal of the surface that was hit are also stored in h.
+	 * This method can be called from multiple threads at once as long as each uses its own CollisionHit
+	 * and no entities are being moved.
+	 * @param px1
+	 * @param py1
+	 * @param pz1 Initial entity location.
+	 * @param pxd
+	 * @param pyd
+	 * @param pzd Entity displacement.
+	 * @param radius
+	 * @param height Player dimensions
+	 * @param h Receives the result.
+	 */
+	public double getPlayerCollision(double px1, double py1, double pz1, double pxd, double pyd, double pzd, double radius, double height, CollisionHit h)
 	{
 		double buffer = 0.001;
-		normalXFinal = 0; normalYFinal = 0; normalZFinal = 0;
-		if (pxd == 0 && pyd == 0 && pzd == 0) return 1;
+		h.time = 1; h.normalX = 0; h.normalY = 0; h.normalZ = 0;
+		if (pxd == 0 && pyd == 0 && pzd == 0)
+		{
+			recordQuery(h, CollisionStats.PLAYER_QUERIES, 0, 0, 0, 0, 0, 0);
+			return 1;
+		}
 		double pd = Math.sqrt(sqr(pxd) + sqr(pyd) + sqr(pzd)); buffer /= pd;
 		pxd *= 1+buffer; pyd *= 1+buffer; pzd *= 1+buffer;
 		
@@ -156,9 +838,11 @@ public class Collision
 		
 		double tReturn = 1;
 		double nx = 0, ny = 0, nz = 0;
+		int wallTests = 0, entityTests = 0; //Statistics
 		
 		//Check for collision with environment walls.
-		for (int i=0; i<colData; i+=1)
+		int numCandidates = getCandidates(pxMin-radius, pyMin-radius, pzMin, pxMax+radius, pyMax+radius, pzMax+height, h);
+		for (int c=0; c<numCandidates; c+=1)
 		{
 			/*
 			 * ALGORITHM 2a:
@@ -173,40 +857,41 @@ public class Collision
 			 * 
 			 * Make sure that the t-value to return is that of the closest wall.
 			 */
-			double x1 = cX1.get(i), y1 = cY1.get(i), z1 = cZ1.get(i);
-			double x2 = cX2.get(i), y2 = cY2.get(i), z2 = cZ2.get(i);
-			double x3 = cX3.get(i), y3 = cY3.get(i), z3 = cZ3.get(i);
+			int i = h.candidates[c];
 			
-			double xMin = min3(x1,x2,x3), yMin = min3(y1,y2,y3), zMin = min3(z1,z2,z3);
-			double xMax = max3(x1,x2,x3), yMax = max3(y1,y2,y3), zMax = max3(z1,z2,z3);
+			if (pxMax+radius < cXMin[i] || pxMin-radius > cXMax[i]) continue;
+			if (pyMax+radius < cYMin[i] || pyMin-radius > cYMax[i]) continue;
+			if (pzMax+height < cZMin[i] || pzMin > cZMax[i]) continue;
+			wallTests += 1;
 			
-			if (pxMax+radius < xMin || pxMin-radius > xMax) continue;
-			if (pyMax+radius < yMin || pyMin-radius > yMax) continue;
-			if (pzMax+height < zMin || pzMin > zMax) continue;
+			double x1 = cX1[i], y1 = cY1[i], z1 = cZ1[i];
+			double x2 = cX2[i], y2 = cY2[i], z2 = cZ2[i];
+			double x3 = cX3[i], y3 = cY3[i], z3 = cZ3[i];
 			
 			double t;
 			
 			//Interior
-			t = getPTriangleCollision(px1,py1,pz1,pxd,pyd,pzd, radius,height, x1,y1,z1,x2,y2,z2,x3,y3,z3);
-			if (t<tReturn) {tReturn=t; nx=normalX; ny=normalY; nz=normalZ;}
+			t = getPTriangleCollision(px1,py1,pz1,pxd,pyd,pzd, radius,height, i, h);
+			if (t<tReturn) {tReturn=t; nx=h.testNormalX; ny=h.testNormalY; nz=h.testNormalZ;}
 			//Edges
-			t = getPLineCollision(px1,py1,pz1,pxd,pyd,pzd,radius,height, x1,y1,z1,x2-x1,y2-y1,z2-z1);
-			if (t<tReturn) {tReturn=t; nx=normalX; ny=normalY; nz=normalZ;}
-			t = getPLineCollision(px1,py1,pz1,pxd,pyd,pzd,radius,height, x2,y2,z2,x3-x2,y3-y2,z3-z2);
-			if (t<tReturn) {tReturn=t; nx=normalX; ny=normalY; nz=normalZ;}
-			t = getPLineCollision(px1,py1,pz1,pxd,pyd,pzd,radius,height, x3,y3,z3,x1-x3,y1-y3,z1-z3);
-			if (t<tReturn) {tReturn=t; nx=normalX; ny=normalY; nz=normalZ;}
+			t = getPLineCollision(px1,py1,pz1,pxd,pyd,pzd,radius,height, x1,y1,z1,cEX1[i],cEY1[i],cEZ1[i], h);
+			if (t<tReturn) {tReturn=t; nx=h.testNormalX; ny=h.testNormalY; nz=h.testNormalZ;}
+			t = getPLineCollision(px1,py1,pz1,pxd,pyd,pzd,radius,height, x2,y2,z2,cEX2[i],cEY2[i],cEZ2[i], h);
+			if (t<tReturn) {tReturn=t; nx=h.testNormalX; ny=h.testNormalY; nz=h.testNormalZ;}
+			t = getPLineCollision(px1,py1,pz1,pxd,pyd,pzd,radius,height, x3,y3,z3,cEX3[i],cEY3[i],cEZ3[i], h);
+			if (t<tReturn) {tReturn=t; nx=h.testNormalX; ny=h.testNormalY; nz=h.testNormalZ;}
 			//Vertices
-			t = getPPointCollision(px1,py1,pz1,pxd,pyd,pzd,radius,height, x1,y1,z1);
-			if (t<tReturn) {tReturn=t; nx=normalX; ny=normalY; nz=normalZ;}
-			t = getPPointCollision(px1,py1,pz1,pxd,pyd,pzd,radius,height, x2,y2,z2);
-			if (t<tReturn) {tReturn=t; nx=normalX; ny=normalY; nz=normalZ;}
-			t = getPPointCollision(px1,py1,pz1,pxd,pyd,pzd,radius,height, x3,y3,z3);
-			if (t<tReturn) {tReturn=t; nx=normalX; ny=normalY; nz=normalZ;}
+			t = getPPointCollision(px1,py1,pz1,pxd,pyd,pzd,radius,height, x1,y1,z1, h);
+			if (t<tReturn) {tReturn=t; nx=h.testNormalX; ny=h.testNormalY; nz=h.testNormalZ;}
+			t = getPPointCollision(px1,py1,pz1,pxd,pyd,pzd,radius,height, x2,y2,z2, h);
+			if (t<tReturn) {tReturn=t; nx=h.testNormalX; ny=h.testNormalY; nz=h.testNormalZ;}
+			t = getPPointCollision(px1,py1,pz1,pxd,pyd,pzd,radius,height, x3,y3,z3, h);
+			if (t<tReturn) {tReturn=t; nx=h.testNormalX; ny=h.testNormalY; nz=h.testNormalZ;}
 		}
 		
 		//Check for collision with entities.
-		for (Entity entity : w.getEntities())
+		w.getSpatialHash().getEntities(pxMin-radius, pyMin-radius, pzMin, pxMax+radius, pyMax+radius, pzMax+height, h.nearbyEntities);
+		for (Entity entity : h.nearbyEntities)
 		{
 			/*
 			 * ALGORITHM 2b:
@@ -231,26 +916,31 @@ public class Collision
 			if (pxMax+radius < xMin || pxMin-radius > xMax) continue;
 			if (pyMax+radius < yMin || pyMin-radius > yMax) continue;
 			if (pzMax+height < zMin || pzMin > zMax) continue;
+			entityTests += 1;
 			
 			double t;
 			
 			//Surface
 			t = getPLineCollisionVertical(px1,py1,pz1,pxd,pyd,pzd,radius+e.getRadius(),height,
-					e.getX(),e.getY(),e.getZ(), 0,0,e.getHeight());
-			if (t<tReturn) {tReturn=t; nx=normalX; ny=normalY; nz=normalZ;}
+					e.getX(),e.getY(),e.getZ(), 0,0,e.getHeight(), h);
+			if (t<tReturn) {tReturn=t; nx=h.testNormalX; ny=h.testNormalY; nz=h.testNormalZ;}
 			
 			//Bases
 			t = getPPointCollision(px1,py1,pz1,pxd,pyd,pzd,radius+e.getRadius(),height,
-					e.getX(), e.getY(), e.getZ());
-			if (t<tReturn) {tReturn=t; nx=normalX; ny=normalY; nz=normalZ;}
+					e.getX(), e.getY(), e.getZ(), h);
+			if (t<tReturn) {tReturn=t; nx=h.testNormalX; ny=h.testNormalY; nz=h.testNormalZ;}
 			t = getPPointCollision(px1,py1,pz1,pxd,pyd,pzd,radius+e.getRadius(),height,
-					e.getX(), e.getY(), e.getZ()+e.getHeight());
-			if (t<tReturn) {tReturn=t; nx=normalX; ny=normalY; nz=normalZ;}
+					e.getX(), e.getY(), e.getZ()+e.getHeight(), h);
+			if (t<tReturn) {tReturn=t; nx=h.testNormalX; ny=h.testNormalY; nz=h.testNormalZ;}
 		}
 		
-		if (tReturn == 1) return 1;
-		normalXFinal = nx; normalYFinal = ny; normalZFinal = nz;
-		return Math.max(0,tReturn*(1+buffer)-buffer);
+		if (tReturn < 1)
+		{
+			h.normalX = nx; h.normalY = ny; h.normalZ = nz;
+			h.time = Math.max(0,tReturn*(1+buffer)-buffer);
+		}
+		recordQuery(h, CollisionStats.PLAYER_QUERIES, numCandidates, numCandidates-wallTests, wallTests, 3*wallTests, 3*wallTests, entityTests);
+		return h.time;
 	}
 	
 	/**
@@ -274,71 +964,155 @@ public class Collision
 	 */
 	public double getEntityBulletCollision(double bx1, double by1, double bz1, double bxd, double byd, double bzd, Damageable e)
 	{
+		return getEntityBulletCollision(bx1, by1, bz1, bxd, byd, bzd, e, entityHit);
+	}
+	
+	/**
+	 * Returns the value from 0 to 1 for the part of the path between (bx1, by1, bz1)
+	 * and (bx1+bxd, by1+byd, bz1+bzd) that triggers a collision between a bullet and an entity.
+	 * If 1 is returned, there is no collision. The value is also stored in h, along with the normal of
+	 * the entity's surface that was hit (0 if the bullet started inside the entity).
+	 * This method can be called from multiple threads at once as long as each uses its own CollisionHit.
+	 * @param bx1
+	 * @param by1
+	 * @param bz1 Initial bullet location.
+	 * @param bxd
+	 * @param byd
+	 * @param bzd Bullet displacement.
+	 * @param e The entity to test.
+	 * @param h Receives the result.
+	 */
+	public double getEntityBulletCollision(double bx1, double by1, double bz1, double bxd, double byd, double bzd, Damageable e, CollisionHit h)
+	{
+		h.time = 1; h.normalX = 0; h.normalY = 0; h.normalZ = 0;
 		if (((Entity)e).isGhost())
+		{
+			recordQuery(h, CollisionStats.ENTITY_BULLET_QUERIES, 0, 0, 0, 0, 0, 0);
 			return 1;
+		}
 		
 		if ((bx1-e.getXPrevious())*(bx1-e.getXPrevious()) + (by1-e.getYPrevious())*(by1-e.getYPrevious())
 				<= e.getRadius()*e.getRadius() && bz1 >= e.getZPrevious() && bz1 <= e.getZPrevious()+e.getHeight())
+		{
+			h.time = 0;
+			recordQuery(h, CollisionStats.ENTITY_BULLET_QUERIES, 0, 0, 0, 0, 0, 1);
 			return 0;
-		return getPPointCollision(e.getXPrevious(), e.getYPrevious(), e.getZPrevious(),
-				e.getXPrevious()-e.getX()-bxd, e.getYPrevious()-e.getY()-byd, e.getZPrevious()-e.getZ()-bzd, e.getRadius(), e.getHeight(), bx1, by1, bz1);
+		}
+		
+		double t = getPPointCollision(e.getXPrevious(), e.getYPrevious(), e.getZPrevious(),
+				e.getXPrevious()-e.getX()-bxd, e.getYPrevious()-e.getY()-byd, e.getZPrevious()-e.getZ()-bzd, e.getRadius(), e.getHeight(), bx1, by1, bz1, h);
+		if (t < 1)
+		{
+			//The entity was moved toward the bullet, so its normal faces the opposite way.
+			h.normalX = -h.testNormalX; h.normalY = -h.testNormalY; h.normalZ = -h.testNormalZ;
+			h.time = t;
+		}
+		recordQuery(h, CollisionStats.ENTITY_BULLET_QUERIES, 0, 0, 0, 0, 0, 1);
+		return h.time;
 	}
 	
-	//Returns the value from 0 to 1 for the bullet collision with a plane.
-	private double getBTriangleCollision(double bx1, double by1, double bz1, double bxd, double byd, double bzd,
-			double x1, double y1, double z1, double x2, double y2, double z2, double x3, double y3, double z3)
+	//Counts the work done by a query in h, which must already hold the result, until it is folded into the statistics.
+	private void recordQuery(CollisionHit h, int query, int triangles, int aabbRejects, int interiorTests, int edgeTests, int vertexTests, int entityTests)
 	{
-		//Find normal of plane.
-		double nx = (y2-y1)*(z3-z1) - (y3-y1)*(z2-z1); double nxO = nx;
-		double ny = (z2-z1)*(x3-x1) - (z3-z1)*(x2-x1); double nyO = ny;
-		double nz = (x2-x1)*(y3-y1) - (x3-x1)*(y2-y1); double nzO = nz;
-		
-		double dot = nx*bxd + ny*byd + nz*bzd;
-		if (dot == 0) return 1;
-		if (dot > 0) {nx = -nx; ny = -ny; nz = -nz; dot = -dot;}
+		if (h.stats == null) stats.register(h);
+		long[] counts = h.counts;
+		counts[query] += 1;
+		counts[CollisionStats.TRIANGLES] += triangles;
+		counts[CollisionStats.AABB_REJECTS] += aabbRejects;
+		counts[CollisionStats.INTERIOR_TESTS] += interiorTests;
+		counts[CollisionStats.EDGE_TESTS] += edgeTests;
+		counts[CollisionStats.VERTEX_TESTS] += vertexTests;
+		counts[CollisionStats.ENTITY_TESTS] += entityTests;
+		if (h.time < 1) counts[CollisionStats.HITS] += 1;
+	}
+	
+	//Stores the indices of all walls whose bounding boxes may overlap the given region in h.candidates, in the order they were added,
+	//and returns how many there are.
+	private int getCandidates(double xMin, double yMin, double zMin, double xMax, double yMax, double zMax, CollisionHit h)
+	{
+		if (h.candidates.length < colData)
+			h.candidates = new int[colData];
 		
-		//Find t
-		double d = -nx*x1 - ny*y1 - nz*z1;
-		double t = (-d-nx*bx1-ny*by1-nz*bz1) / dot;
+		if (tree != null)
+		{
+			if (h instanceof CollisionCache)
+				return getCachedCandidates(xMin, yMin, zMin, xMax, yMax, zMax, (CollisionCache)h);
+			
+			//The tree finds the walls leaf by leaf. Put them back in the order they were added, as the loops that test them
+			//keep the first of several walls hit at the same time, and that should be the same wall as without a tree.
+			int found = tree.getOverlapping(xMin, yMin, zMin, xMax, yMax, zMax, h.candidates, h.stack);
+			Arrays.sort(h.candidates, 0, found);
+			return found;
+		}
 		
-		//Find normals.
-		double dist = Math.sqrt(sqr(nx) + sqr(ny) + sqr(nz));
-		normalX = nx/dist; normalY = ny/dist; normalZ = nz/dist;
+		//Without a tree, every wall is a candidate.
+		for (int i=0; i<colData; i++)
+			h.candidates[i] = i;
+		return colData;
+	}
+	
+	//Like getCandidates, but reuses the walls stored in the cache if they cover the given region, finding them again for a larger region otherwise.
+	private int getCachedCandidates(double xMin, double yMin, double zMin, double xMax, double yMax, double zMax, CollisionCache cache)
+	{
+		if (!cache.covers(this, version, xMin, yMin, zMin, xMax, yMax, zMax))
+		{
+			cache.xMin = xMin-CACHE_MARGIN; cache.yMin = yMin-CACHE_MARGIN; cache.zMin = zMin-CACHE_MARGIN;
+			cache.xMax = xMax+CACHE_MARGIN; cache.yMax = yMax+CACHE_MARGIN; cache.zMax = zMax+CACHE_MARGIN;
+			
+			int found = tree.getOverlapping(cache.xMin, cache.yMin, cache.zMin, cache.xMax, cache.yMax, cache.zMax, cache.candidates, cache.stack);
+			
+			//Keep the walls in the order they were added so that ties between walls are broken the same way as without a cache.
+			Arrays.sort(cache.candidates, 0, found);
+			if (cache.walls.length < found)
+				cache.walls = new int[colData];
+			System.arraycopy(cache.candidates, 0, cache.walls, 0, found);
+			cache.numWalls = found;
+			
+			cache.source = this;
+			cache.version = version;
+		}
 		
-		//See whether the point is inside the triangle.
-		double xx = bx1 + bxd*t, yy = by1 + byd*t, zz = bz1 + bzd*t;
+		System.arraycopy(cache.walls, 0, cache.candidates, 0, cache.numWalls);
+		return cache.numWalls;
+	}
+	
+	//Returns whether the point, which is assumed to be on the plane of wall i, is inside the wall.
+	private boolean isInsideTriangle(int i, double xx, double yy, double zz)
+	{
+		double nx = cNX[i], ny = cNY[i], nz = cNZ[i];
+		double x1 = cX1[i], y1 = cY1[i], z1 = cZ1[i];
+		double x2 = cX2[i], y2 = cY2[i], z2 = cZ2[i];
+		double x3 = cX3[i], y3 = cY3[i], z3 = cZ3[i];
 		double n;
 		
-		if (Math.abs(nxO) > Math.abs(nyO) && Math.abs(nxO) > Math.abs(nzO)) //Set x to 0
+		if (Math.abs(nx) > Math.abs(ny) && Math.abs(nx) > Math.abs(nz)) //Set x to 0
 		{
-			n = sign(nxO);
-			if (sign((y2-y1)*(zz-z1) - (yy-y1)*(z2-z1)) != n) return 1;
-			if (sign((y3-y2)*(zz-z2) - (yy-y2)*(z3-z2)) != n) return 1;
-			if (sign((y1-y3)*(zz-z3) - (yy-y3)*(z1-z3)) != n) return 1;
+			n = sign(nx);
+			if (sign(cEY1[i]*(zz-z1) - (yy-y1)*cEZ1[i]) != n) return false;
+			if (sign(cEY2[i]*(zz-z2) - (yy-y2)*cEZ2[i]) != n) return false;
+			if (sign(cEY3[i]*(zz-z3) - (yy-y3)*cEZ3[i]) != n) return false;
 		}
-		else if (Math.abs(nyO) > Math.abs(nzO)) //Set y to 0
+		else if (Math.abs(ny) > Math.abs(nz)) //Set y to 0
 		{
-			n = sign(nyO);
-			if (sign((z2-z1)*(xx-x1) - (zz-z1)*(x2-x1)) != n) return 1;
-			if (sign((z3-z2)*(xx-x2) - (zz-z2)*(x3-x2)) != n) return 1;
-			if (sign((z1-z3)*(xx-x3) - (zz-z3)*(x1-x3)) != n) return 1;
+			n = sign(ny);
+			if (sign(cEZ1[i]*(xx-x1) - (zz-z1)*cEX1[i]) != n) return false;
+			if (sign(cEZ2[i]*(xx-x2) - (zz-z2)*cEX2[i]) != n) return false;
+			if (sign(cEZ3[i]*(xx-x3) - (zz-z3)*cEX3[i]) != n) return false;
 		}
 		else //Set z to 0
 		{
-			n = sign(nzO);
-			if (sign((x2-x1)*(yy-y1) - (xx-x1)*(y2-y1)) != n) return 1;
-			if (sign((x3-x2)*(yy-y2) - (xx-x2)*(y3-y2)) != n) return 1;
-			if (sign((x1-x3)*(yy-y3) - (xx-x3)*(y1-y3)) != n) return 1;
+			n = sign(nz);
+			if (sign(cEX1[i]*(yy-y1) - (xx-x1)*cEY1[i]) != n) return false;
+			if (sign(cEX2[i]*(yy-y2) - (xx-x2)*cEY2[i]) != n) return false;
+			if (sign(cEX3[i]*(yy-y3) - (xx-x3)*cEY3[i]) != n) return false;
 		}
 		
-		if (t<0 || t>=1) return 1;
-		return t;
+		return true;
 	}
 	
-	//Returns the value from 0 to 1 for the player collision with a plane.
+	//Returns the value from 0 to 1 for the player collision with the plane of wall i.
 	//It does not handle edges well. Use another script for that.
-	private double getPTriangleCollision(double px1, double py1, double pz1, double pxd, double pyd, double pzd, double radius, double height,
-			double x1, double y1, double z1, double x2, double y2, double z2, double x3, double y3, double z3)
+	private double getPTriangleCollision(double px1, double py1, double pz1, double pxd, double pyd, double pzd, double radius, double height, int i, CollisionHit h)
 	{
 		/*
 		 * ALGORITHM 2c:
@@ -354,60 +1128,30 @@ public class Collision
 		 *      contact point and checking its sign in relation to the original normal vectors).
 		 *    If the point is on the interior side of each edge, the collision is confirmed (as long as the player does not have to go backwards or move farther than its intended distance).
 		 */
-		//Find normal of plane.
-		double nx = (y2-y1)*(z3-z1) - (y3-y1)*(z2-z1); double nxO = nx;
-		double ny = (z2-z1)*(x3-x1) - (z3-z1)*(x2-x1); double nyO = ny;
-		double nz = (x2-x1)*(y3-y1) - (x3-x1)*(y2-y1); double nzO = nz;
-		
+		//Make sure the normal opposes the player's movement.
+		double nx = cNX[i], ny = cNY[i], nz = cNZ[i];
 		double dot = nx*pxd + ny*pyd + nz*pzd;
 		if (dot == 0) return 1;
-		if (dot > 0) {nx = -nx; ny = -ny; nz = -nz; dot = -dot;}
+		double flip = dot > 0 ? -1 : 1;
 		
 		//Contact point
 		double cx, cy, cz, cz1, cz2;
-		double dist = Math.sqrt(sqr(nx) + sqr(ny));
-		if (dist == 0) {cx = px1; cy = py1;}
-		else {cx = px1 - nx/dist*radius; cy = py1 - ny/dist*radius;}
+		cx = px1 - flip*cHX[i]*radius; cy = py1 - flip*cHY[i]*radius;
 		cz1 = pz1; cz2 = pz1+height;
 		
-		//Find t
+		//Find t (flipping the normal negates both the numerator and the denominator).
 		double t;
-		double d = -nx*x1 - ny*y1 - nz*z1;
-		double t1 = (-d-nx*cx-ny*cy-nz*cz1) / dot;
-		double t2 = (-d-nx*cx-ny*cy-nz*cz2) / dot;
+		double t1 = (-cD[i]-nx*cx-ny*cy-nz*cz1) / dot;
+		double t2 = (-cD[i]-nx*cx-ny*cy-nz*cz2) / dot;
 		if (t1 < t2) {t = t1; cz = cz1;}
 		else if (t1 > t2) {t = t2; cz = cz2;}
 		else {t = t1; cz=cz1+height/2;}
 		
 		//Find normals.
-		dist = Math.sqrt(sqr(nx) + sqr(ny) + sqr(nz));
-		normalX = nx/dist; normalY = ny/dist; normalZ = nz/dist;
+		h.testNormalX = flip*cUX[i]; h.testNormalY = flip*cUY[i]; h.testNormalZ = flip*cUZ[i];
 		
 		//See whether the point is inside the triangle.
-		double xx = cx + pxd*t, yy = cy + pyd*t, zz = cz + pzd*t;
-		double n;
-		
-		if (Math.abs(nxO) > Math.abs(nyO) && Math.abs(nxO) > Math.abs(nzO)) //Set x to 0
-		{
-			n = sign(nxO);
-			if (sign((y2-y1)*(zz-z1) - (yy-y1)*(z2-z1)) != n) return 1;
-			if (sign((y3-y2)*(zz-z2) - (yy-y2)*(z3-z2)) != n) return 1;
-			if (sign((y1-y3)*(zz-z3) - (yy-y3)*(z1-z3)) != n) return 1;
-		}
-		else if (Math.abs(nyO) > Math.abs(nzO)) //Set y to 0
-		{
-			n = sign(nyO);
-			if (sign((z2-z1)*(xx-x1) - (zz-z1)*(x2-x1)) != n) return 1;
-			if (sign((z3-z2)*(xx-x2) - (zz-z2)*(x3-x2)) != n) return 1;
-			if (sign((z1-z3)*(xx-x3) - (zz-z3)*(x1-x3)) != n) return 1;
-		}
-		else //Set z to 0
-		{
-			n = sign(nzO);
-			if (sign((x2-x1)*(yy-y1) - (xx-x1)*(y2-y1)) != n) return 1;
-			if (sign((x3-x2)*(yy-y2) - (xx-x2)*(y3-y2)) != n) return 1;
-			if (sign((x1-x3)*(yy-y3) - (xx-x3)*(y1-y3)) != n) return 1;
-		}
+		if (!isInsideTriangle(i, cx + pxd*t, cy + pyd*t, cz + pzd*t)) return 1;
 		
 		if (t<0 || t>=1) return 1;
 		return t;
@@ -416,20 +1160,20 @@ public class Collision
 	//Returns the value from 0 to 1 for the player collision with a line segment.
 	//It does not handle endpoints well. Use another script for that.
 	private double getPLineCollision(double px1, double py1, double pz1, double pxd, double pyd, double pzd, double radius, double height,
-			double x1, double y1, double z1, double xd, double yd, double zd)
+			double x1, double y1, double z1, double xd, double yd, double zd, CollisionHit h)
 	{
 		if (zd == 0)
-			return getPLineCollisionHorizontal(px1,py1,pz1,pxd,pyd,pzd,radius,height,x1,y1,z1,xd,yd,zd);
+			return getPLineCollisionHorizontal(px1,py1,pz1,pxd,pyd,pzd,radius,height,x1,y1,z1,xd,yd,zd, h);
 		else if (xd == 0 && yd == 0)
-			return getPLineCollisionVertical(px1,py1,pz1,pxd,pyd,pzd,radius,height,x1,y1,z1,xd,yd,zd);
+			return getPLineCollisionVertical(px1,py1,pz1,pxd,pyd,pzd,radius,height,x1,y1,z1,xd,yd,zd, h);
 		else
-			return getPLineCollisionSlanted(px1,py1,pz1,pxd,pyd,pzd,radius,height,x1,y1,z1,xd,yd,zd);
+			return getPLineCollisionSlanted(px1,py1,pz1,pxd,pyd,pzd,radius,height,x1,y1,z1,xd,yd,zd, h);
 	}
 	
 	//Returns the value from 0 to 1 for the player collision with a slanted line segment.
 	//It does not handle endpoints well. Use another script for that.
 	private double getPLineCollisionSlanted(double px1, double py1, double pz1, double pxd, double pyd, double pzd, double radius, double height,
-			double x1, double y1, double z1, double xd, double yd, double zd)
+			double x1, double y1, double z1, double xd, double yd, double zd, CollisionHit h)
 	{
 		/*
 		 * ALGORITHM 2d:
@@ -464,7 +1208,7 @@ public class Collision
 			//Find the player movement distance (t) and where it is on the line (l).
 			t = ((pxc-x1)*yd - (pyc-y1)*xd) / denom;
 			l = (pxd*(y1-pyc) - pyd*(x1-pxc)) / denom;
-			normalX = -cx; normalY = -cy; normalZ = 0;
+			h.testNormalX = -cx; h.testNormalY = -cy; h.testNormalZ = 0;
 			
 			double zz = pz1 + pzd*t; //Pending player location
 			if (zz >= z1 + l*zd || zz+height <= z1 + l*zd) caps = true; //Out of z-range
@@ -485,10 +1229,10 @@ public class Collision
 			double x1_t = x1+z1*xt, y1_t = y1+z1*yt; //x_dist_t and y_dist_t will always be zero.
 			
 			//Collide both caps with the line.
-			double t1 = getPLineCollisionVertical(px1_t,py1_t,pz1,px_dist_t,py_dist_t,pzd,radius,0, x1_t,y1_t,z1,0,0,zd);
-			double nx1 = normalX, ny1 = normalY;
-			double t2 = getPLineCollisionVertical(px1_t+cap_x,py1_t+cap_y,pz1+height,px_dist_t,py_dist_t,pzd,radius,0, x1_t,y1_t,z1,0,0,zd);
-			double nx2 = normalX, ny2 = normalY;
+			double t1 = getPLineCollisionVertical(px1_t,py1_t,pz1,px_dist_t,py_dist_t,pzd,radius,0, x1_t,y1_t,z1,0,0,zd, h);
+			double nx1 = h.testNormalX, ny1 = h.testNormalY;
+			double t2 = getPLineCollisionVertical(px1_t+cap_x,py1_t+cap_y,pz1+height,px_dist_t,py_dist_t,pzd,radius,0, x1_t,y1_t,z1,0,0,zd, h);
+			double nx2 = h.testNormalX, ny2 = h.testNormalY;
 			
 			double nx, ny, nz;
 			if (t1 <= t2) {t = t1; nx = nx1; ny = ny1;}
@@ -497,7 +1241,7 @@ public class Collision
 			//Undo transformation
 			nz = (-xd*nx - yd*ny)/zd;
 			double dist = Math.sqrt(1 + sqr(nz));
-			normalX = nx/dist; normalY = ny/dist; normalZ = nz/dist;
+			h.testNormalX = nx/dist; h.testNormalY = ny/dist; h.testNormalZ = nz/dist;
 			
 			if (t<0 || t>=1) return 1;
 			return t;
@@ -511,7 +1255,7 @@ public class Collision
 	//Returns the value from 0 to 1 for the player collision with a horizontal line segment.
 	//It does not handle endpoints well. Use another script for that.
 	private double getPLineCollisionHorizontal(double px1, double py1, double pz1, double pxd, double pyd, double pzd, double radius, double height,
-			double x1, double y1, double z1, double xd, double yd, double zd)
+			double x1, double y1, double z1, double xd, double yd, double zd, CollisionHit h)
 	{
 		//The algorithm for this is like the slanted line segment, but simplified.
 		
@@ -533,7 +1277,7 @@ public class Collision
 			//Find the answer and where it is on the line.
 			t = ((pxc-x1)*yd - (pyc-y1)*xd) / denom;
 			l = (pxd*(y1-pyc) - pyd*(x1-pxc)) / denom;
-			normalX = -cx; normalY = -cy; normalZ = 0;
+			h.testNormalX = -cx; h.testNormalY = -cy; h.testNormalZ = 0;
 			
 			double zz = pz1 + pzd*t; //Pending player location
 			if (zz >= z1 || zz+height <= z1) caps = true; //Out of z-range
@@ -545,7 +1289,7 @@ public class Collision
 			if (pzd == 0) return 1;
 			if (pzd > 0) t = ((z1-height) - pz1) / pzd;
 			if (pzd < 0) t = ((z1) - pz1) / pzd;
-			normalX = 0; normalY = 0; normalZ = -sign(pzd);
+			h.testNormalX = 0; h.testNormalY = 0; h.testNormalZ = -sign(pzd);
 			if (t<0 || t>=1) return 1;
 			
 			double xx = px1 + pxd*t, yy = py1 + pyd*t; //Pending player location
@@ -569,7 +1313,7 @@ public class Collision
 	//Returns the value from 0 to 1 for the player collision with a vertical line segment.
 	//It does not handle endpoints well. Use another script for that.
 	private double getPLineCollisionVertical(double px1, double py1, double pz1, double pxd, double pyd, double pzd, double radius, double height,
-			double x1, double y1, double z1, double xd, double yd, double zd)
+			double x1, double y1, double z1, double xd, double yd, double zd, CollisionHit h)
 	{
 		/*
 		 * ALGORITHM 2e:
@@ -597,19 +1341,19 @@ public class Collision
 		double zz = pz1 + pzd*t; //zz is the player's position at the specified t
 		if (zz >= z1+zd || zz+height <= z1) return 1; //Out of z-range
 		
-		normalX = ((px1 + pxd*t)-x1);
-		normalY = ((py1 + pyd*t)-y1);
-		d = Math.sqrt(sqr(normalX)+sqr(normalY));
-		normalX /= d;
-		normalY /= d;
-		normalZ = 0;
+		h.testNormalX = ((px1 + pxd*t)-x1);
+		h.testNormalY = ((py1 + pyd*t)-y1);
+		d = Math.sqrt(sqr(h.testNormalX)+sqr(h.testNormalY));
+		h.testNormalX /= d;
+		h.testNormalY /= d;
+		h.testNormalZ = 0;
 		
 		return t;
 	}
 	
 	//Returns the value from 0 to 1 for the player collision with a point.
 	private double getPPointCollision(double px1, double py1, double pz1, double pxd, double pyd, double pzd, double radius, double height,
-			double x1, double y1, double z1)
+			double x1, double y1, double z1, CollisionHit h)
 	{
 		/*
 		 * ALGORITHM 2f:
@@ -625,7 +1369,7 @@ public class Collision
 		{
 			if (pzd > 0) t = ((z1-height) - pz1) / pzd;
 			if (pzd < 0) t = ((z1) - pz1) / pzd;
-			normalX = 0; normalY = 0; normalZ = -sign(pzd);
+			h.testNormalX = 0; h.testNormalY = 0; h.testNormalZ = -sign(pzd);
 			
 			double xx = px1 + pxd*t, yy = py1 + pyd*t; //xx, yy are the player position when moved to be aligned with the point.
 			if (t>=0 && t<1 && sqr(xx-x1) + sqr(yy-y1) <= sqr(radius)) return t;
@@ -646,12 +1390,12 @@ public class Collision
 		double zz = pz1 + pzd*t; //zz is the player's position at the specified t
 		if (zz >= z1 || zz+height <= z1) return 1; //Out of z-range
 		
-		normalX = ((px1 + pxd*t)-x1);
-		normalY = ((py1 + pyd*t)-y1);
-		d = Math.sqrt(sqr(normalX)+sqr(normalY));
-		normalX /= d;
-		normalY /= d;
-		normalZ = 0;
+		h.testNormalX = ((px1 + pxd*t)-x1);
+		h.testNormalY = ((py1 + pyd*t)-y1);
+		d = Math.sqrt(sqr(h.testNormalX)+sqr(h.testNormalY));
+		h.testNormalX /= d;
+		h.testNormalY /= d;
+		h.testNormalZ = 0;
 		return t;
 	}
 	
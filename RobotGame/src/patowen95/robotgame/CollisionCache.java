@@ -0,0 +1,57 @@
+package patowen95.robotgame;
+
+/**
+ * A CollisionHit that also remembers which walls are near the entity that owns it. When a query
+ * is made with a CollisionCache, Collision finds the walls in a region a bit larger than needed
+ * and keeps them, so later queries inside that region only have to check those walls.
+ * Entities that query Collision several times per step with nearly the same path should keep one.
+ * @author Patrick Owen
+ */
+public class CollisionCache extends CollisionHit
+{
+	//The Collision and version of its walls that the cached walls came from
+	Collision source;
+	int version;
+	
+	//The region covered by the cached walls
+	double xMin, yMin, zMin, xMax, yMax, zMax;
+	
+	//Indices of the walls whose bounding boxes overlap the region, in increasing order
+	int[] walls;
+	int numWalls;
+	
+	/**
+	 * Creates a new, empty CollisionCache whose queries are counted under CollisionStats.OTHER.
+	 */
+	public CollisionCache()
+	{
+		this(CollisionStats.OTHER);
+	}
+	
+	/**
+	 * Creates a new, empty CollisionCache.
+	 * @param category The kind of caller that CollisionStats counts its queries under, such as CollisionStats.PLAYER.
+	 */
+	public CollisionCache(int category)
+	{
+		super(category);
+		source = null;
+		walls = new int[0];
+		numWalls = 0;
+	}
+	
+	/**
+	 * Forgets the cached walls so that they are found again by the next query.
+	 */
+	public void invalidate()
+	{
+		source = null;
+	}
+	
+	//Returns whether the cached walls can be used for a query of the given Collision in the given region.
+	boolean covers(Collision collision, int collisionVersion, double qxMin, double qyMin, double qzMin, double qxMax, double qyMax, double qzMax)
+	{
+		if (source != collision || version != collisionVersion) return false;
+		return qxMin >= xMin && qyMin >= yMin && qzMin >= zMin && qxMax <= xMax && qyMax <= yMax && qzMax <= zMax;
+	}
+}
@@ -0,0 +1,137 @@
+package patowen95.robotgame;
+import java.util.ArrayList;
+
+import patowen95.robotgame.entity.Entity;
+
+/**
+ * Holds the result of a query made to Collision, along with the scratch space the query needs.
+ * Each thread that queries Collision should have its own CollisionHit, which can be reused
+ * for any number of queries.
+ * @author Patrick Owen
+ */
+public class CollisionHit
+{
+	//Result of the last query
+	double time;
+	double normalX, normalY, normalZ;
+	
+	//Normal of the element being tested, before it is known whether it is the closest
+	double testNormalX, testNormalY, testNormalZ;
+	
+	//Scratch space for the query
+	int[] candidates; //Indices of the walls that the query needs to check
+	double[] planeTimes; //Where a bullet crosses the plane of each candidate wall
+	ArrayList<Entity> nearbyEntities; //Entities that the query needs to check
+	int[] testedWalls; //For each wall, the last query that tested it while walking the WallGrid
+	int query; //Number of the current query, which changes for every walk of the WallGrid
+	double[] range; //Part of the path inside the WallGrid
+	int[] stack; //Nodes of the BoundingVolumeHierarchy still to visit
+	
+	//Scratch space for batches of bullet paths, with one entry for each path
+	double[] rayXD, rayYD, rayZD; //Displacement lengthened by the buffer
+	double[] rayBuffer;
+	double[] rayTime; //Closest hit so far
+	int[] rayWall; //Wall of the closest hit so far, -1 if there is none, or -2 if the path was tested by itself
+	int[] rayCandidates, rayRejects; //Statistics
+	
+	//Scratch space for batches of bullet paths, with one entry for each pair of a path and a wall it can hit
+	int[] pairWall, pairRay; //In the order they were found
+	int[] wallStart, wallNext; //For each wall, where its pairs start once sorted, and where its next pair goes while sorting
+	int[] sortedRay; //Path of each pair once sorted by wall
+	double[] pairX, pairY, pairZ, pairXD, pairYD, pairZD; //Start and displacement of the path of each sorted pair
+	double[] pairTime; //Result of testing each sorted pair
+	
+	int category; //Kind of caller that CollisionStats counts the queries under
+	long[] counts; //Work done by queries since the last fold, indexed by CollisionStats counter
+	CollisionStats stats; //Statistics that the counts will be folded into, or null if there are none
+	
+	/**
+	 * Creates a new CollisionHit with no collision stored whose queries are counted under CollisionStats.OTHER.
+	 */
+	public CollisionHit()
+	{
+		this(CollisionStats.OTHER);
+	}
+	
+	/**
+	 * Creates a new CollisionHit with no collision stored.
+	 * @param category The kind of caller that CollisionStats counts its queries under, such as CollisionStats.BULLET.
+	 */
+	public CollisionHit(int category)
+	{
+		this.category = category;
+		time = 1;
+		candidates = new int[0];
+		planeTimes = new double[0];
+		nearbyEntities = new ArrayList<Entity>();
+		testedWalls = new int[0];
+		query = 0;
+		range = new double[2];
+		stack = new int[BoundingVolumeHierarchy.MAX_DEPTH];
+		rayTime = new double[0];
+		pairWall = new int[0];
+		pairRay = new int[0];
+		wallStart = new int[0];
+		counts = new long[CollisionStats.NUM_COUNTERS];
+		stats = null;
+	}
+	
+	/**
+	 * Returns the kind of caller that CollisionStats counts the queries made with this CollisionHit under.
+	 */
+	public int getCategory()
+	{
+		return category;
+	}
+	
+	/**
+	 * Sets the kind of caller that CollisionStats counts the queries made with this CollisionHit under.
+	 * Queries that have not been folded into CollisionStats yet are counted under the new category.
+	 * @param category A category such as CollisionStats.BULLET.
+	 */
+	public void setCategory(int category)
+	{
+		this.category = category;
+	}
+	
+	/**
+	 * Returns the value from 0 to 1 for the part of the path traveled before the collision.
+	 * It is 1 if there was no collision.
+	 */
+	public double getTime()
+	{
+		return time;
+	}
+	
+	/**
+	 * Returns whether the last query found a collision.
+	 */
+	public boolean isHit()
+	{
+		return time < 1;
+	}
+	
+	/**
+	 * Returns the x-component of the normal of the surface that was hit, or 0 if there was no collision.
+	 */
+	public double getNormalX()
+	{
+		return normalX;
+	}
+	
+	/**
+	 * Returns the y-component of the normal of the surface that was hit, or 0 if there was no collision.
+	 */
+	public double getNormalY()
+	{
+		return normalY;
+	}
+	
+	/**
+	 * Returns the z-component of the normal of the surface that was hit, or 0 if there was no collision.
+	 */
+	public double getNormalZ()
+	{
+		return normalZ;
+	}
+}
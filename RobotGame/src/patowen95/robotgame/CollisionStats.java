@@ -0,0 +1,195 @@
+package patowen95.robotgame;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Counts the work done by a Collision object, broken down by the kind of caller that asked for it.
+ * The category of a query is taken from the CollisionHit it uses. Each query counts into its own
+ * CollisionHit, and the counts are added here when fold is called, which World does after every step.
+ * Queries can run on several threads at once, but fold, reset, and getSnapshot must not be called while
+ * any query is running.
+ * @author Patrick Owen
+ */
+public class CollisionStats
+{
+	//Caller categories
+	public static final int PLAYER = 0;
+	public static final int AI = 1;
+	public static final int BULLET = 2;
+	public static final int ROCKET = 3;
+	public static final int OTHER = 4;
+	public static final int NUM_CATEGORIES = 5;
+	
+	//Counters
+	public static final int BULLET_QUERIES = 0; //Calls to getBulletCollision
+	public static final int PLAYER_QUERIES = 1; //Calls to getPlayerCollision
+	public static final int ENTITY_BULLET_QUERIES = 2; //Calls to getEntityBulletCollision
+	public static final int TRIANGLES = 3; //Walls returned by the broad phase
+	public static final int AABB_REJECTS = 4; //Walls whose bounding boxes did not overlap the path
+	public static final int INTERIOR_TESTS = 5; //Tests against the interior of a wall
+	public static final int EDGE_TESTS = 6; //Tests against the edges of a wall
+	public static final int VERTEX_TESTS = 7; //Tests against the vertices of a wall
+	public static final int ENTITY_TESTS = 8; //Tests against Collidable entities
+	public static final int HITS = 9; //Queries that found a collision
+	public static final int GRID_CELLS = 10; //Cells of the WallGrid visited by rays
+	public static final int NUM_COUNTERS = 11;
+	
+	private static final String[] categoryNames = {"player", "ai", "bullet", "rocket", "other"};
+	private static final String[] counterNames = {"bulletQueries", "playerQueries", "entityBulletQueries",
+		"triangles", "aabbRejects", "interiorTests", "edgeTests", "vertexTests", "entityTests", "hits", "gridCells"};
+	
+	private long[] counts;
+	private ArrayList<CollisionHit> pending; //CollisionHits with counts that have not been added yet
+	
+	/**
+	 * Creates a new CollisionStats object with every count at 0.
+	 */
+	public CollisionStats()
+	{
+		counts = new long[NUM_CATEGORIES*NUM_COUNTERS];
+		pending = new ArrayList<CollisionHit>();
+	}
+	
+	//Remembers that h has counts to add here. Called by the first query that counts into h since the last fold.
+	void register(CollisionHit h)
+	{
+		synchronized (pending)
+		{
+			h.stats = this;
+			pending.add(h);
+		}
+	}
+	
+	/**
+	 * Adds the counts held by every CollisionHit used since the last fold, under each one's current category.
+	 */
+	public void fold()
+	{
+		synchronized (pending)
+		{
+			for (int i=0; i<pending.size(); i++)
+			{
+				CollisionHit h = pending.get(i);
+				int offset = h.category*NUM_COUNTERS;
+				for (int counter=0; counter<NUM_COUNTERS; counter++)
+				{
+					counts[offset + counter] += h.counts[counter];
+					h.counts[counter] = 0;
+				}
+				h.stats = null;
+			}
+			pending.clear();
+		}
+	}
+	
+	/**
+	 * Sets every count back to 0.
+	 */
+	public void reset()
+	{
+		fold();
+		Arrays.fill(counts, 0);
+	}
+	
+	/**
+	 * Returns a copy of the current counts, including those not yet folded.
+	 */
+	public Snapshot getSnapshot()
+	{
+		fold();
+		return new Snapshot(counts.clone(), System.nanoTime());
+	}
+	
+	/**
+	 * Returns the name of the given caller category.
+	 */
+	public static String getCategoryName(int category)
+	{
+		return categoryNames[category];
+	}
+	
+	/**
+	 * Returns the name of the given counter.
+	 */
+	public static String getCounterName(int counter)
+	{
+		return counterNames[counter];
+	}
+	
+	/**
+	 * The counts of a CollisionStats object at one moment.
+	 */
+	public static class Snapshot
+	{
+		private final long[] counts;
+		private final long time; //System.nanoTime() when the snapshot was taken
+		
+		private Snapshot(long[] counts, long time)
+		{
+			this.counts = counts;
+			this.time = time;
+		}
+		
+		/**
+		 * Returns the count for a single category.
+		 * @param category The kind of caller, such as PLAYER.
+		 * @param counter The counter, such as HITS.
+		 */
+		public long get(int category, int counter)
+		{
+			return counts[category*NUM_COUNTERS + counter];
+		}
+		
+		/**
+		 * Returns the count summed over all categories.
+		 * @param counter The counter, such as HITS.
+		 */
+		public long getTotal(int counter)
+		{
+			long total = 0;
+			for (int category=0; category<NUM_CATEGORIES; category++)
+				total += get(category, counter);
+			return total;
+		}
+		
+		/**
+		 * Returns the counts gained since an earlier snapshot, such as the one taken a second ago.
+		 * @param earlier The earlier snapshot of the same CollisionStats.
+		 */
+		public Snapshot since(Snapshot earlier)
+		{
+			long[] difference = new long[counts.length];
+			for (int i=0; i<counts.length; i++)
+				difference[i] = counts[i] - earlier.counts[i];
+			return new Snapshot(difference, time - earlier.time);
+		}
+		
+		/**
+		 * Returns the time the snapshot was taken (from System.nanoTime()), or the time
+		 * it covers in nanoseconds if it was returned by since.
+		 */
+		public long getTime()
+		{
+			return time;
+		}
+		
+		/**
+		 * Returns the counts as a table with one line per category, suitable for logging.
+		 */
+		public String toString()
+		{
+			StringBuilder s = new StringBuilder();
+			s.append(String.format("%-8s", "caller"));
+			for (int counter=0; counter<NUM_COUNTERS; counter++)
+				s.append(String.format(" %12.12s", counterNames[counter]));
+			
+			for (int category=0; category<NUM_CATEGORIES; category++)
+			{
+				s.append(String.format("%n%-8s", categoryNames[category]));
+				for (int counter=0; counter<NUM_COUNTERS; counter++)
+					s.append(String.format(" %12d", get(category, counter)));
+			}
+			return s.toString();
+		}
+	}
+}
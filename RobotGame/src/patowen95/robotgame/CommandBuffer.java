@@ -0,0 +1,146 @@
+package patowen95.robotgame;
+import java.util.Arrays;
+
+import patowen95.robotgame.entity.Damageable;
+import patowen95.robotgame.entity.Entity;
+
+/**
+ * Records the effects that entities have on the rest of the World while they are stepped in parallel,
+ * such as creating and deleting entities and damaging other entities, so that they can be carried out one
+ * at a time once every entity has stepped. Commands are carried out in the order they were recorded.
+ * @author Patrick Owen
+ */
+public class CommandBuffer
+{
+	//Kinds of commands
+	private static final int CREATE = 0;
+	private static final int DELETE = 1;
+	private static final int DAMAGE = 2;
+	private static final int SOUND = 3;
+	private static final int REMOVE = 4;
+	
+	private static final int NUM_VALUES = 5; //Values stored for each command
+	
+	private int count;
+	private int[] kinds;
+	private Object[] targets; //The entity each command acts on, or null for sounds
+	private int[] flags; //Whether damage is absolute, or the index of a sound
+	private double[] values; //NUM_VALUES for each command: the amount of damage, a direction or location, and the knock back
+	
+	/**
+	 * Creates an empty CommandBuffer.
+	 */
+	public CommandBuffer()
+	{
+		count = 0;
+		kinds = new int[64];
+		targets = new Object[64];
+		flags = new int[64];
+		values = new double[64*NUM_VALUES];
+	}
+	
+	/**
+	 * Records a call to World's create.
+	 */
+	public void create(Entity e)
+	{
+		add(CREATE, e, 0, 0, 0, 0, 0, 0);
+	}
+	
+	/**
+	 * Records a call to the entity's delete.
+	 */
+	public void delete(Entity e)
+	{
+		add(DELETE, e, 0, 0, 0, 0, 0, 0);
+	}
+	
+	/**
+	 * Records a call to World's delete.
+	 */
+	public void remove(Entity e)
+	{
+		add(REMOVE, e, 0, 0, 0, 0, 0, 0);
+	}
+	
+	/**
+	 * Records a call to the entity's applyDamage. The arguments match those of applyDamage.
+	 */
+	public void damage(Damageable e, double amount, double x, double y, double z, double knockBack, boolean absolute)
+	{
+		add(DAMAGE, e, absolute ? 1 : 0, amount, x, y, z, knockBack);
+	}
+	
+	/**
+	 * Records a sound played at the given location.
+	 * @param i Index of the sound in the SoundHandler.
+	 */
+	public void playSound(int i, double x, double y, double z)
+	{
+		add(SOUND, null, i, 0, x, y, z, 0);
+	}
+	
+	/**
+	 * Returns the number of commands recorded.
+	 */
+	public int size()
+	{
+		return count;
+	}
+	
+	/**
+	 * Carries out every recorded command in the order they were recorded and then removes them.
+	 * Entities created while stepping in parallel are given their IDs here.
+	 * @param w The World the commands were recorded for, which must not be stepping in parallel anymore.
+	 */
+	public void apply(World w)
+	{
+		for (int i=0; i<count; i++)
+		{
+			int v = i*NUM_VALUES;
+			switch (kinds[i])
+			{
+			case CREATE:
+				Entity created = (Entity)targets[i];
+				if (created.getID() == -1)
+					created.setID(w.generateEntityID());
+				w.create(created);
+				break;
+			case DELETE:
+				((Entity)targets[i]).delete();
+				break;
+			case DAMAGE:
+				((Damageable)targets[i]).applyDamage(values[v], values[v+1], values[v+2], values[v+3], values[v+4], flags[i] == 1);
+				break;
+			case SOUND:
+				w.playSound(flags[i], values[v+1], values[v+2], values[v+3]);
+				break;
+			case REMOVE:
+				w.delete((Entity)targets[i]);
+				break;
+			}
+			targets[i] = null;
+		}
+		count = 0;
+	}
+	
+	//Adds a command to the end of the buffer.
+	private void add(int kind, Object target, int flag, double v0, double v1, double v2, double v3, double v4)
+	{
+		if (count == kinds.length)
+		{
+			int length = 2*count;
+			kinds = Arrays.copyOf(kinds, length);
+			targets = Arrays.copyOf(targets, length);
+			flags = Arrays.copyOf(flags, length);
+			values = Arrays.copyOf(values, length*NUM_VALUES);
+		}
+		
+		kinds[count] = kind;
+		targets[count] = target;
+		flags[count] = flag;
+		int v = count*NUM_VALUES;
+		values[v] = v0; values[v+1] = v1; values[v+2] = v2; values[v+3] = v3; values[v+4] = v4;
+		count += 1;
+	}
+}
@@ -36,13 +36,20 @@ public class Controller
 	private FPSAnimator anim;
 	private HashMap<Integer, Texture> textureInfo;
 	private World currentLevel;
+	private String currentLevelName;
 	private int levelType; //0=no score, 1=score
 	
+	private InputRecorder recorder; //Records the input of the current level, or null if it is not being recorded
+	
+	//Set the system property robotgame.recordDir to a folder to record the input of every single-player level there.
+	private static final String RECORD_DIR = System.getProperty("robotgame.recordDir");
+	
 	private InputHandler input;
 	private SoundHandler soundHandler;
 	
 	private boolean isMultiplayer;
 	private boolean isServer;
+	private boolean isDedicatedServer; //Hosting with no window and no player of its own
 	private GuaranteedSignalSender guaranteedSender;
 	private Network network;
 	private Server server;
@@ -66,13 +73,29 @@ public class Controller
 	//Store the window width and height
 	private double width, height;
 	
+	//Fixed time step
+	private double tickRate; //Steps per second
+	private int maxCatchUpSteps; //Most steps run for one frame before the rest of the time is dropped
+	private double accumulator; //Time that has passed but has not been stepped yet
+	private double interpolation; //Fraction of a step between the last step and the frame being drawn
+	
+	//Set the system property robotgame.tickRate to change the number of steps per second.
+	private static final int TICK_RATE = Integer.getInteger("robotgame.tickRate", 60);
+	private static final int MAX_CATCH_UP_STEPS = 5;
+	
 	/**
-	 * Constructs a Controller object given the object that renders it.
+	 * Constructs a Controller object given the object that renders it. Both are null for a Controller
+	 * with no window, which is initialized with initHeadless instead of init.
 	 */
 	public Controller(GLWindow window, FPSAnimator animator)
 	{
 		win = window;
 		anim = animator;
+		
+		tickRate = TICK_RATE;
+		maxCatchUpSteps = MAX_CATCH_UP_STEPS;
+		accumulator = 0;
+		interpolation = 1;
 	}
 	
 	/**
@@ -112,14 +135,39 @@ public class Controller
 		score = 0;
 	}
 	
+	/**
+	 * Initializes everything that does not need a window, OpenGL, or an audio device, so that a World
+	 * can be created and stepped without them, as benchmarks do. Nothing can be drawn, no sound is played,
+	 * and the InputHandler receives no input. This is called instead of init for a Controller with no window.
+	 */
+	public void initHeadless()
+	{
+		textureInfo = new HashMap<Integer, Texture>();
+		
+		input = new InputHandler(null);
+		soundHandler = new SoundHandler(false);
+		
+		width = 800; height = 600;
+		
+		isMultiplayer = false;
+		guaranteedSender = new GuaranteedSignalSender(this);
+		
+		currentMenu = null;
+		paused = false;
+		
+		score = 0;
+	}
+	
 	/**
 	 * Frees up resources and quits the game.
 	 */
 	public void quit()
 	{
+		stopRecording();
 		forceDisconnect();
 		soundHandler.destroy();
-		anim.stop();
+		if (anim != null)
+			anim.stop();
 	}
 	
 	/**
@@ -170,6 +218,15 @@ public class Controller
 		return isServer;
 	}
 	
+	/**
+	 * Returns whether the current computer is hosting the game as a dedicated server, which has
+	 * no window and no player of its own.
+	 */
+	public boolean isDedicatedServer()
+	{
+		return isDedicatedServer;
+	}
+	
 	/**
 	 * Returns the Server object if the current computer is hosting the game.
 	 */
@@ -179,15 +236,35 @@ public class Controller
 	}
 	
 	public void startServer()
+	{
+		startServer(Server.DEFAULT_PORT);
+	}
+	
+	/**
+	 * Starts hosting the game on the given port.
+	 */
+	public void startServer(int port)
 	{
 		forceDisconnect();
 		
-		server = new Server(this, 5);
+		server = new Server(this, 5, port);
 		isMultiplayer = true;
 		isServer = true;
+		isDedicatedServer = false;
 		network = server;
 	}
 	
+	/**
+	 * Starts hosting the game as a dedicated server. This Controller must have been initialized with
+	 * initHeadless. Levels are loaded without a player of their own, so only the clients play.
+	 * @param port The port the Server listens on.
+	 */
+	public void startDedicatedServer(int port)
+	{
+		startServer(port);
+		isDedicatedServer = true;
+	}
+	
 	/**
 	 * Returns the Client object if the current computer is hosting the game.
 	 */
@@ -203,6 +280,7 @@ public class Controller
 		client = new Client(this);
 		isMultiplayer = true;
 		isServer = false;
+		isDedicatedServer = false;
 		network = client;
 	}
 	
@@ -317,9 +395,98 @@ public class Controller
 		}
 	}
 	
+	/**
+	 * Advances the game by the time that passed since the last frame. The game is always stepped by the same
+	 * amount of time, 1/tickRate, as many times as fit in the time that has passed, and the time left over is
+	 * carried to the next frame. At most maxCatchUpSteps steps are run for one frame, and any time beyond them
+	 * is dropped, so the game slows down instead of falling further and further behind when steps take too long.
+	 * <br/><br/>
+	 * Afterwards, getInterpolation returns how far the frame is between the last step and the next one.
+	 * @param frameTime Time in seconds since the last frame.
+	 * @return The number of steps run.
+	 */
+	public int advance(double frameTime)
+	{
+		return advance(frameTime, 0);
+	}
+	
+	/**
+	 * Advances the game like advance(frameTime), but stops catching up once the steps have taken longer than
+	 * the budget, dropping the rest of the time as if maxCatchUpSteps had been reached. At least one step is
+	 * run if a whole step of time has passed. This keeps a game that has fallen behind from holding on to the
+	 * thread stepping it when other games are waiting for the same thread.
+	 * @param frameTime Time in seconds since the last frame.
+	 * @param budget Most time in nanoseconds to spend stepping, or 0 for no limit.
+	 * @return The number of steps run.
+	 */
+	public int advance(double frameTime, long budget)
+	{
+		long start = System.nanoTime();
+		double tick = 1.0/tickRate;
+		accumulator += frameTime;
+		
+		int steps = 0;
+		while (accumulator >= tick && steps < maxCatchUpSteps)
+		{
+			step(tick);
+			accumulator -= tick;
+			steps += 1;
+			
+			if (budget > 0 && System.nanoTime() - start >= budget) break;
+		}
+		
+		if (accumulator >= tick)
+			accumulator = 0;
+		
+		interpolation = accumulator/tick;
+		return steps;
+	}
+	
+	/**
+	 * Returns the fraction of a step that the frame being drawn is past the last step, from 0 to 1, for
+	 * drawing entities partway between their previous and current positions.
+	 */
+	public double getInterpolation()
+	{
+		return interpolation;
+	}
+	
+	/**
+	 * Sets the number of steps per second used by advance, which is 60
+	 * unless the system property robotgame.tickRate is set.
+	 */
+	public void setTickRate(double tickRate)
+	{
+		this.tickRate = tickRate;
+	}
+	
+	/**
+	 * Returns the number of steps per second used by advance.
+	 */
+	public double getTickRate()
+	{
+		return tickRate;
+	}
+	
+	/**
+	 * Sets the most steps advance runs for one frame.
+	 */
+	public void setMaxCatchUpSteps(int maxCatchUpSteps)
+	{
+		this.maxCatchUpSteps = maxCatchUpSteps;
+	}
+	
+	/**
+	 * Returns the most steps advance runs for one frame.
+	 */
+	public int getMaxCatchUpSteps()
+	{
+		return maxCatchUpSteps;
+	}
+	
 	/**
 	 * Runs a step of the game.
-	 * @param dt The reciprocal of the framerate.
+	 * @param dt Time step in seconds.
 	 */
 	public void step(double dt)
 	{
@@ -343,13 +510,18 @@ public class Controller
 			if (paused)
 				input.setInputEnabled(false);
 			
+			int inputState = input.getInputState();
 			if (currentLevel != null)
 				currentLevel.step(dt);
 			
+			//The level may have ended during the step, which stops the recording.
+			if (recorder != null)
+				recorder.record(inputState, input.getMouseDX(), input.getMouseDY());
+			
 			if (paused)
 				input.setInputEnabled(true);
 			
-			if (currentLevel != null)
+			if (currentLevel != null && hud != null)
 			{
 				hud.step(dt);
 				
@@ -400,11 +572,21 @@ public class Controller
 			levelType = 1;
 		pauseMenu = new PauseMenu(this);
 		paused = false;
+		stopRecording();
 		currentLevel = new World(this, new File("maps" + File.separator + levelName)); //levelName
-		hud = new HUD(this, currentLevel);
+		currentLevelName = levelName;
 		currentMenu = null;
-		win.setPointerVisible(false);
-		input.readMouse();
+		
+		if (RECORD_DIR != null && !isMultiplayer)
+			startRecording(new File(RECORD_DIR, levelName.replace(".txt", "") + "-" + System.currentTimeMillis() + ".rec"));
+		
+		//A Controller with no window has nothing to show the HUD on or read the mouse from.
+		if (win != null)
+		{
+			hud = new HUD(this, currentLevel);
+			win.setPointerVisible(false);
+			input.readMouse();
+		}
 	}
 	
 	public World getCurrentLevel()
@@ -412,12 +594,34 @@ public class Controller
 		return currentLevel;
 	}
 	
+	/**
+	 * Starts recording the input of every step of the current level to a file, which can be replayed
+	 * as an InputRecording. The recording stops when the level ends. Only single-player levels can be
+	 * replayed, since the input of other computers is not recorded.
+	 */
+	public void startRecording(File file)
+	{
+		stopRecording();
+		recorder = new InputRecorder(file, currentLevelName, currentLevel.getSeed(), tickRate);
+	}
+	
+	/**
+	 * Stops recording the input and finishes the file. Nothing is done if no input is being recorded.
+	 */
+	public void stopRecording()
+	{
+		if (recorder == null) return;
+		recorder.close();
+		recorder = null;
+	}
+	
 	/**
 	 * Sets the current menu to display to the input GameMenu
 	 * @param menu The menu to display
 	 */
 	public void setCurrentMenu(Menu menu)
 	{
+		stopRecording();
 		pauseMenu = null;
 		hud = null;
 		currentLevel = null;
@@ -0,0 +1,114 @@
+package patowen95.robotgame;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hosts a multiplayer game with no window, OpenGL, audio device, or input, for running a server on a machine
+ * with no display. The level is loaded without a player of its own, and nothing is drawn, so only the World,
+ * its waves of enemies, and the Server are run. Steps are driven by a scheduler at the tick rate of the Controller
+ * instead of by an animator, and the time that actually passed is given to Controller.advance so that late
+ * ticks are made up for. To host more than one game in the same process, use MatchHost instead.
+ * @author Patrick Owen
+ */
+public class DedicatedServer
+{
+	private Match match;
+	private ScheduledExecutorService scheduler;
+	
+	/**
+	 * Creates a DedicatedServer hosting the given level on the default port. Call start to begin stepping the game.
+	 * @param levelName The file name of the level in the maps folder.
+	 */
+	public DedicatedServer(String levelName)
+	{
+		match = new Match(levelName, Server.DEFAULT_PORT);
+		match.setBudget(0);
+		
+		scheduler = Executors.newSingleThreadScheduledExecutor();
+	}
+	
+	/**
+	 * Starts stepping the game at the tick rate of the Controller.
+	 */
+	public void start()
+	{
+		long period = Math.round(1e9/match.getController().getTickRate());
+		scheduler.scheduleAtFixedRate(new TickTask(match), period, period, TimeUnit.NANOSECONDS);
+	}
+	
+	/**
+	 * Stops stepping the game, tells the clients that the server closed, and frees the network socket.
+	 */
+	public void stop()
+	{
+		scheduler.shutdown();
+		try
+		{
+			scheduler.awaitTermination(1, TimeUnit.SECONDS);
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		
+		match.close();
+		World.shutdownSharedPool();
+	}
+	
+	/**
+	 * Returns the Controller running the game.
+	 */
+	public Controller getController()
+	{
+		return match.getController();
+	}
+	
+	/**
+	 * Runs a dedicated server until the process is stopped.
+	 * @param args The file name of the level in the maps folder, which is arena.txt if none is given.
+	 */
+	public static void main(String[] args)
+	{
+		String levelName = args.length > 0 ? args[0] : "arena.txt";
+		
+		final DedicatedServer server = new DedicatedServer(levelName);
+		Runtime.getRuntime().addShutdownHook(new Thread()
+		{
+			public void run()
+			{
+				server.stop();
+			}
+		});
+		
+		server.start();
+		System.out.println("Hosting " + levelName + " at " + server.getController().getTickRate() + " steps per second");
+	}
+	
+	/**
+	 * Ticks a Match each time a scheduler runs it.
+	 */
+	private static class TickTask implements Runnable
+	{
+		private Match match;
+		
+		public TickTask(Match match)
+		{
+			this.match = match;
+		}
+		
+		public void run()
+		{
+			try
+			{
+				match.tick();
+			}
+			catch (RuntimeException e)
+			{
+				//The scheduler would silently stop running ticks, so stop the whole server instead.
+				e.printStackTrace();
+				System.exit(1);
+			}
+		}
+	}
+}
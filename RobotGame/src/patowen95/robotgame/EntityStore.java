@@ -0,0 +1,263 @@
+package patowen95.robotgame;
+import java.util.Arrays;
+
+import patowen95.robotgame.entity.Entity;
+
+/**
+ * Gives every entity in the World a handle when it is added, a small index that it keeps until it is removed,
+ * so that structures such as EntityView can hold data for each entity in arrays instead of maps. The handles of
+ * removed entities are reused.
+ * <br/><br/>
+ * The position, velocity and previous position of every stored entity are kept here, in one array for each
+ * coordinate indexed by handle. Entity's accessors read and write these arrays, and code that goes through every
+ * entity, such as World's step and SpatialHash, can read them directly. An entity that is not stored keeps these
+ * values itself, and they are moved into the arrays when it is added and back out when it is removed.
+ * <br/><br/>
+ * To refer to an entity that may since have been removed, such as the owner of a bullet, keep its reference
+ * instead. A reference is the handle together with a generation that changes every time the handle is freed,
+ * so a reference to a removed entity is recognized as stale even after its handle is given to another entity.
+ * @author Patrick Owen
+ */
+public class EntityStore
+{
+	public static final long NO_REFERENCE = -1; //A reference that never belongs to an entity
+	
+	private int size; //Number of entities stored
+	private int end; //One more than the highest handle that has been given out
+	private Entity[] entities; //The entity of each handle, or null if the handle is unused
+	private int[] generations; //Number of times each handle has been freed
+	
+	private int[] free; //Handles below end that are not in use
+	private int numFree;
+	
+	private double[] x, y, z; //Position of each entity
+	private double[] xV, yV, zV; //Velocity of each entity
+	private double[] xPrevious, yPrevious, zPrevious; //Position of each entity at the start of the step
+	
+	/**
+	 * Creates an empty EntityStore.
+	 */
+	public EntityStore()
+	{
+		size = 0;
+		end = 0;
+		allocate(256);
+		numFree = 0;
+	}
+	
+	/**
+	 * Adds the entity to the store, giving it a handle and moving its position, velocity and previous position
+	 * into the arrays. Nothing is done if it already has a handle.
+	 */
+	public void add(Entity e)
+	{
+		if (e.getHandle() != -1) return;
+		
+		int handle;
+		if (numFree > 0)
+		{
+			numFree -= 1;
+			handle = free[numFree];
+		}
+		else
+		{
+			if (end == entities.length)
+				allocate(2*end);
+			handle = end;
+			end += 1;
+		}
+		
+		entities[handle] = e;
+		e.setHandle(handle);
+		size += 1;
+	}
+	
+	/**
+	 * Removes the entity from the store, freeing its handle. The entity keeps its position, velocity and previous
+	 * position itself from then on. Nothing is done if it is not stored.
+	 */
+	public void remove(Entity e)
+	{
+		int handle = e.getHandle();
+		if (handle == -1 || entities[handle] != e) return;
+		
+		entities[handle] = null;
+		generations[handle] += 1;
+		e.setHandle(-1);
+		free[numFree] = handle;
+		numFree += 1;
+		size -= 1;
+	}
+	
+	/**
+	 * Removes every entity from the store.
+	 */
+	public void clear()
+	{
+		for (int handle=0; handle<end; handle++)
+		{
+			if (entities[handle] != null)
+				entities[handle].setHandle(-1);
+			generations[handle] += 1;
+		}
+		Arrays.fill(entities, 0, end, null);
+		
+		size = 0;
+		end = 0;
+		numFree = 0;
+	}
+	
+	/**
+	 * Saves the position of every stored entity as its previous position, as happens at the start of each step.
+	 */
+	public void savePreviousPositions()
+	{
+		System.arraycopy(x, 0, xPrevious, 0, end);
+		System.arraycopy(y, 0, yPrevious, 0, end);
+		System.arraycopy(z, 0, zPrevious, 0, end);
+	}
+	
+	/**
+	 * Returns the x-coordinates of the stored entities by handle. The array is replaced when the store grows, so
+	 * it should not be kept past adding an entity.
+	 */
+	public double[] getXArray()
+	{
+		return x;
+	}
+	
+	/**
+	 * Returns the y-coordinates of the stored entities by handle.
+	 */
+	public double[] getYArray()
+	{
+		return y;
+	}
+	
+	/**
+	 * Returns the z-coordinates of the stored entities by handle.
+	 */
+	public double[] getZArray()
+	{
+		return z;
+	}
+	
+	/**
+	 * Returns the x-components of the velocities of the stored entities by handle.
+	 */
+	public double[] getXVArray()
+	{
+		return xV;
+	}
+	
+	/**
+	 * Returns the y-components of the velocities of the stored entities by handle.
+	 */
+	public double[] getYVArray()
+	{
+		return yV;
+	}
+	
+	/**
+	 * Returns the z-components of the velocities of the stored entities by handle.
+	 */
+	public double[] getZVArray()
+	{
+		return zV;
+	}
+	
+	/**
+	 * Returns the previous x-coordinates of the stored entities by handle.
+	 */
+	public double[] getXPreviousArray()
+	{
+		return xPrevious;
+	}
+	
+	/**
+	 * Returns the previous y-coordinates of the stored entities by handle.
+	 */
+	public double[] getYPreviousArray()
+	{
+		return yPrevious;
+	}
+	
+	/**
+	 * Returns the previous z-coordinates of the stored entities by handle.
+	 */
+	public double[] getZPreviousArray()
+	{
+		return zPrevious;
+	}
+	
+	/**
+	 * Returns the number of entities stored.
+	 */
+	public int size()
+	{
+		return size;
+	}
+	
+	/**
+	 * Returns one more than the highest handle that may be in use. Loops over the handles should stop here
+	 * and skip the handles whose entity is null.
+	 */
+	public int getEnd()
+	{
+		return end;
+	}
+	
+	/**
+	 * Returns the entity with the given handle, or null if the handle is not in use.
+	 */
+	public Entity getEntity(int handle)
+	{
+		return entities[handle];
+	}
+	
+	/**
+	 * Returns a reference to a stored entity that stays valid until the entity is removed, or NO_REFERENCE if it is not stored.
+	 */
+	public long getReference(Entity e)
+	{
+		int handle = e.getHandle();
+		if (handle == -1) return NO_REFERENCE;
+		return ((long)generations[handle] << 32) | handle;
+	}
+	
+	/**
+	 * Returns the entity a reference was made for, or null if it has been removed since then.
+	 */
+	public Entity getEntity(long reference)
+	{
+		if (reference == NO_REFERENCE) return null;
+		int handle = (int)reference;
+		if (handle >= end || generations[handle] != (int)(reference >>> 32)) return null;
+		return entities[handle];
+	}
+	
+	/**
+	 * Returns whether the entity a reference was made for is still stored.
+	 */
+	public boolean isCurrent(long reference)
+	{
+		return getEntity(reference) != null;
+	}
+	
+	//Makes room for the given number of handles, keeping the current contents.
+	private void allocate(int capacity)
+	{
+		entities = entities == null ? new Entity[capacity] : Arrays.copyOf(entities, capacity);
+		generations = generations == null ? new int[capacity] : Arrays.copyOf(generations, capacity);
+		free = free == null ? new int[capacity] : Arrays.copyOf(free, capacity);
+		x = grow(x, capacity); y = grow(y, capacity); z = grow(z, capacity);
+		xV = grow(xV, capacity); yV = grow(yV, capacity); zV = grow(zV, capacity);
+		xPrevious = grow(xPrevious, capacity); yPrevious = grow(yPrevious, capacity); zPrevious = grow(zPrevious, capacity);
+	}
+	
+	//Returns a copy of the array with the given length, or a new array if there is none yet.
+	private static double[] grow(double[] array, int capacity)
+	{
+		return array == null ? new double[capacity] : Arrays.copyOf(array, capacity);
+	}
+}
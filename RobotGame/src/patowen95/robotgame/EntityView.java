@@ -0,0 +1,94 @@
+package patowen95.robotgame;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import patowen95.robotgame.entity.Entity;
+
+/**
+ * A list of the entities in the World that share some capability, such as being an enemy, kept up to date
+ * as entities are added and removed so that nothing has to search every entity for them. Removing an entity
+ * moves the last one into its place, so the order of the list is not kept.
+ * <br/><br/>
+ * The position of each entity in the list is found from its handle in the EntityStore, so entities must
+ * be added to the view after they are added to the store and removed before they are removed from it.
+ * @author Patrick Owen
+ */
+public class EntityView
+{
+	private ArrayList<Entity> entities;
+	private int[] positions; //For each handle, the position of its entity in the list, or -1 if it is not in it
+	
+	/**
+	 * Creates an empty EntityView.
+	 */
+	public EntityView()
+	{
+		entities = new ArrayList<Entity>();
+		positions = new int[256];
+		Arrays.fill(positions, -1);
+	}
+	
+	/**
+	 * Adds the entity to the view. Nothing is done if it is not in the EntityStore or is already in the view.
+	 */
+	public void add(Entity e)
+	{
+		int handle = e.getHandle();
+		if (handle == -1) return;
+		
+		if (handle >= positions.length)
+		{
+			int oldLength = positions.length;
+			positions = Arrays.copyOf(positions, Math.max(2*oldLength, handle+1));
+			Arrays.fill(positions, oldLength, positions.length, -1);
+		}
+		if (positions[handle] != -1) return;
+		
+		positions[handle] = entities.size();
+		entities.add(e);
+	}
+	
+	/**
+	 * Removes the entity from the view. Nothing is done if it is not in it.
+	 */
+	public void remove(Entity e)
+	{
+		int handle = e.getHandle();
+		if (handle == -1 || handle >= positions.length || positions[handle] == -1) return;
+		
+		int position = positions[handle];
+		Entity last = entities.remove(entities.size()-1);
+		if (last != e)
+		{
+			entities.set(position, last);
+			positions[last.getHandle()] = position;
+		}
+		positions[handle] = -1;
+	}
+	
+	/**
+	 * Removes every entity from the view.
+	 */
+	public void clear()
+	{
+		for (Entity e : entities)
+			positions[e.getHandle()] = -1;
+		entities.clear();
+	}
+	
+	/**
+	 * Returns the number of entities in the view.
+	 */
+	public int size()
+	{
+		return entities.size();
+	}
+	
+	/**
+	 * Returns the entities in the view. Do not modify this ArrayList.
+	 */
+	public ArrayList<Entity> getEntities()
+	{
+		return entities;
+	}
+}
@@ -0,0 +1,252 @@
+package patowen95.robotgame;
+
+/**
+ * A flow field that leads flying enemies to the player around the walls of a map. The box around the walls
+ * of a Collision object is divided into a grid of cubic cells, and two cells next to each other (including
+ * diagonally) are connected if the segment between their centers does not cross a wall. Whenever the player
+ * moves into a different cell, the number of steps from every cell to the player's cell is found again, along
+ * with the direction each cell should move in to get closer. Enemies then only look up the cell they are in.
+ * <br/><br/>
+ * The connections ignore the size of the enemies, so the walls still have to be handled by collision checking.
+ * @author Patrick Owen
+ */
+public class FlowField
+{
+	//The 26 directions to neighboring cells, followed by the opposite of each direction
+	private static final int NUM_DIRECTIONS = 26;
+	private static final int[] DX = new int[NUM_DIRECTIONS], DY = new int[NUM_DIRECTIONS], DZ = new int[NUM_DIRECTIONS];
+	private static final double[] DIRECTION_X = new double[NUM_DIRECTIONS], DIRECTION_Y = new double[NUM_DIRECTIONS], DIRECTION_Z = new double[NUM_DIRECTIONS];
+	
+	static
+	{
+		//Directions 0-12 point toward positive indices, and direction i+13 is the opposite of direction i.
+		int i = 0;
+		for (int dz=-1; dz<=1; dz++)
+		{
+			for (int dy=-1; dy<=1; dy++)
+			{
+				for (int dx=-1; dx<=1; dx++)
+				{
+					if ((dz*3 + dy)*3 + dx <= 0) continue;
+					DX[i] = dx; DY[i] = dy; DZ[i] = dz;
+					DX[i+13] = -dx; DY[i+13] = -dy; DZ[i+13] = -dz;
+					i++;
+				}
+			}
+		}
+		
+		for (i=0; i<NUM_DIRECTIONS; i++)
+		{
+			double length = Math.sqrt(DX[i]*DX[i] + DY[i]*DY[i] + DZ[i]*DZ[i]);
+			DIRECTION_X[i] = DX[i]/length; DIRECTION_Y[i] = DY[i]/length; DIRECTION_Z[i] = DZ[i]/length;
+		}
+	}
+	
+	//Grid
+	private double xMin, yMin, zMin;
+	private double cellSize;
+	private int nx, ny, nz;
+	private int numCells;
+	
+	private int[] connected; //For each cell, a bit for each direction that leads to a connected cell
+	
+	//Results of the last update
+	private int target; //The cell of the player, or -1 if no update has been made
+	private int[] steps; //For each cell, the number of steps to the target, or -1 if the target cannot be reached
+	private byte[] direction; //For each cell, the direction of the next cell on the way to the target, or -1 if there is none
+	private int[] queue; //Used by the breadth-first search
+	private int rebuilds;
+	
+	/**
+	 * Creates a flow field for the walls of a Collision object. It leads nowhere until update is called.
+	 * @param collision The walls, which should all be added and built.
+	 * @param cellSize The length of each side of a cell.
+	 */
+	public FlowField(Collision collision, double cellSize)
+	{
+		this.cellSize = cellSize;
+		
+		double[] bounds = new double[6];
+		collision.getBounds(bounds);
+		xMin = bounds[0]; yMin = bounds[1]; zMin = bounds[2];
+		nx = Math.max(1, (int)Math.ceil((bounds[3]-xMin)/cellSize));
+		ny = Math.max(1, (int)Math.ceil((bounds[4]-yMin)/cellSize));
+		nz = Math.max(1, (int)Math.ceil((bounds[5]-zMin)/cellSize));
+		numCells = nx*ny*nz;
+		
+		connected = new int[numCells];
+		steps = new int[numCells];
+		direction = new byte[numCells];
+		queue = new int[numCells];
+		target = -1;
+		rebuilds = 0;
+		
+		computeConnections(collision);
+	}
+	
+	/**
+	 * Returns the index of the cell containing the given point, or -1 if it is outside the grid.
+	 */
+	public int getCell(double x, double y, double z)
+	{
+		int cx = (int)Math.floor((x-xMin)/cellSize);
+		int cy = (int)Math.floor((y-yMin)/cellSize);
+		int cz = (int)Math.floor((z-zMin)/cellSize);
+		if (cx < 0 || cy < 0 || cz < 0 || cx >= nx || cy >= ny || cz >= nz) return -1;
+		return (cz*ny + cy)*nx + cx;
+	}
+	
+	/**
+	 * Leads the flow field to the given point, which is usually the player. Nothing is done if the point
+	 * is in the same cell as the last time this was called.
+	 */
+	public void update(double x, double y, double z)
+	{
+		int cell = getCell(x, y, z);
+		if (cell == target) return;
+		target = cell;
+		rebuilds += 1;
+		
+		for (int i=0; i<numCells; i++)
+		{
+			steps[i] = -1;
+			direction[i] = -1;
+		}
+		if (target == -1) return;
+		
+		/*
+		 * ALGORITHM 9:
+		 * Search outward from the target cell one step at a time, following only connected cells. Each cell reached
+		 *   gets the number of steps it took, and it should move in the direction opposite the one it was reached from.
+		 * When a cell can be reached in the same number of steps from more than one cell, choose the one whose center
+		 *   is closest to the center of the target cell so that enemies head straight for the target whenever they can.
+		 */
+		int tx = target % nx, ty = (target/nx) % ny, tz = target/(nx*ny);
+		int head = 0, tail = 0;
+		steps[target] = 0;
+		queue[tail++] = target;
+		
+		while (head < tail)
+		{
+			int cell2 = queue[head++];
+			int cx = cell2 % nx, cy = (cell2/nx) % ny, cz = cell2/(nx*ny);
+			
+			for (int dir=0; dir<NUM_DIRECTIONS; dir++)
+			{
+				if ((connected[cell2] & (1 << dir)) == 0) continue;
+				int other = ((cz+DZ[dir])*ny + cy+DY[dir])*nx + cx+DX[dir];
+				int back = dir < 13 ? dir+13 : dir-13;
+				
+				if (steps[other] == -1)
+				{
+					steps[other] = steps[cell2]+1;
+					direction[other] = (byte)back;
+					queue[tail++] = other;
+				}
+				else if (steps[other] == steps[cell2]+1)
+				{
+					int ox = cx+DX[dir], oy = cy+DY[dir], oz = cz+DZ[dir];
+					int current = direction[other];
+					if (sqrDistance(cx, cy, cz, tx, ty, tz) < sqrDistance(ox+DX[current], oy+DY[current], oz+DZ[current], tx, ty, tz))
+						direction[other] = (byte)back;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Returns the number of steps from the given cell to the target cell, or -1 if it cannot be reached.
+	 */
+	public int getSteps(int cell)
+	{
+		if (cell == -1) return -1;
+		return steps[cell];
+	}
+	
+	/**
+	 * Returns whether the target can be reached from the given cell by the shortest possible route, as if there were no walls.
+	 * In that case, enemies can move straight toward the target instead of following the flow field.
+	 */
+	public boolean isDirect(int cell)
+	{
+		if (cell == -1 || target == -1 || steps[cell] == -1) return false;
+		int cx = cell % nx, cy = (cell/nx) % ny, cz = cell/(nx*ny);
+		int tx = target % nx, ty = (target/nx) % ny, tz = target/(nx*ny);
+		int fewest = Math.max(Math.abs(cx-tx), Math.max(Math.abs(cy-ty), Math.abs(cz-tz)));
+		return steps[cell] <= fewest+1;
+	}
+	
+	/**
+	 * Returns the x component of the unit vector that leads from the given cell toward the target, or 0 if there is none.
+	 */
+	public double getDirectionX(int cell)
+	{
+		if (cell == -1 || direction[cell] == -1) return 0;
+		return DIRECTION_X[direction[cell]];
+	}
+	
+	/**
+	 * Returns the y component of the unit vector that leads from the given cell toward the target, or 0 if there is none.
+	 */
+	public double getDirectionY(int cell)
+	{
+		if (cell == -1 || direction[cell] == -1) return 0;
+		return DIRECTION_Y[direction[cell]];
+	}
+	
+	/**
+	 * Returns the z component of the unit vector that leads from the given cell toward the target, or 0 if there is none.
+	 */
+	public double getDirectionZ(int cell)
+	{
+		if (cell == -1 || direction[cell] == -1) return 0;
+		return DIRECTION_Z[direction[cell]];
+	}
+	
+	/**
+	 * Returns the number of times the flow field was led to a new cell.
+	 */
+	public int getRebuilds()
+	{
+		return rebuilds;
+	}
+	
+	/**
+	 * Returns the number of cells in the grid.
+	 */
+	public int getNumCells()
+	{
+		return numCells;
+	}
+	
+	//Finds which neighboring cells are connected by casting rays between their centers.
+	private void computeConnections(Collision collision)
+	{
+		CollisionHit hit = new CollisionHit();
+		for (int cell=0; cell<numCells; cell++)
+		{
+			int cx = cell % nx, cy = (cell/nx) % ny, cz = cell/(nx*ny);
+			double x = xMin + (cx+0.5)*cellSize, y = yMin + (cy+0.5)*cellSize, z = zMin + (cz+0.5)*cellSize;
+			
+			//Only the directions toward positive indices are tested, since each connection goes both ways.
+			for (int dir=0; dir<13; dir++)
+			{
+				int ox = cx+DX[dir], oy = cy+DY[dir], oz = cz+DZ[dir];
+				if (ox < 0 || oy < 0 || oz < 0 || ox >= nx || oy >= ny || oz >= nz) continue;
+				
+				if (collision.getBulletCollision(x, y, z, DX[dir]*cellSize, DY[dir]*cellSize, DZ[dir]*cellSize, hit) == 1)
+				{
+					int other = (oz*ny + oy)*nx + ox;
+					connected[cell] |= 1 << dir;
+					connected[other] |= 1 << (dir+13);
+				}
+			}
+		}
+	}
+	
+	//Returns the square of the distance between two cells given by their coordinates.
+	private int sqrDistance(int x1, int y1, int z1, int x2, int y2, int z2)
+	{
+		return (x1-x2)*(x1-x2) + (y1-y2)*(y1-y2) + (z1-z2)*(z1-z2);
+	}
+}
@@ -0,0 +1,77 @@
+package patowen95.robotgame;
+
+/**
+ * A fast generator of pseudorandom numbers for gameplay, so that each World can have its own seeded generator
+ * instead of sharing Math.random with everything else. Given the same seed, it always produces the same numbers.
+ * <br/><br/>
+ * It is not thread-safe. Instead, split gives a new generator whose numbers do not overlap with this one's,
+ * so that each thread can have its own.
+ * @author Patrick Owen
+ */
+public class GameRandom
+{
+	private static final long GAMMA = 0x9e3779b97f4a7c15L; //Added to the state for every number; odd, so every state is reached
+	
+	private long state;
+	
+	/**
+	 * Creates a GameRandom with the given seed.
+	 */
+	public GameRandom(long seed)
+	{
+		state = seed;
+	}
+	
+	/**
+	 * Starts the sequence of numbers over from the given seed.
+	 */
+	public void setSeed(long seed)
+	{
+		state = seed;
+	}
+	
+	/**
+	 * Returns a pseudorandom long, with every value equally likely.
+	 */
+	public long nextLong()
+	{
+		/*
+		 * ALGORITHM 15:
+		 * Add a fixed odd constant to the state, so that the state goes through every long before repeating.
+		 * Mix the bits of the new state so that consecutive states give unrelated numbers: xor the high bits
+		 *   into the low bits and multiply, twice, then xor the high bits down once more.
+		 */
+		state += GAMMA;
+		long z = state;
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+	
+	/**
+	 * Returns a pseudorandom double from 0 (inclusive) to 1 (exclusive), like Math.random.
+	 */
+	public double nextDouble()
+	{
+		return (nextLong() >>> 11) * 0x1.0p-53;
+	}
+	
+	/**
+	 * Returns a pseudorandom int from 0 (inclusive) to bound (exclusive).
+	 * @param bound The number of possible values, which must be positive.
+	 */
+	public int nextInt(int bound)
+	{
+		if (bound <= 0) throw new IllegalArgumentException("bound must be positive");
+		return (int)(nextDouble()*bound);
+	}
+	
+	/**
+	 * Returns a new GameRandom seeded from this one. The new generator's numbers depend only on the state of this one,
+	 * so splitting in the same order always gives the same generators.
+	 */
+	public GameRandom split()
+	{
+		return new GameRandom(nextLong());
+	}
+}
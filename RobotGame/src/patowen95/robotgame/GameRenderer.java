@@ -23,6 +23,7 @@ public class GameRenderer implements GLEventListener
 	private InputHandler input;
 	
 	private int fps;
+	private long lastFrame; //Time of the last frame in nanoseconds
 	
 	/**
 	 * Sets up the main classes that run the game and the Open-GL
@@ -41,6 +42,7 @@ public class GameRenderer implements GLEventListener
 			public void windowDestroyNotify(WindowEvent e)
 			{
 				c.quit();
+				World.shutdownSharedPool();
 			}
 		});
 		
@@ -64,13 +66,17 @@ public class GameRenderer implements GLEventListener
 	public void display(GLAutoDrawable drawable)
 	{
 		c.setPerspective(drawable.getGL().getGL2(), win.getWidth(), win.getHeight());
-		c.step(1.0/fps);
+		long now = System.nanoTime();
+		c.advance((now - lastFrame)/1e9);
+		lastFrame = now;
+		
 		c.render(drawable.getGL().getGL2());
 	}
 	
 	public void init(GLAutoDrawable drawable)
 	{
 		c.init(drawable.getGL().getGL2());
+		lastFrame = System.nanoTime();
 	}
 	
 	public void reshape(GLAutoDrawable drawable, int x, int y, int width, int height)
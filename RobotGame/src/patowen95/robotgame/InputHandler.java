@@ -25,9 +25,12 @@ public class InputHandler implements KeyListener, MouseListener //Add MouseMotio
 	
 	//Mouse controls
 	private double mouseX, mouseY;
+	private int mouseDX, mouseDY; //How far the mouse moved in pixels, found by readMouse
 	private double mouseSensitivity;
 	private double mouseXPos, mouseYPos;
 	
+	private boolean replaying; //Whether the input comes from setInputState instead of the window
+	
 	//Variables used outside to choose which control is being inspected
 	/**
 	 * Index for the specified key control, used for reference.
@@ -62,6 +65,12 @@ public class InputHandler implements KeyListener, MouseListener //Add MouseMotio
 	//Whether the mouse buttons are down
 	private boolean[] mouseDown;
 	
+	//Whether the keys were down when updatePressed was last called, which is what is seen until it is called again
+	private boolean[] keyHeld;
+	
+	//Whether the mouse buttons were down when updatePressed was last called
+	private boolean[] mouseHeld;
+	
 	//Whether the key is canceled
 	private boolean[] keyCanceled;
 	
@@ -82,24 +91,29 @@ public class InputHandler implements KeyListener, MouseListener //Add MouseMotio
 	
 	/**
 	 * Initializes the inputs and sets up a Robot that controls the mouse.
-	 * @param comp The component that reads keyboard events.
+	 * @param comp The component that reads keyboard events, or null for an InputHandler
+	 * that receives no input, as used when running without a window.
 	 */
 	public InputHandler(GLWindow window)
 	{
-		try
-		{
-			robot = new Robot();
-		}
-		catch (AWTException e)
+		win = window;
+		if (win != null)
 		{
-			throw new RuntimeException("The program will not function properly with the current permissions");
+			try
+			{
+				robot = new Robot();
+			}
+			catch (AWTException e)
+			{
+				throw new RuntimeException("The program will not function properly with the current permissions");
+			}
+			
+			win.addKeyListener(this);
+			win.addMouseListener(this);
 		}
-		
-		win = window;
-		win.addKeyListener(this);
-		win.addMouseListener(this);
 		listener = null;
 		inputEnabled = true;
+		replaying = false;
 		
 		mouseSensitivity = 1.0/45/200;
 		
@@ -122,10 +136,12 @@ public class InputHandler implements KeyListener, MouseListener //Add MouseMotio
 		
 		//Initialize key and mouse control variables.
 		keyDown = new boolean[NUM_KEYS];
+		keyHeld = new boolean[NUM_KEYS];
 		keyCanceled = new boolean[NUM_KEYS];
 		keyPressed = new boolean[NUM_KEYS];
 		keyHelper = new boolean[NUM_KEYS];
 		mouseDown = new boolean[NUM_MOUSE_BUTTONS];
+		mouseHeld = new boolean[NUM_MOUSE_BUTTONS];
 		mouseCanceled = new boolean[NUM_MOUSE_BUTTONS];
 		mousePressed = new boolean[NUM_MOUSE_BUTTONS];
 		mouseHelper = new boolean[NUM_MOUSE_BUTTONS];
@@ -159,24 +175,105 @@ public class InputHandler implements KeyListener, MouseListener //Add MouseMotio
 	 */
 	public void readMouse()
 	{
-		if (win.hasFocus() && inputEnabled)
+		if (replaying)
+		{
+			mouseX = mouseDX*mouseSensitivity;
+			mouseY = mouseDY*mouseSensitivity;
+		}
+		else if (win != null && win.hasFocus() && inputEnabled)
 		{
 			Point mousePos = MouseInfo.getPointerInfo().getLocation();
 			int centerX = win.getX() + win.getWidth()/2;
 			int centerY = win.getY() + win.getHeight()/2;
 			
-			mouseX = (mousePos.getX()-centerX)*mouseSensitivity;
-			mouseY = (mousePos.getY()-centerY)*mouseSensitivity;
+			mouseDX = mousePos.x-centerX;
+			mouseDY = mousePos.y-centerY;
+			mouseX = mouseDX*mouseSensitivity;
+			mouseY = mouseDY*mouseSensitivity;
 			
 			robot.mouseMove(centerX, centerY);
 		}
 		else
 		{
+			mouseDX = 0;
+			mouseDY = 0;
 			mouseX = 0;
 			mouseY = 0;
 		}
 	}
 	
+	/**
+	 * Returns the controls that are down and that were just pressed, as seen by getKey, getKeyPressed,
+	 * getMouseButton, and getMouseButtonPressed, packed into an int for recording. Key i is down if
+	 * bit i is set and was just pressed if bit NUM_KEYS+i is set, and the mouse buttons follow the keys
+	 * in the same way.
+	 * @see #setInputState(int, int, int)
+	 */
+	public int getInputState()
+	{
+		int state = 0;
+		for (int i=0; i<NUM_KEYS; i++)
+		{
+			if (getKey(i)) state |= 1 << i;
+			if (getKeyPressed(i)) state |= 1 << (NUM_KEYS+i);
+		}
+		
+		int first = 2*NUM_KEYS;
+		for (int i=0; i<NUM_MOUSE_BUTTONS; i++)
+		{
+			if (getMouseButton(i)) state |= 1 << (first+i);
+			if (getMouseButtonPressed(i)) state |= 1 << (first+NUM_MOUSE_BUTTONS+i);
+		}
+		
+		return state;
+	}
+	
+	/**
+	 * Returns how far the mouse moved in pixels horizontally the last time readMouse was called.
+	 */
+	public int getMouseDX()
+	{
+		return mouseDX;
+	}
+	
+	/**
+	 * Returns how far the mouse moved in pixels vertically the last time readMouse was called.
+	 */
+	public int getMouseDY()
+	{
+		return mouseDY;
+	}
+	
+	/**
+	 * Replaces the input from the window with recorded input, until the InputHandler is used for anything else.
+	 * The controls are set as given until this is called again, and readMouse gives the given mouse movement.
+	 * @param state The controls that are down and were just pressed, as returned by getInputState.
+	 * @param dx How far the mouse moved in pixels horizontally, as returned by getMouseDX.
+	 * @param dy How far the mouse moved in pixels vertically, as returned by getMouseDY.
+	 */
+	public void setInputState(int state, int dx, int dy)
+	{
+		replaying = true;
+		
+		for (int i=0; i<NUM_KEYS; i++)
+		{
+			keyHeld[i] = (state & (1 << i)) != 0;
+			keyPressed[i] = (state & (1 << (NUM_KEYS+i))) != 0;
+			keyCanceled[i] = false;
+		}
+		
+		int first = 2*NUM_KEYS;
+		for (int i=0; i<NUM_MOUSE_BUTTONS; i++)
+		{
+			mouseHeld[i] = (state & (1 << (first+i))) != 0;
+			mousePressed[i] = (state & (1 << (first+NUM_MOUSE_BUTTONS+i))) != 0;
+			mouseCanceled[i] = false;
+		}
+		
+		mouseDX = dx;
+		mouseDY = dy;
+	}
+	
 	/**
 	 * Adds a KeyListener to listen for the same key events that the InputHandler
 	 * receives. This is useful for when the keyboard is used for something other
@@ -189,12 +286,18 @@ public class InputHandler implements KeyListener, MouseListener //Add MouseMotio
 	}
 	
 	/**
-	 * Updates which keys are pressed and which are not.
+	 * Updates which keys are pressed and which are not. The controls seen by the rest of the game only
+	 * change when this is called, so they stay the same for a whole step.
 	 */
 	public void updatePressed()
 	{
 		for (int i=0; i<NUM_KEYS; i++)
 		{
+			//A key that was released or pressed again since the last update is no longer canceled.
+			if (!keyDown[i] || keyHelper[i])
+				keyCanceled[i] = false;
+			keyHeld[i] = keyDown[i];
+			
 			if (keyHelper[i])
 			{
 				keyPressed[i] = true;
@@ -208,6 +311,10 @@ public class InputHandler implements KeyListener, MouseListener //Add MouseMotio
 		
 		for (int i=0; i<NUM_MOUSE_BUTTONS; i++)
 		{
+			if (!mouseDown[i] || mouseHelper[i])
+				mouseCanceled[i] = false;
+			mouseHeld[i] = mouseDown[i];
+			
 			if (mouseHelper[i])
 			{
 				mousePressed[i] = true;
@@ -226,7 +333,7 @@ public class InputHandler implements KeyListener, MouseListener //Add MouseMotio
 	 */
 	public void cancelMouseButton(int button)
 	{
-		if (mouseDown[button])
+		if (mouseHeld[button])
 			mouseCanceled[button] = true;
 		
 		//Cancel all equivalent mouse events
@@ -234,7 +341,7 @@ public class InputHandler implements KeyListener, MouseListener //Add MouseMotio
 		{
 			if (i == button) continue;
 			
-			if (mouseDown[i] && mouseButton[i] == mouseButton[button])
+			if (mouseHeld[i] && mouseButton[i] == mouseButton[button])
 				mouseCanceled[i] = true;
 		}
 	}
@@ -245,7 +352,7 @@ public class InputHandler implements KeyListener, MouseListener //Add MouseMotio
 	 */
 	public void cancelKey(int key)
 	{
-		if (keyDown[key])
+		if (keyHeld[key])
 			keyCanceled[key] = true;
 		
 		//Cancel all equivalent key events
@@ -253,7 +360,7 @@ public class InputHandler implements KeyListener, MouseListener //Add MouseMotio
 		{
 			if (i == key) continue;
 			
-			if (keyDown[i] && keyCode[i] == keyCode[key])
+			if (keyHeld[i] && keyCode[i] == keyCode[key])
 				keyCanceled[i] = true;
 		}
 	}
@@ -301,7 +408,7 @@ public class InputHandler implements KeyListener, MouseListener //Add MouseMotio
 	public boolean getKey(int key)
 	{
 		if (keyCanceled[key] || !inputEnabled) return false;
-		return keyDown[key];
+		return keyHeld[key];
 	}
 	
 	/**
@@ -311,7 +418,7 @@ public class InputHandler implements KeyListener, MouseListener //Add MouseMotio
 	public boolean getMouseButton(int button)
 	{
 		if (mouseCanceled[button] || !inputEnabled) return false;
-		return mouseDown[button];
+		return mouseHeld[button];
 	}
 	
 	/**
@@ -373,7 +480,6 @@ public class InputHandler implements KeyListener, MouseListener //Add MouseMotio
 			if (e.getKeyCode() == keyCode[i])
 			{
 				keyDown[i] = false;
-				keyCanceled[i] = false;
 			}
 		}
 	}
@@ -407,7 +513,6 @@ public class InputHandler implements KeyListener, MouseListener //Add MouseMotio
 			if (e.getButton() == mouseButton[i])
 			{
 				mouseDown[i] = false;
-				mouseCanceled[i] = false;
 			}
 		}
 	}
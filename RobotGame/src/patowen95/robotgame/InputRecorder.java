@@ -0,0 +1,84 @@
+package patowen95.robotgame;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes the input of every step of a level to a file that can be read as an InputRecording and replayed.
+ * If the file cannot be written, the error is printed and the rest of the recording is skipped, so that
+ * recording never stops the game.
+ * @author Patrick Owen
+ */
+public class InputRecorder
+{
+	private DataOutputStream out; //Null once the recording is closed or has failed
+	
+	/**
+	 * Creates the file and writes the description of the level to it.
+	 * @param file The file to write, which is replaced if it exists.
+	 * @param levelName The file name of the level in the maps folder.
+	 * @param seed The seed of the World being recorded.
+	 * @param tickRate The number of steps per second.
+	 */
+	public InputRecorder(File file, String levelName, long seed, double tickRate)
+	{
+		try
+		{
+			out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(file))));
+			out.writeInt(InputRecording.MAGIC);
+			out.writeInt(InputRecording.VERSION);
+			out.writeUTF(levelName);
+			out.writeLong(seed);
+			out.writeDouble(tickRate);
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+			close();
+		}
+	}
+	
+	/**
+	 * Writes the input of one step.
+	 * @param state The input state from the start of the step, from InputHandler's getInputState.
+	 * @param dx How far the mouse moved horizontally during the step, from InputHandler's getMouseDX.
+	 * @param dy How far the mouse moved vertically during the step, from InputHandler's getMouseDY.
+	 */
+	public void record(int state, int dx, int dy)
+	{
+		if (out == null) return;
+		
+		try
+		{
+			out.writeInt(state);
+			out.writeInt(dx);
+			out.writeInt(dy);
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+			close();
+		}
+	}
+	
+	/**
+	 * Finishes the file. Nothing more is recorded afterwards.
+	 */
+	public void close()
+	{
+		if (out == null) return;
+		
+		try
+		{
+			out.close();
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+		}
+		out = null;
+	}
+}
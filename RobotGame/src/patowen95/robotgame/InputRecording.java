@@ -0,0 +1,135 @@
+package patowen95.robotgame;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * The input of every step of a level, along with the level and the seed of its World, as written by
+ * an InputRecorder. Since a World plays out the same way for the same seed and input, creating a World
+ * with the seed and stepping it with the recorded input replays the level exactly.
+ * <br/><br/>
+ * The file is compressed with GZIP. It starts with MAGIC, VERSION, the file name of the level, the seed,
+ * and the tick rate, followed by one frame for every step: the InputHandler's input state as an int, and
+ * how far the mouse moved in pixels horizontally and vertically, all as ints. Frames that repeat,
+ * such as those with nothing pressed, take little space once compressed.
+ * @author Patrick Owen
+ */
+public class InputRecording
+{
+	/**
+	 * The first four bytes of every recording.
+	 */
+	public static final int MAGIC = 0x52474952;
+	
+	/**
+	 * The version of the file format, which changes whenever the format does.
+	 */
+	public static final int VERSION = 1;
+	
+	private String levelName;
+	private long seed;
+	private double tickRate;
+	
+	private int numFrames;
+	private int[] states;
+	private int[] mouseDX, mouseDY;
+	
+	/**
+	 * Reads a recording from a file.
+	 * @throws IOException If the file cannot be read or is not a recording of this version.
+	 */
+	public InputRecording(File file) throws IOException
+	{
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(file))));
+		try
+		{
+			if (in.readInt() != MAGIC) throw new IOException(file + " is not an input recording");
+			int version = in.readInt();
+			if (version != VERSION) throw new IOException(file + " has version " + version + " instead of " + VERSION);
+			
+			levelName = in.readUTF();
+			seed = in.readLong();
+			tickRate = in.readDouble();
+			
+			numFrames = 0;
+			states = new int[1024];
+			mouseDX = new int[1024];
+			mouseDY = new int[1024];
+			
+			while (true)
+			{
+				int state;
+				try
+				{
+					state = in.readInt();
+				}
+				catch (EOFException e)
+				{
+					break;
+				}
+				
+				if (numFrames == states.length)
+				{
+					states = Arrays.copyOf(states, 2*numFrames);
+					mouseDX = Arrays.copyOf(mouseDX, 2*numFrames);
+					mouseDY = Arrays.copyOf(mouseDY, 2*numFrames);
+				}
+				
+				states[numFrames] = state;
+				mouseDX[numFrames] = in.readInt();
+				mouseDY[numFrames] = in.readInt();
+				numFrames += 1;
+			}
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+	
+	/**
+	 * Returns the file name of the level in the maps folder.
+	 */
+	public String getLevelName()
+	{
+		return levelName;
+	}
+	
+	/**
+	 * Returns the seed of the World that was recorded.
+	 */
+	public long getSeed()
+	{
+		return seed;
+	}
+	
+	/**
+	 * Returns the number of steps per second, so that each step is 1/tickRate seconds.
+	 */
+	public double getTickRate()
+	{
+		return tickRate;
+	}
+	
+	/**
+	 * Returns the number of steps recorded.
+	 */
+	public int getNumFrames()
+	{
+		return numFrames;
+	}
+	
+	/**
+	 * Gives the InputHandler the input of a step, so that it is seen by the World in place of the input from the window.
+	 * @param frame The index of the step.
+	 */
+	public void play(InputHandler input, int frame)
+	{
+		input.setInputState(states[frame], mouseDX[frame], mouseDY[frame]);
+	}
+}
@@ -0,0 +1,242 @@
+package patowen95.robotgame;
+import java.util.IdentityHashMap;
+
+import patowen95.robotgame.entity.Entity;
+
+/**
+ * Remembers the results of the visibility checks that enemies make every step, such as whether
+ * an enemy can move toward the player or see the player. These answers rarely
+ * change from one step to the next, so an enemy looks up its last answer first and only checks again
+ * when it is unknown. An answer is forgotten when either end of the checked segment moves farther than
+ * the tolerance or when it is older than the maximum age. Both ends should be positions that the answer
+ * depends on, such as the enemy and the player, so checks whose answers depend on where other enemies are,
+ * like whether a shot would hit one, should not be remembered.
+ * <br/><br/>
+ * Each enemy has one answer for each kind of check. Queries are not thread-safe.
+ * <br/><br/>
+ * Checks between points that can never see each other, according to the VisibilitySet of the map,
+ * can be skipped entirely with canEverSee.
+ * @author Patrick Owen
+ */
+public class LineOfSight
+{
+	//Kinds of checks
+	public static final int PATH_TO_PLAYER = 0; //Whether a tracking enemy can move toward the player
+	public static final int SIGHT_LINE = 1; //Whether an enemy is facing the player with nothing in between
+	public static final int NUM_KINDS = 2;
+	
+	//Results of lookup
+	public static final int UNKNOWN = 0;
+	public static final int CLEAR = 1;
+	public static final int BLOCKED = 2;
+	
+	private IdentityHashMap<Entity, Entry[]> entries; //Answers of each enemy, indexed by kind
+	private double time; //Time since the level started
+	
+	private double tolerance; //How far an end of a segment can move before its answer is forgotten
+	private double maxAge; //How long an answer is kept, in seconds
+	
+	private VisibilitySet visibilitySet; //Null if the map has none
+	
+	//Metrics, indexed by kind
+	private long[] hits, misses;
+	private long culled; //Calls to canEverSee that returned false
+	
+	/**
+	 * Creates a new LineOfSight with no answers remembered.
+	 */
+	public LineOfSight()
+	{
+		entries = new IdentityHashMap<Entity, Entry[]>();
+		time = 0;
+		
+		tolerance = 0.25;
+		maxAge = 0.25;
+		
+		hits = new long[NUM_KINDS];
+		misses = new long[NUM_KINDS];
+		culled = 0;
+	}
+	
+	/**
+	 * Sets the potentially visible set used by canEverSee, or null to have it always return true.
+	 */
+	public void setVisibilitySet(VisibilitySet visibilitySet)
+	{
+		this.visibilitySet = visibilitySet;
+	}
+	
+	/**
+	 * Sets how far either end of a checked segment can move before its answer is forgotten.
+	 */
+	public void setTolerance(double tolerance)
+	{
+		this.tolerance = tolerance;
+	}
+	
+	/**
+	 * Sets how long an answer is kept in seconds. 0 turns off remembering answers.
+	 */
+	public void setMaxAge(double maxAge)
+	{
+		this.maxAge = maxAge;
+	}
+	
+	/**
+	 * Advances the clock used to find the age of each answer. World calls this once per step.
+	 * @param dt Time step in seconds.
+	 */
+	public void step(double dt)
+	{
+		time += dt;
+	}
+	
+	/**
+	 * Forgets every answer, as when the level is reset. The metrics are kept.
+	 */
+	public void clear()
+	{
+		entries.clear();
+		time = 0;
+	}
+	
+	/**
+	 * Forgets the answers of an entity that is removed from the world.
+	 */
+	public void remove(Entity e)
+	{
+		entries.remove(e);
+	}
+	
+	/**
+	 * Returns false if the two points can never see each other because of the walls of the map, in which case
+	 * any check of whether one can see the other can be skipped. Returns true if they might see each other.
+	 */
+	public boolean canEverSee(double x1, double y1, double z1, double x2, double y2, double z2)
+	{
+		if (visibilitySet == null || visibilitySet.canSee(x1, y1, z1, x2, y2, z2)) return true;
+		culled += 1;
+		return false;
+	}
+	
+	/**
+	 * Returns the remembered answer of a check, or UNKNOWN if the check needs to be made again.
+	 * In that case, the caller should make the check and pass the answer to store.
+	 * @param e The entity making the check.
+	 * @param kind The kind of check, such as PATH_TO_PLAYER.
+	 * @param x1
+	 * @param y1
+	 * @param z1 Start of the checked segment.
+	 * @param x2
+	 * @param y2
+	 * @param z2 End of the checked segment.
+	 * @return CLEAR, BLOCKED, or UNKNOWN.
+	 */
+	public int lookup(Entity e, int kind, double x1, double y1, double z1, double x2, double y2, double z2)
+	{
+		Entry[] list = entries.get(e);
+		Entry entry = list == null ? null : list[kind];
+		
+		if (entry == null || time - entry.time > maxAge
+				|| sqr(x1-entry.x1) + sqr(y1-entry.y1) + sqr(z1-entry.z1) > sqr(tolerance)
+				|| sqr(x2-entry.x2) + sqr(y2-entry.y2) + sqr(z2-entry.z2) > sqr(tolerance))
+		{
+			misses[kind] += 1;
+			return UNKNOWN;
+		}
+		
+		hits[kind] += 1;
+		return entry.clear ? CLEAR : BLOCKED;
+	}
+	
+	/**
+	 * Remembers the answer of a check that was just made. The arguments match those of lookup.
+	 * @param clear Whether the check found nothing in the way.
+	 */
+	public void store(Entity e, int kind, double x1, double y1, double z1, double x2, double y2, double z2, boolean clear)
+	{
+		Entry[] list = entries.get(e);
+		if (list == null)
+		{
+			list = new Entry[NUM_KINDS];
+			entries.put(e, list);
+		}
+		
+		Entry entry = list[kind];
+		if (entry == null)
+		{
+			entry = new Entry();
+			list[kind] = entry;
+		}
+		
+		entry.x1 = x1; entry.y1 = y1; entry.z1 = z1;
+		entry.x2 = x2; entry.y2 = y2; entry.z2 = z2;
+		entry.clear = clear;
+		entry.time = time;
+	}
+	
+	/**
+	 * Returns how many lookups of the given kind found a remembered answer.
+	 */
+	public long getHits(int kind)
+	{
+		return hits[kind];
+	}
+	
+	/**
+	 * Returns how many lookups of the given kind returned UNKNOWN.
+	 */
+	public long getMisses(int kind)
+	{
+		return misses[kind];
+	}
+	
+	/**
+	 * Returns how many calls to canEverSee found that the points can never see each other.
+	 */
+	public long getCulled()
+	{
+		return culled;
+	}
+	
+	/**
+	 * Returns the fraction of all lookups that found a remembered answer, or 0 if there were none.
+	 */
+	public double getHitRate()
+	{
+		long totalHits = 0, total = 0;
+		for (int kind=0; kind<NUM_KINDS; kind++)
+		{
+			totalHits += hits[kind];
+			total += hits[kind] + misses[kind];
+		}
+		return total == 0 ? 0 : (double)totalHits/total;
+	}
+	
+	/**
+	 * Sets all metrics back to 0.
+	 */
+	public void resetMetrics()
+	{
+		for (int kind=0; kind<NUM_KINDS; kind++)
+		{
+			hits[kind] = 0;
+			misses[kind] = 0;
+		}
+		culled = 0;
+	}
+	
+	//Returns x^2
+	private double sqr(double x)
+	{
+		return x*x;
+	}
+	
+	//The answer of one check
+	private static class Entry
+	{
+		double x1, y1, z1, x2, y2, z2; //Segment that was checked
+		boolean clear;
+		double time; //When the check was made
+	}
+}
@@ -0,0 +1,177 @@
+package patowen95.robotgame;
+import java.util.Arrays;
+
+/**
+ * A hash map from long keys to objects that stores the keys as primitives, so looking up, adding and
+ * removing keys never allocates anything once the table is large enough. Collisions are resolved by
+ * open addressing: a key that finds its slot taken goes in the next free slot after it.
+ * <br/><br/>
+ * Null values cannot be stored, since get returns null for missing keys.
+ * @author Patrick Owen
+ */
+public class LongMap<V>
+{
+	private static final double MAX_LOAD = 0.5; //The table doubles in size when it is fuller than this
+	
+	private long[] keys;
+	private Object[] values; //Null for empty slots
+	private int mask; //One less than the length of the table, which is a power of two
+	private int size;
+	
+	/**
+	 * Creates an empty LongMap.
+	 * @param capacity The number of keys it should hold without growing.
+	 */
+	public LongMap(int capacity)
+	{
+		int length = 16;
+		while (length*MAX_LOAD < capacity)
+			length *= 2;
+		
+		keys = new long[length];
+		values = new Object[length];
+		mask = length-1;
+		size = 0;
+	}
+	
+	/**
+	 * Returns the value of the key, or null if the key is not in the map.
+	 */
+	@SuppressWarnings("unchecked")
+	public V get(long key)
+	{
+		int i = find(key);
+		return i == -1 ? null : (V)values[i];
+	}
+	
+	/**
+	 * Returns whether the key is in the map.
+	 */
+	public boolean containsKey(long key)
+	{
+		return find(key) != -1;
+	}
+	
+	/**
+	 * Sets the value of the key, replacing any value it had.
+	 * @param value The new value, which cannot be null.
+	 */
+	public void put(long key, V value)
+	{
+		if (value == null) throw new IllegalArgumentException("LongMap cannot store null values");
+		
+		int i = slot(key);
+		while (values[i] != null)
+		{
+			if (keys[i] == key)
+			{
+				values[i] = value;
+				return;
+			}
+			i = (i+1) & mask;
+		}
+		
+		keys[i] = key;
+		values[i] = value;
+		size += 1;
+		
+		if (size > values.length*MAX_LOAD)
+			resize(values.length*2);
+	}
+	
+	/**
+	 * Removes the key from the map. Nothing is done if it is not in it.
+	 */
+	public void remove(long key)
+	{
+		int i = find(key);
+		if (i == -1) return;
+		
+		/*
+		 * ALGORITHM 13:
+		 * Emptying the slot could cut off keys further along the same run of full slots from their own slot,
+		 *   since lookups stop at the first empty slot. Walk the rest of the run and move back into the hole
+		 *   every key whose own slot is not between the hole and where the key is now, then continue with
+		 *   the slot it left as the new hole. No markers for removed keys are needed, so removing keys never
+		 *   makes lookups slower.
+		 */
+		int hole = i;
+		int j = (i+1) & mask;
+		while (values[j] != null)
+		{
+			int home = slot(keys[j]);
+			//The key can move to the hole unless its own slot lies cyclically in (hole, j].
+			boolean between = hole <= j ? (hole < home && home <= j) : (hole < home || home <= j);
+			if (!between)
+			{
+				keys[hole] = keys[j];
+				values[hole] = values[j];
+				hole = j;
+			}
+			j = (j+1) & mask;
+		}
+		
+		values[hole] = null;
+		size -= 1;
+	}
+	
+	/**
+	 * Removes every key from the map.
+	 */
+	public void clear()
+	{
+		Arrays.fill(values, null);
+		size = 0;
+	}
+	
+	/**
+	 * Returns the number of keys in the map.
+	 */
+	public int size()
+	{
+		return size;
+	}
+	
+	//Returns the slot holding the key, or -1 if the key is not in the map.
+	private int find(long key)
+	{
+		int i = slot(key);
+		while (values[i] != null)
+		{
+			if (keys[i] == key) return i;
+			i = (i+1) & mask;
+		}
+		return -1;
+	}
+	
+	//Returns the slot the key belongs in if it is not taken. The bits of the key are mixed so that keys differing
+	//only in their high bits, such as entity IDs with different owners, are spread over the table.
+	private int slot(long key)
+	{
+		key ^= key >>> 33;
+		key *= 0xff51afd7ed558ccdL;
+		key ^= key >>> 33;
+		return (int)key & mask;
+	}
+	
+	//Moves every key to a new table of the given length.
+	private void resize(int length)
+	{
+		long[] oldKeys = keys;
+		Object[] oldValues = values;
+		
+		keys = new long[length];
+		values = new Object[length];
+		mask = length-1;
+		
+		for (int i=0; i<oldValues.length; i++)
+		{
+			if (oldValues[i] == null) continue;
+			int j = slot(oldKeys[i]);
+			while (values[j] != null)
+				j = (j+1) & mask;
+			keys[j] = oldKeys[i];
+			values[j] = oldValues[i];
+		}
+	}
+}
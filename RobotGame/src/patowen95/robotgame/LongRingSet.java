@@ -0,0 +1,72 @@
+package patowen95.robotgame;
+
+/**
+ * A set of long keys that only remembers the most recently added ones. When it is full, adding a key
+ * forgets the oldest one. The keys are kept in a ring buffer in the order they were added, along with
+ * a LongMap for finding them, so nothing is allocated after construction.
+ * @author Patrick Owen
+ */
+public class LongRingSet
+{
+	private long[] ring; //Keys in the order they were added
+	private int start; //Position of the oldest key in the ring
+	private int size;
+	private LongMap<Boolean> members;
+	
+	/**
+	 * Creates an empty LongRingSet.
+	 * @param capacity The number of keys remembered before the oldest are forgotten.
+	 */
+	public LongRingSet(int capacity)
+	{
+		ring = new long[capacity];
+		start = 0;
+		size = 0;
+		members = new LongMap<Boolean>(capacity);
+	}
+	
+	/**
+	 * Adds the key to the set, forgetting the oldest key if the set is full. Nothing is done if the key is already in the set.
+	 */
+	public void add(long key)
+	{
+		if (members.containsKey(key)) return;
+		
+		if (size == ring.length)
+		{
+			members.remove(ring[start]);
+			start = (start+1) % ring.length;
+			size -= 1;
+		}
+		
+		ring[(start+size) % ring.length] = key;
+		size += 1;
+		members.put(key, Boolean.TRUE);
+	}
+	
+	/**
+	 * Returns whether the key is in the set.
+	 */
+	public boolean contains(long key)
+	{
+		return members.containsKey(key);
+	}
+	
+	/**
+	 * Removes every key from the set.
+	 */
+	public void clear()
+	{
+		members.clear();
+		start = 0;
+		size = 0;
+	}
+	
+	/**
+	 * Returns the number of keys in the set.
+	 */
+	public int size()
+	{
+		return size;
+	}
+}
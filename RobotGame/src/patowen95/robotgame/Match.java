@@ -0,0 +1,145 @@
+package patowen95.robotgame;
+
+/**
+ * A game hosted by a dedicated server, with its own headless Controller, World, and Server listening on its
+ * own port, so that it shares nothing with any other match in the same process. Something else, such as a
+ * DedicatedServer or a MatchHost, calls tick at the tick rate of the Controller.
+ * <br/><br/>
+ * Each match has a budget for how long one call to tick may spend stepping. A match that has fallen behind
+ * catches up only until its budget is used and then drops the rest of the time, so it slows down instead of
+ * holding on to a thread that other matches are waiting for.
+ * @author Patrick Owen
+ */
+public class Match
+{
+	private Controller c;
+	private int port;
+	private long budget; //Most nanoseconds one tick may spend stepping, or 0 for no limit
+	private long lastTick; //Time of the last tick in nanoseconds
+	
+	//Metrics
+	private long ticks; //Calls to tick
+	private long steps; //Steps run by all ticks
+	private long overruns; //Ticks that used their whole budget
+	private long longestTick; //Nanoseconds spent by the longest tick
+	
+	/**
+	 * Creates a Match hosting the given level. Its budget starts as the time between two steps.
+	 * @param levelName The file name of the level in the maps folder.
+	 * @param port The port the Server of the match listens on.
+	 */
+	public Match(String levelName, int port)
+	{
+		this.port = port;
+		
+		c = new Controller(null, null);
+		c.initHeadless();
+		c.startDedicatedServer(port);
+		c.setCurrentLevel(levelName);
+		
+		budget = Math.round(1e9/c.getTickRate());
+		lastTick = System.nanoTime();
+		resetMetrics();
+	}
+	
+	/**
+	 * Steps the game by the time that passed since the last tick, or since the Match was created for the first tick.
+	 */
+	public synchronized void tick()
+	{
+		long now = System.nanoTime();
+		int stepsRun = c.advance((now - lastTick)/1e9, budget);
+		lastTick = now;
+		
+		long elapsed = System.nanoTime() - now;
+		ticks += 1;
+		steps += stepsRun;
+		if (budget > 0 && elapsed >= budget) overruns += 1;
+		if (elapsed > longestTick) longestTick = elapsed;
+	}
+	
+	/**
+	 * Tells the clients that the match is over and frees the network socket. The match should not be ticked afterwards.
+	 */
+	public synchronized void close()
+	{
+		c.disconnect();
+		c.quit();
+	}
+	
+	/**
+	 * Sets the most time one tick may spend stepping.
+	 * @param budget Time in nanoseconds, or 0 for no limit.
+	 */
+	public synchronized void setBudget(long budget)
+	{
+		this.budget = budget;
+	}
+	
+	/**
+	 * Returns the most time in nanoseconds one tick may spend stepping, or 0 if there is no limit.
+	 */
+	public synchronized long getBudget()
+	{
+		return budget;
+	}
+	
+	/**
+	 * Returns the port the Server of the match listens on.
+	 */
+	public int getPort()
+	{
+		return port;
+	}
+	
+	/**
+	 * Returns the Controller running the match.
+	 */
+	public Controller getController()
+	{
+		return c;
+	}
+	
+	/**
+	 * Returns how many times the match was ticked.
+	 */
+	public synchronized long getTicks()
+	{
+		return ticks;
+	}
+	
+	/**
+	 * Returns how many steps the match ran.
+	 */
+	public synchronized long getSteps()
+	{
+		return steps;
+	}
+	
+	/**
+	 * Returns how many ticks used their whole budget.
+	 */
+	public synchronized long getOverruns()
+	{
+		return overruns;
+	}
+	
+	/**
+	 * Returns the time in nanoseconds spent by the longest tick.
+	 */
+	public synchronized long getLongestTick()
+	{
+		return longestTick;
+	}
+	
+	/**
+	 * Sets all metrics back to 0.
+	 */
+	public synchronized void resetMetrics()
+	{
+		ticks = 0;
+		steps = 0;
+		overruns = 0;
+		longestTick = 0;
+	}
+}
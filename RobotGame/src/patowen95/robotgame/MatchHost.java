@@ -0,0 +1,168 @@
+package patowen95.robotgame;
+import java.util.ArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hosts many independent matches in one process. Each Match has its own Controller, World, and Server on
+ * its own port, and the ticks of all the matches are scheduled on a fixed number of worker threads. Since
+ * each tick of a match stays within its budget, a match that falls behind slows down on its own instead
+ * of delaying the matches waiting for the same workers.
+ * <br/><br/>
+ * A match that throws an exception while ticking is closed and stops being ticked, and the rest keep running.
+ * @author Patrick Owen
+ */
+public class MatchHost
+{
+	private ScheduledExecutorService workers;
+	private ArrayList<Match> matches;
+	private ArrayList<ScheduledFuture<?>> ticks; //The scheduled ticks of each match, in the same order
+	
+	/**
+	 * Creates a MatchHost with no matches.
+	 * @param numWorkers The number of threads that tick the matches.
+	 */
+	public MatchHost(int numWorkers)
+	{
+		workers = Executors.newScheduledThreadPool(numWorkers);
+		matches = new ArrayList<Match>();
+		ticks = new ArrayList<ScheduledFuture<?>>();
+	}
+	
+	/**
+	 * Starts hosting a new match and ticking it at the tick rate of its Controller.
+	 * @param levelName The file name of the level in the maps folder.
+	 * @param port The port the Server of the match listens on, which no other match may use.
+	 */
+	public synchronized Match addMatch(String levelName, int port)
+	{
+		Match match = new Match(levelName, port);
+		long period = Math.round(1e9/match.getController().getTickRate());
+		
+		matches.add(match);
+		ticks.add(workers.scheduleAtFixedRate(new TickTask(match), period, period, TimeUnit.NANOSECONDS));
+		return match;
+	}
+	
+	/**
+	 * Stops ticking the match and closes it. Nothing is done if it is not hosted here.
+	 */
+	public synchronized void removeMatch(Match match)
+	{
+		int index = matches.indexOf(match);
+		if (index == -1) return;
+		
+		ticks.remove(index).cancel(false);
+		matches.remove(index);
+		match.close();
+	}
+	
+	/**
+	 * Returns a copy of the list of matches being hosted.
+	 */
+	public synchronized ArrayList<Match> getMatches()
+	{
+		return new ArrayList<Match>(matches);
+	}
+	
+	/**
+	 * Stops ticking every match and closes them all.
+	 */
+	public void stop()
+	{
+		workers.shutdown();
+		try
+		{
+			workers.awaitTermination(1, TimeUnit.SECONDS);
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		
+		synchronized (this)
+		{
+			for (Match match : matches)
+				match.close();
+			matches.clear();
+			ticks.clear();
+		}
+		World.shutdownSharedPool();
+	}
+	
+	/**
+	 * Hosts matches until the process is stopped, printing how each is keeping up every ten seconds.
+	 * @param args The file name of the level in the maps folder, the number of matches, the port of the first match
+	 * (each other match uses the next port), and the number of worker threads. They default to arena.txt, 4 matches,
+	 * the default port of Server, and one worker for each processor.
+	 */
+	public static void main(String[] args)
+	{
+		String levelName = args.length > 0 ? args[0] : "arena.txt";
+		int numMatches = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+		int firstPort = args.length > 2 ? Integer.parseInt(args[2]) : Server.DEFAULT_PORT;
+		int numWorkers = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+		
+		final MatchHost host = new MatchHost(numWorkers);
+		Runtime.getRuntime().addShutdownHook(new Thread()
+		{
+			public void run()
+			{
+				host.stop();
+			}
+		});
+		
+		for (int i=0; i<numMatches; i++)
+			host.addMatch(levelName, firstPort+i);
+		System.out.println("Hosting " + numMatches + " matches of " + levelName + " on ports " + firstPort + "-" + (firstPort+numMatches-1)
+				+ " with " + numWorkers + " workers");
+		
+		while (true)
+		{
+			try
+			{
+				Thread.sleep(10000);
+			}
+			catch (InterruptedException e)
+			{
+				return;
+			}
+			
+			for (Match match : host.getMatches())
+			{
+				System.out.printf("port %d: %d ticks, %d steps, %d over budget, longest tick %.2f ms%n", match.getPort(),
+						match.getTicks(), match.getSteps(), match.getOverruns(), match.getLongestTick()/1e6);
+				match.resetMetrics();
+			}
+		}
+	}
+	
+	/**
+	 * Ticks a Match each time a worker runs it, and closes the match if ticking it fails.
+	 */
+	private class TickTask implements Runnable
+	{
+		private Match match;
+		
+		public TickTask(Match match)
+		{
+			this.match = match;
+		}
+		
+		public void run()
+		{
+			try
+			{
+				match.tick();
+			}
+			catch (RuntimeException e)
+			{
+				System.err.println("Match on port " + match.getPort() + " failed and was closed");
+				e.printStackTrace();
+				removeMatch(match);
+			}
+		}
+	}
+}
@@ -0,0 +1,126 @@
+package patowen95.robotgame;
+import java.util.Arrays;
+
+/**
+ * A list of rays (line segments) that are tested against the walls of a Collision all at once,
+ * along with the results of the test. World fills a RayBatch with the rays that entities
+ * will cast in the upcoming step so that they can read their results while stepping.
+ * @author Patrick Owen
+ */
+public class RayBatch
+{
+	private int count;
+	double[] x, y, z; //Ray origins
+	double[] xd, yd, zd; //Ray displacements
+	double[] time; //Results, 1 for no collision
+	double[] normalX, normalY, normalZ;
+	
+	/**
+	 * Creates an empty RayBatch.
+	 */
+	public RayBatch()
+	{
+		count = 0;
+		allocate(64);
+	}
+	
+	/**
+	 * Removes all rays from the batch.
+	 */
+	public void clear()
+	{
+		count = 0;
+	}
+	
+	/**
+	 * Adds a ray to the batch. Its results are set to no collision until the batch is tested.
+	 * @param xStart
+	 * @param yStart
+	 * @param zStart Origin of the ray.
+	 * @param xDisp
+	 * @param yDisp
+	 * @param zDisp Displacement from the origin to the end of the ray.
+	 * @return The index of the ray in the batch.
+	 */
+	public int add(double xStart, double yStart, double zStart, double xDisp, double yDisp, double zDisp)
+	{
+		if (count == x.length)
+			allocate(2*count);
+		
+		int i = count;
+		x[i] = xStart; y[i] = yStart; z[i] = zStart;
+		xd[i] = xDisp; yd[i] = yDisp; zd[i] = zDisp;
+		time[i] = 1; normalX[i] = 0; normalY[i] = 0; normalZ[i] = 0;
+		count += 1;
+		return i;
+	}
+	
+	/**
+	 * Returns the number of rays in the batch.
+	 */
+	public int size()
+	{
+		return count;
+	}
+	
+	/**
+	 * Returns whether the ray at the given index exists and exactly matches the given ray. Entities should check this
+	 * before using a result, as the ray they queued may no longer describe where they are going.
+	 * @param i Index returned by add, or -1 if no ray was added.
+	 */
+	public boolean matches(int i, double xStart, double yStart, double zStart, double xDisp, double yDisp, double zDisp)
+	{
+		if (i < 0 || i >= count) return false;
+		return x[i] == xStart && y[i] == yStart && z[i] == zStart && xd[i] == xDisp && yd[i] == yDisp && zd[i] == zDisp;
+	}
+	
+	/**
+	 * Returns the value from 0 to 1 for the part of the ray before its first collision, or 1 if it hits nothing.
+	 */
+	public double getTime(int i)
+	{
+		return time[i];
+	}
+	
+	/**
+	 * Returns the x-component of the normal of the wall the ray hit, or 0 if it hits nothing.
+	 */
+	public double getNormalX(int i)
+	{
+		return normalX[i];
+	}
+	
+	/**
+	 * Returns the y-component of the normal of the wall the ray hit, or 0 if it hits nothing.
+	 */
+	public double getNormalY(int i)
+	{
+		return normalY[i];
+	}
+	
+	/**
+	 * Returns the z-component of the normal of the wall the ray hit, or 0 if it hits nothing.
+	 */
+	public double getNormalZ(int i)
+	{
+		return normalZ[i];
+	}
+	
+	//Resizes the arrays to hold the given number of rays, keeping the rays already added.
+	private void allocate(int capacity)
+	{
+		if (x == null)
+		{
+			x = new double[capacity]; y = new double[capacity]; z = new double[capacity];
+			xd = new double[capacity]; yd = new double[capacity]; zd = new double[capacity];
+			time = new double[capacity];
+			normalX = new double[capacity]; normalY = new double[capacity]; normalZ = new double[capacity];
+			return;
+		}
+		
+		x = Arrays.copyOf(x, capacity); y = Arrays.copyOf(y, capacity); z = Arrays.copyOf(z, capacity);
+		xd = Arrays.copyOf(xd, capacity); yd = Arrays.copyOf(yd, capacity); zd = Arrays.copyOf(zd, capacity);
+		time = Arrays.copyOf(time, capacity);
+		normalX = Arrays.copyOf(normalX, capacity); normalY = Arrays.copyOf(normalY, capacity); normalZ = Arrays.copyOf(normalZ, capacity);
+	}
+}
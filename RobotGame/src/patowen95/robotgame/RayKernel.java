@@ -0,0 +1,21 @@
+package patowen95.robotgame;
+
+/**
+ * Tests one wall against many bullet paths at once for Collision.getBulletCollisions. The paths are stored
+ * in the pair arrays of a CollisionHit, so that the paths of one wall sit next to each other.
+ * @author Patrick Owen
+ */
+interface RayKernel
+{
+	/**
+	 * Stores in h.pairTime[k], for each pair k from start to end-1, the value from 0 to 1 where the path of the pair
+	 * crosses the plane of wall i inside the triangle, or 1 if it does not. The value must be exactly the one
+	 * Collision.testWallScalar finds, so that the results do not depend on which kernel is used.
+	 * @param collision The Collision that holds the wall.
+	 * @param i The index of the wall.
+	 * @param h Holds the paths, and receives the results.
+	 * @param start
+	 * @param end The range of pairs to test.
+	 */
+	public void testWall(Collision collision, int i, CollisionHit h, int start, int end);
+}
@@ -10,6 +10,11 @@ import java.net.SocketException;
  */
 public class Server extends Network
 {	
+	/**
+	 * The port servers listen on unless another is given, which is the port clients connect to.
+	 */
+	public static final int DEFAULT_PORT = 4445;
+	
 	private int capacity, numPlayers;
 	private InetAddress[] clientIP;
 	private int[] clientPort;
@@ -21,6 +26,15 @@ public class Server extends Network
 	private boolean connected;
 	
 	public Server(Controller controller, int cap)
+	{
+		this(controller, cap, DEFAULT_PORT);
+	}
+	
+	/**
+	 * Creates a Server listening on the given port, so that more than one can run on the same computer.
+	 * @param cap The most clients that can be logged in at once.
+	 */
+	public Server(Controller controller, int cap, int port)
 	{
 		super(controller);
 		
@@ -37,7 +51,7 @@ public class Server extends Network
 		
 		try
 		{
-			socket = new DatagramSocket(4445);
+			socket = new DatagramSocket(port);
 		}
 		catch (SocketException e)
 		{
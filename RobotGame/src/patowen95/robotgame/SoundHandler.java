@@ -23,16 +23,30 @@ public class SoundHandler
 	private float[] gain;
 	private ArrayList<Source> sources;
 	private Listener l;
+	private boolean enabled;
 	
 	/**
 	 * Constructs a SoundHandler object.
 	 */
 	public SoundHandler()
 	{
+		this(true);
+	}
+	
+	/**
+	 * Constructs a SoundHandler object.
+	 * @param enabled Whether to open the audio device. If false, every method does nothing,
+	 * which allows the game to run where there is no audio device.
+	 */
+	public SoundHandler(boolean enabled)
+	{
+		this.enabled = enabled;
 		sounds = new Buffer[3];
 		gain = new float[3];
 		sources = new ArrayList<Source>();
 		
+		if (!enabled) return;
+		
 		AudioSystem3D.init();
 		context = AudioSystem3D.createContext(AudioSystem3D.openDevice(null));
 		AudioSystem3D.makeContextCurrent(context);
@@ -59,6 +73,7 @@ public class SoundHandler
 	
 	public void step()
 	{
+		if (!enabled) return;
 		for (int i=0; i<sources.size(); i++)
 		{
 			if (!sources.get(i).isPlaying())
@@ -72,6 +87,7 @@ public class SoundHandler
 	
 	public void destroy()
 	{
+		if (!enabled) return;
 		context.getDevice().close();
 		//context.destroy();
 	}
@@ -84,6 +100,7 @@ public class SoundHandler
 	 */
 	public void setListenerPosition(double x, double y, double z)
 	{
+		if (!enabled) return;
 		l.setPosition(-(float)x, (float)y, (float)z);
 	}
 	
@@ -95,6 +112,7 @@ public class SoundHandler
 	 */
 	public void setListenerOrientation(double xTo, double yTo, double zTo, double xUp, double yUp, double zUp)
 	{
+		if (!enabled) return;
 		l.setOrientation(new float[] {-(float)xUp, (float)yUp, (float)zUp, -(float)xTo, (float)yTo, (float)zTo});
 	}
 	
@@ -104,6 +122,7 @@ public class SoundHandler
 	 */
 	public void playSound(int i)
 	{
+		if (!enabled) return;
 		Source s = AudioSystem3D.generateSource(sounds[i]);
 		
 		s.setPosition(0, 1, 0);
@@ -126,6 +145,7 @@ public class SoundHandler
 	 */
 	public void playSound(int i, double x, double y, double z)
 	{
+		if (!enabled) return;
 		Source s = AudioSystem3D.generateSource(sounds[i]);
 		
 		s.setPosition(-(float)x, (float)y, (float)z);
@@ -0,0 +1,431 @@
+package patowen95.robotgame;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+
+import patowen95.robotgame.entity.Collidable;
+import patowen95.robotgame.entity.Damageable;
+import patowen95.robotgame.entity.Entity;
+
+/**
+ * Sorts the entities that can be hit or collided with into a uniform grid of cells so that
+ * the ones near a given region can be found without looking at every entity in the World.
+ * Each entity is stored in the cell that contains its position, and queries are expanded by
+ * the largest size and movement of any stored entity so that they still find every entity
+ * whose bounds reach into the region. The bounds of an entity are centered on its previous
+ * position and extend in every direction by the distance it moved in the last step, which
+ * holds every position that Collision's moving-entity checks test against.
+ * <br/><br/>
+ * Positions are read from the arrays of an EntityStore, so an entity must be stored there before
+ * it is added, and removed from the SpatialHash before it is removed from the store.
+ * @author Patrick Owen
+ */
+public class SpatialHash
+{
+	private static final int NUM_BUCKETS = 1024; //Must be a power of two
+	
+	private double cellSize;
+	private EntityStore store; //Holds the positions of the entities
+	private ArrayList<ArrayList<Entry>> buckets;
+	private IdentityHashMap<Entity, Entry> entries;
+	private ArrayList<Entry> entryList; //The same entries in an order that depends only on when they were added and removed
+	
+	//How far the bounds of a stored entity can reach outside of its cell, horizontally, upwards and downwards.
+	//The previous values are kept until every entity has been updated in the current step.
+	private double reachXY, reachUp, reachDown;
+	private double reachXYPrevious, reachUpPrevious, reachDownPrevious;
+	
+	/**
+	 * Constructs an empty SpatialHash.
+	 * @param size The width of each cell.
+	 * @param entityStore The store holding the positions of the entities that will be added.
+	 */
+	public SpatialHash(double size, EntityStore entityStore)
+	{
+		cellSize = size;
+		store = entityStore;
+		
+		buckets = new ArrayList<ArrayList<Entry>>(NUM_BUCKETS);
+		for (int i=0; i<NUM_BUCKETS; i++)
+			buckets.add(new ArrayList<Entry>());
+		
+		entries = new IdentityHashMap<Entity, Entry>(1024);
+		entryList = new ArrayList<Entry>(1024);
+	}
+	
+	/**
+	 * Removes all entities from the SpatialHash.
+	 */
+	public void clear()
+	{
+		for (ArrayList<Entry> bucket : buckets)
+			bucket.clear();
+		entries.clear();
+		entryList.clear();
+		
+		reachXY = 0; reachUp = 0; reachDown = 0;
+		reachXYPrevious = 0; reachUpPrevious = 0; reachDownPrevious = 0;
+	}
+	
+	/**
+	 * Should be called before entities are stepped so that the reach of entities
+	 * from the previous step can be forgotten once all of them have moved again.
+	 */
+	public void startStep()
+	{
+		reachXYPrevious = reachXY; reachUpPrevious = reachUp; reachDownPrevious = reachDown;
+		reachXY = 0; reachUp = 0; reachDown = 0;
+	}
+	
+	/**
+	 * Adds the entity to the SpatialHash or moves it to the cell that matches its current position.
+	 * Entities that can be neither damaged nor collided with are ignored.
+	 * @param e The entity that moved.
+	 */
+	public void update(Entity e)
+	{
+		double radius, height;
+		if (e instanceof Damageable)
+		{
+			radius = ((Damageable)e).getRadius();
+			height = ((Damageable)e).getHeight();
+		}
+		else if (e instanceof Collidable)
+		{
+			radius = ((Collidable)e).getRadius();
+			height = ((Collidable)e).getHeight();
+		}
+		else return;
+		
+		int h = e.getHandle();
+		double[] x = store.getXArray(), y = store.getYArray(), z = store.getZArray();
+		double[] xPrevious = store.getXPreviousArray(), yPrevious = store.getYPreviousArray(), zPrevious = store.getZPreviousArray();
+		
+		Entry entry = entries.get(e);
+		int cx = getCell(x[h]), cy = getCell(y[h]), cz = getCell(z[h]);
+		
+		if (entry == null)
+		{
+			entry = new Entry(e);
+			entries.put(e, entry);
+			entry.index = entryList.size();
+			entryList.add(entry);
+			entry.setCell(cx, cy, cz);
+			entry.radius = radius;
+			entry.height = height;
+			buckets.get(entry.bucket).add(entry);
+			
+			//The entity has not been stepped, so its previous position is meaningless.
+			reachXY = Math.max(reachXY, radius);
+			reachDown = Math.max(reachDown, height);
+			return;
+		}
+		
+		if (entry.cx != cx || entry.cy != cy || entry.cz != cz)
+		{
+			buckets.get(entry.bucket).remove(entry);
+			entry.setCell(cx, cy, cz);
+			buckets.get(entry.bucket).add(entry);
+		}
+		entry.radius = radius;
+		entry.height = height;
+		
+		//The bounds are centered on the previous position, which is one movement away from the cell.
+		double moveXY = Math.max(Math.abs(x[h]-xPrevious[h]), Math.abs(y[h]-yPrevious[h]));
+		double moveZ = Math.abs(z[h]-zPrevious[h]);
+		reachXY = Math.max(reachXY, radius+2*moveXY);
+		reachUp = Math.max(reachUp, 2*moveZ);
+		reachDown = Math.max(reachDown, height+2*moveZ);
+	}
+	
+	/**
+	 * Removes the entity from the SpatialHash.
+	 * @param e The entity to remove.
+	 */
+	public void remove(Entity e)
+	{
+		Entry entry = entries.remove(e);
+		if (entry == null) return;
+		buckets.get(entry.bucket).remove(entry);
+		
+		//Move the last entry into the gap.
+		Entry last = entryList.remove(entryList.size()-1);
+		if (last != entry)
+		{
+			last.index = entry.index;
+			entryList.set(entry.index, last);
+		}
+	}
+	
+	/**
+	 * Finds the stored entities whose bounds intersect the given box.
+	 * @param xMin
+	 * @param yMin
+	 * @param zMin Minimum corner of the box.
+	 * @param xMax
+	 * @param yMax
+	 * @param zMax Maximum corner of the box.
+	 * @param result Receives the entities found. It is cleared first.
+	 */
+	public void getEntities(double xMin, double yMin, double zMin, double xMax, double yMax, double zMax, ArrayList<Entity> result)
+	{
+		result.clear();
+		
+		double padXY = Math.max(reachXY, reachXYPrevious);
+		double padUp = Math.max(reachUp, reachUpPrevious);
+		double padDown = Math.max(reachDown, reachDownPrevious);
+		
+		int cx1 = getCell(xMin-padXY), cy1 = getCell(yMin-padXY), cz1 = getCell(zMin-padDown);
+		int cx2 = getCell(xMax+padXY), cy2 = getCell(yMax+padXY), cz2 = getCell(zMax+padUp);
+		
+		//If the region covers more cells than there are entities, looking at every entity is quicker.
+		//The list is used rather than the map, whose order depends on identity hash codes and would differ between runs.
+		long numCells = (long)(cx2-cx1+1) * (cy2-cy1+1) * (cz2-cz1+1);
+		if (numCells > entryList.size())
+		{
+			for (int i=0; i<entryList.size(); i++)
+			{
+				Entry entry = entryList.get(i);
+				if (entry.intersectsBox(xMin, yMin, zMin, xMax, yMax, zMax))
+					result.add(entry.entity);
+			}
+			return;
+		}
+		
+		for (int cx=cx1; cx<=cx2; cx++)
+		{
+			for (int cy=cy1; cy<=cy2; cy++)
+			{
+				for (int cz=cz1; cz<=cz2; cz++)
+				{
+					//Different cells can share a bucket, so only take the entries that belong to this cell.
+					for (Entry entry : buckets.get(getBucket(cx, cy, cz)))
+					{
+						if (entry.cx != cx || entry.cy != cy || entry.cz != cz) continue;
+						if (entry.intersectsBox(xMin, yMin, zMin, xMax, yMax, zMax))
+							result.add(entry.entity);
+					}
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Finds the stored entities whose bounds intersect the line segment between (x, y, z) and (x+xd, y+yd, z+zd).
+	 * @param x
+	 * @param y
+	 * @param z Start of the segment.
+	 * @param xd
+	 * @param yd
+	 * @param zd Displacement to the end of the segment.
+	 * @param result Receives the entities found. It is cleared first.
+	 */
+	public void getEntitiesAlongPath(double x, double y, double z, double xd, double yd, double zd, ArrayList<Entity> result)
+	{
+		getEntities(Math.min(x, x+xd), Math.min(y, y+yd), Math.min(z, z+zd),
+				Math.max(x, x+xd), Math.max(y, y+yd), Math.max(z, z+zd), result);
+		
+		double ix = Collision.inverse(xd), iy = Collision.inverse(yd), iz = Collision.inverse(zd);
+		for (int i=0; i<result.size(); i++)
+		{
+			if (!entries.get(result.get(i)).intersectsSegment(x, y, z, ix, iy, iz))
+			{
+				result.set(i, result.get(result.size()-1));
+				result.remove(result.size()-1);
+				i--;
+			}
+		}
+	}
+	
+	/**
+	 * Finds the stored entities whose current bounds come within the given distance of (x, y, z). The bounds are
+	 * treated as a vertical segment from the entity's feet to the top of its height, widened by its radius, so the
+	 * rounded ends can reach slightly past the flat ends of its cylinder.
+	 * @param x
+	 * @param y
+	 * @param z Center of the sphere.
+	 * @param radius Radius of the sphere.
+	 * @param result Receives the entities found. It is cleared first.
+	 */
+	public void getEntitiesInSphere(double x, double y, double z, double radius, ArrayList<Entity> result)
+	{
+		//The rounded ends of the bounds reach above and below the box of the entity by its radius.
+		double zPad = radius + Math.max(reachXY, reachXYPrevious);
+		getEntities(x-radius, y-radius, z-zPad, x+radius, y+radius, z+zPad, result);
+		
+		for (int i=0; i<result.size(); i++)
+		{
+			Entry entry = entries.get(result.get(i));
+			double reach = radius + entry.radius;
+			if (entry.sqrDistanceToPoint(x, y, z) > reach*reach)
+			{
+				result.set(i, result.get(result.size()-1));
+				result.remove(result.size()-1);
+				i--;
+			}
+		}
+	}
+	
+	/**
+	 * Finds the stored entities whose current bounds come within the given distance of the line segment between
+	 * (x, y, z) and (x+xd, y+yd, z+zd), treating the bounds the same way as getEntitiesInSphere.
+	 * @param x
+	 * @param y
+	 * @param z Start of the segment.
+	 * @param xd
+	 * @param yd
+	 * @param zd Displacement to the end of the segment.
+	 * @param radius Distance from the segment.
+	 * @param result Receives the entities found. It is cleared first.
+	 */
+	public void getEntitiesInCapsule(double x, double y, double z, double xd, double yd, double zd, double radius, ArrayList<Entity> result)
+	{
+		double zPad = radius + Math.max(reachXY, reachXYPrevious);
+		getEntities(Math.min(x, x+xd)-radius, Math.min(y, y+yd)-radius, Math.min(z, z+zd)-zPad,
+				Math.max(x, x+xd)+radius, Math.max(y, y+yd)+radius, Math.max(z, z+zd)+zPad, result);
+		
+		for (int i=0; i<result.size(); i++)
+		{
+			Entry entry = entries.get(result.get(i));
+			double reach = radius + entry.radius;
+			if (entry.sqrDistanceToSegment(x, y, z, xd, yd, zd) > reach*reach)
+			{
+				result.set(i, result.get(result.size()-1));
+				result.remove(result.size()-1);
+				i--;
+			}
+		}
+	}
+	
+	//Returns the index of the cell containing the given coordinate.
+	private int getCell(double pos)
+	{
+		return (int)Math.floor(pos/cellSize);
+	}
+	
+	//Returns the bucket that holds the specified cell.
+	private static int getBucket(int cx, int cy, int cz)
+	{
+		return (cx*73856093 ^ cy*19349663 ^ cz*83492791) & (NUM_BUCKETS-1);
+	}
+	
+	//An entity stored in the SpatialHash along with its location in the grid.
+	private class Entry
+	{
+		public final Entity entity;
+		public double radius, height;
+		public int cx, cy, cz;
+		public int bucket;
+		public int index; //Position in entryList
+		
+		public Entry(Entity e)
+		{
+			entity = e;
+		}
+		
+		public void setCell(int cellX, int cellY, int cellZ)
+		{
+			cx = cellX; cy = cellY; cz = cellZ;
+			bucket = getBucket(cx, cy, cz);
+		}
+		
+		//Returns whether the bounds of the entity intersect the given box.
+		public boolean intersectsBox(double xMin, double yMin, double zMin, double xMax, double yMax, double zMax)
+		{
+			int h = entity.getHandle();
+			double xPrevious = store.getXPreviousArray()[h], yPrevious = store.getYPreviousArray()[h], zPrevious = store.getZPreviousArray()[h];
+			double xMove = Math.abs(store.getXArray()[h]-xPrevious) + radius;
+			double yMove = Math.abs(store.getYArray()[h]-yPrevious) + radius;
+			double zMove = Math.abs(store.getZArray()[h]-zPrevious);
+			if (xMax < xPrevious-xMove || xMin > xPrevious+xMove) return false;
+			if (yMax < yPrevious-yMove || yMin > yPrevious+yMove) return false;
+			if (zMax < zPrevious-zMove || zMin > zPrevious+zMove+height) return false;
+			return true;
+		}
+		
+		//Returns whether the bounds of the entity intersect the given line segment, whose displacement is given by its inverse from Collision.inverse.
+		public boolean intersectsSegment(double x, double y, double z, double ix, double iy, double iz)
+		{
+			int h = entity.getHandle();
+			double xPrevious = store.getXPreviousArray()[h], yPrevious = store.getYPreviousArray()[h], zPrevious = store.getZPreviousArray()[h];
+			double xMove = Math.abs(store.getXArray()[h]-xPrevious) + radius;
+			double yMove = Math.abs(store.getYArray()[h]-yPrevious) + radius;
+			double zMove = Math.abs(store.getZArray()[h]-zPrevious);
+			return Collision.segmentHitsBox(x, y, z, ix, iy, iz, xPrevious-xMove, yPrevious-yMove, zPrevious-zMove,
+					xPrevious+xMove, yPrevious+yMove, zPrevious+zMove+height);
+		}
+		
+		//Returns the square of the distance between the given point and the vertical segment through the current bounds of the entity.
+		public double sqrDistanceToPoint(double x, double y, double z)
+		{
+			/*
+			 * ALGORITHM 10:
+			 * Find the height on the entity's segment, from its feet to the top of its height, closest to the point
+			 *   by clamping the height of the point between the ends of the segment.
+			 * Return the squared distance from the point to the entity's segment at that height.
+			 */
+			int h = entity.getHandle();
+			double ez = store.getZArray()[h];
+			double xGap = x-store.getXArray()[h], yGap = y-store.getYArray()[h];
+			double zGap = z - Math.max(ez, Math.min(z, ez+height));
+			return xGap*xGap + yGap*yGap + zGap*zGap;
+		}
+		
+		//Returns the square of the distance between the given segment and the vertical segment through the current bounds of the entity.
+		public double sqrDistanceToSegment(double x, double y, double z, double xd, double yd, double zd)
+		{
+			/*
+			 * ALGORITHM 16:
+			 * Write points on the given segment as (x, y, z) + s*(xd, yd, zd) and points on the entity's segment as
+			 *   (ex, ey, ez) + u*(0, 0, height), with s and u between 0 and 1.
+			 * Find the values of s and u that are closest on the infinite lines through the segments, clamping s.
+			 * Find the value of u closest to that point on the given segment. If it is outside the entity's segment,
+			 *   clamp it and find the value of s closest to that end of the entity's segment instead.
+			 * Either segment may have no length, in which case its parameter is always 0.
+			 */
+			int h = entity.getHandle();
+			double rx = x-store.getXArray()[h], ry = y-store.getYArray()[h], rz = z-store.getZArray()[h];
+			double a = xd*xd + yd*yd + zd*zd; //Squared length of the given segment
+			double c = xd*rx + yd*ry + zd*rz;
+			double f = height*rz;
+			double h2 = height*height; //Squared length of the entity's segment
+			
+			double s, u;
+			if (a == 0 && h2 == 0)
+			{
+				s = 0; u = 0;
+			}
+			else if (a == 0)
+			{
+				s = 0; u = clamp(f/h2);
+			}
+			else if (h2 == 0)
+			{
+				u = 0; s = clamp(-c/a);
+			}
+			else
+			{
+				double b = zd*height;
+				double denom = a*h2 - b*b;
+				s = denom == 0 ? 0 : clamp((b*f - c*h2)/denom);
+				u = (b*s + f)/h2;
+				if (u < 0)
+				{
+					u = 0; s = clamp(-c/a);
+				}
+				else if (u > 1)
+				{
+					u = 1; s = clamp((b-c)/a);
+				}
+			}
+			
+			double xGap = rx+s*xd, yGap = ry+s*yd, zGap = rz+s*zd-u*height;
+			return xGap*xGap + yGap*yGap + zGap*zGap;
+		}
+		
+		//Returns t clamped between 0 and 1.
+		private double clamp(double t)
+		{
+			return t < 0 ? 0 : t > 1 ? 1 : t;
+		}
+	}
+}
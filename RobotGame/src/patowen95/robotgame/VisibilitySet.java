@@ -0,0 +1,204 @@
+package patowen95.robotgame;
+import java.util.BitSet;
+
+/**
+ * A potentially visible set for a map. The box around the walls of a Collision object is divided into
+ * a grid of cubic cells, and for each cell it stores which other cells and which walls might be seen
+ * from somewhere inside it. It is computed once when the map is loaded, after which queries only look up bits.
+ * <br/><br/>
+ * Visibility is found by casting rays between sample points of the two cells, so a view through a gap
+ * smaller than the spacing of the samples can be missed. To make up for this, every cell next to a visible
+ * cell is also treated as visible. Points outside the grid are treated as seeing and being seen by everything.
+ * @author Patrick Owen
+ */
+public class VisibilitySet
+{
+	private static final double SAMPLE_INSET = 0.1; //How far the corner samples are moved toward the center of the cell, as a fraction of its size
+	
+	//Grid
+	private double xMin, yMin, zMin;
+	private double cellSize;
+	private int nx, ny, nz;
+	private int numCells;
+	
+	private BitSet[] visibleCells; //For each cell, the cells that can be seen from it
+	private BitSet[] visibleWalls; //For each cell, the walls that overlap a cell that can be seen from it
+	
+	/**
+	 * Computes the potentially visible set for the walls of a Collision object.
+	 * @param collision The walls, which should all be added and built.
+	 * @param cellSize The length of each side of a cell.
+	 */
+	public VisibilitySet(Collision collision, double cellSize)
+	{
+		this.cellSize = cellSize;
+		
+		double[] bounds = new double[6];
+		collision.getBounds(bounds);
+		xMin = bounds[0]; yMin = bounds[1]; zMin = bounds[2];
+		nx = Math.max(1, (int)Math.ceil((bounds[3]-xMin)/cellSize));
+		ny = Math.max(1, (int)Math.ceil((bounds[4]-yMin)/cellSize));
+		nz = Math.max(1, (int)Math.ceil((bounds[5]-zMin)/cellSize));
+		numCells = nx*ny*nz;
+		
+		computeVisibleCells(collision);
+		computeVisibleWalls(collision);
+	}
+	
+	/**
+	 * Returns the index of the cell containing the given point, or -1 if it is outside the grid.
+	 */
+	public int getCell(double x, double y, double z)
+	{
+		int cx = (int)Math.floor((x-xMin)/cellSize);
+		int cy = (int)Math.floor((y-yMin)/cellSize);
+		int cz = (int)Math.floor((z-zMin)/cellSize);
+		if (cx < 0 || cy < 0 || cz < 0 || cx >= nx || cy >= ny || cz >= nz) return -1;
+		return (cz*ny + cy)*nx + cx;
+	}
+	
+	/**
+	 * Returns whether anything in one cell might be seen from the other. Cells of -1 (outside the grid) see everything.
+	 */
+	public boolean isCellVisible(int from, int to)
+	{
+		if (from == -1 || to == -1) return true;
+		return visibleCells[from].get(to);
+	}
+	
+	/**
+	 * Returns whether the point (x2, y2, z2) might be seen from the point (x1, y1, z1).
+	 * If false is returned, there is a wall in the way no matter where in their cells the points are.
+	 */
+	public boolean canSee(double x1, double y1, double z1, double x2, double y2, double z2)
+	{
+		return isCellVisible(getCell(x1, y1, z1), getCell(x2, y2, z2));
+	}
+	
+	/**
+	 * Returns whether the given wall might be seen from the given cell. Every wall is visible from cell -1.
+	 * @param cell The cell of the viewer.
+	 * @param wall The index of the wall in the Collision object, which is also its index in the drawing data of World.
+	 */
+	public boolean isWallVisible(int cell, int wall)
+	{
+		if (cell == -1) return true;
+		return visibleWalls[cell].get(wall);
+	}
+	
+	/**
+	 * Returns the number of cells in the grid.
+	 */
+	public int getNumCells()
+	{
+		return numCells;
+	}
+	
+	//Finds which cells can see each other by casting rays between their sample points.
+	private void computeVisibleCells(Collision collision)
+	{
+		/*
+		 * ALGORITHM 8:
+		 * Give each cell nine sample points: its center and its corners moved slightly inward so that they do not lie on walls
+		 *   that run along the grid lines.
+		 * For each pair of cells, cast rays between matching sample points (center to center and each corner to the same corner
+		 *   of the other cell) until one reaches the other end without hitting a wall. If one does, each cell can see the other.
+		 *   Pairs only need to be tested once, since visibility is symmetric. Testing every pair of samples would find more gaps,
+		 *   but it takes nine times as long for pairs that cannot see each other, which are the slowest to test.
+		 * Grow the set of visible cells of each cell by one cell in every direction to account for gaps the rays may miss.
+		 */
+		double[] sx = new double[numCells*9], sy = new double[numCells*9], sz = new double[numCells*9];
+		for (int cell=0; cell<numCells; cell++)
+		{
+			int cx = cell % nx, cy = (cell/nx) % ny, cz = cell/(nx*ny);
+			double x0 = xMin + cx*cellSize, y0 = yMin + cy*cellSize, z0 = zMin + cz*cellSize;
+			
+			int k = cell*9;
+			sx[k] = x0 + cellSize/2; sy[k] = y0 + cellSize/2; sz[k] = z0 + cellSize/2;
+			for (int corner=0; corner<8; corner++)
+			{
+				k += 1;
+				sx[k] = x0 + cellSize*((corner & 1) == 0 ? SAMPLE_INSET : 1-SAMPLE_INSET);
+				sy[k] = y0 + cellSize*((corner & 2) == 0 ? SAMPLE_INSET : 1-SAMPLE_INSET);
+				sz[k] = z0 + cellSize*((corner & 4) == 0 ? SAMPLE_INSET : 1-SAMPLE_INSET);
+			}
+		}
+		
+		BitSet[] direct = new BitSet[numCells];
+		for (int cell=0; cell<numCells; cell++)
+			direct[cell] = new BitSet(numCells);
+		
+		CollisionHit hit = new CollisionHit();
+		for (int a=0; a<numCells; a++)
+		{
+			direct[a].set(a);
+			for (int b=a+1; b<numCells; b++)
+			{
+				if (isAnyRayClear(collision, hit, a, b, sx, sy, sz))
+				{
+					direct[a].set(b);
+					direct[b].set(a);
+				}
+			}
+		}
+		
+		//Grow each set by one cell in every direction.
+		visibleCells = new BitSet[numCells];
+		for (int cell=0; cell<numCells; cell++)
+		{
+			BitSet grown = new BitSet(numCells);
+			BitSet visible = direct[cell];
+			for (int other = visible.nextSetBit(0); other >= 0; other = visible.nextSetBit(other+1))
+			{
+				int cx = other % nx, cy = (other/nx) % ny, cz = other/(nx*ny);
+				for (int z = Math.max(0, cz-1); z <= Math.min(nz-1, cz+1); z++)
+					for (int y = Math.max(0, cy-1); y <= Math.min(ny-1, cy+1); y++)
+						for (int x = Math.max(0, cx-1); x <= Math.min(nx-1, cx+1); x++)
+							grown.set((z*ny + y)*nx + x);
+			}
+			visibleCells[cell] = grown;
+		}
+	}
+	
+	//Returns whether any ray between matching sample points of cells a and b misses every wall.
+	private boolean isAnyRayClear(Collision collision, CollisionHit hit, int a, int b, double[] sx, double[] sy, double[] sz)
+	{
+		for (int k=0; k<9; k++)
+		{
+			int i = a*9+k, j = b*9+k;
+			if (collision.getBulletCollision(sx[i], sy[i], sz[i], sx[j]-sx[i], sy[j]-sy[i], sz[j]-sz[i], hit) == 1)
+				return true;
+		}
+		return false;
+	}
+	
+	//Finds which walls can be seen from each cell.
+	private void computeVisibleWalls(Collision collision)
+	{
+		int numWalls = collision.getNumWalls();
+		
+		//The walls overlapping each cell
+		BitSet[] cellWalls = new BitSet[numCells];
+		int[] found = new int[numWalls];
+		for (int cell=0; cell<numCells; cell++)
+		{
+			int cx = cell % nx, cy = (cell/nx) % ny, cz = cell/(nx*ny);
+			double x0 = xMin + cx*cellSize, y0 = yMin + cy*cellSize, z0 = zMin + cz*cellSize;
+			int count = collision.getWallsInRegion(x0, y0, z0, x0+cellSize, y0+cellSize, z0+cellSize, found);
+			
+			cellWalls[cell] = new BitSet(numWalls);
+			for (int k=0; k<count; k++)
+				cellWalls[cell].set(found[k]);
+		}
+		
+		visibleWalls = new BitSet[numCells];
+		for (int cell=0; cell<numCells; cell++)
+		{
+			BitSet walls = new BitSet(numWalls);
+			BitSet visible = visibleCells[cell];
+			for (int other = visible.nextSetBit(0); other >= 0; other = visible.nextSetBit(other+1))
+				walls.or(cellWalls[other]);
+			visibleWalls[cell] = walls;
+		}
+	}
+}
@@ -0,0 +1,249 @@
+package patowen95.robotgame;
+
+/**
+ * A uniform grid of cubic cells over a fixed set of triangles, where each cell lists the triangles
+ * that touch it. Unlike a BoundingVolumeHierarchy, it can be walked one cell at a time along a ray, so
+ * a query that stops at the first hit only looks at the triangles near the part of the ray before the hit.
+ * The lists of all cells are stored back to back in one array.
+ * @author Patrick Owen
+ */
+public class WallGrid
+{
+	private static final int MAX_CELLS = 1 << 18; //The cell size is increased until the grid has no more cells than this
+	private static final double PADDING = 1e-6; //How far each cell is grown so that triangles touching its sides are listed in it
+	
+	//Grid
+	private double xMin, yMin, zMin;
+	private double cellSize;
+	private int nx, ny, nz;
+	
+	//The triangles touching cell c are triangles[cellStart[c]] to triangles[cellStart[c+1]-1].
+	private int[] cellStart;
+	private int[] triangles;
+	
+	/**
+	 * Sorts the given triangles into a grid. Each array holds one coordinate for every triangle.
+	 * @param x1
+	 * @param y1
+	 * @param z1
+	 * @param x2
+	 * @param y2
+	 * @param z2
+	 * @param x3
+	 * @param y3
+	 * @param z3 Vertices of the triangles.
+	 * @param count The number of triangles to use from the arrays.
+	 * @param size The preferred length of each side of a cell.
+	 */
+	public WallGrid(double[] x1, double[] y1, double[] z1, double[] x2, double[] y2, double[] z2,
+			double[] x3, double[] y3, double[] z3, int count, double size)
+	{
+		xMin = 0; yMin = 0; zMin = 0;
+		double xMax = 0, yMax = 0, zMax = 0;
+		for (int i=0; i<count; i++)
+		{
+			xMin = i == 0 ? min3(x1[i], x2[i], x3[i]) : Math.min(xMin, min3(x1[i], x2[i], x3[i]));
+			yMin = i == 0 ? min3(y1[i], y2[i], y3[i]) : Math.min(yMin, min3(y1[i], y2[i], y3[i]));
+			zMin = i == 0 ? min3(z1[i], z2[i], z3[i]) : Math.min(zMin, min3(z1[i], z2[i], z3[i]));
+			xMax = i == 0 ? max3(x1[i], x2[i], x3[i]) : Math.max(xMax, max3(x1[i], x2[i], x3[i]));
+			yMax = i == 0 ? max3(y1[i], y2[i], y3[i]) : Math.max(yMax, max3(y1[i], y2[i], y3[i]));
+			zMax = i == 0 ? max3(z1[i], z2[i], z3[i]) : Math.max(zMax, max3(z1[i], z2[i], z3[i]));
+		}
+		
+		cellSize = size;
+		while (true)
+		{
+			nx = Math.max(1, (int)Math.ceil((xMax-xMin)/cellSize));
+			ny = Math.max(1, (int)Math.ceil((yMax-yMin)/cellSize));
+			nz = Math.max(1, (int)Math.ceil((zMax-zMin)/cellSize));
+			if ((long)nx*ny*nz <= MAX_CELLS) break;
+			cellSize *= 2;
+		}
+		
+		//Count the triangles in each cell, then place them.
+		int numCells = nx*ny*nz;
+		cellStart = new int[numCells+1];
+		int[] next = new int[numCells];
+		for (int pass=0; pass<2; pass++)
+		{
+			if (pass == 1)
+			{
+				for (int c=0; c<numCells; c++)
+					cellStart[c+1] += cellStart[c];
+				triangles = new int[cellStart[numCells]];
+				System.arraycopy(cellStart, 0, next, 0, numCells);
+			}
+			
+			for (int i=0; i<count; i++)
+			{
+				int cx1 = clampX(min3(x1[i], x2[i], x3[i])-PADDING), cx2 = clampX(max3(x1[i], x2[i], x3[i])+PADDING);
+				int cy1 = clampY(min3(y1[i], y2[i], y3[i])-PADDING), cy2 = clampY(max3(y1[i], y2[i], y3[i])+PADDING);
+				int cz1 = clampZ(min3(z1[i], z2[i], z3[i])-PADDING), cz2 = clampZ(max3(z1[i], z2[i], z3[i])+PADDING);
+				
+				for (int cz=cz1; cz<=cz2; cz++)
+				{
+					for (int cy=cy1; cy<=cy2; cy++)
+					{
+						for (int cx=cx1; cx<=cx2; cx++)
+						{
+							double half = cellSize/2;
+							double centerX = xMin + cx*cellSize + half, centerY = yMin + cy*cellSize + half, centerZ = zMin + cz*cellSize + half;
+							if (!touchesCell(x1[i]-centerX, y1[i]-centerY, z1[i]-centerZ, x2[i]-centerX, y2[i]-centerY, z2[i]-centerZ,
+									x3[i]-centerX, y3[i]-centerY, z3[i]-centerZ, half+PADDING))
+								continue;
+							
+							int cell = (cz*ny + cy)*nx + cx;
+							if (pass == 0) cellStart[cell+1] += 1;
+							else triangles[next[cell]++] = i;
+						}
+					}
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Returns the x coordinate of the minimum corner of the grid.
+	 */
+	public double getXMin()
+	{
+		return xMin;
+	}
+	
+	/**
+	 * Returns the y coordinate of the minimum corner of the grid.
+	 */
+	public double getYMin()
+	{
+		return yMin;
+	}
+	
+	/**
+	 * Returns the z coordinate of the minimum corner of the grid.
+	 */
+	public double getZMin()
+	{
+		return zMin;
+	}
+	
+	/**
+	 * Returns the length of each side of a cell, which can be larger than the size asked for if the grid would have too many cells.
+	 */
+	public double getCellSize()
+	{
+		return cellSize;
+	}
+	
+	/**
+	 * Returns the number of cells along the x axis.
+	 */
+	public int getNX()
+	{
+		return nx;
+	}
+	
+	/**
+	 * Returns the number of cells along the y axis.
+	 */
+	public int getNY()
+	{
+		return ny;
+	}
+	
+	/**
+	 * Returns the number of cells along the z axis.
+	 */
+	public int getNZ()
+	{
+		return nz;
+	}
+	
+	/**
+	 * Returns the position in the list of triangles where the triangles of the given cell start.
+	 * The triangles of the cell end just before the start of the next cell.
+	 */
+	public int getCellStart(int cell)
+	{
+		return cellStart[cell];
+	}
+	
+	/**
+	 * Returns the original index of the triangle at the given position in the list of triangles.
+	 */
+	public int getTriangle(int k)
+	{
+		return triangles[k];
+	}
+	
+	//Returns whether the triangle, whose vertices are given relative to the center of a cube, touches the cube.
+	private boolean touchesCell(double ax, double ay, double az, double bx, double by, double bz, double cx, double cy, double cz, double half)
+	{
+		/*
+		 * ALGORITHM 12:
+		 * The triangle and the cube touch unless there is an axis along which their projections do not overlap
+		 *   (the separating axis theorem). Only thirteen axes need to be tested: the three axes of the cube, whose
+		 *   overlap is already known from the range of cells the triangle's box covers, the normal of the triangle,
+		 *   and the cross product of each axis of the cube with each edge of the triangle.
+		 * The cube's projection onto an axis reaches as far from the center as half its size times the sum of the
+		 *   absolute values of the axis's components.
+		 */
+		double e1x = bx-ax, e1y = by-ay, e1z = bz-az;
+		double e2x = cx-bx, e2y = cy-by, e2z = cz-bz;
+		double e3x = ax-cx, e3y = ay-cy, e3z = az-cz;
+		
+		//Normal
+		double nx = e1y*e2z - e1z*e2y, ny = e1z*e2x - e1x*e2z, nz = e1x*e2y - e1y*e2x;
+		if (Math.abs(nx*ax + ny*ay + nz*az) > half*(Math.abs(nx) + Math.abs(ny) + Math.abs(nz))) return false;
+		
+		//Cross products of the cube's axes with the edges, one edge at a time
+		return !separates(e1x, e1y, e1z, ax, ay, az, cx, cy, cz, half)
+				&& !separates(e2x, e2y, e2z, ax, ay, az, cx, cy, cz, half)
+				&& !separates(e3x, e3y, e3z, ax, ay, az, bx, by, bz, half);
+	}
+	
+	//Returns whether any of the axes found by crossing the edge (ex, ey, ez) with an axis of the cube separate it from the triangle.
+	//Two vertices of the triangle project to the same point on these axes, so only one of them and the third vertex are given.
+	private boolean separates(double ex, double ey, double ez, double px, double py, double pz, double qx, double qy, double qz, double half)
+	{
+		//x cross e = (0, -ez, ey)
+		double p = -ez*py + ey*pz, q = -ez*qy + ey*qz, r = half*(Math.abs(ez) + Math.abs(ey));
+		if (Math.min(p, q) > r || Math.max(p, q) < -r) return true;
+		
+		//y cross e = (ez, 0, -ex)
+		p = ez*px - ex*pz; q = ez*qx - ex*qz; r = half*(Math.abs(ez) + Math.abs(ex));
+		if (Math.min(p, q) > r || Math.max(p, q) < -r) return true;
+		
+		//z cross e = (-ey, ex, 0)
+		p = -ey*px + ex*py; q = -ey*qx + ex*qy; r = half*(Math.abs(ey) + Math.abs(ex));
+		if (Math.min(p, q) > r || Math.max(p, q) < -r) return true;
+		
+		return false;
+	}
+	
+	//Return the smallest and largest of three values.
+	private double min3(double a, double b, double c)
+	{
+		return Math.min(a, Math.min(b, c));
+	}
+	
+	private double max3(double a, double b, double c)
+	{
+		return Math.max(a, Math.max(b, c));
+	}
+	
+	//Return the index of the cell containing the coordinate along each axis, clamped to the grid.
+	private int clampX(double x)
+	{
+		return Math.max(0, Math.min(nx-1, (int)Math.floor((x-xMin)/cellSize)));
+	}
+	
+	private int clampY(double y)
+	{
+		return Math.max(0, Math.min(ny-1, (int)Math.floor((y-yMin)/cellSize)));
+	}
+	
+	private int clampZ(double z)
+	{
+		return Math.max(0, Math.min(nz-1, (int)Math.floor((z-zMin)/cellSize)));
+	}
+}
@@ -2,15 +2,18 @@ package patowen95.robotgame;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Scanner;
-import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import com.jogamp.opengl.GL2;
 
+import patowen95.robotgame.entity.Collidable;
+import patowen95.robotgame.entity.Damageable;
+import patowen95.robotgame.entity.EI;
 import patowen95.robotgame.entity.Entity;
 import patowen95.robotgame.entity.EntityCreationListener;
+import patowen95.robotgame.entity.EntityPool;
 import patowen95.robotgame.entity.Player;
 import patowen95.robotgame.entity.enemy.Enemy;
 import patowen95.robotgame.menu.MainMenu;
@@ -28,19 +31,65 @@ public class World
 	
 	//Collision data, each synchronized with each other
 	private Collision collision;
+	private CollisionStats collisionStats; //Work done by collision queries, kept when the level is reset
+	private CollisionStats.Snapshot collisionLogSnapshot; //Counts when the statistics were last logged
+	private double collisionLogTime; //Time since the statistics were last logged
+	
+	private VisibilitySet visibilitySet; //Which walls and cells can be seen from each cell, computed when the map is loaded
+	private static final double VISIBILITY_CELL_SIZE = 4;
+	
+	private FlowField flowField; //Leads tracking enemies to the player around the walls
+	private Player flowFieldPlayer; //The player the flow field leads to, or null if there is none alive
+	private static final double FLOW_FIELD_CELL_SIZE = 2;
+	
+	//Parallel stepping of the entities that allow it
+	private static ForkJoinPool sharedPool; //Steps the entities of every World in the process, created when first needed
+	private boolean parallelStepping;
+	private ArrayList<Entity> parallelEntities; //Entities stepped in parallel in the current step
+	private ArrayList<CommandBuffer> commandBuffers; //One for each chunk of parallelEntities
+	private ThreadLocal<CommandBuffer> currentBuffer; //The buffer of the chunk each thread is stepping
+	private ArrayList<GameRandom> chunkRandoms; //One for each chunk of parallelEntities, seeded from random every step
+	private ThreadLocal<GameRandom> currentRandom; //The generator of the chunk each thread is stepping
+	private volatile boolean inParallelPhase;
+	private static final int PARALLEL_CHUNK_SIZE = 32; //Entities stepped by each task
+	
+	//Set the system property robotgame.parallelStep to true to step entities in parallel by default.
+	private static final boolean PARALLEL_STEP = Boolean.getBoolean("robotgame.parallelStep");
+	
+	//Set the system property robotgame.batchRays to true to test the rays of each step in one batch by default.
+	private static final boolean BATCH_RAYS = Boolean.getBoolean("robotgame.batchRays");
+	
+	//Gameplay randomness
+	private long seed;
+	private GameRandom random;
+	
+	//Set the system property robotgame.seed to give every World that seed by default, so that runs with the same input play out the same way.
+	private static final Long SEED = Long.getLong("robotgame.seed");
+	
+	//Set the system property robotgame.logCollisionStats to true to print the collision statistics every second.
+	private static final boolean LOG_COLLISION_STATS = Boolean.getBoolean("robotgame.logCollisionStats");
 	
 	//File data
 	private File mapFile;
+	private long mapModified; //Modification time of mapFile when visibilitySet and flowField were computed from it
 	
 	//Entity data
 	private Player player;
 	private ArrayList<Entity> entities;
 	private ArrayList<Entity> deletionQueue;
 	private ArrayList<Entity> creationQueue;
+	private EntityStore entityStore; //Handles, positions and velocities of the entities, and references to them
+	private EntityView enemies, damageables, collidables, players; //Entities with each capability
+	private EntityPool entityPool; //Removed bullets and effects waiting to be reused
+	private SpatialHash spatialHash; //Damageable and Collidable entities sorted by location
+	private RayBatch rayBatch; //Rays that entities test against the walls in the current step
+	private CollisionHit rayHit;
+	private boolean batchRays; //Whether rays are queued in rayBatch instead of each being tested on its own
+	private LineOfSight lineOfSight; //Remembered answers of the visibility checks made by enemies
 	
-	private HashMap<Identification, Entity> entityMap;
-	private HashSet<Identification> antiEntitySet;
-	private ArrayBlockingQueue<Identification> antiEntityQueue;
+	private LongMap<Entity> entityMap; //Entities by their key from getKey
+	private LongRingSet antiEntitySet; //Keys of entities deleted by the server, which should not be created again
+	private static final int ANTI_ENTITY_CAPACITY = 1024; //Number of deleted keys remembered in antiEntitySet
 	private int nextEntityID;
 	
 	//Entity Creation Listener objects
@@ -76,11 +125,29 @@ public class World
 	 * @param fName The name of the file containing the data.
 	 */
 	public World(Controller controller, File fName)
+	{
+		this(controller, fName, SEED != null ? SEED.longValue() : System.nanoTime());
+	}
+	
+	/**
+	 * Creates a game level given data available in a file, with the given seed for everything random in the game.
+	 * Worlds with the same seed that are stepped by the same time steps with the same input end up in the same state.
+	 * @param controller The active Controller object
+	 * @param fName The name of the file containing the data.
+	 * @param seed The seed of the generator returned by getRandom.
+	 */
+	public World(Controller controller, File fName, long seed)
 	{
 		c = controller;
 		mapFile = fName;
 		
-		collision = new Collision(this);
+		this.seed = seed;
+		random = new GameRandom(seed);
+		
+		collisionStats = new CollisionStats();
+		collisionLogSnapshot = collisionStats.getSnapshot();
+		collisionLogTime = 0;
+		collision = new Collision(this, collisionStats);
 		
 		//Initialize all data arrays		
 		drawData = 0;
@@ -99,12 +166,30 @@ public class World
 		entities = new ArrayList<Entity>();
 		deletionQueue = new ArrayList<Entity>();
 		creationQueue = new ArrayList<Entity>();
+		entityStore = new EntityStore();
+		enemies = new EntityView();
+		damageables = new EntityView();
+		collidables = new EntityView();
+		players = new EntityView();
+		entityPool = new EntityPool();
+		spatialHash = new SpatialHash(4, entityStore);
+		rayBatch = new RayBatch();
+		rayHit = new CollisionHit(CollisionStats.BULLET);
+		lineOfSight = new LineOfSight();
+		
+		parallelEntities = new ArrayList<Entity>();
+		commandBuffers = new ArrayList<CommandBuffer>();
+		currentBuffer = new ThreadLocal<CommandBuffer>();
+		chunkRandoms = new ArrayList<GameRandom>();
+		currentRandom = new ThreadLocal<GameRandom>();
+		inParallelPhase = false;
+		setParallelStepping(PARALLEL_STEP);
+		setBatchRays(BATCH_RAYS);
 		
 		eclisteners = new ArrayList<EntityCreationListener>();
 		
-		entityMap = new HashMap<Identification, Entity>(1024);
-		antiEntitySet = new HashSet<Identification>(64);
-		antiEntityQueue = new ArrayBlockingQueue<Identification>(64);
+		entityMap = new LongMap<Entity>(1024);
+		antiEntitySet = new LongRingSet(ANTI_ENTITY_CAPACITY);
 		nextEntityID = 0;
 		
 		gravity = 10;
@@ -133,7 +218,7 @@ public class World
 	 */
 	public void resetLevel()
 	{
-		collision = new Collision(this);
+		collision = new Collision(this, collisionStats);
 		
 		//Initialize all data arrays		
 		drawData = 0;
@@ -152,11 +237,21 @@ public class World
 		for (Entity e : entities)
 		{
 			e.delete();
+			e.setIndex(-1);
 		}
 		
 		entities.clear();
 		deletionQueue.clear();
 		creationQueue.clear();
+		spatialHash.clear();
+		enemies.clear();
+		damageables.clear();
+		collidables.clear();
+		players.clear();
+		flowFieldPlayer = null;
+		entityStore.clear();
+		lineOfSight.clear();
+		rayBatch.clear();
 		entityMap.clear();
 		nextEntityID = 0;
 		
@@ -173,30 +268,405 @@ public class World
 		difficulty = 0;
 		currentWave = null;
 		
+		//The walls are read from the same file again, so the slow work done with them can be kept unless it changed.
+		if (mapFile.lastModified() != mapModified)
+		{
+			visibilitySet = null;
+			flowField = null;
+		}
+		
 		FileReader reader = new FileReader();
 		reader.readData(mapFile);
 	}
 	
 	/**
-	 * Returns the Player object
+	 * Returns the Player object, or null on a dedicated server, which has no player of its own.
 	 */
 	public Player getPlayer()
 	{
 		return player;
 	}
 	
+	/**
+	 * Returns whether there is a player that is not dead for enemies to go after.
+	 */
+	public boolean isPlayerAlive()
+	{
+		return player != null && !player.isDead();
+	}
+	
+	/**
+	 * Returns the player that an enemy at the given point should go after, or null if there is none alive.
+	 * This is the World's own player, except on a dedicated server, which has none of its own, where it is
+	 * the nearest living player of the connected clients.
+	 * @param x
+	 * @param y
+	 * @param z Location of the enemy.
+	 */
+	public Player getTargetPlayer(double x, double y, double z)
+	{
+		if (player != null) return isPlayerAlive() ? player : null;
+		
+		Player nearest = null;
+		double nearestDistance = Double.POSITIVE_INFINITY;
+		ArrayList<Entity> list = players.getEntities();
+		for (int i=0; i<list.size(); i++)
+		{
+			Player p = (Player)list.get(i);
+			if (p.isDead()) continue;
+			
+			double xDiff = p.getX()-x, yDiff = p.getY()-y, zDiff = p.getZ()-z;
+			double distance = xDiff*xDiff + yDiff*yDiff + zDiff*zDiff;
+			if (distance < nearestDistance)
+			{
+				nearest = p;
+				nearestDistance = distance;
+			}
+		}
+		return nearest;
+	}
+	
+	/**
+	 * Returns the generator that everything random in the game should use instead of Math.random, so that
+	 * the game plays out the same way every time for the same seed and input. While entities are stepped in
+	 * parallel, each chunk of them gets its own generator, seeded from this World's in the order of the chunks.
+	 * Randomness that only changes how things look, and not the state of the game, does not need to use it.
+	 */
+	public GameRandom getRandom()
+	{
+		if (inParallelPhase)
+		{
+			GameRandom chunkRandom = currentRandom.get();
+			if (chunkRandom != null) return chunkRandom;
+		}
+		return random;
+	}
+	
+	/**
+	 * Returns the seed the World was created with.
+	 */
+	public long getSeed()
+	{
+		return seed;
+	}
+	
 	/**
 	 * Returns an ArrayList of the entities held by the World.
-	 * Do not modify this ArrayList.
+	 * Do not modify this ArrayList. Removing an entity moves the last entity into its place, so the order can change every step.
 	 */
 	public ArrayList<Entity> getEntities()
 	{
 		return entities;
 	}
 	
+	/**
+	 * Returns the entities that are enemies. Do not modify this ArrayList, and do not rely on its order.
+	 */
+	public ArrayList<Entity> getEnemies()
+	{
+		return enemies.getEntities();
+	}
+	
+	/**
+	 * Returns the number of enemies in the World.
+	 */
+	public int getNumEnemies()
+	{
+		return enemies.size();
+	}
+	
+	/**
+	 * Returns the entities that can be damaged. Do not modify this ArrayList, and do not rely on its order.
+	 */
+	public ArrayList<Entity> getDamageables()
+	{
+		return damageables.getEntities();
+	}
+	
+	/**
+	 * Returns the entities that the player can collide with. Do not modify this ArrayList, and do not rely on its order.
+	 */
+	public ArrayList<Entity> getCollidables()
+	{
+		return collidables.getEntities();
+	}
+	
+	/**
+	 * Finds the Damageable entities that could be within the given box at some point
+	 * between their previous and current positions.
+	 * @param xMin
+	 * @param yMin
+	 * @param zMin Minimum corner of the box.
+	 * @param xMax
+	 * @param yMax
+	 * @param zMax Maximum corner of the box.
+	 * @param result Receives the entities found. It is cleared first.
+	 */
+	public void getDamageables(double xMin, double yMin, double zMin, double xMax, double yMax, double zMax, ArrayList<Entity> result)
+	{
+		spatialHash.getEntities(xMin, yMin, zMin, xMax, yMax, zMax, result);
+		removeUndamageable(result);
+	}
+	
+	/**
+	 * Finds the Damageable entities that could be touched by the line segment between (x, y, z) and
+	 * (x+xd, y+yd, z+zd) at some point between their previous and current positions.
+	 * @param x
+	 * @param y
+	 * @param z Start of the segment.
+	 * @param xd
+	 * @param yd
+	 * @param zd Displacement to the end of the segment.
+	 * @param result Receives the entities found. It is cleared first.
+	 */
+	public void getDamageablesAlongPath(double x, double y, double z, double xd, double yd, double zd, ArrayList<Entity> result)
+	{
+		spatialHash.getEntitiesAlongPath(x, y, z, xd, yd, zd, result);
+		removeUndamageable(result);
+	}
+	
+	/**
+	 * Finds the Damageable entities whose current bounds overlap the sphere around (x, y, z), such as the ones caught in an explosion.
+	 * The bounds are rounded at the top and bottom, so they can reach slightly past the ends of the entity's cylinder.
+	 * @param x
+	 * @param y
+	 * @param z Center of the sphere.
+	 * @param radius Radius of the sphere.
+	 * @param result Receives the entities found. It is cleared first.
+	 */
+	public void getDamageablesInSphere(double x, double y, double z, double radius, ArrayList<Entity> result)
+	{
+		spatialHash.getEntitiesInSphere(x, y, z, radius, result);
+		removeUndamageable(result);
+	}
+	
+	/**
+	 * Finds the Damageable entities whose current bounds overlap the sphere around (x, y, z), leaving out the ones
+	 * whose center cannot be reached from the center of the sphere without going through a wall.
+	 * @param x
+	 * @param y
+	 * @param z Center of the sphere.
+	 * @param radius Radius of the sphere.
+	 * @param h Scratch space for the wall checks, owned by the caller so that entities stepping in parallel do not share it.
+	 * @param result Receives the entities found. It is cleared first.
+	 */
+	public void getDamageablesInSphere(double x, double y, double z, double radius, CollisionHit h, ArrayList<Entity> result)
+	{
+		getDamageablesInSphere(x, y, z, radius, result);
+		
+		int size = 0;
+		for (int i=0; i<result.size(); i++)
+		{
+			if (!isBlockedFromPoint(x, y, z, (Damageable)result.get(i), h))
+			{
+				result.set(size, result.get(i));
+				size++;
+			}
+		}
+		
+		while (result.size() > size)
+			result.remove(result.size()-1);
+	}
+	
+	/**
+	 * Finds the Damageable entities whose current bounds come within the given distance of the line segment between
+	 * (x, y, z) and (x+xd, y+yd, z+zd), such as the ones touched by a sweeping blade.
+	 * The bounds are rounded at the top and bottom, so they can reach slightly past the ends of the entity's cylinder.
+	 * @param x
+	 * @param y
+	 * @param z Start of the segment.
+	 * @param xd
+	 * @param yd
+	 * @param zd Displacement to the end of the segment.
+	 * @param radius Distance from the segment.
+	 * @param result Receives the entities found. It is cleared first.
+	 */
+	public void getDamageablesInCapsule(double x, double y, double z, double xd, double yd, double zd, double radius, ArrayList<Entity> result)
+	{
+		spatialHash.getEntitiesInCapsule(x, y, z, xd, yd, zd, radius, result);
+		removeUndamageable(result);
+	}
+	
+	/**
+	 * Finds the Damageable entities whose current bounds come within the given distance of the line segment between
+	 * (x, y, z) and (x+xd, y+yd, z+zd), leaving out the ones whose center cannot be reached from the closest point
+	 * on the segment without going through a wall.
+	 * @param x
+	 * @param y
+	 * @param z Start of the segment.
+	 * @param xd
+	 * @param yd
+	 * @param zd Displacement to the end of the segment.
+	 * @param radius Distance from the segment.
+	 * @param h Scratch space for the wall checks, owned by the caller so that entities stepping in parallel do not share it.
+	 * @param result Receives the entities found. It is cleared first.
+	 */
+	public void getDamageablesInCapsule(double x, double y, double z, double xd, double yd, double zd, double radius,
+			CollisionHit h, ArrayList<Entity> result)
+	{
+		getDamageablesInCapsule(x, y, z, xd, yd, zd, radius, result);
+		
+		int size = 0;
+		for (int i=0; i<result.size(); i++)
+		{
+			Damageable e = (Damageable)result.get(i);
+			double s = Collision.getClosestOnSegment(x, y, z, xd, yd, zd, e.getX(), e.getY(), e.getZ()+e.getHeight()/2);
+			if (!isBlockedFromPoint(x+s*xd, y+s*yd, z+s*zd, e, h))
+			{
+				result.set(size, result.get(i));
+				size++;
+			}
+		}
+		
+		while (result.size() > size)
+			result.remove(result.size()-1);
+	}
+	
+	//Returns whether there is a wall between the center of the entity and the given point.
+	private boolean isBlockedFromPoint(double x, double y, double z, Damageable e, CollisionHit h)
+	{
+		double ex = e.getX(), ey = e.getY(), ez = e.getZ()+e.getHeight()/2;
+		return collision.getBulletCollision(x, y, z, ex-x, ey-y, ez-z, h) < 1;
+	}
+	
+	//Adds the entity to the end of the list of entities. Nothing is done if it is already in it.
+	private void addToList(Entity e)
+	{
+		if (e.getIndex() != -1) return;
+		e.setIndex(entities.size());
+		entities.add(e);
+	}
+	
+	//Removes the entity from the list of entities by moving the last entity into its place.
+	//Returns false and does nothing if it is not in it.
+	private boolean removeFromList(Entity e)
+	{
+		int index = e.getIndex();
+		if (index == -1) return false;
+		
+		Entity last = entities.remove(entities.size()-1);
+		if (last != e)
+		{
+			entities.set(index, last);
+			last.setIndex(index);
+		}
+		e.setIndex(-1);
+		return true;
+	}
+	
+	//Adds the entity to the views of each capability it has. It must already be in the EntityStore.
+	private void addToViews(Entity e)
+	{
+		if (e instanceof Enemy) enemies.add(e);
+		if (e instanceof Damageable) damageables.add(e);
+		if (e instanceof Collidable) collidables.add(e);
+		if (e instanceof Player) players.add(e);
+	}
+	
+	//Removes the entity from every view. It must not have been removed from the EntityStore yet.
+	private void removeFromViews(Entity e)
+	{
+		enemies.remove(e);
+		damageables.remove(e);
+		collidables.remove(e);
+		players.remove(e);
+	}
+	
+	//Removes entities that cannot be damaged from the list, keeping the order of the rest.
+	private void removeUndamageable(ArrayList<Entity> list)
+	{
+		int size = 0;
+		for (int i=0; i<list.size(); i++)
+		{
+			if (list.get(i) instanceof Damageable)
+			{
+				list.set(size, list.get(i));
+				size++;
+			}
+		}
+		
+		while (list.size() > size)
+			list.remove(list.size()-1);
+	}
+	
+	/**
+	 * Returns the store that gives each entity in the World its handle, holds their positions and velocities, and makes
+	 * references to them.
+	 */
+	public EntityStore getEntityStore()
+	{
+		return entityStore;
+	}
+	
+	/**
+	 * Returns the pool that bullets and effects go to when they are removed, to be reused by EI.
+	 */
+	public EntityPool getEntityPool()
+	{
+		return entityPool;
+	}
+	
+	/**
+	 * Returns the batch of rays that entities queued for the current step, along with their results.
+	 * It is empty unless rays are being batched.
+	 */
+	public RayBatch getRayBatch()
+	{
+		return rayBatch;
+	}
+	
+	/**
+	 * Returns the potentially visible set of the map.
+	 */
+	public VisibilitySet getVisibilitySet()
+	{
+		return visibilitySet;
+	}
+	
+	/**
+	 * Returns the flow field that leads tracking enemies to the player.
+	 */
+	public FlowField getFlowField()
+	{
+		return flowField;
+	}
+	
+	/**
+	 * Returns the player that the flow field leads to, or null if there is none alive. Enemies going after
+	 * a different player, which can only happen on a dedicated server, should not follow the flow field.
+	 */
+	public Player getFlowFieldPlayer()
+	{
+		return flowFieldPlayer;
+	}
+	
+	/**
+	 * Returns the LineOfSight that remembers the answers of the visibility checks made by enemies.
+	 */
+	public LineOfSight getLineOfSight()
+	{
+		return lineOfSight;
+	}
+	
+	/**
+	 * Returns the statistics that count the work done by collision queries in this level, including before it was reset.
+	 */
+	public CollisionStats getCollisionStats()
+	{
+		return collisionStats;
+	}
+	
+	/**
+	 * Returns the SpatialHash that sorts the entities that can be damaged or collided with by location.
+	 */
+	public SpatialHash getSpatialHash()
+	{
+		return spatialHash;
+	}
+	
 	public Entity getEntity(int owner, int id)
 	{
-		return entityMap.get(new Identification(owner, id));
+		return entityMap.get(getKey(owner, id));
 	}
 	
 	/**
@@ -217,38 +687,39 @@ public class World
 	}
 	
 	/**
-	 * Requests deletion of the specified entity.
+	 * Requests deletion of the specified entity. If an entity stepping in parallel is calling this, the deletion is
+	 * recorded and requested after the parallel part of the step.
 	 * @param e Specified entity.
 	 */
 	public void delete(Entity e)
 	{
-		Identification identify = new Identification(e.getOwner(), e.getID());
+		CommandBuffer buffer = getCommandBuffer();
+		if (buffer != null)
+		{
+			buffer.remove(e);
+			return;
+		}
 		
 		deletionQueue.add(e);
-		entityMap.remove(identify);
+		entityMap.remove(getKey(e.getOwner(), e.getID()));
 	}
 	
+	/**
+	 * Requests deletion of the entity with the given owner and ID. If it has not been created yet, it will not be
+	 * created when it arrives unless many other entities have been deleted this way in the meantime.
+	 */
 	public void delete(int owner, int id)
 	{
-		Identification identify = new Identification(owner, id);
+		long key = getKey(owner, id);
 		
-		Entity e = getEntity(owner, id);
+		Entity e = entityMap.get(key);
 		if (e != null)
 		{
 			deletionQueue.add(e);
-			entityMap.remove(identify);
+			entityMap.remove(key);
 		}
 		
-		antiEntitySet.add(identify);
-	}
-	
-	public void enqueueTimedIdentification(int owner, int id)
-	{
-		if (antiEntityQueue.remainingCapacity() == 0)
-		{
-			antiEntitySet.remove(antiEntityQueue.remove());
-		}
-		antiEntityQueue.add(new Identification(owner, id));
+		antiEntitySet.add(key);
 	}
 	
 	/**
@@ -257,22 +728,42 @@ public class World
 	 */
 	public void create(Entity e)
 	{
-		Identification identify = new Identification(e.getOwner(), e.getID());
-		if (!antiEntitySet.contains(identify))
+		CommandBuffer buffer = getCommandBuffer();
+		if (buffer != null)
+		{
+			buffer.create(e);
+			return;
+		}
+		
+		long key = getKey(e.getOwner(), e.getID());
+		if (!antiEntitySet.contains(key))
 		{
 			creationQueue.add(e);
-			entityMap.put(new Identification(e.getOwner(), e.getID()), e);
+			entityMap.put(key, e);
 		}
 		
 		for(EntityCreationListener ecl: eclisteners)
 			ecl.entityCreated(e);
 	}
 	
+	/**
+	 * Returns a new ID for an entity created on this computer. Entities created while stepping in parallel
+	 * get -1 instead and are given their IDs when their creation is carried out.
+	 */
 	public int generateEntityID()
 	{
+		if (inParallelPhase) return -1;
 		return nextEntityID++;
 	}
 	
+	/**
+	 * Returns the number of spawn points.
+	 */
+	public int getNumSpawnPoints()
+	{
+		return spawnX.size();
+	}
+	
 	/**
 	 * Returns the x-position of the specified spawn point.
 	 */
@@ -305,10 +796,37 @@ public class World
 	{		
 		handleSpawning(dt);
 		handleDeath(dt);
+		lineOfSight.step(dt);
+		
+		//On a dedicated server, the flow field keeps leading to the same player until they die or leave.
+		if (flowFieldPlayer == null || flowFieldPlayer.isDead() || flowFieldPlayer.getIndex() == -1)
+			flowFieldPlayer = getTargetPlayer(0, 0, 0);
+		if (flowFieldPlayer != null)
+			flowField.update(flowFieldPlayer.getX(), flowFieldPlayer.getY(), flowFieldPlayer.getZ()+flowFieldPlayer.getHeight()/2);
+		
+		//Test the rays that entities will cast against the walls all at once. Otherwise, the batch stays empty and
+		//each entity tests its own rays while it is stepped.
+		rayBatch.clear();
+		if (batchRays)
+		{
+			for (Entity e : entities)
+			{
+				e.queueRays(rayBatch, dt);
+			}
+			collision.getBulletCollisions(rayBatch, rayHit);
+		}
+		
+		//Every entity starts the step where it ended the last one.
+		entityStore.savePreviousPositions();
+		spatialHash.startStep();
+		if (parallelStepping)
+			stepInParallel(dt);
 		
 		for (Entity e : entities)
 		{
+			if (parallelStepping && e.canStepInParallel()) continue;
 			e.step(dt);
+			spatialHash.update(e);
 		}
 		
 		if (c.isMultiplayer() && c.isServer())
@@ -321,17 +839,227 @@ public class World
 		
 		for (Entity e : deletionQueue)
 		{
-			entities.remove(e);
+			//An entity can be in the queue more than once, and entities deleted before they were added are skipped.
+			if (!removeFromList(e)) continue;
+			spatialHash.remove(e);
+			removeFromViews(e);
+			entityStore.remove(e);
+			lineOfSight.remove(e);
+			entityPool.release(e);
 		}
 		
 		for (Entity e : creationQueue)
 		{
-			if (!antiEntitySet.contains(new Identification(e.getOwner(), e.getID())))
-				entities.add(e);
+			if (!antiEntitySet.contains(getKey(e.getOwner(), e.getID())))
+			{
+				e.clearPreviousPosition();
+				addToList(e);
+				entityStore.add(e);
+				addToViews(e);
+				spatialHash.update(e);
+			}
 		}
 		
 		deletionQueue.clear();
 		creationQueue.clear();
+		
+		collisionStats.fold();
+		if (LOG_COLLISION_STATS)
+			logCollisionStats(dt);
+	}
+	
+	//Steps the entities that allow it in parallel, then carries out what they did to the rest of the World.
+	private void stepInParallel(double dt)
+	{
+		/*
+		 * ALGORITHM 14:
+		 * Split the entities that can step in parallel into chunks of a fixed size, each with its own CommandBuffer
+		 *   and its own GameRandom seeded from the World's in chunk order, and step the chunks on the ForkJoinPool.
+		 *   While they step, the entities that cannot step in parallel stand still, so anything an entity reads about
+		 *   them stays the same, and anything an entity does to them or to the World is recorded in the buffer of its
+		 *   chunk instead.
+		 * Once every chunk is done, carry out the buffers in the order of their chunks. The chunks only depend on the
+		 *   order of the entities, so the commands are carried out in the same order no matter how the work was divided
+		 *   between threads.
+		 * Step the rest of the entities one at a time afterwards, as usual.
+		 */
+		parallelEntities.clear();
+		for (Entity e : entities)
+		{
+			if (e.canStepInParallel())
+				parallelEntities.add(e);
+		}
+		if (parallelEntities.isEmpty()) return;
+		
+		int numChunks = (parallelEntities.size() + PARALLEL_CHUNK_SIZE-1) / PARALLEL_CHUNK_SIZE;
+		while (commandBuffers.size() < numChunks)
+			commandBuffers.add(new CommandBuffer());
+		while (chunkRandoms.size() < numChunks)
+			chunkRandoms.add(new GameRandom(0));
+		for (int chunk=0; chunk<numChunks; chunk++)
+			chunkRandoms.get(chunk).setSeed(random.nextLong());
+		
+		inParallelPhase = true;
+		try
+		{
+			getSharedPool().invoke(new StepTask(0, numChunks, dt));
+		}
+		finally
+		{
+			inParallelPhase = false;
+		}
+		
+		for (Entity e : parallelEntities)
+			spatialHash.update(e);
+		
+		for (int chunk=0; chunk<numChunks; chunk++)
+			commandBuffers.get(chunk).apply(this);
+	}
+	
+	/**
+	 * Sets whether entities that allow it are stepped in parallel on the ForkJoinPool shared by every World.
+	 * This is off unless the system property robotgame.parallelStep is true.
+	 */
+	public void setParallelStepping(boolean parallel)
+	{
+		parallelStepping = parallel;
+	}
+	
+	//Returns the pool shared by every World, creating it if there is none.
+	private static synchronized ForkJoinPool getSharedPool()
+	{
+		if (sharedPool == null)
+			sharedPool = new ForkJoinPool();
+		return sharedPool;
+	}
+	
+	/**
+	 * Shuts down the ForkJoinPool that every World steps entities on in parallel. This should be called by
+	 * whatever runs the Worlds once none of them will step again, such as when the game or a server stops.
+	 * A World that steps in parallel afterward starts a new pool.
+	 */
+	public static synchronized void shutdownSharedPool()
+	{
+		if (sharedPool == null) return;
+		sharedPool.shutdown();
+		sharedPool = null;
+	}
+	
+	/**
+	 * Returns whether entities that allow it are stepped in parallel.
+	 */
+	public boolean isParallelStepping()
+	{
+		return parallelStepping;
+	}
+	
+	/**
+	 * Sets whether the rays that entities cast against the walls are tested in one batch at the start of each step
+	 * instead of one at a time while the entities are stepped. Either way gives the same results, but the batch is
+	 * not yet faster, so this is off unless the system property robotgame.batchRays is true.
+	 */
+	public void setBatchRays(boolean batch)
+	{
+		batchRays = batch;
+	}
+	
+	/**
+	 * Returns whether the rays of each step are tested in one batch.
+	 */
+	public boolean isBatchingRays()
+	{
+		return batchRays;
+	}
+	
+	/**
+	 * Returns the buffer that effects on the rest of the World should be recorded in, or null if they can be carried
+	 * out right away. A buffer is only returned while entities are being stepped in parallel.
+	 */
+	public CommandBuffer getCommandBuffer()
+	{
+		if (!inParallelPhase) return null;
+		return currentBuffer.get();
+	}
+	
+	/**
+	 * Damages the entity, or records the damage to be done after the parallel part of the step if an entity
+	 * stepping in parallel is calling this. Entities that step in parallel must damage others through this method.
+	 * The arguments after the first match those of Damageable's applyDamage.
+	 */
+	public void applyDamage(Damageable e, double amount, double x, double y, double z, double knockBack, boolean absolute)
+	{
+		CommandBuffer buffer = getCommandBuffer();
+		if (buffer != null)
+			buffer.damage(e, amount, x, y, z, knockBack, absolute);
+		else
+			e.applyDamage(amount, x, y, z, knockBack, absolute);
+	}
+	
+	/**
+	 * Plays a sound at the given location, or records it to be played after the parallel part of the step
+	 * if an entity stepping in parallel is calling this.
+	 * @param i Index of the sound in the SoundHandler.
+	 */
+	public void playSound(int i, double x, double y, double z)
+	{
+		CommandBuffer buffer = getCommandBuffer();
+		if (buffer != null)
+			buffer.playSound(i, x, y, z);
+		else
+			c.getSoundHandler().playSound(i, x, y, z);
+	}
+	
+	//Steps the chunks of parallelEntities from start to end-1, splitting the range in half until one chunk is left.
+	private class StepTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+		
+		private int start, end;
+		private double dt;
+		
+		public StepTask(int start, int end, double dt)
+		{
+			this.start = start;
+			this.end = end;
+			this.dt = dt;
+		}
+		
+		protected void compute()
+		{
+			if (end-start > 1)
+			{
+				int middle = (start+end)/2;
+				invokeAll(new StepTask(start, middle, dt), new StepTask(middle, end, dt));
+				return;
+			}
+			
+			//The pool's threads outlive the step, so they must not keep the buffer or random of the chunk if an entity throws.
+			currentBuffer.set(commandBuffers.get(start));
+			currentRandom.set(chunkRandoms.get(start));
+			try
+			{
+				int last = Math.min(parallelEntities.size(), (start+1)*PARALLEL_CHUNK_SIZE);
+				for (int i=start*PARALLEL_CHUNK_SIZE; i<last; i++)
+					parallelEntities.get(i).step(dt);
+			}
+			finally
+			{
+				currentBuffer.set(null);
+				currentRandom.set(null);
+			}
+		}
+	}
+	
+	//Prints the collision statistics gained over the last second once every second.
+	private void logCollisionStats(double dt)
+	{
+		collisionLogTime += dt;
+		if (collisionLogTime < 1) return;
+		
+		CollisionStats.Snapshot snapshot = collisionStats.getSnapshot();
+		System.out.println(snapshot.since(collisionLogSnapshot));
+		collisionLogSnapshot = snapshot;
+		collisionLogTime = 0;
 	}
 	
 	/**
@@ -340,7 +1068,7 @@ public class World
 	 */
 	public void handleDeath(double dt)
 	{
-		if (player.isDead())
+		if (player != null && player.isDead())
 		{
 			deathDuration += dt;
 			if (deathDuration >= deathWait)
@@ -364,13 +1092,14 @@ public class World
 	{
 		if (currentWave == null || (!currentWave.isRunning() && noEnemies()))
 		{
-			player.heal();
+			if (player != null)
+				player.heal();
 			
 			int waveDifficulty = (int)difficulty;
 			if (waveDifficulty >= NUM_DIFFICULTIES) waveDifficulty = NUM_DIFFICULTIES - 1;
 			ArrayList<SpawningWave> waveList = waves.get(waveDifficulty);
 			
-			int index = (int)(Math.random()*waveList.size());
+			int index = random.nextInt(waveList.size());
 			currentWave = waveList.get(index);
 			currentWave.start();
 			
@@ -383,11 +1112,7 @@ public class World
 	//Checks whether all the enemies have been destroyed by the player
 	private boolean noEnemies()
 	{
-		for (Entity e : entities)
-		{
-			if (e instanceof Enemy) return false;
-		}
-		return true;
+		return enemies.size() == 0;
 	}
 	
 	/**
@@ -396,12 +1121,19 @@ public class World
 	 */
 	public void draw(GL2 gl)
 	{
+		double alpha = c.getInterpolation();
+		
 		//Set the view
 		if (player.isDead())
 			player.viewThirdPerson(gl);
 		else
 			player.viewFirstPerson(gl);
 		
+		//Move the camera to where the player is drawn by moving everything else the other way
+		gl.glTranslated(-getInterpolationOffset(player.getX(), player.getXPrevious(), alpha),
+				-getInterpolationOffset(player.getY(), player.getYPrevious(), alpha),
+				-getInterpolationOffset(player.getZ(), player.getZPrevious(), alpha));
+		
 		//Draw the lights
 		gl.glLightfv(GL2.GL_LIGHT0, GL2.GL_POSITION, new float[] {0.31f, 0, 0.95f, 0}, 0);
 		gl.glLightfv(GL2.GL_LIGHT0, GL2.GL_DIFFUSE, new float[] {0.4f, 0.4f, 0.4f, 0}, 0);
@@ -416,8 +1148,13 @@ public class World
 		Texture currentTexture = null;
 		boolean textureUsed = false;
 		
+		//Skip the walls and entities that cannot be seen from the player's cell. The camera of a dead player is not in its cell.
+		int viewCell = player.isDead() ? -1 : visibilitySet.getCell(player.getX(), player.getY(), player.getZ()+player.getHeight()/2);
+		
 		for (int i=0; i<drawData; i++)
 		{
+			if (!visibilitySet.isWallVisible(viewCell, i)) continue;
+			
 			if (currentTexture != tex.get(i))
 			{
 				if (textureUsed) currentTexture.disable(gl);
@@ -446,17 +1183,42 @@ public class World
 		//Draw entities
 		for (Entity e : entities)
 		{
-			if (!e.isGhost())
+			if (!e.isGhost() && visibilitySet.isCellVisible(viewCell, visibilitySet.getCell(e.getX(), e.getY(), e.getZ())))
+			{
+				gl.glPushMatrix();
+				translateToInterpolated(gl, e, alpha);
 				e.draw(gl);
+				gl.glPopMatrix();
+			}
 		}
 		
 		for (Entity e : entities)
 		{
-			if (!e.isGhost())
+			if (!e.isGhost() && visibilitySet.isCellVisible(viewCell, visibilitySet.getCell(e.getX(), e.getY(), e.getZ())))
+			{
+				gl.glPushMatrix();
+				translateToInterpolated(gl, e, alpha);
 				e.draw2(gl);
+				gl.glPopMatrix();
+			}
 		}
 	}
 	
+	//Entities draw themselves at their current position, which is where they are after the last step. Moves them
+	//back to where they are drawn instead, partway between their previous and current positions.
+	private void translateToInterpolated(GL2 gl, Entity e, double alpha)
+	{
+		gl.glTranslated(getInterpolationOffset(e.getX(), e.getXPrevious(), alpha),
+				getInterpolationOffset(e.getY(), e.getYPrevious(), alpha),
+				getInterpolationOffset(e.getZ(), e.getZPrevious(), alpha));
+	}
+	
+	//Returns how far a coordinate is drawn from its current value, given the fraction of a step since the last step.
+	private static double getInterpolationOffset(double current, double previous, double alpha)
+	{
+		return (alpha-1)*(current-previous);
+	}
+	
 	/**
 	 * Adds a normal to the ArrayList of normals given the last element of the other ArrayLists.
 	 */
@@ -483,29 +1245,10 @@ public class World
 		return collision;
 	}
 	
-	private class Identification
+	//Returns the key that identifies an entity by its owner and ID in entityMap and antiEntitySet.
+	private static long getKey(int owner, int id)
 	{
-		public final int owner;
-		public final int id;
-		public final int hashCode;
-		
-		public Identification(int owner, int id)
-		{
-			this.owner = owner;
-			this.id = id;
-			hashCode = owner*29 + id;
-		}
-		
-		public int hashCode()
-		{
-			return hashCode;
-		}
-		
-		public boolean equals(Object o)
-		{
-			Identification i = (Identification)o;
-			return (i.owner == owner && i.id == id);
-		}
+		return ((long)owner << 32) | (id & 0xffffffffL);
 	}
 	
 	//Handles parsing the map data file for level creation.
@@ -538,7 +1281,12 @@ public class World
 				//1- Entity placement (id, x, y, z)
 				if (command == 1)
 				{
-					Entity e = c.createEntity(World.this, getInt());
+					int type = getInt();
+					
+					//A dedicated server has no player of its own.
+					if (type == EI.Player && c.isDedicatedServer()) continue;
+					
+					Entity e = c.createEntity(World.this, type);
 					
 					if (e instanceof Player)
 						player = (Player)e;
@@ -552,8 +1300,12 @@ public class World
 						for (int i=0; i<extra; i++)
 							e.initializeExtraData(i, getDouble());
 						
-						entities.add(e);
-						entityMap.put(new Identification(e.getOwner(), e.getID()), e);
+						e.clearPreviousPosition();
+						addToList(e);
+						entityStore.add(e);
+						addToViews(e);
+						spatialHash.update(e);
+						entityMap.put(getKey(e.getOwner(), e.getID()), e);
 					}
 				}
 				
@@ -577,6 +1329,16 @@ public class World
 					addWave(getInt());
 				}
 			}
+			
+			//All walls are placed, so the collision data can be organized for quick queries.
+			collision.build();
+			if (visibilitySet == null)
+			{
+				visibilitySet = new VisibilitySet(collision, VISIBILITY_CELL_SIZE);
+				flowField = new FlowField(collision, FLOW_FIELD_CELL_SIZE);
+				mapModified = file.lastModified();
+			}
+			lineOfSight.setVisibilitySet(visibilitySet);
 		}
 		
 		//Places a surface based on information in the file.
@@ -40,6 +40,14 @@ public class EI
 	
 	private static Entity constructEntity(Controller c, World world, int type)
 	{
+		//Reuse an entity of the same type that was removed from the world if there is one.
+		//The pool is not thread-safe, so it is skipped while entities are stepping in parallel.
+		if (world.getCommandBuffer() == null)
+		{
+			Entity pooled = world.getEntityPool().obtain(type);
+			if (pooled != null) return pooled;
+		}
+		
 		switch (type)
 		{
 		case Player: return new Player(c, world);
@@ -1,10 +1,15 @@
 package patowen95.robotgame.entity;
 import com.jogamp.opengl.GL2;
 
+import patowen95.robotgame.CommandBuffer;
 import patowen95.robotgame.Controller;
+import patowen95.robotgame.EntityStore;
 import patowen95.robotgame.NetworkPacket;
+import patowen95.robotgame.RayBatch;
 import patowen95.robotgame.World;
 
+import com.jogamp.opengl.util.gl2.GLUT;
+
 /**
  * Represents any in-game object that can be encountered by the player, including the player. 
  * @author Patrick Owen
@@ -19,12 +24,20 @@ public class Entity
 	protected int type; //The class of the entity.
 	protected int owner; //Which computer controls the entity. 0=server, 1=client0, 2=client1, ...
 	protected int id; //An identification of the entity that remains consistent throughout its lifetime.
-	protected double x, y, z;
-	protected double xV, yV, zV;
-	protected double xPrevious, yPrevious, zPrevious;
 	protected World w;
 	
 	private int lastUpdated;
+	private EntityStore store; //Holds the position, velocity and previous position of the entity while it is in the World
+	private int handle; //Handle of the entity in the World's EntityStore, or -1 if it is not stored
+	private double[] state; //The position, velocity and previous position while the entity is not stored
+	private int index; //Position of the entity in the World's list of entities, or -1 if it is not in it
+	
+	//Indices of the values in state
+	private static final int X = 0, Y = 1, Z = 2;
+	private static final int XV = 3, YV = 4, ZV = 5;
+	private static final int X_PREVIOUS = 6, Y_PREVIOUS = 7, Z_PREVIOUS = 8;
+	
+	private static GLUT glut; //Shared by every entity, created when an entity is first drawn
 	
 	/**
 	 * Creates a new Entity.
@@ -38,10 +51,10 @@ public class Entity
 		if (w == null)
 			System.exit(1);
 		isActive = false;
-		
-		xV = 0;
-		yV = 0;
-		zV = 0;
+		store = w.getEntityStore();
+		handle = -1;
+		state = new double[9];
+		index = -1;
 	}
 	
 	public void init(int type)
@@ -67,6 +80,21 @@ public class Entity
 //		}
 	}
 	
+	/**
+	 * Puts the entity back in the state it was in when it was constructed so that an EntityPool can hand it out again.
+	 * Entities that are pooled must override this to reset their own fields as well, calling super.reset().
+	 */
+	public void reset()
+	{
+		isLocal = false;
+		isActive = false;
+		lastUpdated = 0;
+		
+		setPosition(0, 0, 0);
+		setVelocity(0, 0, 0);
+		clearPreviousPosition();
+	}
+	
 	public void init(int type, int owner, int id)
 	{		
 		isActive = false;
@@ -87,6 +115,83 @@ public class Entity
 		return id;
 	}
 	
+	/**
+	 * Returns the type of the entity from EI.
+	 */
+	public int getType()
+	{
+		return type;
+	}
+	
+	/**
+	 * Sets the ID of an entity that was created without one while stepping in parallel. This should only be called by World.
+	 */
+	public void setID(int id)
+	{
+		this.id = id;
+	}
+	
+	/**
+	 * Returns whether the entity can be stepped at the same time as other entities when World steps in parallel.
+	 * Such an entity may only change its own fields while stepping. It must damage other entities with World's
+	 * applyDamage and play sounds with World's playSound, so that these are put off until every entity has stepped,
+	 * and it must not read the fields of other entities that step in parallel. Queries that take a CollisionHit must be
+	 * given one that the entity owns. Creating and deleting entities is put off automatically. Entities that cannot
+	 * follow these rules should return false, which is the default.
+	 */
+	public boolean canStepInParallel()
+	{
+		return false;
+	}
+	
+	/**
+	 * Returns the handle of the entity in the World's EntityStore, or -1 if it is not stored.
+	 */
+	public int getHandle()
+	{
+		return handle;
+	}
+	
+	/**
+	 * Sets the handle of the entity in the World's EntityStore, moving its position, velocity and previous position
+	 * into the store's arrays, or out of them if the handle is -1. This should only be called by EntityStore.
+	 */
+	public void setHandle(int handle)
+	{
+		if (this.handle != -1)
+		{
+			state[X] = getX(); state[Y] = getY(); state[Z] = getZ();
+			state[XV] = getXV(); state[YV] = getYV(); state[ZV] = getZV();
+			state[X_PREVIOUS] = getXPrevious(); state[Y_PREVIOUS] = getYPrevious(); state[Z_PREVIOUS] = getZPrevious();
+		}
+		
+		this.handle = handle;
+		if (handle != -1)
+		{
+			store.getXArray()[handle] = state[X]; store.getYArray()[handle] = state[Y]; store.getZArray()[handle] = state[Z];
+			store.getXVArray()[handle] = state[XV]; store.getYVArray()[handle] = state[YV]; store.getZVArray()[handle] = state[ZV];
+			store.getXPreviousArray()[handle] = state[X_PREVIOUS];
+			store.getYPreviousArray()[handle] = state[Y_PREVIOUS];
+			store.getZPreviousArray()[handle] = state[Z_PREVIOUS];
+		}
+	}
+	
+	/**
+	 * Returns the position of the entity in the World's list of entities, or -1 if it is not in it.
+	 */
+	public int getIndex()
+	{
+		return index;
+	}
+	
+	/**
+	 * Sets the position of the entity in the World's list of entities. This should only be called by World.
+	 */
+	public void setIndex(int index)
+	{
+		this.index = index;
+	}
+	
 	/**
 	 * Moves the entity to the specified location.
 	 * @param xLoc
@@ -95,9 +200,9 @@ public class Entity
 	 */
 	public void setPosition(double xLoc, double yLoc, double zLoc)
 	{
-		x = xLoc;
-		y = yLoc;
-		z = zLoc;
+		setX(xLoc);
+		setY(yLoc);
+		setZ(zLoc);
 	}
 	
 	/**
@@ -108,9 +213,9 @@ public class Entity
 	 */
 	public void setVelocity(double xVel, double yVel, double zVel)
 	{
-		xV = xVel;
-		yV = yVel;
-		zV = zVel;
+		setXV(xVel);
+		setYV(yVel);
+		setZV(zVel);
 	}
 	
 	public void setActive(boolean active)
@@ -141,7 +246,7 @@ public class Entity
 	
 	protected void writeState(NetworkPacket data)
 	{
-		data.addDoubles(x, y, z, xV, yV, zV);
+		data.addDoubles(getX(), getY(), getZ(), getXV(), getYV(), getZV());
 	}
 	
 	protected void interpretEvent(NetworkPacket data)
@@ -202,14 +307,34 @@ public class Entity
 	}
 	
 	/**
-	 * Runs a frame of the Entity's movement.
+	 * Adds the rays that the entity will test against the walls in its next step to the batch.
+	 * When rays are being batched, World tests the whole batch before stepping entities, and the entity can read
+	 * its results in step. Otherwise, this is not called, and the entity should test its rays itself.
+	 * @param batch The batch of rays for the upcoming step.
+	 * @param dt Time step in seconds.
+	 */
+	public void queueRays(RayBatch batch, double dt)
+	{
+		
+	}
+	
+	/**
+	 * Runs a frame of the Entity's movement. World saves the previous position of every entity before any of them step.
 	 * @param dt Time step in seconds.
 	 */
 	public void step(double dt)
 	{
-		xPrevious = x;
-		yPrevious = y;
-		zPrevious = z;
+		
+	}
+	
+	/**
+	 * Returns the GLUT object shared by all entities for drawing shapes. It should only be called while drawing.
+	 */
+	public static GLUT getGLUT()
+	{
+		if (glut == null)
+			glut = new GLUT();
+		return glut;
 	}
 	
 	/**
@@ -236,6 +361,13 @@ public class Entity
 	 */
 	public void delete()
 	{
+		CommandBuffer buffer = w.getCommandBuffer();
+		if (buffer != null)
+		{
+			buffer.delete(this);
+			return;
+		}
+		
 		if (c.isMultiplayer() && c.isServer())
 		{
 			NetworkPacket data = new NetworkPacket(256);
@@ -251,7 +383,7 @@ public class Entity
 	 */
 	public double getX()
 	{
-		return x;
+		return handle == -1 ? state[X] : store.getXArray()[handle];
 	}
 	
 	/**
@@ -259,7 +391,7 @@ public class Entity
 	 */
 	public double getY()
 	{
-		return y;
+		return handle == -1 ? state[Y] : store.getYArray()[handle];
 	}
 	
 	/**
@@ -267,7 +399,7 @@ public class Entity
 	 */
 	public double getZ()
 	{
-		return z;
+		return handle == -1 ? state[Z] : store.getZArray()[handle];
 	}
 	
 	/**
@@ -275,7 +407,7 @@ public class Entity
 	 */
 	public double getXV()
 	{
-		return xV;
+		return handle == -1 ? state[XV] : store.getXVArray()[handle];
 	}
 	
 	/**
@@ -283,7 +415,7 @@ public class Entity
 	 */
 	public double getYV()
 	{
-		return yV;
+		return handle == -1 ? state[YV] : store.getYVArray()[handle];
 	}
 	
 	/**
@@ -291,7 +423,81 @@ public class Entity
 	 */
 	public double getZV()
 	{
-		return zV;
+		return handle == -1 ? state[ZV] : store.getZVArray()[handle];
+	}
+	
+	/**
+	 * Sets the x-coordinate of the entity.
+	 */
+	protected void setX(double x)
+	{
+		if (handle == -1) state[X] = x;
+		else store.getXArray()[handle] = x;
+	}
+	
+	/**
+	 * Sets the y-coordinate of the entity.
+	 */
+	protected void setY(double y)
+	{
+		if (handle == -1) state[Y] = y;
+		else store.getYArray()[handle] = y;
+	}
+	
+	/**
+	 * Sets the z-coordinate of the entity.
+	 */
+	protected void setZ(double z)
+	{
+		if (handle == -1) state[Z] = z;
+		else store.getZArray()[handle] = z;
+	}
+	
+	/**
+	 * Sets the x-component of the velocity of the entity.
+	 */
+	protected void setXV(double xV)
+	{
+		if (handle == -1) state[XV] = xV;
+		else store.getXVArray()[handle] = xV;
+	}
+	
+	/**
+	 * Sets the y-component of the velocity of the entity.
+	 */
+	protected void setYV(double yV)
+	{
+		if (handle == -1) state[YV] = yV;
+		else store.getYVArray()[handle] = yV;
+	}
+	
+	/**
+	 * Sets the z-component of the velocity of the entity.
+	 */
+	protected void setZV(double zV)
+	{
+		if (handle == -1) state[ZV] = zV;
+		else store.getZVArray()[handle] = zV;
+	}
+	
+	/**
+	 * Sets the previous position of the entity to its current position, so that an entity that was just added
+	 * to the World is not drawn or swept through space as if it moved there from wherever it was before.
+	 */
+	public void clearPreviousPosition()
+	{
+		if (handle == -1)
+		{
+			state[X_PREVIOUS] = state[X];
+			state[Y_PREVIOUS] = state[Y];
+			state[Z_PREVIOUS] = state[Z];
+		}
+		else
+		{
+			store.getXPreviousArray()[handle] = store.getXArray()[handle];
+			store.getYPreviousArray()[handle] = store.getYArray()[handle];
+			store.getZPreviousArray()[handle] = store.getZArray()[handle];
+		}
 	}
 	
 	/**
@@ -299,7 +505,7 @@ public class Entity
 	 */
 	public double getXPrevious()
 	{
-		return xPrevious;
+		return handle == -1 ? state[X_PREVIOUS] : store.getXPreviousArray()[handle];
 	}
 	
 	/**
@@ -307,7 +513,7 @@ public class Entity
 	 */
 	public double getYPrevious()
 	{
-		return yPrevious;
+		return handle == -1 ? state[Y_PREVIOUS] : store.getYPreviousArray()[handle];
 	}
 	
 	/**
@@ -315,6 +521,6 @@ public class Entity
 	 */
 	public double getZPrevious()
 	{
-		return zPrevious;
+		return handle == -1 ? state[Z_PREVIOUS] : store.getZPreviousArray()[handle];
 	}
 }
@@ -0,0 +1,154 @@
+package patowen95.robotgame.entity;
+import java.util.ArrayList;
+
+/**
+ * Keeps entities of the short-lived kinds, such as bullets and explosions, after they are removed from
+ * the World so that EI can hand them out again instead of constructing new ones. Each World has its own pool,
+ * since entities keep the World they were constructed for. Entities are reset when they are handed out.
+ * <br/><br/>
+ * Nothing may keep a pooled entity after it is deleted. Entities that need to refer to one that may be deleted,
+ * such as the owner of a bullet, should keep its reference in the EntityStore instead.
+ * @author Patrick Owen
+ */
+public class EntityPool
+{
+	private static final int MAX_SIZE = 256; //Most entities of each kind that are kept
+	
+	//Kinds of entities that are pooled
+	private static final int BULLET = 0;
+	private static final int PLASMA_BOLT = 1;
+	private static final int EXPLOSION = 2;
+	private static final int FADE = 3;
+	private static final int NUM_KINDS = 4;
+	
+	private ArrayList<ArrayList<Entity>> free; //Entities waiting to be handed out, by kind
+	
+	//Metrics
+	private long requests; //Calls to obtain for kinds that are pooled
+	private long hits; //Requests that were given a pooled entity
+	private long releases; //Entities kept by release
+	
+	/**
+	 * Creates an empty EntityPool.
+	 */
+	public EntityPool()
+	{
+		free = new ArrayList<ArrayList<Entity>>(NUM_KINDS);
+		for (int i=0; i<NUM_KINDS; i++)
+			free.add(new ArrayList<Entity>());
+		
+		resetMetrics();
+	}
+	
+	/**
+	 * Returns a reset entity of the given type from the pool, or null if the type is not pooled or none are left,
+	 * in which case a new entity should be constructed.
+	 * @param type The type of entity from EI.
+	 */
+	public Entity obtain(int type)
+	{
+		int kind = getKind(type);
+		if (kind == -1) return null;
+		
+		requests += 1;
+		ArrayList<Entity> list = free.get(kind);
+		if (list.isEmpty()) return null;
+		
+		hits += 1;
+		Entity e = list.remove(list.size()-1);
+		e.reset();
+		return e;
+	}
+	
+	/**
+	 * Gives an entity that was removed from the World back to the pool. Nothing is done if its type is not pooled
+	 * or the pool of its type is full.
+	 */
+	public void release(Entity e)
+	{
+		int kind = getKind(e.type);
+		if (kind == -1) return;
+		
+		ArrayList<Entity> list = free.get(kind);
+		if (list.size() >= MAX_SIZE) return;
+		
+		list.add(e);
+		releases += 1;
+	}
+	
+	/**
+	 * Removes every entity from the pool.
+	 */
+	public void clear()
+	{
+		for (ArrayList<Entity> list : free)
+			list.clear();
+	}
+	
+	/**
+	 * Returns the number of entities waiting in the pool.
+	 */
+	public int size()
+	{
+		int size = 0;
+		for (ArrayList<Entity> list : free)
+			size += list.size();
+		return size;
+	}
+	
+	/**
+	 * Returns how many times an entity of a pooled type was asked for.
+	 */
+	public long getRequests()
+	{
+		return requests;
+	}
+	
+	/**
+	 * Returns how many requests were given an entity from the pool.
+	 */
+	public long getHits()
+	{
+		return hits;
+	}
+	
+	/**
+	 * Returns how many entities were given back to the pool.
+	 */
+	public long getReleases()
+	{
+		return releases;
+	}
+	
+	/**
+	 * Returns the fraction of requests that were given an entity from the pool, or 0 if there were none.
+	 */
+	public double getHitRate()
+	{
+		return requests == 0 ? 0 : (double)hits/requests;
+	}
+	
+	/**
+	 * Sets all metrics back to 0.
+	 */
+	public void resetMetrics()
+	{
+		requests = 0;
+		hits = 0;
+		releases = 0;
+	}
+	
+	//Returns the kind of pooled entity of the given type from EI, or -1 if it is not pooled.
+	private static int getKind(int type)
+	{
+		switch (type)
+		{
+		case EI.EntityBullet: return BULLET;
+		case EI.EntityPlasmaBolt: return PLASMA_BOLT;
+		case EI.EntityExplosion: return EXPLOSION;
+		case EI.EntityFade: return FADE;
+		}
+		
+		return -1;
+	}
+}
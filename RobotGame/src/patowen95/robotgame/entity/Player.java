@@ -3,6 +3,8 @@ import com.jogamp.opengl.GL;
 import com.jogamp.opengl.GL2;
 import com.jogamp.opengl.glu.GLU;
 
+import patowen95.robotgame.CollisionCache;
+import patowen95.robotgame.CollisionStats;
 import patowen95.robotgame.Controller;
 import patowen95.robotgame.InputHandler;
 import patowen95.robotgame.NetworkPacket;
@@ -35,6 +37,7 @@ public class Player extends Entity implements Damageable
 	
 	private double hp;
 	private boolean isDead;
+	private boolean invulnerable; //Whether damage is ignored, for testing
 	
 	//Constants
 	private double radius, height;
@@ -50,6 +53,8 @@ public class Player extends Entity implements Damageable
 	private int currentWeapon;
 	private Weapon[] weapons;
 	
+	private CollisionCache collisionCache; //Walls near the player, shared by its collision checks
+	
 	/**
 	 * Initializes the player with default parameters.
 	 * @param controller The active Controller object.
@@ -62,6 +67,7 @@ public class Player extends Entity implements Damageable
 		input = c.getInputHandler();
 		w = world;
 		inAir = true;
+		collisionCache = new CollisionCache(CollisionStats.PLAYER);
 		
 		invincibilityTime = 0.5;
 		invincibilityLeft = 0;
@@ -92,6 +98,7 @@ public class Player extends Entity implements Damageable
 		
 		hp = maxHp;
 		isDead = false;
+		invulnerable = false;
 	}
 	
 	protected void readState(NetworkPacket data)
@@ -129,9 +136,9 @@ public class Player extends Entity implements Damageable
 		{
 			if (!isLocal)
 			{
-				GLUT glut = new GLUT();
+				GLUT glut = getGLUT();
 				gl.glPushMatrix();
-				gl.glTranslated(x, y, z);
+				gl.glTranslated(getX(), getY(), getZ());
 				glut.glutSolidCylinder(radius, height, 12, 1);
 				gl.glPopMatrix();
 			}
@@ -167,20 +174,20 @@ public class Player extends Entity implements Damageable
 	 */
 	public void applyDamage(double amount, double x, double y, double z, double knockBack, boolean absolute)
 	{
-		if (!isLocal)
+		if (!isLocal || invulnerable)
 			return;
 		
 		if (absolute)
 		{
-			xV = -knockBack*x;
-			yV = -knockBack*y;
-			zV = -knockBack*z;
+			setXV(-knockBack*x);
+			setYV(-knockBack*y);
+			setZV(-knockBack*z);
 		}
 		else
 		{
-			xV += -knockBack*x;
-			yV += -knockBack*y;
-			zV += -knockBack*z;
+			setXV(getXV() - knockBack*x);
+			setYV(getYV() - knockBack*y);
+			setZV(getZV() - knockBack*z);
 		}
 		
 		inAir = true;
@@ -206,7 +213,7 @@ public class Player extends Entity implements Damageable
 		z = -x*Math.sin(verticalDir) + z*Math.cos(verticalDir);
 		x = temp;
 		
-		if (isLocal)
+		if (isLocal && c.getHUD() != null)
 			c.getHUD().addHitMark(Math.atan2(z, -y));
 	}
 	
@@ -235,6 +242,14 @@ public class Player extends Entity implements Damageable
 		return hp;
 	}
 	
+	/**
+	 * Sets whether the player ignores all damage and knock back, for testing.
+	 */
+	public void setInvulnerable(boolean invulnerable)
+	{
+		this.invulnerable = invulnerable;
+	}
+	
 	/**
 	 * Returns the radius of the player.
 	 */
@@ -314,7 +329,7 @@ public class Player extends Entity implements Damageable
 			
 			handleWeapons(dt);
 			
-			c.getSoundHandler().setListenerPosition(x, y, z+eyeHeight);
+			c.getSoundHandler().setListenerPosition(getX(), getY(), getZ()+eyeHeight);
 			c.getSoundHandler().setListenerOrientation(Math.cos(horizontalDir)*Math.cos(verticalDir), Math.sin(horizontalDir)*Math.cos(verticalDir), eyeHeight+Math.sin(verticalDir),
 					-Math.cos(horizontalDir)*Math.sin(verticalDir), -Math.sin(horizontalDir)*Math.sin(verticalDir), Math.cos(verticalDir));
 			
@@ -326,7 +341,7 @@ public class Player extends Entity implements Damageable
 			if (hp <= 0)
 			{
 				EntityExplosion explosion = (EntityExplosion)c.createEntity(w, EI.EntityExplosion);
-				explosion.setPosition(x, y, z+height/2);
+				explosion.setPosition(getX(), getY(), getZ()+height/2);
 				explosion.setDuration(1);
 				explosion.setRadius(0.2f);
 				explosion.setFinalRadius(2);
@@ -344,7 +359,7 @@ public class Player extends Entity implements Damageable
 	public void viewFirstPerson(GL gl)
 	{
 		GLU glu = new GLU();
-		glu.gluLookAt(x, y, z+eyeHeight, x+Math.cos(horizontalDir)*Math.cos(verticalDir), y+Math.sin(horizontalDir)*Math.cos(verticalDir), z+eyeHeight+Math.sin(verticalDir),
+		glu.gluLookAt(getX(), getY(), getZ()+eyeHeight, getX()+Math.cos(horizontalDir)*Math.cos(verticalDir), getY()+Math.sin(horizontalDir)*Math.cos(verticalDir), getZ()+eyeHeight+Math.sin(verticalDir),
 				-Math.cos(horizontalDir)*Math.sin(verticalDir), -Math.sin(horizontalDir)*Math.sin(verticalDir), Math.cos(verticalDir));
 	}
 	
@@ -354,7 +369,7 @@ public class Player extends Entity implements Damageable
 	public void viewThirdPerson(GL gl)
 	{
 		GLU glu = new GLU();
-		glu.gluLookAt(x-5*Math.cos(horizontalDir), y+5*Math.sin(horizontalDir), z+3, x, y, z+height/2, 0, 0, 1);
+		glu.gluLookAt(getX()-5*Math.cos(horizontalDir), getY()+5*Math.sin(horizontalDir), getZ()+3, getX(), getY(), getZ()+height/2, 0, 0, 1);
 	}
 	
 	//Handles using all the player's weapons.
@@ -371,7 +386,7 @@ public class Player extends Entity implements Damageable
 		}
 		for(Weapon w : weapons)
 			w.recharge(dt);
-		weapons[currentWeapon].setPosition(x, y, z+eyeHeight, horizontalDir, verticalDir);
+		weapons[currentWeapon].setPosition(getX(), getY(), getZ()+eyeHeight, horizontalDir, verticalDir);
 		weapons[currentWeapon].step(dt);
 	}
 	
@@ -411,16 +426,16 @@ public class Player extends Entity implements Damageable
 		if (isLocal && input.getKeyPressed(InputHandler.JUMP) && !inAir)
 		{
 			inAir = true;
-			zV += jumpSpeed;
+			setZV(getZV() + jumpSpeed);
 		}
 		
-		double t = w.getCollision().getPlayerCollision(x, y, z, 0, 0, -(zV+8)*dt, radius, height);
-		double zLand = z-(zV+8)*dt*t;
-		floorNormX = w.getCollision().getNormalX(); floorNormY = w.getCollision().getNormalY(); floorNormZ = w.getCollision().getNormalZ();
+		double t = w.getCollision().getPlayerCollision(getX(), getY(), getZ(), 0, 0, -(getZV()+8)*dt, radius, height, collisionCache);
+		double zLand = getZ()-(getZV()+8)*dt*t;
+		floorNormX = collisionCache.getNormalX(); floorNormY = collisionCache.getNormalY(); floorNormZ = collisionCache.getNormalZ();
 		
-		if (inAir || z > zLand + 0.05 || floorNormZ < terrainTolerance)
+		if (inAir || getZ() > zLand + 0.05 || floorNormZ < terrainTolerance)
 		{
-			zV -= w.getGravity()*dt;
+			setZV(getZV() - w.getGravity()*dt);
 			inAir = true;
 		}
 		
@@ -489,9 +504,9 @@ public class Player extends Entity implements Damageable
 		{
 			if (inAir)
 			{
-				xV = xV - xV*airResistance*dt;
-				yV = yV - yV*airResistance*dt;
-				zV = zV - zV*airResistance*dt;
+				setXV(getXV() - getXV()*airResistance*dt);
+				setYV(getYV() - getYV()*airResistance*dt);
+				setZV(getZV() - getZV()*airResistance*dt);
 			}
 			else
 				changeSpeed(dt, 0,0,friction);
@@ -521,36 +536,36 @@ public class Player extends Entity implements Damageable
 		 */
 		for (int i=0; i<5; i+=1) //Cannot repeat this forever
 		{
-			double t = w.getCollision().getPlayerCollision(x,y,z,xV*dt*remaining,yV*dt*remaining,zV*dt*remaining,radius,height);
+			double t = w.getCollision().getPlayerCollision(getX(),getY(),getZ(),getXV()*dt*remaining,getYV()*dt*remaining,getZV()*dt*remaining,radius,height, collisionCache);
 			boolean stopped = (t < 0.001);
 			
 			if (!stopped)
 			{
-				x += xV*dt*t*remaining;
-				y += yV*dt*t*remaining;
-				z += zV*dt*t*remaining;
+				setX(getX() + getXV()*dt*t*remaining);
+				setY(getY() + getYV()*dt*t*remaining);
+				setZ(getZ() + getZV()*dt*t*remaining);
 			}
 			
 			if (t == 1) break;
 			
-			double m = -w.getCollision().getNormalX()*xV - w.getCollision().getNormalY()*yV - w.getCollision().getNormalZ()*zV;
-			xV += m*w.getCollision().getNormalX(); yV += m*w.getCollision().getNormalY(); zV += m*w.getCollision().getNormalZ();
+			double m = -collisionCache.getNormalX()*getXV() - collisionCache.getNormalY()*getYV() - collisionCache.getNormalZ()*getZV();
+			setXV(getXV() + m*collisionCache.getNormalX()); setYV(getYV() + m*collisionCache.getNormalY()); setZV(getZV() + m*collisionCache.getNormalZ());
 			
 			//Deal with being in an acute angled corner.
 			if (normalsReceived && stopped)
 			{
-				m = -w.getCollision().getNormalX()*nx - w.getCollision().getNormalY()*ny - w.getCollision().getNormalZ()*nz;
-				nx += m*w.getCollision().getNormalX(); ny += m*w.getCollision().getNormalY(); nz += m*w.getCollision().getNormalZ();
+				m = -collisionCache.getNormalX()*nx - collisionCache.getNormalY()*ny - collisionCache.getNormalZ()*nz;
+				nx += m*collisionCache.getNormalX(); ny += m*collisionCache.getNormalY(); nz += m*collisionCache.getNormalZ();
 				double dist = Math.sqrt(sqr(nx) + sqr(ny) + sqr(nz));
 				if (dist != 0)
 				{
 					nx /= dist; ny /= dist; nz /= dist;
-					m = -nx*xV - ny*yV - nz*zV;
-					xV += m*nx; yV += m*ny; zV += m*nz;
+					m = -nx*getXV() - ny*getYV() - nz*getZV();
+					setXV(getXV() + m*nx); setYV(getYV() + m*ny); setZV(getZV() + m*nz);
 				}
 			}
 			
-			nx = w.getCollision().getNormalX(); ny = w.getCollision().getNormalY(); nz = w.getCollision().getNormalZ(); normalsReceived = true;
+			nx = collisionCache.getNormalX(); ny = collisionCache.getNormalY(); nz = collisionCache.getNormalZ(); normalsReceived = true;
 			
 			//Landing
 			if (nz > terrainTolerance && inAir)
@@ -560,23 +575,23 @@ public class Player extends Entity implements Damageable
 			
 			if (i == 4)
 			{
-			    xV = 0;
-			    yV = 0;
-			    zV = 0;
+			    setXV(0);
+			    setYV(0);
+			    setZV(0);
 			}
 		}
 		
 		//Cling onto surfaces. If there is a floor under the player close enough to the player, set the player's ground to this surface.
 		if (!inAir)
 		{
-			double t = w.getCollision().getPlayerCollision(x,y,z,0,0,-stepDownHeight,radius,height);
+			double t = w.getCollision().getPlayerCollision(getX(),getY(),getZ(),0,0,-stepDownHeight,radius,height, collisionCache);
 			if (t != 1)
-				if (w.getCollision().getNormalZ() >= terrainTolerance)
+				if (collisionCache.getNormalZ() >= terrainTolerance)
 				{
-					z -= t*stepDownHeight;
-					floorNormX = w.getCollision().getNormalX();
-					floorNormY = w.getCollision().getNormalY();
-					floorNormZ = w.getCollision().getNormalZ();
+					setZ(getZ() - t*stepDownHeight);
+					floorNormX = collisionCache.getNormalX();
+					floorNormY = collisionCache.getNormalY();
+					floorNormZ = collisionCache.getNormalZ();
 				}
 		}
 	}
@@ -622,19 +637,19 @@ public class Player extends Entity implements Damageable
 			}
 		}
 		
-		double dist = sqr(xGoal-xV) + sqr(yGoal-yV) + sqr(zGoal-zV);
+		double dist = sqr(xGoal-getXV()) + sqr(yGoal-getYV()) + sqr(zGoal-getZV());
 		if (dist <= sqr(acceleration*dt))
 		{
-			xV = xGoal;
-			yV = yGoal;
-			zV = zGoal;
+			setXV(xGoal);
+			setYV(yGoal);
+			setZV(zGoal);
 		}
 		else
 		{
 			dist = Math.sqrt(dist);
-			xV += acceleration*dt*(xGoal-xV)/dist;
-			yV += acceleration*dt*(yGoal-yV)/dist;
-			zV += acceleration*dt*(zGoal-zV)/dist;
+			setXV(getXV() + acceleration*dt*(xGoal-getXV())/dist);
+			setYV(getYV() + acceleration*dt*(yGoal-getYV())/dist);
+			setZV(getZV() + acceleration*dt*(zGoal-getZV())/dist);
 		}
 	}
-}
+}
@@ -1,6 +1,10 @@
 package patowen95.robotgame.entity.ai;
 import patowen95.robotgame.Collision;
+import patowen95.robotgame.CollisionCache;
+import patowen95.robotgame.CollisionStats;
 import patowen95.robotgame.Controller;
+import patowen95.robotgame.FlowField;
+import patowen95.robotgame.LineOfSight;
 import patowen95.robotgame.World;
 import patowen95.robotgame.entity.Damageable;
 import patowen95.robotgame.entity.Player;
@@ -35,6 +39,8 @@ public class AITracking extends AIBasic
 	private double strafeSpeed;
 	private double preferredHeight;
 	
+	private CollisionCache collisionCache; //Walls near the enemy, shared by its collision checks
+	
 	/**
 	 * Constructs and AITracking object.
 	 * @param controller The controller object.
@@ -47,6 +53,7 @@ public class AITracking extends AIBasic
 		
 		preferredDistance = minPreferredDistance;
 		strafeSpeed = 0;
+		collisionCache = new CollisionCache(CollisionStats.AI);
 	}
 	
 	/**
@@ -98,12 +105,13 @@ public class AITracking extends AIBasic
 	//Handles the AI-decided movement of the turret; pays no attention to terrain
 	private void handleMovement(double dt)
 	{
-		Player player = w.getPlayer();
-		if (!player.isDead())
+		Player player = w.getTargetPlayer(x, y, z);
+		if (player != null)
 		{
 			/*
 			 * ALGORITHM 4:
 			 * Set the intended speed directly towards or away from the player to reach the preferred distance.
+			 *   If walls are in the way of the shortest route to the player, follow the flow field around them instead.
 			 * Add the intended speed by an amount perpendicular to the direction to the player to strafe around the player.
 			 * Multiply the speed goal by the right amount to make the enemy move at its maximum speed.
 			 * Modify the strafe speed, preferred distance, and preferred height randomly to add variety in enemy movement.
@@ -115,7 +123,16 @@ public class AITracking extends AIBasic
 			
 			//Track player
 			double hDist = Math.sqrt(xDiff*xDiff + yDiff*yDiff);
-			if (canGoToPlayer())
+			FlowField flowField = w.getFlowField();
+			int cell = flowField.getCell(x, y, z+height/2);
+			boolean followsFlowField = player == w.getFlowFieldPlayer();
+			boolean detour = followsFlowField && flowField.getSteps(cell) != -1 && !flowField.isDirect(cell);
+			if (detour)
+			{
+				xVGoal = flowField.getDirectionX(cell); yVGoal = flowField.getDirectionY(cell);
+				zVGoal = flowField.getDirectionZ(cell);
+			}
+			else if ((followsFlowField && flowField.isDirect(cell)) || canGoToPlayer(player))
 			{
 				xVGoal += (xDiff/hDist)*(hDist-preferredDistance); yVGoal = (yDiff/hDist)*(hDist-preferredDistance);
 				zVGoal += zDiff+preferredHeight;
@@ -127,7 +144,10 @@ public class AITracking extends AIBasic
 			}
 			
 			//Strafe
-			xVGoal += yDiff*strafeSpeed; yVGoal += -xDiff*strafeSpeed;
+			if (!detour)
+			{
+				xVGoal += yDiff*strafeSpeed; yVGoal += -xDiff*strafeSpeed;
+			}
 			
 			double speedGoal = Math.sqrt(xVGoal*xVGoal + yVGoal*yVGoal + zVGoal*zVGoal);
 			if (speedGoal != 0)
@@ -137,19 +157,19 @@ public class AITracking extends AIBasic
 				zVGoal *= maxSpeed/speedGoal;
 			}
 			
-			if (Math.random() < strafeChangeFrequency*dt)
+			if (w.getRandom().nextDouble() < strafeChangeFrequency*dt)
 			{
-				strafeSpeed = 2*maxStrafeSpeed*Math.random()-maxStrafeSpeed;
+				strafeSpeed = 2*maxStrafeSpeed*w.getRandom().nextDouble()-maxStrafeSpeed;
 			}
 			
-			if (Math.random() < distanceChangeFrequency*dt)
+			if (w.getRandom().nextDouble() < distanceChangeFrequency*dt)
 			{
-				preferredDistance = (maxPreferredDistance-minPreferredDistance)*Math.random()+minPreferredDistance;
+				preferredDistance = (maxPreferredDistance-minPreferredDistance)*w.getRandom().nextDouble()+minPreferredDistance;
 			}
 			
-			if (Math.random() < heightChangeFrequency*dt)
+			if (w.getRandom().nextDouble() < heightChangeFrequency*dt)
 			{
-				preferredHeight = (maxPreferredHeight-minPreferredHeight)*Math.random()+minPreferredHeight;
+				preferredHeight = (maxPreferredHeight-minPreferredHeight)*w.getRandom().nextDouble()+minPreferredHeight;
 			}
 			
 			xV += agility*(xVGoal-xV)*dt;
@@ -164,23 +184,34 @@ public class AITracking extends AIBasic
 		}
 	}
 	
-	private boolean canGoToPlayer()
+	//Returns whether the enemy can move toward the player, reusing the last answer if it is still valid.
+	//This is only needed when the enemy is outside the flow field or the flow field leads to another player.
+	private boolean canGoToPlayer(Player p)
 	{
-		Player p = w.getPlayer();
 		double px = (p.getX())-(x);
 		double py = (p.getY())-(y);
 		double pz = (p.getZ())-(z)+preferredHeight;
 		double pdist = Math.sqrt(px*px+py*py+pz*pz);
 		if (pdist < 1) return true;
 		
-		px /= pdist; py /= pdist; pz /= pdist;
+		LineOfSight sight = w.getLineOfSight();
+		int answer = sight.lookup(enemy, LineOfSight.PATH_TO_PLAYER, x, y, z, x+px, y+py, z+pz);
+		if (answer != LineOfSight.UNKNOWN) return answer == LineOfSight.CLEAR;
 		
+		boolean clear = checkPathToPlayer(px/pdist, py/pdist, pz/pdist);
+		sight.store(enemy, LineOfSight.PATH_TO_PLAYER, x, y, z, x+px, y+py, z+pz, clear);
+		return clear;
+	}
+	
+	//Returns whether the enemy can move one unit in the given direction without running into a wall that faces it.
+	private boolean checkPathToPlayer(double px, double py, double pz)
+	{
 		Collision col = w.getCollision();
 		
-		double t = col.getPlayerCollision(x,y,z,px,py,pz,radius,height);
+		double t = col.getPlayerCollision(x,y,z,px,py,pz,radius,height,collisionCache);
 		if (t == 1) return true;
 		
-		if (-px*col.getNormalX() - py*col.getNormalY() - pz*col.getNormalZ() < 0.2)
+		if (-px*collisionCache.getNormalX() - py*collisionCache.getNormalY() - pz*collisionCache.getNormalZ() < 0.2)
 			return true;
 		
 		return false;
@@ -195,7 +226,7 @@ public class AITracking extends AIBasic
 		
 		for (int i=0; i<5; i++) //Cannot repeat this forever
 		{
-			double t = w.getCollision().getPlayerCollision(x,y,z,xV*dt*remaining,yV*dt*remaining,zV*dt*remaining,radius,height);
+			double t = w.getCollision().getPlayerCollision(x,y,z,xV*dt*remaining,yV*dt*remaining,zV*dt*remaining,radius,height, collisionCache);
 			boolean stopped = (t < 0.001);
 			
 			if (!stopped)
@@ -207,14 +238,14 @@ public class AITracking extends AIBasic
 			
 			if (t == 1) break;
 			
-			double m = -w.getCollision().getNormalX()*xV - w.getCollision().getNormalY()*yV - w.getCollision().getNormalZ()*zV;
-			xV += m*w.getCollision().getNormalX(); yV += m*w.getCollision().getNormalY(); zV += m*w.getCollision().getNormalZ();
+			double m = -collisionCache.getNormalX()*xV - collisionCache.getNormalY()*yV - collisionCache.getNormalZ()*zV;
+			xV += m*collisionCache.getNormalX(); yV += m*collisionCache.getNormalY(); zV += m*collisionCache.getNormalZ();
 			
 			//Deal with being in a corner of some sort
 			if (normalsReceived && stopped)
 			{
-				m = -w.getCollision().getNormalX()*nx - w.getCollision().getNormalY()*ny - w.getCollision().getNormalZ()*nz;
-				nx += m*w.getCollision().getNormalX(); ny += m*w.getCollision().getNormalY(); nz += m*w.getCollision().getNormalZ();
+				m = -collisionCache.getNormalX()*nx - collisionCache.getNormalY()*ny - collisionCache.getNormalZ()*nz;
+				nx += m*collisionCache.getNormalX(); ny += m*collisionCache.getNormalY(); nz += m*collisionCache.getNormalZ();
 				double dist = Math.sqrt(nx*nx + ny*ny + nz*nz);
 				if (dist != 0)
 				{
@@ -224,7 +255,7 @@ public class AITracking extends AIBasic
 				}
 			}
 			
-			nx = w.getCollision().getNormalX(); ny = w.getCollision().getNormalY(); nz = w.getCollision().getNormalZ(); normalsReceived = true;
+			nx = collisionCache.getNormalX(); ny = collisionCache.getNormalY(); nz = collisionCache.getNormalZ(); normalsReceived = true;
 			
 			remaining *= 1-t;
 			
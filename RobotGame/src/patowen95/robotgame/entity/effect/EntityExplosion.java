@@ -24,12 +24,19 @@ public class EntityExplosion extends Entity
 	public EntityExplosion(Controller controller, World world)
 	{
 		super(controller, world);
+		color = new float[4];
+		reset();
+	}
+	
+	public void reset()
+	{
+		super.reset();
 		radius = 0.0; 
 		finalRadius = 1.0;
 		duration = 5;
 		radiusStep = (finalRadius-radius)/duration;
 		
-		color = new float[4];
+		color[0] = 0; color[1] = 0; color[2] = 0;
 		color[3] = 1;
 	}
 	
@@ -93,6 +100,11 @@ public class EntityExplosion extends Entity
 		color[0] = red; color[1] = green; color[2] = blue;
 	}
 	
+	public boolean canStepInParallel()
+	{
+		return true;
+	}
+	
 	public void step(double dt)
 	{
 		super.step(dt);
@@ -103,14 +115,14 @@ public class EntityExplosion extends Entity
 	
 	public void draw2(GL2 gl)
 	{
-		GLUT glut = new GLUT();
+		GLUT glut = getGLUT();
 		
 		//Color
 		gl.glMaterialfv(GL2.GL_FRONT, GL2.GL_AMBIENT_AND_DIFFUSE, new float[] {0,0,0,0.3f}, 0);
 		gl.glMaterialfv(GL2.GL_FRONT, GL2.GL_EMISSION, color, 0);
 		
 		gl.glPushMatrix();
-		gl.glTranslated(x, y, z);
+		gl.glTranslated(getX(), getY(), getZ());
 		glut.glutSolidSphere(radius*.25, 8, 8);
 		glut.glutSolidSphere(radius*.5, 8, 8);
 		glut.glutSolidSphere(radius * .75, 24, 8);
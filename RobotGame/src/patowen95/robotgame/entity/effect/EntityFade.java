@@ -23,13 +23,19 @@ public class EntityFade extends Entity
 	public EntityFade(Controller controller, World world)
 	{
 		super(controller, world);
+		color = new float[4];
+		reset();
+	}
+	
+	public void reset()
+	{
+		super.reset();
 		radius = 0.0;
 		duration = 5;
 		life = duration;
 		
-		color = new float[4];
+		color[0] = 0; color[1] = 0; color[2] = 0;
 		color[3] = 1;
-		
 	}
 	
 	/**
@@ -62,6 +68,11 @@ public class EntityFade extends Entity
 	}
 	
 	
+	public boolean canStepInParallel()
+	{
+		return true;
+	}
+	
 	public void step(double dt)
 	{
 		super.step(dt);
@@ -72,14 +83,14 @@ public class EntityFade extends Entity
 	
 	public void draw2(GL2 gl)
 	{
-		GLUT glut = new GLUT();
+		GLUT glut = getGLUT();
 		
 		//Color
 		gl.glMaterialfv(GL2.GL_FRONT, GL2.GL_AMBIENT_AND_DIFFUSE, new float[] {0,0,0,(float)(life/duration*(Math.random()+1)/2)}, 0);
 		gl.glMaterialfv(GL2.GL_FRONT, GL2.GL_EMISSION, color, 0);
 		
 		gl.glPushMatrix();
-		gl.glTranslated(x, y, z);
+		gl.glTranslated(getX(), getY(), getZ());
 		glut.glutSolidSphere(radius*(Math.random()+.5)/1.5, 16, 16);
 		gl.glPopMatrix();
 	}
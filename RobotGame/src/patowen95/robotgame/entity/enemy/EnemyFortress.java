@@ -50,9 +50,9 @@ public class EnemyFortress extends Enemy implements Damageable
 		
 		horizontalDir = 3*Math.PI/2;
 		verticalDir = 0;
-		xV = 0;
-		yV = 0;
-		zV = 0;
+		setXV(0);
+		setYV(0);
+		setZV(0);
 		
 		shotDelay = 2;
 		shotHeight = 0.4;
@@ -101,7 +101,7 @@ public class EnemyFortress extends Enemy implements Damageable
 	{
 		charge -= dt;
 		
-		if (w.getPlayer().isDead()) return;
+		if (w.getTargetPlayer(getX(), getY(), getZ()) == null) return;
 		
 		if (charge < 0)
 		{
@@ -116,11 +116,11 @@ public class EnemyFortress extends Enemy implements Damageable
 			EntityRocket rocket = (EntityRocket)c.createEntity(w, EI.EntityRocket);
 			
 			if (w.getCollision().getPlayerCollision
-					(x, y, z+height/2, xDir*shotDistance, yDir*shotDistance, zDir*shotDistance, rocket.getRadius(), rocket.getHeight()) == 1)
+					(getX(), getY(), getZ()+height/2, xDir*shotDistance, yDir*shotDistance, zDir*shotDistance, rocket.getRadius(), rocket.getHeight()) == 1)
 			{
-				rocket.setPosition(x+xDir*shotDistance, y+yDir*shotDistance, z+zDir*shotDistance+shotHeight);
+				rocket.setPosition(getX()+xDir*shotDistance, getY()+yDir*shotDistance, getZ()+zDir*shotDistance+shotHeight);
 				rocket.setVelocity(shotSpeed*xDir, shotSpeed*yDir, shotSpeed*zDir);
-				rocket.setTarget(w.getPlayer());
+				rocket.setTarget(w.getTargetPlayer(getX(), getY(), getZ()));
 				rocket.setOwner(this);
 				
 				w.create(rocket);
@@ -140,7 +140,7 @@ public class EnemyFortress extends Enemy implements Damageable
 	{
 		gl.glPushMatrix();
 		
-		GLUT glut = new GLUT();
+		GLUT glut = getGLUT();
 		
 		double xDir = Math.cos(horizontalDir) * .5, yDir = Math.sin(horizontalDir) * .5;
 		
@@ -150,7 +150,7 @@ public class EnemyFortress extends Enemy implements Damageable
 		gl.glMaterialf(GL2.GL_FRONT, GL2.GL_SHININESS, 8);
 		gl.glMaterialfv(GL2.GL_FRONT, GL2.GL_EMISSION, new float[] {0,0,0,1}, 0);
 		
-		gl.glTranslated(x, y, z+height/2);
+		gl.glTranslated(getX(), getY(), getZ()+height/2);
 		glut.glutSolidSphere(.75, 10, 10);
 		
 		//Color of turrets
@@ -194,7 +194,7 @@ public class EnemyFortress extends Enemy implements Damageable
 	public void applyDamage(double amount, double x, double y, double z, double knockBack, boolean absolute)
 	{
 		hp -= amount;
-		xV -= 0.5*knockBack*x/radius; yV -= 0.5*knockBack*y/radius; zV -= 0.5*knockBack*z/radius;
+		setXV(getXV() - 0.5*knockBack*x/radius); setYV(getYV() - 0.5*knockBack*y/radius); setZV(getZV() - 0.5*knockBack*z/radius);
 	}
 	
 	/**
@@ -209,7 +209,7 @@ public class EnemyFortress extends Enemy implements Damageable
 		blast.setDuration(1);
 		blast.setRadius(radius/2);
 		blast.setFinalRadius(radius*2);
-		blast.setPosition(x, y, z+height/2);
+		blast.setPosition(getX(), getY(), getZ()+height/2);
 		w.create(blast);
 		
 		double startRadius = .3;
@@ -221,7 +221,7 @@ public class EnemyFortress extends Enemy implements Damageable
 		blast1.setDuration(duration);
 		blast1.setRadius(startRadius);
 		blast1.setFinalRadius(endRadius);
-		blast1.setPosition(x + xDir, y + yDir, z+height/2);
+		blast1.setPosition(getX() + xDir, getY() + yDir, getZ()+height/2);
 		w.create(blast1);
 		
 		EntityExplosion blast2 = (EntityExplosion)c.createEntity(w, EI.EntityExplosion);
@@ -229,7 +229,7 @@ public class EnemyFortress extends Enemy implements Damageable
 		blast2.setDuration(duration);
 		blast2.setRadius(startRadius);
 		blast2.setFinalRadius(endRadius);
-		blast2.setPosition(x - xDir, y - yDir, z+height/2);
+		blast2.setPosition(getX() - xDir, getY() - yDir, getZ()+height/2);
 		w.create(blast2);
 		
 		xDir = Math.cos(horizontalDir + Math.PI/2) * .5; yDir = Math.sin(horizontalDir + Math.PI/2) * .5;
@@ -240,7 +240,7 @@ public class EnemyFortress extends Enemy implements Damageable
 		blast3.setDuration(duration);
 		blast3.setRadius(startRadius);
 		blast3.setFinalRadius(endRadius);
-		blast3.setPosition(x + xDir, y + yDir, z+height/2);
+		blast3.setPosition(getX() + xDir, getY() + yDir, getZ()+height/2);
 		w.create(blast3);
 		
 		EntityExplosion blast4 = (EntityExplosion)c.createEntity(w, EI.EntityExplosion);
@@ -248,7 +248,7 @@ public class EnemyFortress extends Enemy implements Damageable
 		blast4.setDuration(duration);
 		blast4.setRadius(startRadius);
 		blast4.setFinalRadius(endRadius);
-		blast4.setPosition(x - xDir, y - yDir, z+height/2);
+		blast4.setPosition(getX() - xDir, getY() - yDir, getZ()+height/2);
 		w.create(blast4);
 	}
 }
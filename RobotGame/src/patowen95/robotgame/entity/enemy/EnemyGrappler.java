@@ -1,6 +1,10 @@
 package patowen95.robotgame.entity.enemy;
+import java.util.ArrayList;
+
 import com.jogamp.opengl.GL2;
 
+import patowen95.robotgame.CollisionHit;
+import patowen95.robotgame.CollisionStats;
 import patowen95.robotgame.Controller;
 import patowen95.robotgame.World;
 import patowen95.robotgame.entity.Damageable;
@@ -44,6 +48,8 @@ public class EnemyGrappler extends Enemy implements Damageable
 	private boolean flip;
 	private double speedspin = 0;//Increased spin of gun arms prior to firing
 	private double spin = 0;//Constant spin of gun arms
+	private ArrayList<Entity> nearbyEntities; //Reused by queries for nearby entities
+	private CollisionHit collisionHit; //Receives the results of collision queries
 	
 	/**
 	 * Creates a new EnemyTurret.
@@ -53,15 +59,17 @@ public class EnemyGrappler extends Enemy implements Damageable
 	public EnemyGrappler(Controller controller, World world)
 	{
 		super(controller, world);
+		nearbyEntities = new ArrayList<Entity>();
+		collisionHit = new CollisionHit(CollisionStats.AI);
 		
 		radius = 0.5;
 		height = 1;
 		
 		horizontalDir = 3*Math.PI/2;
 		verticalDir = 0;
-		xV = 0;
-		yV = 0;
-		zV = 0;
+		setXV(0);
+		setYV(0);
+		setZV(0);
 		shotX = .15;
 		shotY = 0;
 		shotZ = -.25;
@@ -126,7 +134,7 @@ public class EnemyGrappler extends Enemy implements Damageable
 	{
 		charge -= dt;
 		
-		if (w.getPlayer().isDead()) return;
+		if (w.getTargetPlayer(getX(), getY(), getZ()) == null) return;
 		
 		if (charge < 0 && noFriendlyFire())
 		{
@@ -141,18 +149,18 @@ public class EnemyGrappler extends Enemy implements Damageable
 			double yDisp = xDisp*Math.sin(horizontalDir) - shotY*Math.cos(horizontalDir);
 			xDisp = xDisp*Math.cos(horizontalDir) + shotY*Math.sin(horizontalDir);
 			
-			double t = w.getCollision().getBulletCollision(x, y, z, xDir*shotDistance+xDisp, yDir*shotDistance+yDisp, zDir*shotDistance+shotHeight+zDisp);
+			double t = w.getCollision().getBulletCollision(getX(), getY(), getZ(), xDir*shotDistance+xDisp, yDir*shotDistance+yDisp, zDir*shotDistance+shotHeight+zDisp, collisionHit);
 			
 			if(t == 1)
 			{
-				beam.setPosition(x+xDir*shotDistance+xDisp, y+yDir*shotDistance+yDisp, z+zDir*shotDistance+shotHeight+zDisp);
+				beam.setPosition(getX()+xDir*shotDistance+xDisp, getY()+yDir*shotDistance+yDisp, getZ()+zDir*shotDistance+shotHeight+zDisp);
 				beam.setVelocity(shotSpeed*xDir, shotSpeed*yDir, shotSpeed*zDir);
 				beam.setRange(3);
 				beam.setColor(.75f, 0.75f, 1f);
 				beam.setDamage(.25, -20);
 				beam.setOwner(this);
 				
-				c.getSoundHandler().playSound(0, x, y, z);
+				c.getSoundHandler().playSound(0, getX(), getY(), getZ());
 				w.create(beam);
 				
 				speedspin = 0;
@@ -171,9 +179,9 @@ public class EnemyGrappler extends Enemy implements Damageable
 		 * Based on coordinate differences, find the horizontal and vertical directions from the turret to the player.
 		 * Modify the horizontal and vertical directions of the turret smoothly to face the player.
 		 */
-		Player player = w.getPlayer();
-		if (player.isDead()) return;
-		double xDiff = player.getX()-x, yDiff = player.getY()-y, zDiff = player.getZ()+player.getHeight()/2-z-height/2;
+		Player player = w.getTargetPlayer(getX(), getY(), getZ());
+		if (player == null) return;
+		double xDiff = player.getX()-getX(), yDiff = player.getY()-getY(), zDiff = player.getZ()+player.getHeight()/2-getZ()-height/2;
 		
 		//Account for player velocity
 		double xV = player.getXV(), yV = player.getYV(), zV = player.getZV();
@@ -209,19 +217,19 @@ public class EnemyGrappler extends Enemy implements Damageable
 		double xd = range*Math.cos(horizontalDir)*Math.cos(verticalDir),
 				yd = range*Math.sin(horizontalDir)*Math.cos(verticalDir), zd = range*Math.sin(verticalDir);
 		
-		double t = w.getCollision().getBulletCollision(x, y, z+shotHeight, xd, yd, zd);
+		double t = w.getCollision().getBulletCollision(getX(), getY(), getZ()+shotHeight, xd, yd, zd, collisionHit);
 		double t2 = 1; //Bullet distance traveled before first detected collision
 		Damageable entityToDamage = null;
 		
-		for (Entity entity : w.getEntities())
+		w.getDamageablesAlongPath(getX(), getY(), getZ()+shotHeight, xd*t, yd*t, zd*t, nearbyEntities);
+		for (Entity entity : nearbyEntities)
 		{
 			if (entity == this) continue;
-			if (!(entity instanceof Damageable) || entity == this) continue;
 			
 			Damageable e = (Damageable) entity;
 			
 			//tTest must be less than t2 to update it.
-			double tTest = w.getCollision().getEntityBulletCollision(x, y, z+shotHeight, xd*t, yd*t, zd*t, e);
+			double tTest = w.getCollision().getEntityBulletCollision(getX(), getY(), getZ()+shotHeight, xd*t, yd*t, zd*t, e, collisionHit);
 			
 			if (tTest < t2)
 			{
@@ -239,7 +247,7 @@ public class EnemyGrappler extends Enemy implements Damageable
 	
 	public void draw(GL2 gl)
 	{
-		GLUT glut = new GLUT();
+		GLUT glut = getGLUT();
 		speedspin+=(shotDelay-charge)/shotDelay*20;
 		spin++;
 		//Color
@@ -250,7 +258,7 @@ public class EnemyGrappler extends Enemy implements Damageable
 		
 		gl.glPushMatrix();
 		
-		gl.glTranslated(x, y, z+height*.65);
+		gl.glTranslated(getX(), getY(), getZ()+height*.65);
 		gl.glRotated(horizontalDir*180/Math.PI + 180, 0, 0, 1);
 		gl.glRotated(verticalDir*180/Math.PI, 0, 1, 0);
 		
@@ -291,6 +299,6 @@ public class EnemyGrappler extends Enemy implements Damageable
 	public void applyDamage(double amount, double x, double y, double z, double knockBack, boolean absolute)
 	{
 		hp -= amount;
-		xV -= .4*knockBack*x/radius; yV -= .4*knockBack*y/radius; zV -= .4*knockBack*z/radius;
+		setXV(getXV() - .4*knockBack*x/radius); setYV(getYV() - .4*knockBack*y/radius); setZV(getZV() - .4*knockBack*z/radius);
 	}
 }
@@ -38,19 +38,22 @@ public class EnemyObstacle extends Enemy implements Damageable
 		super.step(dt);
 		
 		Player player = w.getPlayer();
-		double pX = player.getX(), pY = player.getY(), pZ = player.getZ(), pR = player.getRadius(), pH = player.getHeight();
-		
-		if (z+height >= pZ && z <= pZ+pH) //Check for z being in bounds
+		if (player != null)
 		{
-			if ((x-pX)*(x-pX) + (y-pY)*(y-pY) < radius+pR) //Check for x and y being in bounds
+			double pX = player.getX(), pY = player.getY(), pZ = player.getZ(), pR = player.getRadius(), pH = player.getHeight();
+			
+			if (getZ()+height >= pZ && getZ() <= pZ+pH) //Check for z being in bounds
 			{
-				double xFrom, yFrom, zFrom, fromMag;
-				
-				xFrom = x-pX; yFrom = y-pY; zFrom = (z+height/2)-(pZ+pH/2);
-				fromMag = Math.sqrt(xFrom*xFrom + yFrom*yFrom + zFrom*zFrom);
-				xFrom /= fromMag; yFrom /= fromMag; zFrom /= fromMag;
-				
-				player.applyDamage(1, xFrom, yFrom, zFrom, 4, true);
+				if ((getX()-pX)*(getX()-pX) + (getY()-pY)*(getY()-pY) < radius+pR) //Check for x and y being in bounds
+				{
+					double xFrom, yFrom, zFrom, fromMag;
+					
+					xFrom = getX()-pX; yFrom = getY()-pY; zFrom = (getZ()+height/2)-(pZ+pH/2);
+					fromMag = Math.sqrt(xFrom*xFrom + yFrom*yFrom + zFrom*zFrom);
+					xFrom /= fromMag; yFrom /= fromMag; zFrom /= fromMag;
+					
+					player.applyDamage(1, xFrom, yFrom, zFrom, 4, true);
+				}
 			}
 		}
 		
@@ -59,14 +62,14 @@ public class EnemyObstacle extends Enemy implements Damageable
 	
 	public void draw(GL2 gl)
 	{
-		GLUT glut = new GLUT();
+		GLUT glut = getGLUT();
 		
 		//Color
 		gl.glMaterialfv(GL2.GL_FRONT, GL2.GL_AMBIENT_AND_DIFFUSE, new float[] {0.7f,0.7f,0.7f,1}, 0);
 		gl.glMaterialfv(GL2.GL_FRONT, GL2.GL_EMISSION, new float[] {0,0.7f,0.7f,1}, 0);
 		
 		gl.glPushMatrix();
-		gl.glTranslated(x, y, z);
+		gl.glTranslated(getX(), getY(), getZ());
 		glut.glutSolidCylinder(radius, height-radius, 24, 8);
 		gl.glTranslated(0, 0, height-radius);
 		glut.glutSolidSphere(radius, 24, 8);
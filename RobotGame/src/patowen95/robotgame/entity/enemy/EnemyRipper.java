@@ -1,7 +1,12 @@
 package patowen95.robotgame.entity.enemy;
+import java.util.ArrayList;
+
 import com.jogamp.opengl.GL2;
 
+import patowen95.robotgame.CollisionHit;
+import patowen95.robotgame.CollisionStats;
 import patowen95.robotgame.Controller;
+import patowen95.robotgame.LineOfSight;
 import patowen95.robotgame.World;
 import patowen95.robotgame.entity.Damageable;
 import patowen95.robotgame.entity.Entity;
@@ -42,6 +47,8 @@ public class EnemyRipper extends Enemy implements Damageable
 	private AITracking angryAI;//Quickly closes with the player
 	
 	private double rotation;//Used to rotate entity around
+	private ArrayList<Entity> nearbyEntities; //Reused by queries for nearby entities
+	private CollisionHit collisionHit; //Receives the results of collision queries
 	
 	/**
 	 * Creates a new EnemyRipper.
@@ -51,15 +58,17 @@ public class EnemyRipper extends Enemy implements Damageable
 	public EnemyRipper(Controller controller, World world)
 	{
 		super(controller, world);
+		nearbyEntities = new ArrayList<Entity>();
+		collisionHit = new CollisionHit(CollisionStats.AI);
 		
 		radius = 1;
 		height = 1;
 		
 		horizontalDir = 3*Math.PI/2;
 		verticalDir = 0;
-		xV = 0;
-		yV = 0;
-		zV = 0;
+		setXV(0);
+		setYV(0);
+		setZV(0);
 		
 		range = 100;
 		
@@ -69,7 +78,7 @@ public class EnemyRipper extends Enemy implements Damageable
 		calmAI = new AITracking(c, w, this);
 		calmAI.setControls(5, 1, 8, 10, 6, 1, 10, 1, 1, 3, 1);
 		
-		resttime = 3 + Math.random();
+		resttime = 3 + w.getRandom().nextDouble();
 		spintime = 1;
 		temper = 3;
 		exhaustion = resttime;
@@ -145,18 +154,20 @@ public class EnemyRipper extends Enemy implements Damageable
 	{	
 		if (angry)
 		{
-			for (Entity e : w.getEntities())
+			//The spinning ripper makes contact once the squared distance between centers drops below radius+1, so search that far.
+			w.getDamageablesInSphere(getX(), getY(), getZ()+height/2, Math.sqrt(radius+1), nearbyEntities);
+			for (Entity e : nearbyEntities)
 			{
 				if (!(e instanceof Player))
 					continue;
 				Player player = (Player)e;
 				if (player.isGhost()) continue;
-				double xDiff = player.getX()-x, yDiff = player.getY()-y, zDiff = player.getZ()+player.getHeight()/2 - z - height/2;
+				double xDiff = player.getX()-getX(), yDiff = player.getY()-getY(), zDiff = player.getZ()+player.getHeight()/2 - getZ() - height/2;
 				
 				if (xDiff*xDiff + yDiff*yDiff + zDiff*zDiff < radius+1)
 				{
 					player.applyDamage(2, -xDiff/2, -yDiff/2, -1, 8, false);
-					xV -= 32*xDiff; yV -= 32*yDiff; zV -= 32*zDiff;
+					setXV(getXV() - 32*xDiff); setYV(getYV() - 32*yDiff); setZV(getZV() - 32*zDiff);
 					
 					angry = false;
 					exhaustion = resttime;
@@ -177,9 +188,9 @@ public class EnemyRipper extends Enemy implements Damageable
 		 * Based on coordinate differences, find the horizontal and vertical directions from the turret to the player.
 		 * Modify the horizontal and vertical directions of the turret smoothly to face the player.
 		 */
-		Player player = w.getPlayer();
-		if (player.isDead()) return;
-		double xDiff = player.getX()-x, yDiff = player.getY()-y, zDiff = player.getZ()+player.getHeight()/2-z-height/2;
+		Player player = w.getTargetPlayer(getX(), getY(), getZ());
+		if (player == null) return;
+		double xDiff = player.getX()-getX(), yDiff = player.getY()-getY(), zDiff = player.getZ()+player.getHeight()/2-getZ()-height/2;
 		
 		double xyDiff = Math.sqrt(xDiff*xDiff + yDiff*yDiff);
 		
@@ -204,25 +215,43 @@ public class EnemyRipper extends Enemy implements Damageable
 			verticalDir -= -vDirDifference;
 	}
 	
-	//Tests to see if the Ripper has line of sight on the player
+	//Tests to see if the Ripper has line of sight on the player, reusing the last answer if it is still valid
 	private boolean lineOfSight()
 	{
 		double xd = range*Math.cos(horizontalDir)*Math.cos(verticalDir),
 				yd = range*Math.sin(horizontalDir)*Math.cos(verticalDir), zd = range*Math.sin(verticalDir);
 		
-		double t = w.getCollision().getBulletCollision(x, y, z+height/2, xd, yd, zd);
+		LineOfSight sight = w.getLineOfSight();
+		Player player = w.getTargetPlayer(getX(), getY(), getZ());
+		if (player == null) return false;
+		double px = player.getX(), py = player.getY(), pz = player.getZ()+player.getHeight()/2;
+		if (!sight.canEverSee(getX(), getY(), getZ()+height/2, px, py, pz)) return false;
+		
+		//The ripper has just turned to face the player, so the answer is kept for as long as neither of them moves.
+		int answer = sight.lookup(this, LineOfSight.SIGHT_LINE, getX(), getY(), getZ()+height/2, px, py, pz);
+		if (answer != LineOfSight.UNKNOWN) return answer == LineOfSight.CLEAR;
+		
+		boolean clear = checkSightLine(xd, yd, zd);
+		sight.store(this, LineOfSight.SIGHT_LINE, getX(), getY(), getZ()+height/2, px, py, pz, clear);
+		return clear;
+	}
+	
+	//Tests whether the first thing a shot with the given displacement would hit is the player.
+	private boolean checkSightLine(double xd, double yd, double zd)
+	{
+		double t = w.getCollision().getBulletCollision(getX(), getY(), getZ()+height/2, xd, yd, zd, collisionHit);
 		double t2 = 1; //Bullet distance traveled before first detected collision
 		Damageable entityToDamage = null;
 		
-		for (Entity entity : w.getEntities())
+		w.getDamageablesAlongPath(getX(), getY(), getZ()+height/2, xd*t, yd*t, zd*t, nearbyEntities);
+		for (Entity entity : nearbyEntities)
 		{
 			if (entity == this) continue;
-			if (!(entity instanceof Damageable) || entity == this) continue;
 			
 			Damageable e = (Damageable) entity;
 			
 			//tTest must be less than t2 to update it.
-			double tTest = w.getCollision().getEntityBulletCollision(x, y, z+height/2, xd*t, yd*t, zd*t, e);
+			double tTest = w.getCollision().getEntityBulletCollision(getX(), getY(), getZ()+height/2, xd*t, yd*t, zd*t, e, collisionHit);
 			
 			if (tTest < t2)
 			{
@@ -242,7 +271,7 @@ public class EnemyRipper extends Enemy implements Damageable
 	public void draw(GL2 gl)
 	{		
 		rotation+=1+20*spin;
-		GLUT glut = new GLUT();
+		GLUT glut = getGLUT();
 		//Color
 		gl.glMaterialfv(GL2.GL_FRONT, GL2.GL_AMBIENT_AND_DIFFUSE, new float[] {0.5f,0.4f,0.4f,1}, 0);
 		gl.glMaterialfv(GL2.GL_FRONT, GL2.GL_SPECULAR, new float[] {0.8f,0.8f,0.8f,1}, 0);
@@ -251,7 +280,7 @@ public class EnemyRipper extends Enemy implements Damageable
 		
 		gl.glPushMatrix();
 		
-		gl.glTranslated(x, y, z+height/2);
+		gl.glTranslated(getX(), getY(), getZ()+height/2);
 		glut.glutSolidSphere(radius/2.5, 10, 10);
 		gl.glRotated(rotation, 0, 0, 1);
 		
@@ -277,6 +306,6 @@ public class EnemyRipper extends Enemy implements Damageable
 	public void applyDamage(double amount, double x, double y, double z, double knockBack, boolean absolute)
 	{
 		hp -= amount;
-		xV -= 4*knockBack*x/radius; yV -= 4*knockBack*y/radius; zV -= 4*knockBack*z/radius;
+		setXV(getXV() - 4*knockBack*x/radius); setYV(getYV() - 4*knockBack*y/radius); setZV(getZV() - 4*knockBack*z/radius);
 	}
 }
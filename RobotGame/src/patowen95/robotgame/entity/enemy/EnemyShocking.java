@@ -1,4 +1,6 @@
 package patowen95.robotgame.entity.enemy;
+import java.util.ArrayList;
+
 import com.jogamp.opengl.GL2;
 
 import patowen95.robotgame.Controller;
@@ -29,6 +31,7 @@ public class EnemyShocking extends Enemy implements Damageable
 	 */
 	protected AITracking ai;
 	private double charge;
+	private ArrayList<Entity> nearbyEntities; //Reused by queries for nearby entities
 	
 	//Determines how large and opaque the transparent sphere around the enemy
 	//is
@@ -53,6 +56,7 @@ public class EnemyShocking extends Enemy implements Damageable
 		
 		charge = shotDelay;
 		anger = 0;
+		nearbyEntities = new ArrayList<Entity>();
 		
 		hp = 1;
 	}
@@ -112,18 +116,20 @@ public class EnemyShocking extends Enemy implements Damageable
 		
 		if (charge < 0)
 		{
-			for (Entity e : w.getEntities())
+			//The squared distance is compared to radius+1, so nothing farther than its square root can be shocked.
+			w.getDamageablesInSphere(getX(), getY(), getZ()+height/2, Math.sqrt(radius+1), nearbyEntities);
+			for (Entity e : nearbyEntities)
 			{
 				if (!(e instanceof Player))
 					continue;
 				Player player = (Player)e;
 				if (player.isGhost()) continue;
-				double xDiff = player.getX()-x, yDiff = player.getY()-y, zDiff = player.getZ()+player.getHeight()/2 - z - height/2;
+				double xDiff = player.getX()-getX(), yDiff = player.getY()-getY(), zDiff = player.getZ()+player.getHeight()/2 - getZ() - height/2;
 				
 				if (xDiff*xDiff + yDiff*yDiff + zDiff*zDiff < radius+1)
 				{
 					player.applyDamage(2, -xDiff, -yDiff, -zDiff, 8, false);
-					xV -= 16*xDiff; yV -= 16*yDiff; zV -= 16*zDiff;
+					setXV(getXV() - 16*xDiff); setYV(getYV() - 16*yDiff); setZV(getZV() - 16*zDiff);
 					charge = shotDelay;
 					anger = 1;
 				}
@@ -141,9 +147,9 @@ public class EnemyShocking extends Enemy implements Damageable
 		
 		gl.glPushMatrix();
 		
-		gl.glTranslated(x, y, z+height/2);
+		gl.glTranslated(getX(), getY(), getZ()+height/2);
 		
-		GLUT glut = new GLUT();
+		GLUT glut = getGLUT();
 		glut.glutSolidSphere(radius, 24, 8);
 		
 		gl.glPopMatrix();
@@ -158,9 +164,9 @@ public class EnemyShocking extends Enemy implements Damageable
 		
 		gl.glPushMatrix();
 		
-		gl.glTranslated(x, y, z+height/2);
+		gl.glTranslated(getX(), getY(), getZ()+height/2);
 		
-		GLUT glut = new GLUT();
+		GLUT glut = getGLUT();
 		glut.glutSolidSphere(radius+0.05+0.2*anger, 24, 8);
 		
 		gl.glPopMatrix();
@@ -169,6 +175,6 @@ public class EnemyShocking extends Enemy implements Damageable
 	public void applyDamage(double amount, double x, double y, double z, double knockBack, boolean absolute)
 	{
 		hp -= amount;
-		xV -= 4*knockBack*x/radius; yV -= 4*knockBack*y/radius; zV -= 4*knockBack*z/radius;
+		setXV(getXV() - 4*knockBack*x/radius); setYV(getYV() - 4*knockBack*y/radius); setZV(getZV() - 4*knockBack*z/radius);
 	}
 }
@@ -68,14 +68,14 @@ public class EnemySplitting extends EnemyShocking
 				EnemySplitting temp2 = (EnemySplitting)c.createEntity(w, EI.EnemySplitting);
 				temp1.setStage(stage*.7);
 				temp2.setStage(stage*.7);
-				temp1.setPosition(x, y, z+height/2 - temp1.getHeight()/2);
-				temp2.setPosition(x, y, z+height/2 - temp2.getHeight()/2);
+				temp1.setPosition(getX(), getY(), getZ()+height/2 - temp1.getHeight()/2);
+				temp2.setPosition(getX(), getY(), getZ()+height/2 - temp2.getHeight()/2);
 				
 				double mag = Math.sqrt(xDir*xDir + yDir*yDir);
 				xDir/=mag; yDir/=mag; 
 				double vel = 4;
-				temp1.setVelocity(xV + yDir*vel, yV - xDir*vel, 0);
-				temp2.setVelocity(xV - yDir*vel, yV + xDir*vel, 0);
+				temp1.setVelocity(getXV() + yDir*vel, getYV() - xDir*vel, 0);
+				temp2.setVelocity(getXV() - yDir*vel, getYV() + xDir*vel, 0);
 				
 				w.create(temp1);
 				w.create(temp2);
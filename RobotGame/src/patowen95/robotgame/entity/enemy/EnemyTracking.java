@@ -1,6 +1,10 @@
 package patowen95.robotgame.entity.enemy;
+import java.util.ArrayList;
+
 import com.jogamp.opengl.GL2;
 
+import patowen95.robotgame.CollisionHit;
+import patowen95.robotgame.CollisionStats;
 import patowen95.robotgame.Controller;
 import patowen95.robotgame.World;
 import patowen95.robotgame.entity.Damageable;
@@ -33,6 +37,8 @@ public class EnemyTracking extends Enemy implements Damageable
 	private double charge;
 	
 	private AITracking ai;
+	private ArrayList<Entity> nearbyEntities; //Reused by queries for nearby entities
+	private CollisionHit collisionHit; //Receives the results of collision queries
 	
 	/**
 	 * Creates a new EnemyTurret.
@@ -42,15 +48,17 @@ public class EnemyTracking extends Enemy implements Damageable
 	public EnemyTracking(Controller controller, World world)
 	{
 		super(controller, world);
+		nearbyEntities = new ArrayList<Entity>();
+		collisionHit = new CollisionHit(CollisionStats.AI);
 		
 		radius = 0.5;
 		height = 0.8;
 		
 		horizontalDir = 3*Math.PI/2;
 		verticalDir = 0;
-		xV = 0;
-		yV = 0;
-		zV = 0;
+		setXV(0);
+		setYV(0);
+		setZV(0);
 		
 		shotDelay = 1.0/2;
 		shotHeight = 0.4;
@@ -99,20 +107,20 @@ public class EnemyTracking extends Enemy implements Damageable
 	{
 		charge -= dt;
 		
-		if (w.getPlayer().isDead()) return;
+		if (w.getTargetPlayer(getX(), getY(), getZ()) == null) return;
 		
 		if (isLocal && charge < 0 && noFriendlyFire())
 		{
 			EntityBullet bullet = (EntityBullet)c.createEntity(w, EI.EntityBullet);
 			double xDir = Math.cos(horizontalDir)*Math.cos(verticalDir),
 					yDir = Math.sin(horizontalDir)*Math.cos(verticalDir), zDir = Math.sin(verticalDir);
-			bullet.setPosition(x+xDir*shotDistance, y+yDir*shotDistance, z+zDir*shotDistance+shotHeight);
+			bullet.setPosition(getX()+xDir*shotDistance, getY()+yDir*shotDistance, getZ()+zDir*shotDistance+shotHeight);
 			bullet.setVelocity(shotSpeed*xDir, shotSpeed*yDir, shotSpeed*zDir);
 			bullet.setDamage(1, 4);
 			bullet.setColor(1, 0.5f, 0f);
 			bullet.setOwner(this);
 			
-			c.getSoundHandler().playSound(0, x, y, z);
+			c.getSoundHandler().playSound(0, getX(), getY(), getZ());
 			w.create(bullet);
 			
 			charge = shotDelay;
@@ -129,9 +137,9 @@ public class EnemyTracking extends Enemy implements Damageable
 		 * Based on coordinate differences, find the horizontal and vertical directions from the turret to the player.
 		 * Modify the horizontal and vertical directions of the turret smoothly to face the player.
 		 */
-		Player player = w.getPlayer();
-		if (player.isDead()) return;
-		double xDiff = player.getX()-x, yDiff = player.getY()-y, zDiff = player.getZ()+player.getHeight()/2-z-height/2;
+		Player player = w.getTargetPlayer(getX(), getY(), getZ());
+		if (player == null) return;
+		double xDiff = player.getX()-getX(), yDiff = player.getY()-getY(), zDiff = player.getZ()+player.getHeight()/2-getZ()-height/2;
 		
 		//Account for player velocity
 		double xV = player.getXV(), yV = player.getYV(), zV = player.getZV();
@@ -167,19 +175,19 @@ public class EnemyTracking extends Enemy implements Damageable
 		double xd = range*Math.cos(horizontalDir)*Math.cos(verticalDir),
 				yd = range*Math.sin(horizontalDir)*Math.cos(verticalDir), zd = range*Math.sin(verticalDir);
 		
-		double t = w.getCollision().getBulletCollision(x, y, z+shotHeight, xd, yd, zd);
+		double t = w.getCollision().getBulletCollision(getX(), getY(), getZ()+shotHeight, xd, yd, zd, collisionHit);
 		double t2 = 1; //Bullet distance traveled before first detected collision
 		Damageable entityToDamage = null;
 		
-		for (Entity entity : w.getEntities())
+		w.getDamageablesAlongPath(getX(), getY(), getZ()+shotHeight, xd*t, yd*t, zd*t, nearbyEntities);
+		for (Entity entity : nearbyEntities)
 		{
 			if (entity == this) continue;
-			if (!(entity instanceof Damageable) || entity == this) continue;
 			
 			Damageable e = (Damageable) entity;
 			
 			//tTest must be less than t2 to update it.
-			double tTest = w.getCollision().getEntityBulletCollision(x, y, z+shotHeight, xd*t, yd*t, zd*t, e);
+			double tTest = w.getCollision().getEntityBulletCollision(getX(), getY(), getZ()+shotHeight, xd*t, yd*t, zd*t, e, collisionHit);
 			
 			if (tTest < t2)
 			{
@@ -205,7 +213,7 @@ public class EnemyTracking extends Enemy implements Damageable
 		
 		gl.glPushMatrix();
 		
-		gl.glTranslated(x, y, z+shotHeight);
+		gl.glTranslated(getX(), getY(), getZ()+shotHeight);
 		gl.glRotated(horizontalDir*180/Math.PI + 180, 0, 0, 1);
 		gl.glRotated(verticalDir*180/Math.PI, 0, 1, 0);
 		
@@ -219,6 +227,6 @@ public class EnemyTracking extends Enemy implements Damageable
 	public void applyDamage(double amount, double x, double y, double z, double knockBack, boolean absolute)
 	{
 		hp -= amount;
-		xV -= 4*knockBack*x/radius; yV -= 4*knockBack*y/radius; zV -= 4*knockBack*z/radius;
+		setXV(getXV() - 4*knockBack*x/radius); setYV(getYV() - 4*knockBack*y/radius); setZV(getZV() - 4*knockBack*z/radius);
 	}
 }
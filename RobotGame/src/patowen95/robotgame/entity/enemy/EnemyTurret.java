@@ -1,6 +1,10 @@
 package patowen95.robotgame.entity.enemy;
+import java.util.ArrayList;
+
 import com.jogamp.opengl.GL2;
 
+import patowen95.robotgame.CollisionHit;
+import patowen95.robotgame.CollisionStats;
 import patowen95.robotgame.Controller;
 import patowen95.robotgame.World;
 import patowen95.robotgame.entity.Collidable;
@@ -33,6 +37,8 @@ public class EnemyTurret extends Enemy implements Collidable, Damageable
 	private double horizontalDir;
 	private double verticalDir;
 	private double charge;	
+	private ArrayList<Entity> nearbyEntities; //Reused by queries for nearby entities
+	private CollisionHit collisionHit; //Receives the results of collision queries
 	
 	/**
 	 * Creates a new EnemyTurret.
@@ -42,6 +48,8 @@ public class EnemyTurret extends Enemy implements Collidable, Damageable
 	public EnemyTurret(Controller controller, World world)
 	{
 		super(controller, world);
+		nearbyEntities = new ArrayList<Entity>();
+		collisionHit = new CollisionHit(CollisionStats.AI);
 		
 		radius = 0.5;
 		height = 0.8;
@@ -81,40 +89,43 @@ public class EnemyTurret extends Enemy implements Collidable, Damageable
 			EntityBullet bullet = (EntityBullet)c.createEntity(w, EI.EntityBullet);
 			double xDir = Math.cos(horizontalDir)*Math.cos(verticalDir),
 					yDir = Math.sin(horizontalDir)*Math.cos(verticalDir), zDir = Math.sin(verticalDir);
-			bullet.setPosition(x+xDir*shotDistance, y+yDir*shotDistance, z+zDir*shotDistance+shotHeight);
+			bullet.setPosition(getX()+xDir*shotDistance, getY()+yDir*shotDistance, getZ()+zDir*shotDistance+shotHeight);
 			bullet.setVelocity(shotSpeed*xDir, shotSpeed*yDir, shotSpeed*zDir);
 			bullet.setDamage(2, 4);
 			bullet.setColor(1, 0.8f, 0.6f);
 			bullet.setOwner(this);
 			
-			c.getSoundHandler().playSound(0, x, y, z);
+			c.getSoundHandler().playSound(0, getX(), getY(), getZ());
 			w.create(bullet);
 			
 			charge = shotDelay;
 		}
 		
-		Player player = w.getPlayer();
-		double xDiff = player.getX()-x, yDiff = player.getY()-y, zDiff = player.getZ()-z;
-		double xyDiff = Math.sqrt(xDiff*xDiff + yDiff*yDiff);
-		
-		double playerDir = Math.atan2(yDiff, xDiff);
-		double playerVDir = Math.atan2(zDiff, xyDiff);
-		
-		double dirDifference = playerDir-horizontalDir;
-		double vDirDifference = playerVDir-verticalDir;
-		
-		while (dirDifference < -Math.PI) dirDifference += 2*Math.PI;
-		while (dirDifference > Math.PI) dirDifference -= 2*Math.PI; 
-		
-		if (dirDifference > 0)
-			horizontalDir += Math.min(dt, dirDifference);
-		else
-			horizontalDir -= Math.min(dt, -dirDifference);
-		
-		if (vDirDifference > 0)
-			verticalDir += Math.min(dt, vDirDifference);
-		else
-			verticalDir -= Math.min(dt, -vDirDifference);
+		Player player = w.getTargetPlayer(getX(), getY(), getZ());
+		if (player != null)
+		{
+			double xDiff = player.getX()-getX(), yDiff = player.getY()-getY(), zDiff = player.getZ()-getZ();
+			double xyDiff = Math.sqrt(xDiff*xDiff + yDiff*yDiff);
+			
+			double playerDir = Math.atan2(yDiff, xDiff);
+			double playerVDir = Math.atan2(zDiff, xyDiff);
+			
+			double dirDifference = playerDir-horizontalDir;
+			double vDirDifference = playerVDir-verticalDir;
+			
+			while (dirDifference < -Math.PI) dirDifference += 2*Math.PI;
+			while (dirDifference > Math.PI) dirDifference -= 2*Math.PI; 
+			
+			if (dirDifference > 0)
+				horizontalDir += Math.min(dt, dirDifference);
+			else
+				horizontalDir -= Math.min(dt, -dirDifference);
+			
+			if (vDirDifference > 0)
+				verticalDir += Math.min(dt, vDirDifference);
+			else
+				verticalDir -= Math.min(dt, -vDirDifference);
+		}
 		
 		if (hp <= 0)
 		{
@@ -129,19 +140,19 @@ public class EnemyTurret extends Enemy implements Collidable, Damageable
 		double xd = range*Math.cos(horizontalDir)*Math.cos(verticalDir),
 				yd = range*Math.sin(horizontalDir)*Math.cos(verticalDir), zd = range*Math.sin(verticalDir);
 		
-		double t = w.getCollision().getBulletCollision(x, y, z+shotHeight, xd, yd, zd);
+		double t = w.getCollision().getBulletCollision(getX(), getY(), getZ()+shotHeight, xd, yd, zd, collisionHit);
 		double t2 = 1; //Bullet distance traveled before first detected collision
 		Damageable entityToDamage = null;
 		
-		for (Entity entity : w.getEntities())
+		w.getDamageablesAlongPath(getX(), getY(), getZ()+shotHeight, xd*t, yd*t, zd*t, nearbyEntities);
+		for (Entity entity : nearbyEntities)
 		{
 			if (entity == this) continue;
-			if (!(entity instanceof Damageable) || entity == this) continue;
 			
 			Damageable e = (Damageable) entity;
 			
 			//tTest must be less than t2 to update it.
-			double tTest = w.getCollision().getEntityBulletCollision(x, y, z+shotHeight, xd*t, yd*t, zd*t, e);
+			double tTest = w.getCollision().getEntityBulletCollision(getX(), getY(), getZ()+shotHeight, xd*t, yd*t, zd*t, e, collisionHit);
 			
 			if (tTest < t2)
 			{
@@ -159,14 +170,14 @@ public class EnemyTurret extends Enemy implements Collidable, Damageable
 	
 	public void draw(GL2 gl)
 	{
-		GLUT glut = new GLUT();
+		GLUT glut = getGLUT();
 		
 		//Color
 		gl.glMaterialfv(GL2.GL_FRONT, GL2.GL_AMBIENT_AND_DIFFUSE, new float[] {1,1,1,1}, 0);
 		gl.glMaterialfv(GL2.GL_FRONT, GL2.GL_EMISSION, new float[] {0,0,0,1}, 0);
 		
 		gl.glPushMatrix();
-		gl.glTranslated(x, y, z);
+		gl.glTranslated(getX(), getY(), getZ());
 		glut.glutSolidCylinder(0.05, 0.5, 12, 1);
 		
 		gl.glTranslated(0, 0, 0.5);
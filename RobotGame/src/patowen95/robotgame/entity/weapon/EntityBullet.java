@@ -1,8 +1,14 @@
 package patowen95.robotgame.entity.weapon;
+import java.util.ArrayList;
+
 import com.jogamp.opengl.GL2;
 
+import patowen95.robotgame.CollisionHit;
+import patowen95.robotgame.CollisionStats;
 import patowen95.robotgame.Controller;
+import patowen95.robotgame.EntityStore;
 import patowen95.robotgame.NetworkPacket;
+import patowen95.robotgame.RayBatch;
 import patowen95.robotgame.World;
 import patowen95.robotgame.entity.Damageable;
 import patowen95.robotgame.entity.EI;
@@ -18,13 +24,16 @@ import com.jogamp.opengl.util.gl2.GLUT;
  */
 public class EntityBullet extends Entity
 {
-	private Entity owner;
+	private long owner; //Reference to the entity that fired the bullet in the World's EntityStore
 	
 	private double radius, radius2;
 	private double damage;
 	private double knockBack;
 	
 	private float[] color;
+	private ArrayList<Entity> nearbyEntities; //Reused by queries for nearby entities
+	private CollisionHit collisionHit; //Receives the results of collision queries
+	private int rayIndex; //Index of the ray queued in World's RayBatch, or -1
 	
 	/**
 	 * Creates a new EntityBullet.
@@ -34,15 +43,23 @@ public class EntityBullet extends Entity
 	public EntityBullet(Controller controller, World world)
 	{
 		super(controller, world);
+		nearbyEntities = new ArrayList<Entity>();
+		collisionHit = new CollisionHit(CollisionStats.BULLET);
+		color = new float[4];
+		reset();
+	}
+	
+	public void reset()
+	{
+		super.reset();
+		owner = EntityStore.NO_REFERENCE;
+		rayIndex = -1;
 		
 		radius = 0.05; radius2 = 0.1;
 		damage = 0;
 		knockBack = 0;
-		xV = 0;
-		yV = 0;
-		zV = 0;
 		
-		color = new float[4];
+		color[0] = 0; color[1] = 0; color[2] = 0;
 		color[3] = 1;
 	}
 	
@@ -74,7 +91,7 @@ public class EntityBullet extends Entity
 	 */
 	public void setOwner(Entity e)
 	{
-		owner = e;
+		owner = w.getEntityStore().getReference(e);
 	}
 	
 	/**
@@ -99,25 +116,42 @@ public class EntityBullet extends Entity
 		color[0] = red; color[1] = green; color[2] = blue;
 	}
 	
+	public boolean canStepInParallel()
+	{
+		return true;
+	}
+	
+	public void queueRays(RayBatch batch, double dt)
+	{
+		if (isLocal)
+			rayIndex = batch.add(getX(), getY(), getZ(), getXV()*dt, getYV()*dt, getZV()*dt);
+	}
+	
 	public void step(double dt)
 	{
 		super.step(dt);
 		
 		if (isLocal)
 		{
-			double t = w.getCollision().getBulletCollision(x, y, z, xV*dt, yV*dt, zV*dt);
+			//Use the result of the queued ray unless the bullet was moved since it was queued.
+			double t;
+			RayBatch batch = w.getRayBatch();
+			if (batch.matches(rayIndex, getX(), getY(), getZ(), getXV()*dt, getYV()*dt, getZV()*dt))
+				t = batch.getTime(rayIndex);
+			else
+				t = w.getCollision().getBulletCollision(getX(), getY(), getZ(), getXV()*dt, getYV()*dt, getZV()*dt, collisionHit);
 			double t2 = 1; //Bullet distance traveled before first detected collision
 			Damageable entityToDamage = null;
 			
-			for (Entity entity : w.getEntities())
+			w.getDamageablesAlongPath(getX(), getY(), getZ(), getXV()*t*dt, getYV()*t*dt, getZV()*t*dt, nearbyEntities);
+			for (Entity entity : nearbyEntities)
 			{
-				if (entity == owner) continue;
-				if (!(entity instanceof Damageable)) continue;
+				if (w.getEntityStore().getReference(entity) == owner) continue;
 				
 				Damageable e = (Damageable) entity;
 				
 				//tTest must be less than t2 to update it.
-				double tTest = w.getCollision().getEntityBulletCollision(x, y, z, xV*t*dt, yV*t*dt, zV*t*dt, e);
+				double tTest = w.getCollision().getEntityBulletCollision(getX(), getY(), getZ(), getXV()*t*dt, getYV()*t*dt, getZV()*t*dt, e, collisionHit);
 				
 				if (tTest < t2)
 				{
@@ -129,14 +163,14 @@ public class EntityBullet extends Entity
 			//Bullet hits entity.
 			if (entityToDamage != null)
 			{
-				double totalVel = Math.sqrt(xV*xV + yV*yV + zV*zV);
-				entityToDamage.applyDamage(damage, -xV/totalVel, -yV/totalVel, -zV/totalVel, knockBack, false);
+				double totalVel = Math.sqrt(getXV()*getXV() + getYV()*getYV() + getZV()*getZV());
+				w.applyDamage(entityToDamage, damage, -getXV()/totalVel, -getYV()/totalVel, -getZV()/totalVel, knockBack, false);
 			}
 			
 			//Update bullet location
-			x += xV*t*t2*dt;
-			y += yV*t*t2*dt;
-			z += zV*t*t2*dt;
+			setX(getX() + getXV()*t*t2*dt);
+			setY(getY() + getYV()*t*t2*dt);
+			setZ(getZ() + getZV()*t*t2*dt);
 			
 			//Bullet hits something.
 			if (t2 < 1 || t < 1)
@@ -155,52 +189,52 @@ public class EntityBullet extends Entity
 	private void explodeOnWall()
 	{
 		EntityExplosion blast = (EntityExplosion)c.createEntity(w, EI.EntityExplosion);
-		blast.setPosition(x, y, z);
+		blast.setPosition(getX(), getY(), getZ());
 		blast.setRadius(radius);
 		blast.setFinalRadius(radius*4);
 		blast.setDuration(.1);
 		blast.setColor(color[0], color[1], color[2]);
 		w.create(blast);
-		c.getSoundHandler().playSound(2, x, y, z);
+		w.playSound(2, getX(), getY(), getZ());
 	}
 	
 	//Creates a larger explosion to make it look like an entity was damaged.
 	private void explodeOnEntity()
 	{
 		EntityExplosion blast = (EntityExplosion)c.createEntity(w, EI.EntityExplosion);
-		blast.setPosition(x, y, z);
+		blast.setPosition(getX(), getY(), getZ());
 		blast.setRadius(radius);
 		blast.setFinalRadius(radius*10);
 		blast.setDuration(.25);
 		blast.setColor(1, .5f, .25f);
-		c.getSoundHandler().playSound(1, x, y, z);
+		w.playSound(1, getX(), getY(), getZ());
 		w.create(blast);
 	}
 	
 	public void draw(GL2 gl)
 	{
-		GLUT glut = new GLUT();
+		GLUT glut = getGLUT();
 		
 		//Color
 		gl.glMaterialfv(GL2.GL_FRONT, GL2.GL_AMBIENT_AND_DIFFUSE, new float[] {0,0,0,1}, 0);
 		gl.glMaterialfv(GL2.GL_FRONT, GL2.GL_EMISSION, color, 0);
 		
 		gl.glPushMatrix();
-		gl.glTranslated(x, y, z);
+		gl.glTranslated(getX(), getY(), getZ());
 		glut.glutSolidSphere(radius, 8, 8);
 		gl.glPopMatrix();
 	}
 	
 	public void draw2(GL2 gl)
 	{
-		GLUT glut = new GLUT();
+		GLUT glut = getGLUT();
 		
 		//Color
 		gl.glMaterialfv(GL2.GL_FRONT, GL2.GL_AMBIENT_AND_DIFFUSE, new float[] {0,0,0,0.3f}, 0);
 		gl.glMaterialfv(GL2.GL_FRONT, GL2.GL_EMISSION, color, 0);
 		
 		gl.glPushMatrix();
-		gl.glTranslated(x, y, z);
+		gl.glTranslated(getX(), getY(), getZ());
 		glut.glutSolidSphere(radius2, 24, 8);
 		gl.glPopMatrix();
 	}
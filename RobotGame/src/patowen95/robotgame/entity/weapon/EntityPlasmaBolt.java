@@ -1,7 +1,13 @@
 package patowen95.robotgame.entity.weapon;
+import java.util.ArrayList;
+
 import com.jogamp.opengl.GL2;
 
+import patowen95.robotgame.CollisionHit;
+import patowen95.robotgame.CollisionStats;
 import patowen95.robotgame.Controller;
+import patowen95.robotgame.EntityStore;
+import patowen95.robotgame.RayBatch;
 import patowen95.robotgame.World;
 import patowen95.robotgame.entity.Damageable;
 import patowen95.robotgame.entity.EI;
@@ -17,7 +23,7 @@ import com.jogamp.opengl.util.gl2.GLUT;
  */
 public class EntityPlasmaBolt extends Entity
 {
-	private Entity owner;
+	private long owner; //Reference to the entity that fired the bolt in the World's EntityStore
 	
 	private double radius, radius2;
 	private double damage;
@@ -30,6 +36,9 @@ public class EntityPlasmaBolt extends Entity
 	private boolean isDestroyed;
 	
 	private float[] color;
+	private ArrayList<Entity> nearbyEntities; //Reused by queries for nearby entities
+	private CollisionHit collisionHit; //Receives the results of collision queries
+	private int rayIndex; //Index of the ray queued in World's RayBatch, or -1
 	
 	/**
 	 * Creates a new EntityBullet.
@@ -39,15 +48,25 @@ public class EntityPlasmaBolt extends Entity
 	public EntityPlasmaBolt(Controller controller, World world)
 	{
 		super(controller, world);
+		nearbyEntities = new ArrayList<Entity>();
+		collisionHit = new CollisionHit(CollisionStats.BULLET);
+		color = new float[4];
+		reset();
+	}
+	
+	public void reset()
+	{
+		super.reset();
+		owner = EntityStore.NO_REFERENCE;
+		rayIndex = -1;
 		
 		radius = 0.1; radius2 = 0.2;
 		damage = 5;
 		knockback = 5;
-		xV = 0;
-		yV = 0;
-		zV = 0;
+		fireFrequency = 0;
+		fireTime = 0;
 		
-		color = new float[4];
+		color[0] = 0; color[1] = 0; color[2] = 0; color[3] = 0;
 		isDestroyed = false;
 		range = 6;
 		maxDamage = damage;
@@ -60,7 +79,7 @@ public class EntityPlasmaBolt extends Entity
 	 */
 	public void setOwner(Entity e)
 	{
-		owner = e;
+		owner = w.getEntityStore().getReference(e);
 	}
 	
 	/**
@@ -95,24 +114,40 @@ public class EntityPlasmaBolt extends Entity
 		color[0] = red; color[1] = green; color[2] = blue;
 	}
 	
+	public boolean canStepInParallel()
+	{
+		return true;
+	}
+	
+	public void queueRays(RayBatch batch, double dt)
+	{
+		rayIndex = batch.add(getX(), getY(), getZ(), getXV()*dt, getYV()*dt, getZV()*dt);
+	}
+	
 	public void step(double dt)
 	{
 		super.step(dt);
 		handleExhaust(dt);
 		
-		double t = w.getCollision().getBulletCollision(x, y, z, xV*dt, yV*dt, zV*dt);
+		//Use the result of the queued ray unless the bolt was moved since it was queued.
+		double t;
+		RayBatch batch = w.getRayBatch();
+		if (batch.matches(rayIndex, getX(), getY(), getZ(), getXV()*dt, getYV()*dt, getZV()*dt))
+			t = batch.getTime(rayIndex);
+		else
+			t = w.getCollision().getBulletCollision(getX(), getY(), getZ(), getXV()*dt, getYV()*dt, getZV()*dt, collisionHit);
 		double t2 = 1; //Bullet distance traveled before first detected collision
 		Damageable entityToDamage = null;
 		
-		for (Entity entity : w.getEntities())
+		w.getDamageablesAlongPath(getX(), getY(), getZ(), getXV()*t*dt, getYV()*t*dt, getZV()*t*dt, nearbyEntities);
+		for (Entity entity : nearbyEntities)
 		{
-			if (entity == owner) continue;
-			if (!(entity instanceof Damageable)) continue;
+			if (w.getEntityStore().getReference(entity) == owner) continue;
 			
 			Damageable e = (Damageable) entity;
 			
 			//tTest must be less than t2 to update it.
-			double tTest = w.getCollision().getEntityBulletCollision(x, y, z, xV*t*dt, yV*t*dt, zV*t*dt, e);
+			double tTest = w.getCollision().getEntityBulletCollision(getX(), getY(), getZ(), getXV()*t*dt, getYV()*t*dt, getZV()*t*dt, e, collisionHit);
 			
 			if (tTest < t2)
 			{
@@ -124,14 +159,14 @@ public class EntityPlasmaBolt extends Entity
 		//Bullet hits entity.
 		if (entityToDamage != null)
 		{
-			double totalVel = Math.sqrt(xV*xV + yV*yV + zV*zV);
-			entityToDamage.applyDamage(damage, -xV/totalVel, -yV/totalVel, -zV/totalVel, knockback, false);
+			double totalVel = Math.sqrt(getXV()*getXV() + getYV()*getYV() + getZV()*getZV());
+			w.applyDamage(entityToDamage, damage, -getXV()/totalVel, -getYV()/totalVel, -getZV()/totalVel, knockback, false);
 		}
 		
 		//Update bullet location
-		x += xV*t*t2*dt;
-		y += yV*t*t2*dt;
-		z += zV*t*t2*dt;
+		setX(getX() + getXV()*t*t2*dt);
+		setY(getY() + getYV()*t*t2*dt);
+		setZ(getZ() + getZV()*t*t2*dt);
 		
 		//Bullet hits something.
 		if (t2 < 1 || t < 1)
@@ -152,20 +187,20 @@ public class EntityPlasmaBolt extends Entity
 		EntityFade blast = (EntityFade)c.createEntity(w, EI.EntityFade);
 		blast.setColor(color[0], color[1], color[2]);
 		blast.setDuration(1);
-		blast.setPosition(x, y, z + radius/2);
+		blast.setPosition(getX(), getY(), getZ() + radius/2);
 		blast.setRadius(range);
 		w.create(blast);
 		
-		for (Entity entity : w.getEntities())
+		w.getDamageablesInSphere(getX(), getY(), getZ()+radius/2, range, nearbyEntities);
+		for (Entity entity : nearbyEntities)
 		{
 			if (entity == this) continue;
-			if (!(entity instanceof Damageable)) continue;
 			
 			Damageable e = (Damageable) entity;
 			
-			double xDiff = x-e.getX();
-			double yDiff = y-e.getY();
-			double zDiff = z+radius/2-e.getZ()-e.getRadius()/2;
+			double xDiff = getX()-e.getX();
+			double yDiff = getY()-e.getY();
+			double zDiff = getZ()+radius/2-e.getZ()-e.getRadius()/2;
 			double distSqr = xDiff*xDiff + yDiff*yDiff + zDiff*zDiff;
 			
 			if (distSqr < range*range)
@@ -176,7 +211,7 @@ public class EntityPlasmaBolt extends Entity
 				
 				if(Math.abs(totalKB) > Math.abs(knockback)) totalKB = knockback;
 				if (totalDamage > maxDamage) totalDamage = maxDamage;
-				e.applyDamage(totalDamage, xDiff/dist, yDiff/dist, zDiff/dist, totalKB, false);
+				w.applyDamage(e, totalDamage, xDiff/dist, yDiff/dist, zDiff/dist, totalKB, false);
 			}
 		}
 		
@@ -193,7 +228,7 @@ public class EntityPlasmaBolt extends Entity
 		{
 			fireTime = fireFrequency;
 			EntityFade trail = (EntityFade)c.createEntity(w, EI.EntityFade);
-			trail.setPosition(x, y, z);
+			trail.setPosition(getX(), getY(), getZ());
 			trail.setColor(color[0], color[1], color[2]);
 			trail.setRadius(radius2);
 			trail.setDuration(.25);
@@ -203,28 +238,28 @@ public class EntityPlasmaBolt extends Entity
 	
 	public void draw(GL2 gl)
 	{
-		GLUT glut = new GLUT();
+		GLUT glut = getGLUT();
 		
 		//Color
 		gl.glMaterialfv(GL2.GL_FRONT, GL2.GL_AMBIENT_AND_DIFFUSE, new float[] {0,0,0,1}, 0);
 		gl.glMaterialfv(GL2.GL_FRONT, GL2.GL_EMISSION, color, 0);
 		
 		gl.glPushMatrix();
-		gl.glTranslated(x, y, z);
+		gl.glTranslated(getX(), getY(), getZ());
 		glut.glutSolidSphere(radius, 8, 8);
 		gl.glPopMatrix();
 	}
 	
 	public void draw2(GL2 gl)
 	{
-		GLUT glut = new GLUT();
+		GLUT glut = getGLUT();
 		
 		//Color
 		gl.glMaterialfv(GL2.GL_FRONT, GL2.GL_AMBIENT_AND_DIFFUSE, new float[] {0,0,0,0.3f}, 0);
 		gl.glMaterialfv(GL2.GL_FRONT, GL2.GL_EMISSION, color, 0);
 		
 		gl.glPushMatrix();
-		gl.glTranslated(x, y, z);
+		gl.glTranslated(getX(), getY(), getZ());
 		glut.glutSolidSphere(radius2, 24, 8);
 		gl.glPopMatrix();
 	}
@@ -1,8 +1,13 @@
 package patowen95.robotgame.entity.weapon;
+import java.util.ArrayList;
+
 import com.jogamp.opengl.GL2;
 
 import patowen95.robotgame.Collision;
+import patowen95.robotgame.CollisionHit;
+import patowen95.robotgame.CollisionStats;
 import patowen95.robotgame.Controller;
+import patowen95.robotgame.EntityStore;
 import patowen95.robotgame.World;
 import patowen95.robotgame.entity.Damageable;
 import patowen95.robotgame.entity.EI;
@@ -33,9 +38,11 @@ public class EntityRocket extends Entity implements Damageable
 	private double knockback;
 	
 	private Damageable target;
-	private Entity owner;
+	private long owner; //Reference to the entity that fired the rocket in the World's EntityStore
 	
 	private boolean isDestroyed;
+	private ArrayList<Entity> nearbyEntities; //Reused by queries for nearby entities
+	private CollisionHit collisionHit; //Receives the results of collision queries
 	
 	/**
 	 * Creates a new EnemyRocket object. 
@@ -45,6 +52,9 @@ public class EntityRocket extends Entity implements Damageable
 	public EntityRocket(Controller c, World world)
 	{
 		super(c, world);
+		nearbyEntities = new ArrayList<Entity>();
+		owner = EntityStore.NO_REFERENCE;
+		collisionHit = new CollisionHit(CollisionStats.ROCKET);
 		
 		radius = .15;
 		height = .3;
@@ -80,7 +90,7 @@ public class EntityRocket extends Entity implements Damageable
 		{
 			fireTime = fireFrequency;
 			EntityExplosion exhaust = (EntityExplosion)c.createEntity(w, EI.EntityExplosion);
-			exhaust.setPosition(x, y, z + height/2);
+			exhaust.setPosition(getX(), getY(), getZ() + height/2);
 			exhaust.setColor(.1f, 0f, 0f);
 			exhaust.setRadius(1.1*radius);
 			exhaust.setFinalRadius(2*radius);
@@ -95,7 +105,7 @@ public class EntityRocket extends Entity implements Damageable
 	 */
 	public void setOwner(Entity newOwner)
 	{
-		owner = newOwner;
+		owner = w.getEntityStore().getReference(newOwner);
 	}
 	
 	/**
@@ -110,23 +120,23 @@ public class EntityRocket extends Entity implements Damageable
 		EntityExplosion blast = (EntityExplosion)c.createEntity(w, EI.EntityExplosion);
 		blast.setColor(.75f, .25f, .1f);
 		blast.setDuration(.5);
-		blast.setPosition(x, y, z + radius/2);
+		blast.setPosition(getX(), getY(), getZ() + radius/2);
 		blast.setRadius(radius);
 		blast.setFinalRadius(range);
 		w.create(blast);
 		
 		if (applyDamage)
 		{
-			for (Entity entity : w.getEntities())
+			w.getDamageablesInSphere(getX(), getY(), getZ()+height/2, range, nearbyEntities);
+			for (Entity entity : nearbyEntities)
 			{
-				if (entity == owner || entity == this) continue;
-				if (!(entity instanceof Damageable)) continue;
+				if (w.getEntityStore().getReference(entity) == owner || entity == this) continue;
 				
 				Damageable e = (Damageable) entity;
 				
-				double xDiff = x-e.getX();
-				double yDiff = y-e.getY();
-				double zDiff = z+height/2-e.getZ()-e.getHeight()/2;
+				double xDiff = getX()-e.getX();
+				double yDiff = getY()-e.getY();
+				double zDiff = getZ()+height/2-e.getZ()-e.getHeight()/2;
 				double distSqr = xDiff*xDiff + yDiff*yDiff + zDiff*zDiff;
 				
 				if (distSqr < range*range)
@@ -161,16 +171,16 @@ public class EntityRocket extends Entity implements Damageable
 	{
 		if (target != null)
 		{
-			double xDiff = target.getX()-x;
-			double yDiff = target.getY()-y;
-			double zDiff = (target.getZ()+target.getHeight()/2)-(z+height/2);
+			double xDiff = target.getX()-getX();
+			double yDiff = target.getY()-getY();
+			double zDiff = (target.getZ()+target.getHeight()/2)-(getZ()+height/2);
 			double diff = Math.sqrt(xDiff*xDiff + yDiff*yDiff + zDiff*zDiff);
 			
 			if (diff != 0)
 			{
 				xDiff /= diff; yDiff /= diff; zDiff /= diff;
-				xV -= friction*xV*dt; yV -= friction*yV*dt; zV -= friction*zV*dt;
-				xV += acceleration*xDiff*dt; yV += acceleration*yDiff*dt; zV += acceleration*zDiff*dt;
+				setXV(getXV() - friction*getXV()*dt); setYV(getYV() - friction*getYV()*dt); setZV(getZV() - friction*getZV()*dt);
+				setXV(getXV() + acceleration*xDiff*dt); setYV(getYV() + acceleration*yDiff*dt); setZV(getZV() + acceleration*zDiff*dt);
 			}
 		}
 	}
@@ -181,19 +191,19 @@ public class EntityRocket extends Entity implements Damageable
 		super.step(dt);
 		Collision col = w.getCollision();
 		
-		double t = col.getPlayerCollision(x, y, z, xV*dt, yV*dt, zV*dt, radius, height);
+		double t = col.getPlayerCollision(getX(), getY(), getZ(), getXV()*dt, getYV()*dt, getZV()*dt, radius, height, collisionHit);
 		double t2 = 1; //Bullet distance traveled before first detected collision
 		Damageable entityToDamage = null;
 		
-		for (Entity entity : w.getEntities())
+		w.getDamageablesAlongPath(getX(), getY(), getZ(), getXV()*t*dt, getYV()*t*dt, getZV()*t*dt, nearbyEntities);
+		for (Entity entity : nearbyEntities)
 		{
-			if (entity == owner || entity == this) continue;
-			if (!(entity instanceof Damageable)) continue;
+			if (w.getEntityStore().getReference(entity) == owner || entity == this) continue;
 			
 			Damageable e = (Damageable) entity;
 			
 			//tTest must be less than t2 to update it.
-			double tTest = col.getEntityBulletCollision(x, y, z, xV*t*dt, yV*t*dt, zV*t*dt, e);
+			double tTest = col.getEntityBulletCollision(getX(), getY(), getZ(), getXV()*t*dt, getYV()*t*dt, getZV()*t*dt, e, collisionHit);
 			
 			if (tTest < t2)
 			{
@@ -210,9 +220,9 @@ public class EntityRocket extends Entity implements Damageable
 		}
 		
 		//Update rocket location
-		x += xV*t*t2*dt;
-		y += yV*t*t2*dt;
-		z += zV*t*t2*dt;
+		setX(getX() + getXV()*t*t2*dt);
+		setY(getY() + getYV()*t*t2*dt);
+		setZ(getZ() + getZV()*t*t2*dt);
 		
 		//Rocket hits anything
 		if (t2 < 1 || t < 1)
@@ -229,9 +239,9 @@ public class EntityRocket extends Entity implements Damageable
 		
 		gl.glPushMatrix();
 		
-		gl.glTranslated(x, y, z+height/2);
+		gl.glTranslated(getX(), getY(), getZ()+height/2);
 		
-		GLUT glut = new GLUT();
+		GLUT glut = getGLUT();
 		glut.glutSolidSphere(radius, 24, 8);
 		
 		gl.glPopMatrix();
@@ -246,9 +256,9 @@ public class EntityRocket extends Entity implements Damageable
 		
 		gl.glPushMatrix();
 		
-		gl.glTranslated(x, y, z+height/2);
+		gl.glTranslated(getX(), getY(), getZ()+height/2);
 		
-		GLUT glut = new GLUT();
+		GLUT glut = getGLUT();
 		glut.glutSolidSphere(radius+.02, 24, 8);
 		
 		gl.glPopMatrix();
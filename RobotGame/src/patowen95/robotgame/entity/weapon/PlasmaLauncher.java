@@ -5,6 +5,7 @@ import patowen95.robotgame.Controller;
 import patowen95.robotgame.InputHandler;
 import patowen95.robotgame.World;
 import patowen95.robotgame.entity.EI;
+import patowen95.robotgame.entity.Entity;
 import patowen95.robotgame.model.ModelPlasmaLauncher;
 
 import com.jogamp.opengl.util.gl2.GLUT;
@@ -115,7 +116,7 @@ public class PlasmaLauncher extends Weapon
 	//draws the transparent parts of the gun
 	public void draw2(GL2 gl)
 	{
-		GLUT glut = new GLUT();
+		GLUT glut = Entity.getGLUT();
 		double radius = .0275*Math.min(energy, energyUse)/energyUse;
 		double sin = Math.sin(3*charge)*radius*.7;
 		double cos = Math.cos(3*charge)*radius*.7;
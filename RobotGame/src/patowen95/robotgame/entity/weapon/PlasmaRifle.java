@@ -5,6 +5,7 @@ import patowen95.robotgame.Controller;
 import patowen95.robotgame.InputHandler;
 import patowen95.robotgame.World;
 import patowen95.robotgame.entity.EI;
+import patowen95.robotgame.entity.Entity;
 import patowen95.robotgame.model.ModelPlasmaRifle;
 
 import com.jogamp.opengl.util.gl2.GLUT;
@@ -112,7 +113,7 @@ public class PlasmaRifle extends Weapon
 	//draws the transparent parts of the gun
 	public void draw2(GL2 gl)
 	{
-		GLUT glut = new GLUT();
+		GLUT glut = Entity.getGLUT();
 		//Color
 		gl.glMaterialfv(GL2.GL_FRONT, GL2.GL_AMBIENT_AND_DIFFUSE, new float[] {0, 0, 0, (float)(.3 * Math.random())}, 0);
 		gl.glMaterialfv(GL2.GL_FRONT, GL2.GL_EMISSION, new float[] {0f,1f,0,1}, 0);
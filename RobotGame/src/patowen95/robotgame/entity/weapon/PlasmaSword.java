@@ -3,6 +3,7 @@ import java.util.ArrayList;
 
 import com.jogamp.opengl.GL2;
 
+import patowen95.robotgame.Collision;
 import patowen95.robotgame.Controller;
 import patowen95.robotgame.InputHandler;
 import patowen95.robotgame.NetworkPacket;
@@ -26,6 +27,7 @@ import com.jogamp.opengl.util.gl2.GLUT;
 public class PlasmaSword extends Weapon implements EntityCreationListener
 {
 	private ArrayList<Damageable> hit = new ArrayList<Damageable>();//List of entities the sword has already hit
+	private ArrayList<Entity> nearbyEntities = new ArrayList<Entity>(); //Reused by queries for nearby entities
 	
 	private double shotDelay;
 	private double charge; //How much time before the next slash
@@ -112,7 +114,7 @@ public class PlasmaSword extends Weapon implements EntityCreationListener
 		if (input.getMouseButton(InputHandler.FIRE) && charge <= 0 && energy >= energyUse)
 		{
 			energy -= energyUse;
-			double randtheta = 6.2831 * Math.random();//6.2831 = 2*pi
+			double randtheta = 6.2831 * w.getRandom().nextDouble();//6.2831 = 2*pi
 			currentstep = 0;
 			ht = Math.cos(randtheta);
 			vt = Math.sin(randtheta);
@@ -141,7 +143,6 @@ public class PlasmaSword extends Weapon implements EntityCreationListener
 			
 			double t = w.getCollision().getBulletCollision(x, y, z, bladelength*xDir, bladelength*yDir, bladelength*zDir);
 			double t2 = 1; //Bullet distance traveled before first detected collision
-			Damageable entityToDamage = null;
 			
 			
 			
@@ -155,43 +156,28 @@ public class PlasmaSword extends Weapon implements EntityCreationListener
 				w.create(spark);
 			}
 			
-			double tTest = 1;
-			for (Entity entity : w.getEntities())
+			//The blade reaches from the player to the first wall in its way, and hits whatever it touches.
+			double bxd = bladelength*xDir*t, byd = bladelength*yDir*t, bzd = bladelength*zDir*t;
+			w.getDamageablesInCapsule(x, y, z, bxd, byd, bzd, 0, nearbyEntities);
+			for (Entity entity : nearbyEntities)
 			{
 				if (entity == player) continue;
-				if (!(entity instanceof Damageable)) continue;
 				
 				Damageable e = (Damageable) entity;
+				if (hit.contains(e)) continue;
 				
-				//tTest must be less than t2 to update it.
-				tTest = w.getCollision().getEntityBulletCollision(x, y, z, bladelength*xDir*t, bladelength*yDir*t, bladelength*zDir*t, e);
-				
-				
-				if (tTest < 1)
-				{
-					entityToDamage = e;
-					for(Damageable d: hit)
-					{
-						if(e == d)
-						{
-							entityToDamage = null;
-						}
-					}
-					//Bullet hits entity.
-					if (entityToDamage != null)
-					{
-						double totalVel = Math.sqrt(xDir*xDir + yDir*yDir + zDir*zDir);
-						entityToDamage.applyDamage(damage, -xDir/totalVel, -yDir/totalVel, -zDir/totalVel, knockback, false);
-						EntityExplosion boom = (EntityExplosion)c.createEntity(w, EI.EntityExplosion);
-						boom.setPosition(x+bladelength*xDir*tTest, y+bladelength*yDir*tTest, z+bladelength*zDir*tTest);
-						boom.setFinalRadius(.2);
-						boom.setDuration(.25);
-						boom.setColor(1f, .5f, .25f);
-						c.getSoundHandler().playSound(1, x+bladelength*xDir*tTest, y+bladelength*yDir*tTest, z+bladelength*zDir*tTest);
-						w.create(boom);
-					}
-					hit.add(e);
-				}
+				//Blade hits entity.
+				double s = Collision.getClosestOnSegment(x, y, z, bxd, byd, bzd, e.getX(), e.getY(), e.getZ()+e.getHeight()/2);
+				double totalVel = Math.sqrt(xDir*xDir + yDir*yDir + zDir*zDir);
+				e.applyDamage(damage, -xDir/totalVel, -yDir/totalVel, -zDir/totalVel, knockback, false);
+				EntityExplosion boom = (EntityExplosion)c.createEntity(w, EI.EntityExplosion);
+				boom.setPosition(x+bxd*s, y+byd*s, z+bzd*s);
+				boom.setFinalRadius(.2);
+				boom.setDuration(.25);
+				boom.setColor(1f, .5f, .25f);
+				c.getSoundHandler().playSound(1, x+bxd*s, y+byd*s, z+bzd*s);
+				w.create(boom);
+				hit.add(e);
 			}
 		}
 		
@@ -207,7 +193,7 @@ public class PlasmaSword extends Weapon implements EntityCreationListener
 	{		
 		if(currentstep < steps)
 		{
-			GLUT glut = new GLUT();
+			GLUT glut = Entity.getGLUT();
 			
 			if (!player.isLocal())
 			{
@@ -250,7 +236,7 @@ public class PlasmaSword extends Weapon implements EntityCreationListener
 	{
 		if(currentstep < steps)
 		{
-			GLUT glut = new GLUT();
+			GLUT glut = Entity.getGLUT();
 			
 			//Color
 			gl.glMaterialfv(GL2.GL_FRONT, GL2.GL_AMBIENT_AND_DIFFUSE, new float[] {.25f,.5f,1,.5f}, 0);
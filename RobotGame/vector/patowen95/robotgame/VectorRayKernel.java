@@ -0,0 +1,89 @@
+package patowen95.robotgame;
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * A RayKernel that uses the Vector API to test a wall against one path in each lane. Every lane does the same
+ * operations in the same order as Collision.testWallScalar, so the results are exactly the same.
+ * <br/><br/>
+ * It needs the jdk.incubator.vector module, so it is kept in its own source folder. Collision loads it if it is
+ * on the classpath and the module is available, and tests the paths one at a time otherwise.
+ * @author Patrick Owen
+ */
+class VectorRayKernel implements RayKernel
+{
+	private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+	
+	public void testWall(Collision collision, int i, CollisionHit h, int start, int end)
+	{
+		double nx = collision.cNX[i], ny = collision.cNY[i], nz = collision.cNZ[i];
+		DoubleVector offset = DoubleVector.broadcast(SPECIES, -collision.cD[i]);
+		DoubleVector none = DoubleVector.broadcast(SPECIES, 1);
+		
+		//Test the point on the coordinate plane where the triangle is largest, as Collision.isInsideTriangle does.
+		//Each edge is then tested with u and v, the two coordinates that are kept, as ue*(v-v1) - (u-u1)*ve.
+		double n;
+		double[] uStart, uDisp, vStart, vDisp; //Where the coordinates of the paths are found
+		double u1, v1, u2, v2, u3, v3; //Vertices
+		double ue1, ve1, ue2, ve2, ue3, ve3; //Edges
+		if (Math.abs(nx) > Math.abs(ny) && Math.abs(nx) > Math.abs(nz))
+		{
+			n = Math.signum(nx);
+			uStart = h.pairY; uDisp = h.pairYD; vStart = h.pairZ; vDisp = h.pairZD;
+			u1 = collision.cY1[i]; v1 = collision.cZ1[i]; u2 = collision.cY2[i]; v2 = collision.cZ2[i];
+			u3 = collision.cY3[i]; v3 = collision.cZ3[i];
+			ue1 = collision.cEY1[i]; ve1 = collision.cEZ1[i]; ue2 = collision.cEY2[i]; ve2 = collision.cEZ2[i];
+			ue3 = collision.cEY3[i]; ve3 = collision.cEZ3[i];
+		}
+		else if (Math.abs(ny) > Math.abs(nz))
+		{
+			n = Math.signum(ny);
+			uStart = h.pairZ; uDisp = h.pairZD; vStart = h.pairX; vDisp = h.pairXD;
+			u1 = collision.cZ1[i]; v1 = collision.cX1[i]; u2 = collision.cZ2[i]; v2 = collision.cX2[i];
+			u3 = collision.cZ3[i]; v3 = collision.cX3[i];
+			ue1 = collision.cEZ1[i]; ve1 = collision.cEX1[i]; ue2 = collision.cEZ2[i]; ve2 = collision.cEX2[i];
+			ue3 = collision.cEZ3[i]; ve3 = collision.cEX3[i];
+		}
+		else
+		{
+			n = Math.signum(nz);
+			uStart = h.pairX; uDisp = h.pairXD; vStart = h.pairY; vDisp = h.pairYD;
+			u1 = collision.cX1[i]; v1 = collision.cY1[i]; u2 = collision.cX2[i]; v2 = collision.cY2[i];
+			u3 = collision.cX3[i]; v3 = collision.cY3[i];
+			ue1 = collision.cEX1[i]; ve1 = collision.cEY1[i]; ue2 = collision.cEX2[i]; ve2 = collision.cEY2[i];
+			ue3 = collision.cEX3[i]; ve3 = collision.cEY3[i];
+		}
+		
+		//A point is inside if every edge gives the sign of n. Multiplying by n, which is 1 or -1, keeps the exact value of a
+		//result and only flips its sign, so every lane can check for a positive result. If n is 0, the normal is 0 and
+		//every path is parallel to the wall, so nothing is found either way.
+		int k = start;
+		int bound = start + SPECIES.loopBound(end-start);
+		for (; k<bound; k+=SPECIES.length())
+		{
+			DoubleVector bx1 = DoubleVector.fromArray(SPECIES, h.pairX, k);
+			DoubleVector by1 = DoubleVector.fromArray(SPECIES, h.pairY, k);
+			DoubleVector bz1 = DoubleVector.fromArray(SPECIES, h.pairZ, k);
+			DoubleVector bxd = DoubleVector.fromArray(SPECIES, h.pairXD, k);
+			DoubleVector byd = DoubleVector.fromArray(SPECIES, h.pairYD, k);
+			DoubleVector bzd = DoubleVector.fromArray(SPECIES, h.pairZD, k);
+			
+			DoubleVector dot = bxd.mul(nx).add(byd.mul(ny)).add(bzd.mul(nz));
+			DoubleVector t = offset.sub(bx1.mul(nx)).sub(by1.mul(ny)).sub(bz1.mul(nz)).div(dot);
+			VectorMask<Double> hit = dot.compare(VectorOperators.NE, 0)
+					.and(t.compare(VectorOperators.GE, 0)).and(t.compare(VectorOperators.LT, 1));
+			
+			DoubleVector u = DoubleVector.fromArray(SPECIES, uStart, k).add(DoubleVector.fromArray(SPECIES, uDisp, k).mul(t));
+			DoubleVector v = DoubleVector.fromArray(SPECIES, vStart, k).add(DoubleVector.fromArray(SPECIES, vDisp, k).mul(t));
+			hit = hit.and(v.sub(v1).mul(ue1).sub(u.sub(u1).mul(ve1)).mul(n).compare(VectorOperators.GT, 0));
+			hit = hit.and(v.sub(v2).mul(ue2).sub(u.sub(u2).mul(ve2)).mul(n).compare(VectorOperators.GT, 0));
+			hit = hit.and(v.sub(v3).mul(ue3).sub(u.sub(u3).mul(ve3)).mul(n).compare(VectorOperators.GT, 0));
+			
+			none.blend(t, hit).intoArray(h.pairTime, k);
+		}
+		
+		collision.testWallScalar(i, h, k, end);
+	}
+}